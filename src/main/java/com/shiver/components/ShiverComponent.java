@@ -3,19 +3,29 @@ package com.shiver.components;
 import com.shiver.exceptions.*;
 import com.shiver.logic.ShiverEventListener;
 import com.shiver.models.GroupCredentialMessage;
+import com.shiver.models.ShiverBatchResult;
 import net.sharksystem.ASAPFormats;
 import net.sharksystem.SharkComponent;
 import net.sharksystem.asap.ASAPException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This interface is the main interface between the user and this library.
  * The user should primarily use this interface to create group keys, decrypt and encrypt messages.
+ * The methods that end with Async do not block the caller. Their futures complete exceptionally with the exception
+ * that the blocking version would throw.
  */
 @ASAPFormats(formats = {ShiverComponent.SHARK_SHIVER_APP})
 public interface ShiverComponent extends SharkComponent {
@@ -66,6 +76,45 @@ public interface ShiverComponent extends SharkComponent {
      */
     void acceptGroupCredentialMessage(GroupCredentialMessage groupCredentialMessage) throws ShiverDHKeyGenerationException, IOException, NoSuchAlgorithmException, InvalidKeySpecException, InvalidKeyException, ASAPException, ShiverPeerNotVerifiedException;
 
+    /**
+     * Adds members to a group without creating the group key from scratch.
+     * The new key gets derived from what the members already agreed on, with the same small number of exponentiations
+     * for every member no matter how big the group is. The new members have to accept the {@link GroupCredentialMessage} first.
+     * When the new key is ready to use every event listener gets notified. Messages that got encrypted with the previous key
+     * can still get decrypted after the change.
+     *
+     * @param groupId - id of the group
+     * @param peerIds - the new members, members that are already part of the group get skipped
+     * @throws ShiverNoGroupKeyException      - Gets thrown if this peer has no key for the group
+     * @throws ShiverPeerNotVerifiedException - Gets thrown if not all new members are verifiable
+     * @throws ShiverDHKeyGenerationException - Gets thrown if something with the DH-key generation fails
+     * @throws IOException
+     * @throws ASAPException
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws InvalidKeySpecException
+     */
+    void addMembersToGroup(CharSequence groupId, List<CharSequence> peerIds) throws ShiverNoGroupKeyException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException;
+
+    /**
+     * Removes members from a group without creating the group key from scratch.
+     * The remaining members get a new key the removed members can not compute, with the same small number of exponentiations
+     * for every member no matter how big the group is. When the new key is ready to use every event listener gets notified.
+     * Messages that got encrypted with the previous key can still get decrypted after the change.
+     *
+     * @param groupId - id of the group
+     * @param peerIds - the members to remove, peers that are no members get skipped. The owner can not remove himself
+     * @throws ShiverNoGroupKeyException      - Gets thrown if this peer has no key for the group
+     * @throws ShiverGroupSizeException       - Gets thrown if the owner would be the only member left
+     * @throws ShiverDHKeyGenerationException - Gets thrown if something with the DH-key generation fails
+     * @throws IOException
+     * @throws ASAPException
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws InvalidKeySpecException
+     */
+    void removeMembersFromGroup(CharSequence groupId, List<CharSequence> peerIds) throws ShiverNoGroupKeyException, ShiverGroupSizeException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException;
+
     /**
      * Returns a boolean if a key for a groupId exists or not
      *
@@ -103,4 +152,301 @@ public interface ShiverComponent extends SharkComponent {
      * @throws ShiverDecryptionException - throws if the decryption failed for whatever reason
      */
     byte[] decryptMessageForGroup(CharSequence groupId, byte[] message) throws ShiverNoGroupKeyException, ShiverDecryptionException;
+
+    /**
+     * Encrypts the remaining bytes of a buffer for a given group directly into another buffer.
+     * Both buffers can be direct buffers. Nothing gets copied onto the heap by this library.
+     * The position of the message buffer gets moved to its limit and the position of the output buffer by the written bytes.
+     *
+     * @param groupId          - id of the group
+     * @param message          - buffer with the plain message between position and limit
+     * @param encryptedMessage - buffer to write the encrypted message into. Needs at least {@link #getEncryptedMessageLength} bytes left
+     * @return - the number of bytes written into the encryptedMessage buffer
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverEncryptionException - throws if the encryption failed for whatever reason, also if the output buffer is too small
+     */
+    int encryptMessageForGroup(CharSequence groupId, ByteBuffer message, ByteBuffer encryptedMessage) throws ShiverNoGroupKeyException, ShiverEncryptionException;
+
+    /**
+     * Decrypts the remaining bytes of a buffer for a given group directly into another buffer.
+     * The position of the encryptedMessage buffer gets moved to its limit and the position of the output buffer by the written bytes.
+     *
+     * @param groupId          - id of the group
+     * @param encryptedMessage - buffer with the encrypted message between position and limit
+     * @param message          - buffer to write the plain message into. Needs at least {@link #getMaxDecryptedMessageLength} bytes left
+     * @return - the number of bytes written into the message buffer
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverDecryptionException - throws if the decryption failed for whatever reason, also if the output buffer is too small
+     */
+    int decryptMessageForGroup(CharSequence groupId, ByteBuffer encryptedMessage, ByteBuffer message) throws ShiverNoGroupKeyException, ShiverDecryptionException;
+
+    /**
+     * Encrypts a part of an array for a given group into an array owned by the caller
+     *
+     * @param groupId      - id of the group
+     * @param message      - array that holds the plain message
+     * @param offset       - start of the message in the array
+     * @param length       - length of the message
+     * @param output       - array to write the encrypted message into
+     * @param outputOffset - where to start writing in the output array
+     * @return - the number of bytes written into the output array
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverEncryptionException - throws if the encryption failed for whatever reason, also if the output array is too small
+     */
+    int encryptMessageForGroup(CharSequence groupId, byte[] message, int offset, int length, byte[] output, int outputOffset) throws ShiverNoGroupKeyException, ShiverEncryptionException;
+
+    /**
+     * Decrypts a part of an array for a given group into an array owned by the caller
+     *
+     * @param groupId          - id of the group
+     * @param encryptedMessage - array that holds the encrypted message
+     * @param offset           - start of the encrypted message in the array
+     * @param length           - length of the encrypted message
+     * @param output           - array to write the plain message into
+     * @param outputOffset     - where to start writing in the output array
+     * @return - the number of bytes written into the output array
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverDecryptionException - throws if the decryption failed for whatever reason, also if the output array is too small
+     */
+    int decryptMessageForGroup(CharSequence groupId, byte[] encryptedMessage, int offset, int length, byte[] output, int outputOffset) throws ShiverNoGroupKeyException, ShiverDecryptionException;
+
+    /**
+     * Returns how many bytes the encryption of a message with the given length produces.
+     * Can be used to size the output buffers of the buffer based encryption.
+     *
+     * @param groupId       - id of the group
+     * @param messageLength - length of the plain message
+     * @return - length of the encrypted message
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     */
+    int getEncryptedMessageLength(CharSequence groupId, int messageLength) throws ShiverNoGroupKeyException;
+
+    /**
+     * Returns how many bytes the decryption of an encrypted message with the given length can produce at most.
+     * Can be used to size the output buffers of the buffer based decryption.
+     *
+     * @param groupId                - id of the group
+     * @param encryptedMessageLength - length of the encrypted message
+     * @return - maximum length of the plain message
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     */
+    int getMaxDecryptedMessageLength(CharSequence groupId, int encryptedMessageLength) throws ShiverNoGroupKeyException;
+
+    /**
+     * Opens a stream that encrypts everything written to it for a given group and writes it to another stream.
+     * The payload gets encrypted in authenticated chunks, so the memory use stays the same no matter how big the payload gets.
+     * The encrypted payload is only complete after the returned stream got closed.
+     *
+     * @param groupId      - id of the group
+     * @param outputStream - stream to write the encrypted payload to. Gets closed when the returned stream gets closed
+     * @return - the stream to write the plain payload to
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverEncryptionException - throws if the encryption can not get set up for whatever reason
+     */
+    OutputStream openEncryptingStream(CharSequence groupId, OutputStream outputStream) throws ShiverNoGroupKeyException, ShiverEncryptionException;
+
+    /**
+     * Opens a stream that reads a payload written by {@link #openEncryptingStream} and decrypts it for a given group.
+     * Reading throws an {@link IOException} as soon as a chunk was manipulated or the payload is cut off.
+     *
+     * @param groupId     - id of the group
+     * @param inputStream - stream to read the encrypted payload from. Gets closed when the returned stream gets closed
+     * @return - the stream to read the plain payload from
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverDecryptionException - throws if the decryption can not get set up for whatever reason
+     */
+    InputStream openDecryptingStream(CharSequence groupId, InputStream inputStream) throws ShiverNoGroupKeyException, ShiverDecryptionException;
+
+    /**
+     * Encrypts many messages for the same group at once.
+     * The key gets looked up once and the same cipher gets used for every message.
+     * A message that can not get encrypted does not fail the batch, its error is part of the result.
+     *
+     * @param groupId  - id of the group
+     * @param messages - bytes of every message
+     * @return - the encrypted messages or the error for every single message, in the same order
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverEncryptionException - throws if the encryption can not get set up at all
+     */
+    ShiverBatchResult encryptBatchForGroup(CharSequence groupId, List<byte[]> messages) throws ShiverNoGroupKeyException, ShiverEncryptionException;
+
+    /**
+     * Decrypts many messages of the same group at once.
+     * The key gets looked up once and the same cipher gets used for every message.
+     * A message that can not get decrypted does not fail the batch, its error is part of the result.
+     *
+     * @param groupId  - id of the group
+     * @param messages - bytes of every encrypted message
+     * @return - the decrypted messages or the error for every single message, in the same order
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverDecryptionException - throws if the decryption can not get set up at all
+     */
+    ShiverBatchResult decryptBatchForGroup(CharSequence groupId, List<byte[]> messages) throws ShiverNoGroupKeyException, ShiverDecryptionException;
+
+    /**
+     * Encrypts a message for a given group in authenticated chunks.
+     * Big messages get split up and their chunks get encrypted in parallel, small messages stay on the calling thread.
+     * The result describes itself and can also get read with {@link #openDecryptingStream}.
+     *
+     * @param groupId - id of the group
+     * @param message - bytes that represent the message
+     * @return - the encrypted message in the chunked format
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverEncryptionException - throws if the encryption failed for whatever reason
+     */
+    byte[] encryptChunkedMessageForGroup(CharSequence groupId, byte[] message) throws ShiverNoGroupKeyException, ShiverEncryptionException;
+
+    /**
+     * Decrypts a message that got encrypted with {@link #encryptChunkedMessageForGroup} or {@link #openEncryptingStream}.
+     * Big messages get decrypted in parallel.
+     *
+     * @param groupId - id of the group
+     * @param message - bytes that represent the encrypted message in the chunked format
+     * @return - the decrypted plain message in form of bytes
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverDecryptionException - throws if the decryption failed for whatever reason
+     */
+    byte[] decryptChunkedMessageForGroup(CharSequence groupId, byte[] message) throws ShiverNoGroupKeyException, ShiverDecryptionException;
+
+    /**
+     * Encrypts a file for a given group into another file.
+     * The file gets memory mapped region by region, so it is never read into the heap and can have any size.
+     * The regions of big files get encrypted in parallel. The result is in the same format as {@link #encryptChunkedMessageForGroup}.
+     *
+     * @param groupId       - id of the group
+     * @param plainFile     - the file to encrypt
+     * @param encryptedFile - the file to write the encrypted payload to. Gets replaced if it exists and deleted if the encryption fails
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverEncryptionException - throws if the encryption failed for whatever reason
+     */
+    void encryptFileForGroup(CharSequence groupId, Path plainFile, Path encryptedFile) throws ShiverNoGroupKeyException, ShiverEncryptionException;
+
+    /**
+     * Decrypts a file that got encrypted with {@link #encryptFileForGroup}, {@link #encryptChunkedMessageForGroup} or {@link #openEncryptingStream}
+     * into another file. The file gets memory mapped region by region and big files get decrypted in parallel.
+     *
+     * @param groupId       - id of the group
+     * @param encryptedFile - the file with the encrypted payload
+     * @param plainFile     - the file to write the plain payload to. Gets replaced if it exists and deleted if the decryption fails
+     * @throws ShiverNoGroupKeyException - throws if the key for this group does not exist
+     * @throws ShiverDecryptionException - throws if the decryption failed for whatever reason
+     */
+    void decryptFileForGroup(CharSequence groupId, Path encryptedFile, Path plainFile) throws ShiverNoGroupKeyException, ShiverDecryptionException;
+
+    /**
+     * Encrypts a message once for many groups.
+     * The message gets encrypted a single time with a random content key and only this key gets encrypted with the key of every group,
+     * so the cost of an additional group does not depend on the size of the message.
+     *
+     * @param groupIds - ids of all target groups
+     * @param message  - bytes that represent the message
+     * @return - the envelope that can get decrypted by the members of every target group with {@link #decryptEnvelope}
+     * @throws ShiverNoGroupKeyException - throws if the key of one of the groups does not exist
+     * @throws ShiverEncryptionException - throws if the encryption failed for whatever reason
+     */
+    byte[] encryptEnvelopeForGroups(List<CharSequence> groupIds, byte[] message) throws ShiverNoGroupKeyException, ShiverEncryptionException;
+
+    /**
+     * Decrypts an envelope that got encrypted with {@link #encryptEnvelopeForGroups}.
+     * The key of any of the target groups that this peer has a key for gets used.
+     *
+     * @param envelope - bytes that represent the envelope
+     * @return - the decrypted plain message in form of bytes
+     * @throws ShiverNoGroupKeyException - throws if this peer has no key for any of the target groups
+     * @throws ShiverDecryptionException - throws if the decryption failed for whatever reason
+     */
+    byte[] decryptEnvelope(byte[] envelope) throws ShiverNoGroupKeyException, ShiverDecryptionException;
+
+    /**
+     * The asynchronous version of {@link #startCreatingGroupKeyProcess}. Runs on the executor of this component.
+     *
+     * @param peerIds - a list of all peersIds that should be part of the group key
+     * @return - a future with the id of the new group. Completes when the process got started, not when the key is ready
+     */
+    CompletableFuture<CharSequence> startCreatingGroupKeyProcessAsync(List<CharSequence> peerIds);
+
+    /**
+     * Starts the process of creating a group key and waits for the key.
+     *
+     * @param peerIds - a list of all peersIds that should be part of the group key
+     * @return - a future with the id of the new group that completes as soon as the key is ready to use.
+     * Completes exceptionally if the exchange fails. Cancelling it stops the waiting
+     */
+    CompletableFuture<CharSequence> createGroupKeyAsync(List<CharSequence> peerIds);
+
+    /**
+     * Starts the process of creating a group key and waits for the key at most for the given time.
+     *
+     * @param peerIds - a list of all peersIds that should be part of the group key
+     * @param timeout - how long to wait for the key at most
+     * @param unit    - unit of the timeout
+     * @return - like {@link #createGroupKeyAsync(List)}, completes exceptionally with a {@link TimeoutException} when the time is up
+     */
+    CompletableFuture<CharSequence> createGroupKeyAsync(List<CharSequence> peerIds, long timeout, TimeUnit unit);
+
+    /**
+     * Waits until the key of a group is ready to use
+     *
+     * @param groupId - id of the group
+     * @return - a future with the id of the group that completes as soon as the key is ready.
+     * Is already completed if the key exists. Completes exceptionally if this peer can not finish the exchange of the group.
+     * Can get cancelled without affecting other waiting callers, a cancelled future stops waiting
+     */
+    CompletableFuture<CharSequence> awaitGroupKey(CharSequence groupId);
+
+    /**
+     * Waits until the key of a group is ready to use, at most for the given time
+     *
+     * @param groupId - id of the group
+     * @param timeout - how long to wait at most
+     * @param unit    - unit of the timeout
+     * @return - like {@link #awaitGroupKey(CharSequence)}, completes exceptionally with a {@link TimeoutException} when the time is up
+     */
+    CompletableFuture<CharSequence> awaitGroupKey(CharSequence groupId, long timeout, TimeUnit unit);
+
+    /**
+     * The asynchronous version of {@link #acceptGroupCredentialMessage}. Runs on the executor of this component.
+     *
+     * @param groupCredentialMessage - original groupCredentialMessage that got received via the {@link ShiverEventListener}
+     * @return - a future that completes when the message got accepted
+     */
+    CompletableFuture<Void> acceptGroupCredentialMessageAsync(GroupCredentialMessage groupCredentialMessage);
+
+    /**
+     * The asynchronous version of {@link #encryptMessageForGroup(CharSequence, byte[])}. Runs on the executor of this component.
+     *
+     * @param groupId - id of the group
+     * @param message - bytes that represent the message
+     * @return - a future with the encrypted message
+     */
+    CompletableFuture<byte[]> encryptMessageForGroupAsync(CharSequence groupId, byte[] message);
+
+    /**
+     * The asynchronous version of {@link #decryptMessageForGroup(CharSequence, byte[])}. Runs on the executor of this component.
+     *
+     * @param groupId - id of the group
+     * @param message - bytes that represent the encrypted message
+     * @return - a future with the decrypted message
+     */
+    CompletableFuture<byte[]> decryptMessageForGroupAsync(CharSequence groupId, byte[] message);
+
+    /**
+     * The asynchronous version of {@link #encryptFileForGroup}. Runs on the executor of this component.
+     *
+     * @param groupId       - id of the group
+     * @param plainFile     - the file to encrypt
+     * @param encryptedFile - the file to write the encrypted payload to
+     * @return - a future that completes when the file is written
+     */
+    CompletableFuture<Void> encryptFileForGroupAsync(CharSequence groupId, Path plainFile, Path encryptedFile);
+
+    /**
+     * The asynchronous version of {@link #decryptFileForGroup}. Runs on the executor of this component.
+     *
+     * @param groupId       - id of the group
+     * @param encryptedFile - the file with the encrypted payload
+     * @param plainFile     - the file to write the plain payload to
+     * @return - a future that completes when the file is written
+     */
+    CompletableFuture<Void> decryptFileForGroupAsync(CharSequence groupId, Path encryptedFile, Path plainFile);
 }
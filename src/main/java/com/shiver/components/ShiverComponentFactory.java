@@ -1,7 +1,10 @@
 package com.shiver.components;
 
+import com.shiver.crypto.ShiverChunkedCipher;
+import com.shiver.crypto.ShiverCipherCache;
 import com.shiver.logic.ShiverPkiSecurity;
 import com.shiver.logic.ShiverSecurity;
+import com.shiver.storage.ShiverDHKeyPairPool;
 import com.shiver.storage.ShiverDHKeyPairStorage;
 import com.shiver.storage.ShiverDHKeyPairStorageInMemo;
 import com.shiver.storage.ShiverKeyStorage;
@@ -10,6 +13,8 @@ import net.sharksystem.SharkComponent;
 import net.sharksystem.SharkComponentFactory;
 import net.sharksystem.pki.SharkPKIComponent;
 
+import java.util.concurrent.Executor;
+
 public class ShiverComponentFactory implements SharkComponentFactory {
     private final ShiverComponentImpl instance;
 
@@ -25,13 +30,42 @@ public class ShiverComponentFactory implements SharkComponentFactory {
     }
 
     /**
-     * The constructor that should be used by default
+     * A constructor for more controllable dependency resolution that also controls how big messages get encrypted in parallel
+     *
+     * @param shiverSecurity
+     * @param shiverDHKeyPairStorage
+     * @param shiverKeyStorage
+     * @param shiverChunkedCipher    - holds the fork join pool, the chunk size and the threshold for the parallel encryption
+     */
+    public ShiverComponentFactory(ShiverSecurity shiverSecurity, ShiverDHKeyPairStorage shiverDHKeyPairStorage, ShiverKeyStorage shiverKeyStorage, ShiverChunkedCipher shiverChunkedCipher) {
+        instance = new ShiverComponentImpl(shiverSecurity, shiverKeyStorage, shiverDHKeyPairStorage, new ShiverCipherCache(), shiverChunkedCipher);
+    }
+
+    /**
+     * A constructor for more controllable dependency resolution that also controls where the asynchronous methods run
+     *
+     * @param shiverSecurity
+     * @param shiverDHKeyPairStorage
+     * @param shiverKeyStorage
+     * @param shiverChunkedCipher    - holds the fork join pool, the chunk size and the threshold for the parallel encryption
+     * @param executor               - the executor the asynchronous methods of the component run on
+     */
+    public ShiverComponentFactory(ShiverSecurity shiverSecurity, ShiverDHKeyPairStorage shiverDHKeyPairStorage, ShiverKeyStorage shiverKeyStorage, ShiverChunkedCipher shiverChunkedCipher, Executor executor) {
+        instance = new ShiverComponentImpl(shiverSecurity, shiverKeyStorage, shiverDHKeyPairStorage, new ShiverCipherCache(), shiverChunkedCipher, executor);
+    }
+
+    /**
+     * The constructor that should be used by default.
+     * DH key pairs get pre generated in the background, so starting or accepting a group does not wait for them.
      *
      * @param sharkPKIComponent
      */
     public ShiverComponentFactory(SharkPKIComponent sharkPKIComponent) {
+        ShiverDHKeyPairPool shiverDHKeyPairPool = new ShiverDHKeyPairPool();
+        shiverDHKeyPairPool.start();
+
         ShiverKeyStorage shiverKeyStorage = new ShiverKeyStoreInMemo();
-        ShiverDHKeyPairStorage shiverDHKeyPairStorage = new ShiverDHKeyPairStorageInMemo();
+        ShiverDHKeyPairStorage shiverDHKeyPairStorage = new ShiverDHKeyPairStorageInMemo(shiverDHKeyPairPool);
         ShiverSecurity shiverSecurity = new ShiverPkiSecurity(sharkPKIComponent, shiverDHKeyPairStorage, shiverKeyStorage);
 
         instance = new ShiverComponentImpl(shiverSecurity, shiverKeyStorage, shiverDHKeyPairStorage);
@@ -1,21 +1,48 @@
 package com.shiver.components;
 
+import com.shiver.crypto.ShiverChunkedCipher;
+import com.shiver.crypto.ShiverCipherCache;
+import com.shiver.crypto.ShiverCipherSuite;
+import com.shiver.crypto.ShiverCipherSuites;
+import com.shiver.crypto.ShiverDecryptingInputStream;
+import com.shiver.crypto.ShiverEncryptingOutputStream;
+import com.shiver.crypto.ShiverEnvelopeCipher;
 import com.shiver.exceptions.*;
 import com.shiver.logic.ShiverEventListener;
 import com.shiver.logic.ShiverSecurity;
 import com.shiver.models.GroupCredentialMessage;
+import com.shiver.models.ShiverBatchResult;
 import com.shiver.storage.ShiverDHKeyPairStorage;
 import com.shiver.storage.ShiverKeyStorage;
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.ASAPPeer;
 
-import javax.crypto.Cipher;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.AEADBadTagException;
 
 /**
  * This class is the main implementation of the [SharkShiverComponent] interface.
@@ -27,11 +54,29 @@ class ShiverComponentImpl implements ShiverComponent {
     private final ShiverSecurity shiverSecurity;
     private final ShiverKeyStorage shiverKeyStorage;
     private final ShiverDHKeyPairStorage shiverDHKeyPairStorage;
+    private final ShiverCipherCache shiverCipherCache;
+    private final ShiverChunkedCipher shiverChunkedCipher;
+    private final Executor executor;
+
+    // every waiting caller has its own future, so a cancelled or timed out one can leave without affecting the others
+    private final ConcurrentHashMap<String, Set<CompletableFuture<CharSequence>>> pendingGroupKeys = new ConcurrentHashMap<>();
+    private final AtomicBoolean groupKeyListenerAdded = new AtomicBoolean(false);
 
     ShiverComponentImpl(ShiverSecurity shiverSecurity, ShiverKeyStorage shiverKeyStorage, ShiverDHKeyPairStorage shiverDHKeyPairStorage) {
+        this(shiverSecurity, shiverKeyStorage, shiverDHKeyPairStorage, new ShiverCipherCache(), new ShiverChunkedCipher());
+    }
+
+    ShiverComponentImpl(ShiverSecurity shiverSecurity, ShiverKeyStorage shiverKeyStorage, ShiverDHKeyPairStorage shiverDHKeyPairStorage, ShiverCipherCache shiverCipherCache, ShiverChunkedCipher shiverChunkedCipher) {
+        this(shiverSecurity, shiverKeyStorage, shiverDHKeyPairStorage, shiverCipherCache, shiverChunkedCipher, ShiverExecutors.createDefault());
+    }
+
+    ShiverComponentImpl(ShiverSecurity shiverSecurity, ShiverKeyStorage shiverKeyStorage, ShiverDHKeyPairStorage shiverDHKeyPairStorage, ShiverCipherCache shiverCipherCache, ShiverChunkedCipher shiverChunkedCipher, Executor executor) {
         this.shiverSecurity = shiverSecurity;
         this.shiverKeyStorage = shiverKeyStorage;
         this.shiverDHKeyPairStorage = shiverDHKeyPairStorage;
+        this.shiverCipherCache = shiverCipherCache;
+        this.shiverChunkedCipher = shiverChunkedCipher;
+        this.executor = executor;
     }
 
     @Override
@@ -59,6 +104,16 @@ class ShiverComponentImpl implements ShiverComponent {
         shiverSecurity.acceptGroupCredentialMessage(groupCredentialMessage);
     }
 
+    @Override
+    public void addMembersToGroup(CharSequence groupId, List<CharSequence> peerIds) throws ShiverNoGroupKeyException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        shiverSecurity.addPeersToGroup(groupId, peerIds);
+    }
+
+    @Override
+    public void removeMembersFromGroup(CharSequence groupId, List<CharSequence> peerIds) throws ShiverNoGroupKeyException, ShiverGroupSizeException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        shiverSecurity.removePeersFromGroup(groupId, peerIds);
+    }
+
     @Override
     public boolean hasKeyForGroupId(CharSequence groupId) {
         return shiverKeyStorage.getKeyForGroup(groupId) != null;
@@ -68,18 +123,17 @@ class ShiverComponentImpl implements ShiverComponent {
     public void invalidateGroupKey(CharSequence groupId) {
         shiverKeyStorage.deleteKeyForGroup(groupId);
         shiverDHKeyPairStorage.deleteKeyPairForGroupId(groupId);
+        shiverCipherCache.invalidate(groupId);
     }
 
     @Override
     public byte[] encryptMessageForGroup(CharSequence groupId, byte[] message) throws ShiverNoGroupKeyException, ShiverEncryptionException {
-        Key key = shiverKeyStorage.getKeyForGroup(groupId);
-        if (key == null) {
-            throw new ShiverNoGroupKeyException();
-        }
+        Key key = getKeyForGroup(groupId);
         try {
-            Cipher symmetricCipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            symmetricCipher.init(1, key);
-            return symmetricCipher.doFinal(message);
+            ShiverCipherSuite cipherSuite = getCipherSuiteForGroup(groupId);
+            byte[] encryptedMessage = new byte[cipherSuite.getEncryptedLength(message.length)];
+            int written = encrypt(groupId, key, cipherSuite, ByteBuffer.wrap(message), ByteBuffer.wrap(encryptedMessage));
+            return written == encryptedMessage.length ? encryptedMessage : Arrays.copyOf(encryptedMessage, written);
         } catch (Exception e) {
             throw new ShiverEncryptionException(e);
         }
@@ -87,17 +141,479 @@ class ShiverComponentImpl implements ShiverComponent {
 
     @Override
     public byte[] decryptMessageForGroup(CharSequence groupId, byte[] message) throws ShiverNoGroupKeyException, ShiverDecryptionException {
-        Key key = shiverKeyStorage.getKeyForGroup(groupId);
-        if (key == null) {
-            throw new ShiverNoGroupKeyException();
+        Key key = getKeyForGroup(groupId);
+        try {
+            byte[] decryptedMessage = new byte[message.length];
+            int written = decrypt(groupId, key, ByteBuffer.wrap(message), ByteBuffer.wrap(decryptedMessage));
+            return Arrays.copyOf(decryptedMessage, written);
+        } catch (Exception e) {
+            throw new ShiverDecryptionException(e);
+        }
+    }
+
+    @Override
+    public int encryptMessageForGroup(CharSequence groupId, ByteBuffer message, ByteBuffer encryptedMessage) throws ShiverNoGroupKeyException, ShiverEncryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            return encrypt(groupId, key, getCipherSuiteForGroup(groupId), message, encryptedMessage);
+        } catch (Exception e) {
+            throw new ShiverEncryptionException(e);
+        }
+    }
+
+    @Override
+    public int decryptMessageForGroup(CharSequence groupId, ByteBuffer encryptedMessage, ByteBuffer message) throws ShiverNoGroupKeyException, ShiverDecryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            return decrypt(groupId, key, encryptedMessage, message);
+        } catch (Exception e) {
+            throw new ShiverDecryptionException(e);
+        }
+    }
+
+    @Override
+    public int encryptMessageForGroup(CharSequence groupId, byte[] message, int offset, int length, byte[] output, int outputOffset) throws ShiverNoGroupKeyException, ShiverEncryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            return encrypt(groupId, key, getCipherSuiteForGroup(groupId), ByteBuffer.wrap(message, offset, length), ByteBuffer.wrap(output, outputOffset, output.length - outputOffset));
+        } catch (Exception e) {
+            throw new ShiverEncryptionException(e);
         }
+    }
 
+    @Override
+    public int decryptMessageForGroup(CharSequence groupId, byte[] encryptedMessage, int offset, int length, byte[] output, int outputOffset) throws ShiverNoGroupKeyException, ShiverDecryptionException {
+        Key key = getKeyForGroup(groupId);
         try {
-            Cipher symmetricCipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            symmetricCipher.init(2, key);
-            return symmetricCipher.doFinal(message);
+            return decrypt(groupId, key, ByteBuffer.wrap(encryptedMessage, offset, length), ByteBuffer.wrap(output, outputOffset, output.length - outputOffset));
         } catch (Exception e) {
             throw new ShiverDecryptionException(e);
         }
     }
+
+    @Override
+    public int getEncryptedMessageLength(CharSequence groupId, int messageLength) throws ShiverNoGroupKeyException {
+        getKeyForGroup(groupId);
+        return getCipherSuiteForGroup(groupId).getEncryptedLength(messageLength);
+    }
+
+    @Override
+    public int getMaxDecryptedMessageLength(CharSequence groupId, int encryptedMessageLength) throws ShiverNoGroupKeyException {
+        getKeyForGroup(groupId);
+        return encryptedMessageLength;
+    }
+
+    @Override
+    public OutputStream openEncryptingStream(CharSequence groupId, OutputStream outputStream) throws ShiverNoGroupKeyException, ShiverEncryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            return new ShiverEncryptingOutputStream(key, outputStream);
+        } catch (Exception e) {
+            throw new ShiverEncryptionException(e);
+        }
+    }
+
+    @Override
+    public InputStream openDecryptingStream(CharSequence groupId, InputStream inputStream) throws ShiverNoGroupKeyException, ShiverDecryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            return new ShiverDecryptingInputStream(getDecryptionKeys(groupId, key), inputStream);
+        } catch (Exception e) {
+            throw new ShiverDecryptionException(e);
+        }
+    }
+
+    @Override
+    public ShiverBatchResult encryptBatchForGroup(CharSequence groupId, List<byte[]> messages) throws ShiverNoGroupKeyException, ShiverEncryptionException {
+        Key key = getKeyForGroup(groupId);
+        byte[][] results = new byte[messages.size()][];
+        Exception[] errors = new Exception[messages.size()];
+
+        try {
+            ShiverCipherSuite cipherSuite = getCipherSuiteForGroup(groupId);
+            ShiverCipherSuite.Context context = shiverCipherCache.acquire(groupId, key, cipherSuite);
+            for (int i = 0; i < results.length; i++) {
+                try {
+                    byte[] message = messages.get(i);
+                    byte[] encryptedMessage = new byte[cipherSuite.getEncryptedLength(message.length)];
+                    int written = context.encrypt(ByteBuffer.wrap(message), ByteBuffer.wrap(encryptedMessage));
+                    results[i] = written == encryptedMessage.length ? encryptedMessage : Arrays.copyOf(encryptedMessage, written);
+                } catch (Exception e) {
+                    errors[i] = new ShiverEncryptionException(e);
+                    // the state of a failed context is unknown, so it gets replaced
+                    context = shiverCipherCache.acquire(groupId, key, cipherSuite);
+                }
+            }
+            shiverCipherCache.release(groupId, key, cipherSuite, context);
+        } catch (Exception e) {
+            throw new ShiverEncryptionException(e);
+        }
+
+        return new ShiverBatchResult(results, errors);
+    }
+
+    @Override
+    public ShiverBatchResult decryptBatchForGroup(CharSequence groupId, List<byte[]> messages) throws ShiverNoGroupKeyException, ShiverDecryptionException {
+        Key key = getKeyForGroup(groupId);
+        byte[][] results = new byte[messages.size()][];
+        Exception[] errors = new Exception[messages.size()];
+
+        // the messages of a batch can come from different suites, so one context per suite and key is kept for the batch
+        Map<ShiverCipherSuite, ShiverCipherSuite.Context> contexts = new HashMap<>();
+        Map<ShiverCipherSuite, ShiverCipherSuite.Context> previousKeyContexts = new HashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            try {
+                // a missing or broken message only fails its own slot
+                byte[] message = messages.get(i);
+                ShiverCipherSuite cipherSuite = ShiverCipherSuites.detect(ByteBuffer.wrap(message));
+                results[i] = decryptWithGroupKeys(groupId, key, decryptionKey -> {
+                    Map<ShiverCipherSuite, ShiverCipherSuite.Context> keyContexts = decryptionKey == key ? contexts : previousKeyContexts;
+                    ShiverCipherSuite.Context context = keyContexts.get(cipherSuite);
+                    if (context == null) {
+                        // like for a single message, the previous key does not push the contexts of the current key out of the cache
+                        context = decryptionKey == key ? shiverCipherCache.acquire(groupId, key, cipherSuite) : cipherSuite.createContext(decryptionKey);
+                        keyContexts.put(cipherSuite, context);
+                    }
+                    try {
+                        byte[] decryptedMessage = new byte[message.length];
+                        int written = context.decrypt(ByteBuffer.wrap(message), ByteBuffer.wrap(decryptedMessage));
+                        return Arrays.copyOf(decryptedMessage, written);
+                    } catch (GeneralSecurityException | RuntimeException e) {
+                        // the state of a failed context is unknown, so it gets replaced
+                        keyContexts.remove(cipherSuite);
+                        throw e;
+                    }
+                });
+            } catch (Exception e) {
+                errors[i] = new ShiverDecryptionException(e);
+            }
+        }
+        contexts.forEach((cipherSuite, context) -> shiverCipherCache.release(groupId, key, cipherSuite, context));
+
+        return new ShiverBatchResult(results, errors);
+    }
+
+    @Override
+    public byte[] encryptChunkedMessageForGroup(CharSequence groupId, byte[] message) throws ShiverNoGroupKeyException, ShiverEncryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            return shiverChunkedCipher.encrypt(key, message);
+        } catch (Exception e) {
+            throw new ShiverEncryptionException(e);
+        }
+    }
+
+    @Override
+    public byte[] decryptChunkedMessageForGroup(CharSequence groupId, byte[] message) throws ShiverNoGroupKeyException, ShiverDecryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            return decryptWithGroupKeys(groupId, key, decryptionKey -> shiverChunkedCipher.decrypt(decryptionKey, message));
+        } catch (Exception e) {
+            throw new ShiverDecryptionException(e);
+        }
+    }
+
+    @Override
+    public void encryptFileForGroup(CharSequence groupId, Path plainFile, Path encryptedFile) throws ShiverNoGroupKeyException, ShiverEncryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            shiverChunkedCipher.encryptFile(key, plainFile, encryptedFile);
+        } catch (Exception e) {
+            throw new ShiverEncryptionException(e);
+        }
+    }
+
+    @Override
+    public void decryptFileForGroup(CharSequence groupId, Path encryptedFile, Path plainFile) throws ShiverNoGroupKeyException, ShiverDecryptionException {
+        Key key = getKeyForGroup(groupId);
+        try {
+            decryptWithGroupKeys(groupId, key, decryptionKey -> {
+                shiverChunkedCipher.decryptFile(decryptionKey, encryptedFile, plainFile);
+                return null;
+            });
+        } catch (Exception e) {
+            throw new ShiverDecryptionException(e);
+        }
+    }
+
+    @Override
+    public byte[] encryptEnvelopeForGroups(List<CharSequence> groupIds, byte[] message) throws ShiverNoGroupKeyException, ShiverEncryptionException {
+        Map<CharSequence, Key> groupKeys = new LinkedHashMap<>();
+        for (CharSequence groupId : groupIds) {
+            groupKeys.put(groupId.toString(), getKeyForGroup(groupId));
+        }
+        try {
+            return ShiverEnvelopeCipher.encrypt(groupKeys, message);
+        } catch (Exception e) {
+            throw new ShiverEncryptionException(e);
+        }
+    }
+
+    @Override
+    public byte[] decryptEnvelope(byte[] envelope) throws ShiverNoGroupKeyException, ShiverDecryptionException {
+        List<CharSequence> groupIds;
+        try {
+            groupIds = ShiverEnvelopeCipher.getGroupIds(envelope);
+        } catch (Exception e) {
+            throw new ShiverDecryptionException(e);
+        }
+
+        Exception lastError = null;
+        for (CharSequence groupId : groupIds) {
+            Key key = shiverKeyStorage.getKeyForGroup(groupId);
+            if (key == null) {
+                continue;
+            }
+            try {
+                return decryptWithGroupKeys(groupId, key, decryptionKey -> ShiverEnvelopeCipher.decrypt(envelope, groupId, decryptionKey));
+            } catch (Exception e) {
+                // the key of this group might have changed since, one of the other groups can still work
+                lastError = e;
+            }
+        }
+
+        if (lastError == null) {
+            throw new ShiverNoGroupKeyException();
+        }
+        throw new ShiverDecryptionException(lastError);
+    }
+
+    @Override
+    public CompletableFuture<CharSequence> startCreatingGroupKeyProcessAsync(List<CharSequence> peerIds) {
+        return supplyAsync(() -> startCreatingGroupKeyProcess(peerIds));
+    }
+
+    @Override
+    public CompletableFuture<CharSequence> createGroupKeyAsync(List<CharSequence> peerIds) {
+        // the listener has to be registered before the process starts, otherwise a fast key could get missed
+        addGroupKeyListener();
+
+        CompletableFuture<CharSequence> groupKey = new CompletableFuture<>();
+        startCreatingGroupKeyProcessAsync(peerIds).whenComplete((groupId, exception) -> {
+            if (exception != null) {
+                groupKey.completeExceptionally(exception);
+                return;
+            }
+            CompletableFuture<CharSequence> pendingGroupKey = awaitGroupKey(groupId);
+            pendingGroupKey.whenComplete((id, keyException) -> complete(groupKey, id, keyException));
+            // a caller that stops waiting for the key also stops the waiting for the group
+            groupKey.whenComplete((id, keyException) -> pendingGroupKey.cancel(false));
+        });
+        return groupKey;
+    }
+
+    @Override
+    public CompletableFuture<CharSequence> createGroupKeyAsync(List<CharSequence> peerIds, long timeout, TimeUnit unit) {
+        return createGroupKeyAsync(peerIds).orTimeout(timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<CharSequence> awaitGroupKey(CharSequence groupId) {
+        addGroupKeyListener();
+        if (hasKeyForGroupId(groupId)) {
+            return CompletableFuture.completedFuture(groupId);
+        }
+
+        String id = groupId.toString();
+        CompletableFuture<CharSequence> pendingGroupKey = new CompletableFuture<>();
+        pendingGroupKeys.compute(id, (key, pending) -> {
+            Set<CompletableFuture<CharSequence>> futures = pending == null ? ConcurrentHashMap.newKeySet() : pending;
+            futures.add(pendingGroupKey);
+            return futures;
+        });
+        // however the future completes, completed, failed, cancelled or timed out, it does not wait any longer
+        pendingGroupKey.whenComplete((result, exception) -> removePendingGroupKey(id, pendingGroupKey));
+
+        // the key could have arrived between the first check and the registration
+        if (hasKeyForGroupId(groupId)) {
+            pendingGroupKey.complete(groupId);
+        }
+        return pendingGroupKey;
+    }
+
+    @Override
+    public CompletableFuture<CharSequence> awaitGroupKey(CharSequence groupId, long timeout, TimeUnit unit) {
+        return awaitGroupKey(groupId).orTimeout(timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptGroupCredentialMessageAsync(GroupCredentialMessage groupCredentialMessage) {
+        return supplyAsync(() -> {
+            acceptGroupCredentialMessage(groupCredentialMessage);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<byte[]> encryptMessageForGroupAsync(CharSequence groupId, byte[] message) {
+        return supplyAsync(() -> encryptMessageForGroup(groupId, message));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> decryptMessageForGroupAsync(CharSequence groupId, byte[] message) {
+        return supplyAsync(() -> decryptMessageForGroup(groupId, message));
+    }
+
+    @Override
+    public CompletableFuture<Void> encryptFileForGroupAsync(CharSequence groupId, Path plainFile, Path encryptedFile) {
+        return supplyAsync(() -> {
+            encryptFileForGroup(groupId, plainFile, encryptedFile);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> decryptFileForGroupAsync(CharSequence groupId, Path encryptedFile, Path plainFile) {
+        return supplyAsync(() -> {
+            decryptFileForGroup(groupId, encryptedFile, plainFile);
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Callable<T> callable) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return callable.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * @return - how many callers are still waiting for a group key
+     */
+    int getPendingGroupKeyCount() {
+        return pendingGroupKeys.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private void removePendingGroupKey(String groupId, CompletableFuture<CharSequence> pendingGroupKey) {
+        pendingGroupKeys.computeIfPresent(groupId, (key, futures) -> {
+            futures.remove(pendingGroupKey);
+            return futures.isEmpty() ? null : futures;
+        });
+    }
+
+    private static void complete(CompletableFuture<CharSequence> future, CharSequence result, Throwable exception) {
+        if (exception == null) {
+            future.complete(result);
+        } else {
+            future.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Registers the listener that completes the futures of {@link #awaitGroupKey}. Happens only once and only when needed
+     */
+    private void addGroupKeyListener() {
+        if (groupKeyListenerAdded.compareAndSet(false, true)) {
+            shiverSecurity.addShiverEventListener(new GroupKeyListener());
+        }
+    }
+
+    @FunctionalInterface
+    private interface GroupKeyDecryption<T> {
+        T decrypt(Key key) throws GeneralSecurityException, IOException;
+    }
+
+    private class GroupKeyListener implements ShiverEventListener {
+        @Override
+        public void onReceiveGroupCredentials(GroupCredentialMessage groupCredentialMessage) {
+        }
+
+        @Override
+        public void onErrorReceivingGroupCredentialMessage(String path, Exception exception) {
+        }
+
+        @Override
+        public void onReceivedGroupKey(CharSequence groupId) {
+            Set<CompletableFuture<CharSequence>> futures = pendingGroupKeys.remove(groupId.toString());
+            if (futures != null) {
+                futures.forEach(pendingGroupKey -> pendingGroupKey.complete(groupId));
+            }
+        }
+
+        @Override
+        public void onErrorCreatingGroupKey(CharSequence groupId, Exception exception) {
+            Set<CompletableFuture<CharSequence>> futures = pendingGroupKeys.remove(groupId.toString());
+            if (futures != null) {
+                futures.forEach(pendingGroupKey -> pendingGroupKey.completeExceptionally(exception));
+            }
+        }
+    }
+
+    private ShiverCipherSuite getCipherSuiteForGroup(CharSequence groupId) {
+        return ShiverCipherSuites.forId(shiverKeyStorage.getCipherSuiteIdForGroup(groupId));
+    }
+
+    private int encrypt(CharSequence groupId, Key key, ShiverCipherSuite cipherSuite, ByteBuffer message, ByteBuffer encryptedMessage) throws GeneralSecurityException {
+        ShiverCipherSuite.Context context = shiverCipherCache.acquire(groupId, key, cipherSuite);
+        int written = context.encrypt(message, encryptedMessage);
+        shiverCipherCache.release(groupId, key, cipherSuite, context);
+        return written;
+    }
+
+    /**
+     * Decrypts with the suite from the header of the message, so messages of an older suite of the group still get decrypted.
+     */
+    private int decrypt(CharSequence groupId, Key key, ByteBuffer encryptedMessage, ByteBuffer message) throws GeneralSecurityException, IOException {
+        ShiverCipherSuite cipherSuite = ShiverCipherSuites.detect(encryptedMessage);
+        int encryptedMessagePosition = encryptedMessage.position();
+        int messagePosition = message.position();
+        return decryptWithGroupKeys(groupId, key, decryptionKey -> {
+            encryptedMessage.position(encryptedMessagePosition);
+            message.position(messagePosition);
+            if (decryptionKey != key) {
+                // the previous key is rarely needed, so its context does not push the contexts of the current key out of the cache
+                return cipherSuite.createContext(decryptionKey).decrypt(encryptedMessage, message);
+            }
+            ShiverCipherSuite.Context context = shiverCipherCache.acquire(groupId, key, cipherSuite);
+            int written = context.decrypt(encryptedMessage, message);
+            shiverCipherCache.release(groupId, key, cipherSuite, context);
+            return written;
+        });
+    }
+
+    /**
+     * Every decrypt path picks its key here. Messages that were on their way while the members of the group changed
+     * fail to authenticate with the current key and get decrypted with the previous key of the group.
+     * Only an authentication failure falls back. The legacy ECB suite can not authenticate, a wrong key only shows as bad padding
+     * now and then, so its messages only get the current key.
+     */
+    private <T> T decryptWithGroupKeys(CharSequence groupId, Key key, GroupKeyDecryption<T> decryption) throws GeneralSecurityException, IOException {
+        try {
+            return decryption.decrypt(key);
+        } catch (AEADBadTagException e) {
+            Key previousKey = shiverKeyStorage.getPreviousKeyForGroup(groupId);
+            if (previousKey == null) {
+                throw e;
+            }
+            try {
+                return decryption.decrypt(previousKey);
+            } catch (AEADBadTagException previousKeyException) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The keys in the order {@link #decryptWithGroupKeys} tries them, for the decrypting stream that picks the key with its first chunk
+     */
+    private List<Key> getDecryptionKeys(CharSequence groupId, Key key) {
+        List<Key> keys = new ArrayList<>(2);
+        keys.add(key);
+        Key previousKey = shiverKeyStorage.getPreviousKeyForGroup(groupId);
+        if (previousKey != null) {
+            keys.add(previousKey);
+        }
+        return keys;
+    }
+
+    private Key getKeyForGroup(CharSequence groupId) throws ShiverNoGroupKeyException {
+        Key key = shiverKeyStorage.getKeyForGroup(groupId);
+        if (key == null) {
+            throw new ShiverNoGroupKeyException();
+        }
+        return key;
+    }
 }
@@ -0,0 +1,40 @@
+package com.shiver.components;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executor the asynchronous methods of the {@link ShiverComponent} run on, if none got configured.
+ */
+final class ShiverExecutors {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private ShiverExecutors() {
+    }
+
+    /**
+     * Uses a virtual thread per task when the runtime supports them.
+     * Older runtimes get a cached pool of daemon threads, so an unused component never keeps the process alive.
+     */
+    static Executor createDefault() {
+        try {
+            // looked up by reflection, so the library still runs on runtimes without virtual threads
+            Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(createDaemonThreadFactory());
+        }
+    }
+
+    private static ThreadFactory createDaemonThreadFactory() {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "shiver-async-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package com.shiver.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * AES-CTR with a random 16 byte IV, authenticated with HMAC-SHA256 over header, IV and ciphertext (encrypt then MAC).
+ * The encryption key and the MAC key get derived from the group key, so the group key itself is never used directly.
+ * Layout: header | iv | ciphertext | mac.
+ */
+class ShiverAesCtrHmacCipherSuite implements ShiverCipherSuite {
+    static final String TRANSFORMATION = "AES/CTR/NoPadding";
+    static final String MAC_ALGORITHM = "HmacSHA256";
+    static final int IV_LENGTH = 16;
+    static final int MAC_LENGTH = 32;
+
+    private static final byte[] HEADER = ShiverCipherSuites.createHeader(ShiverCipherSuites.AES_CTR_HMAC_ID);
+    private static final int OVERHEAD = ShiverCipherSuites.HEADER_LENGTH + IV_LENGTH + MAC_LENGTH;
+    private static final byte[] ENCRYPTION_KEY_LABEL = "shiver aes-ctr encryption key".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MAC_KEY_LABEL = "shiver aes-ctr mac key".getBytes(StandardCharsets.US_ASCII);
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    @Override
+    public byte getId() {
+        return ShiverCipherSuites.AES_CTR_HMAC_ID;
+    }
+
+    @Override
+    public String getName() {
+        return TRANSFORMATION + "+" + MAC_ALGORITHM;
+    }
+
+    @Override
+    public int getEncryptedLength(int messageLength) {
+        return messageLength + OVERHEAD;
+    }
+
+    @Override
+    public Context createContext(Key groupKey) throws GeneralSecurityException {
+        Mac derivation = Mac.getInstance(MAC_ALGORITHM);
+        derivation.init(new SecretKeySpec(groupKey.getEncoded(), MAC_ALGORITHM));
+        Key encryptionKey = new SecretKeySpec(derivation.doFinal(ENCRYPTION_KEY_LABEL), 0, groupKey.getEncoded().length, "AES");
+        Key macKey = new SecretKeySpec(derivation.doFinal(MAC_KEY_LABEL), MAC_ALGORITHM);
+
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(macKey);
+        return new CtrHmacContext(encryptionKey, Cipher.getInstance(TRANSFORMATION), mac);
+    }
+
+    private static class CtrHmacContext implements Context {
+        private final Key encryptionKey;
+        private final Cipher cipher;
+        private final Mac mac;
+        private final byte[] iv = new byte[IV_LENGTH];
+        private final byte[] header = new byte[ShiverCipherSuites.HEADER_LENGTH];
+        private final byte[] expectedMac = new byte[MAC_LENGTH];
+        private final byte[] receivedMac = new byte[MAC_LENGTH];
+
+        private CtrHmacContext(Key encryptionKey, Cipher cipher, Mac mac) {
+            this.encryptionKey = encryptionKey;
+            this.cipher = cipher;
+            this.mac = mac;
+        }
+
+        @Override
+        public int encrypt(ByteBuffer message, ByteBuffer encryptedMessage) throws GeneralSecurityException {
+            if (encryptedMessage.remaining() < message.remaining() + OVERHEAD) {
+                throw new ShortBufferException();
+            }
+            SECURE_RANDOM.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+
+            int start = encryptedMessage.position();
+            encryptedMessage.put(HEADER);
+            encryptedMessage.put(iv);
+            cipher.doFinal(message, encryptedMessage);
+
+            ByteBuffer authenticated = encryptedMessage.duplicate();
+            authenticated.limit(encryptedMessage.position()).position(start);
+            mac.update(authenticated);
+            mac.doFinal(expectedMac, 0);
+            encryptedMessage.put(expectedMac);
+
+            return encryptedMessage.position() - start;
+        }
+
+        @Override
+        public int decrypt(ByteBuffer encryptedMessage, ByteBuffer message) throws GeneralSecurityException {
+            if (encryptedMessage.remaining() < OVERHEAD) {
+                throw new AEADBadTagException("Message is too short");
+            }
+            if (message.remaining() < encryptedMessage.remaining() - OVERHEAD) {
+                throw new ShortBufferException();
+            }
+            int end = encryptedMessage.limit();
+            int macStart = end - MAC_LENGTH;
+
+            ByteBuffer authenticated = encryptedMessage.duplicate();
+            authenticated.limit(macStart);
+            mac.update(authenticated);
+            mac.doFinal(expectedMac, 0);
+            encryptedMessage.get(macStart, receivedMac);
+            if (!MessageDigest.isEqual(expectedMac, receivedMac)) {
+                throw new AEADBadTagException("Message authentication failed");
+            }
+
+            encryptedMessage.get(header);
+            if (!Arrays.equals(HEADER, header)) {
+                throw new AEADBadTagException("Message was not encrypted with " + TRANSFORMATION);
+            }
+            encryptedMessage.get(iv);
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+
+            ByteBuffer ciphertext = encryptedMessage.duplicate();
+            ciphertext.limit(macStart);
+            int written = cipher.doFinal(ciphertext, message);
+            encryptedMessage.position(end);
+            return written;
+        }
+    }
+}
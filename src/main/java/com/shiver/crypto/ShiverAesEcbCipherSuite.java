@@ -0,0 +1,65 @@
+package com.shiver.crypto;
+
+import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+/**
+ * The suite every group used before suites existed: AES/ECB/PKCS5Padding without any header.
+ * It is neither authenticated nor randomized and is only kept so old messages can still get decrypted.
+ */
+class ShiverAesEcbCipherSuite implements ShiverCipherSuite {
+    static final String TRANSFORMATION = "AES/ECB/PKCS5Padding";
+    private static final int BLOCK_SIZE = 16;
+
+    @Override
+    public byte getId() {
+        return ShiverCipherSuites.LEGACY_AES_ECB_ID;
+    }
+
+    @Override
+    public String getName() {
+        return TRANSFORMATION;
+    }
+
+    @Override
+    public int getEncryptedLength(int messageLength) {
+        return (messageLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    @Override
+    public Context createContext(Key groupKey) {
+        return new EcbContext(groupKey);
+    }
+
+    private static class EcbContext implements Context {
+        private final Key key;
+        private Cipher encryptCipher;
+        private Cipher decryptCipher;
+
+        private EcbContext(Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public int encrypt(ByteBuffer message, ByteBuffer encryptedMessage) throws GeneralSecurityException {
+            if (encryptCipher == null) {
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.ENCRYPT_MODE, key);
+                encryptCipher = cipher;
+            }
+            return encryptCipher.doFinal(message, encryptedMessage);
+        }
+
+        @Override
+        public int decrypt(ByteBuffer encryptedMessage, ByteBuffer message) throws GeneralSecurityException {
+            if (decryptCipher == null) {
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.DECRYPT_MODE, key);
+                decryptCipher = cipher;
+            }
+            return decryptCipher.doFinal(encryptedMessage, message);
+        }
+    }
+}
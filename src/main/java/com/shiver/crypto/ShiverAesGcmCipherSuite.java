@@ -0,0 +1,90 @@
+package com.shiver.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * AES-GCM with a random 12 byte nonce per message.
+ * The JDK runs it on the AES-NI and CLMUL intrinsics where the CPU has them.
+ * Layout: header | nonce | ciphertext | tag. The header is authenticated as additional data.
+ */
+class ShiverAesGcmCipherSuite implements ShiverCipherSuite {
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+
+    private static final byte[] HEADER = ShiverCipherSuites.createHeader(ShiverCipherSuites.AES_GCM_ID);
+    private static final int OVERHEAD = ShiverCipherSuites.HEADER_LENGTH + NONCE_LENGTH + TAG_LENGTH;
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    @Override
+    public byte getId() {
+        return ShiverCipherSuites.AES_GCM_ID;
+    }
+
+    @Override
+    public String getName() {
+        return TRANSFORMATION;
+    }
+
+    @Override
+    public int getEncryptedLength(int messageLength) {
+        return messageLength + OVERHEAD;
+    }
+
+    @Override
+    public Context createContext(Key groupKey) throws GeneralSecurityException {
+        return new GcmContext(groupKey, Cipher.getInstance(TRANSFORMATION));
+    }
+
+    private static class GcmContext implements Context {
+        private final Key key;
+        private final Cipher cipher;
+        private final byte[] nonce = new byte[NONCE_LENGTH];
+        private final byte[] header = new byte[ShiverCipherSuites.HEADER_LENGTH];
+
+        private GcmContext(Key key, Cipher cipher) {
+            this.key = key;
+            this.cipher = cipher;
+        }
+
+        @Override
+        public int encrypt(ByteBuffer message, ByteBuffer encryptedMessage) throws GeneralSecurityException {
+            if (encryptedMessage.remaining() < message.remaining() + OVERHEAD) {
+                throw new ShortBufferException();
+            }
+            SECURE_RANDOM.nextBytes(nonce);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(HEADER);
+
+            encryptedMessage.put(HEADER);
+            encryptedMessage.put(nonce);
+            return OVERHEAD - TAG_LENGTH + cipher.doFinal(message, encryptedMessage);
+        }
+
+        @Override
+        public int decrypt(ByteBuffer encryptedMessage, ByteBuffer message) throws GeneralSecurityException {
+            if (encryptedMessage.remaining() < OVERHEAD) {
+                throw new AEADBadTagException("Message is too short");
+            }
+            if (message.remaining() < encryptedMessage.remaining() - OVERHEAD) {
+                throw new ShortBufferException();
+            }
+            encryptedMessage.get(header);
+            if (!Arrays.equals(HEADER, header)) {
+                throw new AEADBadTagException("Message was not encrypted with " + TRANSFORMATION);
+            }
+            encryptedMessage.get(nonce);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(HEADER);
+            return cipher.doFinal(encryptedMessage, message);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.shiver.crypto;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encrypts and decrypts whole payloads in the {@link ShiverChunkedFormat}.
+ * Every chunk has its own nonce and tag, so big payloads get split up and processed in parallel on a {@link ForkJoinPool}.
+ * Payloads below the parallel threshold stay on the calling thread.
+ * The result can also get read by a {@link ShiverDecryptingInputStream} and the other way around.
+ * <p>
+ * Files get memory mapped region by region instead of getting read into the heap, so files of any size can get processed.
+ * Every region is a whole number of chunks, so the regions of big files get processed in parallel as well.
+ */
+public class ShiverChunkedCipher {
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024 * 1024;
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+    public static final int MAX_REGION_SIZE = 1024 * 1024 * 1024;
+
+    private final ForkJoinPool forkJoinPool;
+    private final int chunkSize;
+    private final int parallelThreshold;
+    private final int regionSize;
+
+    /**
+     * Uses the common pool, the default chunk size and the default parallel threshold
+     */
+    public ShiverChunkedCipher() {
+        this(ForkJoinPool.commonPool(), ShiverChunkedFormat.DEFAULT_CHUNK_SIZE, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * @param forkJoinPool      - the pool the chunks of big payloads get processed on
+     * @param chunkSize         - plain bytes per chunk
+     * @param parallelThreshold - payloads with less plain bytes stay on the calling thread
+     */
+    public ShiverChunkedCipher(ForkJoinPool forkJoinPool, int chunkSize, int parallelThreshold) {
+        this(forkJoinPool, chunkSize, parallelThreshold, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * @param forkJoinPool      - the pool the chunks of big payloads get processed on
+     * @param chunkSize         - plain bytes per chunk
+     * @param parallelThreshold - payloads with less plain bytes stay on the calling thread
+     * @param regionSize        - how many bytes of a file get mapped at once. A region always holds at least one chunk
+     */
+    public ShiverChunkedCipher(ForkJoinPool forkJoinPool, int chunkSize, int parallelThreshold, int regionSize) {
+        if (chunkSize <= 0 || chunkSize > ShiverChunkedFormat.MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize has to be between 1 and " + ShiverChunkedFormat.MAX_CHUNK_SIZE);
+        }
+        if (regionSize <= 0 || regionSize > MAX_REGION_SIZE) {
+            throw new IllegalArgumentException("regionSize has to be between 1 and " + MAX_REGION_SIZE);
+        }
+        this.forkJoinPool = forkJoinPool;
+        this.chunkSize = chunkSize;
+        this.parallelThreshold = parallelThreshold;
+        this.regionSize = regionSize;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Encrypts a whole payload
+     *
+     * @param key     - the group key
+     * @param message - the plain payload
+     * @return - the payload in the chunked format
+     */
+    public byte[] encrypt(Key key, byte[] message) throws GeneralSecurityException {
+        long encryptedLength = ShiverChunkedFormat.getEncryptedLength(message.length, chunkSize);
+        if (encryptedLength > Integer.MAX_VALUE - 8) {
+            throw new GeneralSecurityException("Payload is too big to get encrypted into a single array");
+        }
+
+        byte[] noncePrefix = ShiverChunkedFormat.createNoncePrefix();
+        byte[] encryptedMessage = new byte[(int) encryptedLength];
+        ShiverChunkedFormat.writeHeader(ByteBuffer.wrap(encryptedMessage), chunkSize, noncePrefix);
+
+        int chunkCount = (int) ShiverChunkedFormat.getChunkCount(message.length, chunkSize);
+        process(new ChunkTask(Cipher.ENCRYPT_MODE, key, noncePrefix, chunkSize, message.length, message, encryptedMessage, 0, chunkCount), message.length);
+        return encryptedMessage;
+    }
+
+    /**
+     * Decrypts a whole payload. The chunk size is taken from the header of the payload.
+     *
+     * @param key              - the group key
+     * @param encryptedMessage - the payload in the chunked format
+     * @return - the plain payload
+     * @throws GeneralSecurityException - if a chunk got manipulated or the key is wrong
+     * @throws IOException              - if the payload is not in the chunked format
+     */
+    public byte[] decrypt(Key key, byte[] encryptedMessage) throws GeneralSecurityException, IOException {
+        ShiverChunkedFormat.Header header = ShiverChunkedFormat.readHeader(ByteBuffer.wrap(encryptedMessage));
+        int plainLength = (int) ShiverChunkedFormat.getPlainLength(encryptedMessage.length, header.getChunkSize());
+
+        byte[] message = new byte[plainLength];
+        int chunkCount = (int) ShiverChunkedFormat.getChunkCount(plainLength, header.getChunkSize());
+        process(new ChunkTask(Cipher.DECRYPT_MODE, key, header.noncePrefix(), header.getChunkSize(), plainLength, encryptedMessage, message, 0, chunkCount), plainLength);
+        return message;
+    }
+
+    /**
+     * Encrypts a whole file into another file. The plain file is never read into the heap.
+     * If the encryption fails, the encrypted file gets deleted again.
+     *
+     * @param key           - the group key
+     * @param plainFile     - the file to encrypt
+     * @param encryptedFile - the file the payload in the chunked format gets written to. Gets replaced if it exists
+     * @throws IOException - if one of the files can not get read or written
+     */
+    public void encryptFile(Key key, Path plainFile, Path encryptedFile) throws GeneralSecurityException, IOException {
+        try (FileChannel plainChannel = FileChannel.open(plainFile, StandardOpenOption.READ)) {
+            long plainLength = plainChannel.size();
+            byte[] noncePrefix = ShiverChunkedFormat.createNoncePrefix();
+
+            try (FileChannel encryptedChannel = FileChannel.open(encryptedFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(ShiverChunkedFormat.HEADER_LENGTH);
+                ShiverChunkedFormat.writeHeader(header, chunkSize, noncePrefix);
+                header.flip();
+                while (header.hasRemaining()) {
+                    encryptedChannel.write(header, header.position());
+                }
+                reserve(encryptedChannel, ShiverChunkedFormat.getEncryptedLength(plainLength, chunkSize));
+
+                processFile(Cipher.ENCRYPT_MODE, key, noncePrefix, chunkSize, plainLength, plainChannel, encryptedChannel);
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                Files.deleteIfExists(encryptedFile);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Decrypts a whole file in the chunked format into another file. The encrypted file is never read into the heap.
+     * If a chunk got manipulated, the plain file gets deleted again, so no unverified bytes are left behind.
+     *
+     * @param key           - the group key
+     * @param encryptedFile - the file with the payload in the chunked format
+     * @param plainFile     - the file the plain payload gets written to. Gets replaced if it exists
+     * @throws GeneralSecurityException - if a chunk got manipulated or the key is wrong
+     * @throws IOException              - if the file is not in the chunked format or one of the files can not get read or written
+     */
+    public void decryptFile(Key key, Path encryptedFile, Path plainFile) throws GeneralSecurityException, IOException {
+        try (FileChannel encryptedChannel = FileChannel.open(encryptedFile, StandardOpenOption.READ)) {
+            ByteBuffer headerBuffer = ByteBuffer.allocate(ShiverChunkedFormat.HEADER_LENGTH);
+            while (headerBuffer.hasRemaining() && encryptedChannel.read(headerBuffer, headerBuffer.position()) >= 0) {
+                // read until the header is complete or the file ends
+            }
+            headerBuffer.flip();
+            ShiverChunkedFormat.Header header = ShiverChunkedFormat.readHeader(headerBuffer);
+            long plainLength = ShiverChunkedFormat.getPlainLength(encryptedChannel.size(), header.getChunkSize());
+
+            try (FileChannel plainChannel = FileChannel.open(plainFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                reserve(plainChannel, plainLength);
+
+                processFile(Cipher.DECRYPT_MODE, key, header.noncePrefix(), header.getChunkSize(), plainLength, plainChannel, encryptedChannel);
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                Files.deleteIfExists(plainFile);
+                throw e;
+            }
+        }
+    }
+
+    private void processFile(int mode, Key key, byte[] noncePrefix, int chunkSize, long plainLength, FileChannel plainChannel, FileChannel encryptedChannel) throws GeneralSecurityException, IOException {
+        long chunksPerRegion = Math.max(1, regionSize / (chunkSize + ShiverChunkedFormat.TAG_LENGTH));
+        long chunkCount = ShiverChunkedFormat.getChunkCount(plainLength, chunkSize);
+        long regionCount = (chunkCount + chunksPerRegion - 1) / chunksPerRegion;
+
+        RegionTask task = new RegionTask(mode, key, noncePrefix, chunkSize, plainLength, plainChannel, encryptedChannel, chunksPerRegion, 0, regionCount);
+        try {
+            if (plainLength < parallelThreshold || regionCount == 1) {
+                task.compute();
+            } else {
+                task.parallel = true;
+                forkJoinPool.invoke(task);
+            }
+        } catch (ChunkFailure e) {
+            throw e.getCause();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Grows the file to its final size up front, so the regions can get mapped independently from each other
+     */
+    private static void reserve(FileChannel channel, long length) throws IOException {
+        if (length > 0) {
+            channel.write(ByteBuffer.allocate(1), length - 1);
+        }
+    }
+
+    private void process(ChunkTask task, int plainLength) throws GeneralSecurityException {
+        try {
+            if (plainLength < parallelThreshold) {
+                task.compute();
+            } else {
+                task.leafSize = Math.max(1, task.toChunk / (forkJoinPool.getParallelism() * 4));
+                forkJoinPool.invoke(task);
+            }
+        } catch (ChunkFailure e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Processes a range of chunks. Ranges get split until they are small enough, every leaf uses its own cipher.
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private final int mode;
+        private final Key key;
+        private final byte[] noncePrefix;
+        private final int chunkSize;
+        private final int plainLength;
+        private final byte[] input;
+        private final byte[] output;
+        private final int fromChunk;
+        private final int toChunk;
+        private int leafSize = Integer.MAX_VALUE;
+
+        private ChunkTask(int mode, Key key, byte[] noncePrefix, int chunkSize, int plainLength, byte[] input, byte[] output, int fromChunk, int toChunk) {
+            this.mode = mode;
+            this.key = key;
+            this.noncePrefix = noncePrefix;
+            this.chunkSize = chunkSize;
+            this.plainLength = plainLength;
+            this.input = input;
+            this.output = output;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > leafSize) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                ChunkTask left = new ChunkTask(mode, key, noncePrefix, chunkSize, plainLength, input, output, fromChunk, middle);
+                ChunkTask right = new ChunkTask(mode, key, noncePrefix, chunkSize, plainLength, input, output, middle, toChunk);
+                left.leafSize = leafSize;
+                right.leafSize = leafSize;
+                invokeAll(left, right);
+                return;
+            }
+
+            try {
+                Cipher cipher = Cipher.getInstance(ShiverChunkedFormat.TRANSFORMATION);
+                int lastChunk = plainLength / chunkSize;
+                for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+                    int plainOffset = chunk * chunkSize;
+                    int plainChunkLength = chunk == lastChunk ? plainLength - plainOffset : chunkSize;
+                    int encryptedOffset = ShiverChunkedFormat.HEADER_LENGTH + chunk * (chunkSize + ShiverChunkedFormat.TAG_LENGTH);
+
+                    ShiverChunkedFormat.initChunkCipher(cipher, mode, key, noncePrefix, chunk, chunk == lastChunk);
+                    if (mode == Cipher.ENCRYPT_MODE) {
+                        cipher.doFinal(input, plainOffset, plainChunkLength, output, encryptedOffset);
+                    } else {
+                        cipher.doFinal(input, encryptedOffset, plainChunkLength + ShiverChunkedFormat.TAG_LENGTH, output, plainOffset);
+                    }
+                }
+            } catch (GeneralSecurityException e) {
+                throw new ChunkFailure(e);
+            }
+        }
+    }
+
+    /**
+     * Processes a range of file regions. Ranges get split until every leaf is a single region with its own mappings and cipher.
+     */
+    private static class RegionTask extends RecursiveAction {
+        private final int mode;
+        private final Key key;
+        private final byte[] noncePrefix;
+        private final int chunkSize;
+        private final long plainLength;
+        private final FileChannel plainChannel;
+        private final FileChannel encryptedChannel;
+        private final long chunksPerRegion;
+        private final long fromRegion;
+        private final long toRegion;
+        private boolean parallel = false;
+
+        private RegionTask(int mode, Key key, byte[] noncePrefix, int chunkSize, long plainLength, FileChannel plainChannel, FileChannel encryptedChannel, long chunksPerRegion, long fromRegion, long toRegion) {
+            this.mode = mode;
+            this.key = key;
+            this.noncePrefix = noncePrefix;
+            this.chunkSize = chunkSize;
+            this.plainLength = plainLength;
+            this.plainChannel = plainChannel;
+            this.encryptedChannel = encryptedChannel;
+            this.chunksPerRegion = chunksPerRegion;
+            this.fromRegion = fromRegion;
+            this.toRegion = toRegion;
+        }
+
+        @Override
+        protected void compute() {
+            if (parallel && toRegion - fromRegion > 1) {
+                long middle = (fromRegion + toRegion) >>> 1;
+                RegionTask left = new RegionTask(mode, key, noncePrefix, chunkSize, plainLength, plainChannel, encryptedChannel, chunksPerRegion, fromRegion, middle);
+                RegionTask right = new RegionTask(mode, key, noncePrefix, chunkSize, plainLength, plainChannel, encryptedChannel, chunksPerRegion, middle, toRegion);
+                left.parallel = true;
+                right.parallel = true;
+                invokeAll(left, right);
+                return;
+            }
+
+            try {
+                Cipher cipher = Cipher.getInstance(ShiverChunkedFormat.TRANSFORMATION);
+                for (long region = fromRegion; region < toRegion; region++) {
+                    processRegion(cipher, region);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new ChunkFailure(e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void processRegion(Cipher cipher, long region) throws GeneralSecurityException, IOException {
+            long lastChunk = plainLength / chunkSize;
+            long fromChunk = region * chunksPerRegion;
+            long toChunk = Math.min(fromChunk + chunksPerRegion, lastChunk + 1);
+
+            long plainStart = fromChunk * chunkSize;
+            long plainEnd = Math.min(plainLength, toChunk * chunkSize);
+            long encryptedStart = ShiverChunkedFormat.HEADER_LENGTH + fromChunk * (chunkSize + ShiverChunkedFormat.TAG_LENGTH);
+            long encryptedLength = plainEnd - plainStart + (toChunk - fromChunk) * ShiverChunkedFormat.TAG_LENGTH;
+
+            boolean encrypt = mode == Cipher.ENCRYPT_MODE;
+            MappedByteBuffer plainRegion = plainChannel.map(encrypt ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, plainStart, plainEnd - plainStart);
+            MappedByteBuffer encryptedRegion = encryptedChannel.map(encrypt ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, encryptedStart, encryptedLength);
+
+            for (long chunk = fromChunk; chunk < toChunk; chunk++) {
+                int plainChunkLength = chunk == lastChunk ? (int) (plainLength - chunk * chunkSize) : chunkSize;
+                plainRegion.limit(plainRegion.position() + plainChunkLength);
+                encryptedRegion.limit(encryptedRegion.position() + plainChunkLength + ShiverChunkedFormat.TAG_LENGTH);
+
+                ShiverChunkedFormat.initChunkCipher(cipher, mode, key, noncePrefix, chunk, chunk == lastChunk);
+                if (encrypt) {
+                    cipher.doFinal(plainRegion, encryptedRegion);
+                } else {
+                    cipher.doFinal(encryptedRegion, plainRegion);
+                }
+            }
+        }
+    }
+
+    private static class ChunkFailure extends RuntimeException {
+        private ChunkFailure(GeneralSecurityException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized GeneralSecurityException getCause() {
+            return (GeneralSecurityException) super.getCause();
+        }
+    }
+}
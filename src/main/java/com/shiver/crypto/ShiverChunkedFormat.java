@@ -0,0 +1,167 @@
+package com.shiver.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+
+/**
+ * Describes the chunked format that is used to encrypt payloads of any size for a group.
+ * <p>
+ * The format starts with a header: one version byte, the chunk size as int and a random nonce prefix of 8 bytes.
+ * After the header the chunks follow. Every chunk gets encrypted with AES-GCM on its own and carries its own tag.
+ * The nonce of a chunk is the nonce prefix followed by the index of the chunk, so chunks can not get reordered.
+ * Every chunk except the last one holds exactly chunk size plain bytes, the last one holds less (possibly nothing).
+ * The last chunk is marked as final in the authenticated data, so a cut off payload gets detected.
+ * Because every position is known up front, chunks can get encrypted and decrypted independently from each other.
+ */
+public final class ShiverChunkedFormat {
+    public static final byte VERSION = 1;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    public static final int NONCE_PREFIX_LENGTH = 8;
+    public static final int HEADER_LENGTH = 1 + 4 + NONCE_PREFIX_LENGTH;
+    public static final int TAG_LENGTH = 16;
+
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final byte[] FINAL_CHUNK = new byte[]{1};
+    private static final byte[] INTERMEDIATE_CHUNK = new byte[]{0};
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private ShiverChunkedFormat() {
+    }
+
+    /**
+     * Creates a new random nonce prefix. Has to be a fresh one for every payload
+     */
+    public static byte[] createNoncePrefix() {
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        SECURE_RANDOM.nextBytes(noncePrefix);
+        return noncePrefix;
+    }
+
+    /**
+     * Writes the header into a buffer
+     *
+     * @param buffer      - buffer with at least {@link #HEADER_LENGTH} bytes left
+     * @param chunkSize   - plain bytes per chunk
+     * @param noncePrefix - the random nonce prefix of this payload
+     */
+    public static void writeHeader(ByteBuffer buffer, int chunkSize, byte[] noncePrefix) {
+        buffer.put(VERSION);
+        buffer.putInt(chunkSize);
+        buffer.put(noncePrefix);
+    }
+
+    /**
+     * Reads and checks the header from a buffer
+     *
+     * @param buffer - buffer positioned at the start of the header
+     * @return - the parsed header
+     * @throws IOException - if the header is incomplete, has an unknown version or an invalid chunk size
+     */
+    public static Header readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            throw new IOException("Chunked payload is too short for a header");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unknown chunked payload version " + version);
+        }
+        int chunkSize = buffer.getInt();
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size " + chunkSize);
+        }
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        buffer.get(noncePrefix);
+        return new Header(chunkSize, noncePrefix);
+    }
+
+    /**
+     * @param plainLength - length of the plain payload
+     * @param chunkSize   - plain bytes per chunk
+     * @return - number of chunks the payload gets split into
+     */
+    public static long getChunkCount(long plainLength, int chunkSize) {
+        return plainLength / chunkSize + 1;
+    }
+
+    /**
+     * @param plainLength - length of the plain payload
+     * @param chunkSize   - plain bytes per chunk
+     * @return - length of the whole encrypted payload including the header
+     */
+    public static long getEncryptedLength(long plainLength, int chunkSize) {
+        return HEADER_LENGTH + plainLength + getChunkCount(plainLength, chunkSize) * TAG_LENGTH;
+    }
+
+    /**
+     * @param encryptedLength - length of the whole encrypted payload including the header
+     * @param chunkSize       - plain bytes per chunk
+     * @return - length of the plain payload
+     * @throws IOException - if no valid payload can have this length
+     */
+    public static long getPlainLength(long encryptedLength, int chunkSize) throws IOException {
+        long body = encryptedLength - HEADER_LENGTH;
+        long encryptedChunkSize = (long) chunkSize + TAG_LENGTH;
+        if (body < TAG_LENGTH || body % encryptedChunkSize < TAG_LENGTH) {
+            throw new IOException("Chunked payload has an invalid length");
+        }
+        long chunkCount = body / encryptedChunkSize + 1;
+        return body - chunkCount * TAG_LENGTH;
+    }
+
+    /**
+     * Initializes a cipher for a single chunk
+     *
+     * @param cipher      - an {@link #TRANSFORMATION} cipher
+     * @param mode        - {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key         - the group key
+     * @param noncePrefix - nonce prefix of the payload
+     * @param chunkIndex  - index of the chunk
+     * @param lastChunk   - if this is the final chunk of the payload
+     */
+    static void initChunkCipher(Cipher cipher, int mode, Key key, byte[] noncePrefix, long chunkIndex, boolean lastChunk) throws GeneralSecurityException {
+        if (chunkIndex < 0 || chunkIndex > 0xFFFFFFFFL) {
+            throw new GeneralSecurityException("Too many chunks for one payload");
+        }
+        byte[] nonce = new byte[NONCE_PREFIX_LENGTH + 4];
+        System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[NONCE_PREFIX_LENGTH] = (byte) (chunkIndex >>> 24);
+        nonce[NONCE_PREFIX_LENGTH + 1] = (byte) (chunkIndex >>> 16);
+        nonce[NONCE_PREFIX_LENGTH + 2] = (byte) (chunkIndex >>> 8);
+        nonce[NONCE_PREFIX_LENGTH + 3] = (byte) chunkIndex;
+
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(lastChunk ? FINAL_CHUNK : INTERMEDIATE_CHUNK);
+    }
+
+    /**
+     * The parsed header of a chunked payload
+     */
+    public static final class Header {
+        private final int chunkSize;
+        private final byte[] noncePrefix;
+
+        Header(int chunkSize, byte[] noncePrefix) {
+            this.chunkSize = chunkSize;
+            this.noncePrefix = noncePrefix;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public byte[] getNoncePrefix() {
+            return noncePrefix.clone();
+        }
+
+        byte[] noncePrefix() {
+            return noncePrefix;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.shiver.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread safe cache of already initialized {@link ShiverCipherSuite.Context} instances for the group encryption.
+ * Looking up the provider and initializing the ciphers costs more than encrypting a chat sized message,
+ * so every group keeps a small pool of contexts per suite that are bound to its current key.
+ * A context is only ever used by one thread at a time: it gets acquired, used and released again.
+ */
+public class ShiverCipherCache {
+    private final int maxIdleContextsPerSuite;
+    private final ConcurrentHashMap<CharSequence, GroupContexts> groupContexts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache that keeps up to two idle contexts per suite and processor for every group
+     */
+    public ShiverCipherCache() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param maxIdleContextsPerSuite - how many idle contexts per suite get kept for a single group
+     */
+    public ShiverCipherCache(int maxIdleContextsPerSuite) {
+        if (maxIdleContextsPerSuite < 1) {
+            throw new IllegalArgumentException("maxIdleContextsPerSuite has to be at least 1");
+        }
+        this.maxIdleContextsPerSuite = maxIdleContextsPerSuite;
+    }
+
+    /**
+     * Takes a context for the group and suite out of the cache or creates a new one.
+     * If the key differs from the key the cached contexts were created for, all cached contexts of the group get dropped.
+     *
+     * @param groupId - id of the group
+     * @param key     - the current key of the group
+     * @param suite   - the suite the context is for
+     * @return - a context that is bound to the key. Has to get handed back with {@link #release}
+     */
+    public ShiverCipherSuite.Context acquire(CharSequence groupId, Key key, ShiverCipherSuite suite) throws GeneralSecurityException {
+        GroupContexts contexts = getGroupContexts(groupId, key);
+
+        ShiverCipherSuite.Context context = contexts.getQueue(suite).poll();
+        if (context != null) {
+            return context;
+        }
+        return suite.createContext(key);
+    }
+
+    /**
+     * Hands a context back after it was used successfully.
+     * Contexts that failed should not get released, because their state is unknown.
+     *
+     * @param groupId - id of the group
+     * @param key     - the key the context was acquired with
+     * @param suite   - the suite the context was acquired for
+     * @param context - the context to hand back
+     */
+    public void release(CharSequence groupId, Key key, ShiverCipherSuite suite, ShiverCipherSuite.Context context) {
+        GroupContexts contexts = groupContexts.get(groupId);
+        if (contexts == null || !contexts.key.equals(key)) {
+            return;
+        }
+        contexts.getQueue(suite).offer(context);
+    }
+
+    /**
+     * Drops every cached context of a group
+     *
+     * @param groupId - id of the group
+     */
+    public void invalidate(CharSequence groupId) {
+        groupContexts.remove(groupId);
+    }
+
+    private GroupContexts getGroupContexts(CharSequence groupId, Key key) {
+        GroupContexts contexts = groupContexts.get(groupId);
+        if (contexts != null && contexts.key.equals(key)) {
+            return contexts;
+        }
+
+        return groupContexts.compute(groupId, (id, current) -> {
+            if (current != null && current.key.equals(key)) {
+                return current;
+            }
+            return new GroupContexts(key, maxIdleContextsPerSuite);
+        });
+    }
+
+    private static class GroupContexts {
+        private final Key key;
+        private final int capacity;
+        private final ConcurrentHashMap<Byte, BlockingQueue<ShiverCipherSuite.Context>> queues = new ConcurrentHashMap<>();
+
+        private GroupContexts(Key key, int capacity) {
+            this.key = key;
+            this.capacity = capacity;
+        }
+
+        private BlockingQueue<ShiverCipherSuite.Context> getQueue(ShiverCipherSuite suite) {
+            return queues.computeIfAbsent(suite.getId(), id -> new ArrayBlockingQueue<>(capacity));
+        }
+    }
+}
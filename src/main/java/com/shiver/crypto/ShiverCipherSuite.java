@@ -0,0 +1,59 @@
+package com.shiver.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+/**
+ * A way to encrypt group messages with the group key.
+ * Every suite has its own id that gets written into the header of the encrypted messages,
+ * so a message can always get decrypted with the suite it was encrypted with.
+ * Only the legacy suite writes no header at all.
+ */
+public interface ShiverCipherSuite {
+
+    /**
+     * The id that gets written into the header of every message encrypted with this suite
+     */
+    byte getId();
+
+    /**
+     * A readable name of the suite
+     */
+    String getName();
+
+    /**
+     * @param messageLength - length of the plain message
+     * @return - length of the encrypted message including the header
+     */
+    int getEncryptedLength(int messageLength);
+
+    /**
+     * Creates a new context that is bound to the group key.
+     * Creating a context is expensive, that is why they get pooled by the {@link ShiverCipherCache}
+     *
+     * @param groupKey - the key of the group
+     * @return - a context that is not thread safe
+     */
+    Context createContext(Key groupKey) throws GeneralSecurityException;
+
+    /**
+     * Everything that a suite needs to encrypt and decrypt messages with one key.
+     * A context must only get used by one thread at a time.
+     */
+    interface Context {
+        /**
+         * Encrypts the remaining bytes of the message buffer into the output buffer, header included
+         *
+         * @return - the number of bytes written
+         */
+        int encrypt(ByteBuffer message, ByteBuffer encryptedMessage) throws GeneralSecurityException;
+
+        /**
+         * Decrypts the remaining bytes of the encrypted buffer into the output buffer
+         *
+         * @return - the number of bytes written
+         */
+        int decrypt(ByteBuffer encryptedMessage, ByteBuffer message) throws GeneralSecurityException;
+    }
+}
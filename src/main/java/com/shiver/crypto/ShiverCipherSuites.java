@@ -0,0 +1,73 @@
+package com.shiver.crypto;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Knows every available {@link ShiverCipherSuite} and the header that marks messages of the non legacy suites.
+ * <p>
+ * The header consists of the three magic bytes "SHV" followed by the id of the suite.
+ * Messages of the legacy suite have no header. They are recognized by not starting with a known header.
+ */
+public final class ShiverCipherSuites {
+    public static final byte LEGACY_AES_ECB_ID = 0;
+    public static final byte AES_GCM_ID = 1;
+    public static final byte AES_CTR_HMAC_ID = 2;
+
+    public static final int HEADER_LENGTH = 4;
+
+    // has to be initialized before the suites, they build their headers from it
+    private static final byte[] MAGIC = new byte[]{'S', 'H', 'V'};
+
+    public static final ShiverCipherSuite LEGACY_AES_ECB = new ShiverAesEcbCipherSuite();
+    public static final ShiverCipherSuite AES_GCM = new ShiverAesGcmCipherSuite();
+    public static final ShiverCipherSuite AES_CTR_HMAC = new ShiverAesCtrHmacCipherSuite();
+
+    private ShiverCipherSuites() {
+    }
+
+    /**
+     * @param id - id of a suite
+     * @return - the suite with this id
+     * @throws IllegalArgumentException - if there is no suite with this id
+     */
+    public static ShiverCipherSuite forId(byte id) {
+        switch (id) {
+            case LEGACY_AES_ECB_ID:
+                return LEGACY_AES_ECB;
+            case AES_GCM_ID:
+                return AES_GCM;
+            case AES_CTR_HMAC_ID:
+                return AES_CTR_HMAC;
+            default:
+                throw new IllegalArgumentException("Unknown cipher suite " + id);
+        }
+    }
+
+    /**
+     * Finds the suite an encrypted message was encrypted with, by looking at its header.
+     * The position of the buffer does not change.
+     *
+     * @param encryptedMessage - buffer with the encrypted message between position and limit
+     * @return - the suite of the header or the legacy suite if there is no known header
+     */
+    public static ShiverCipherSuite detect(ByteBuffer encryptedMessage) {
+        int position = encryptedMessage.position();
+        if (encryptedMessage.remaining() < HEADER_LENGTH) {
+            return LEGACY_AES_ECB;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (encryptedMessage.get(position + i) != MAGIC[i]) {
+                return LEGACY_AES_ECB;
+            }
+        }
+        byte id = encryptedMessage.get(position + MAGIC.length);
+        if (id == AES_GCM_ID || id == AES_CTR_HMAC_ID) {
+            return forId(id);
+        }
+        return LEGACY_AES_ECB;
+    }
+
+    static byte[] createHeader(byte id) {
+        return new byte[]{MAGIC[0], MAGIC[1], MAGIC[2], id};
+    }
+}
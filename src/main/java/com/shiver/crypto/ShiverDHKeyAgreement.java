@@ -0,0 +1,77 @@
+package com.shiver.crypto;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.spec.DHParameterSpec;
+import javax.crypto.spec.DHPrivateKeySpec;
+import javax.crypto.spec.DHPublicKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+
+/**
+ * The classic finite field DH. The intermediate keys are the DH public keys the JCE hands out for a non final phase.
+ * The group key are the first 16 bytes of the shared secret, like it always was.
+ * Derived key pairs use the SHA-256 of the secret as a 256 bit exponent.
+ */
+class ShiverDHKeyAgreement implements ShiverKeyAgreement {
+    private final DHParameterSpec dhParameterSpec;
+
+    ShiverDHKeyAgreement(DHParameterSpec dhParameterSpec) {
+        this.dhParameterSpec = dhParameterSpec;
+    }
+
+    @Override
+    public String getName() {
+        return ShiverKeyAgreements.DH_NAME;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("DH");
+        gen.initialize(dhParameterSpec);
+        return gen.generateKeyPair();
+    }
+
+    @Override
+    public PublicKey combine(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("DH");
+        keyAgreement.init(privateKey);
+        return (PublicKey) keyAgreement.doPhase(publicKey, false);
+    }
+
+    @Override
+    public Key generateGroupKey(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException {
+        byte[] secret = generateSecret(privateKey, publicKey);
+        return new SecretKeySpec(secret, 0, 16, "AES");
+    }
+
+    @Override
+    public byte[] generateSecret(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("DH");
+        keyAgreement.init(privateKey);
+        keyAgreement.doPhase(publicKey, true);
+        return keyAgreement.generateSecret();
+    }
+
+    @Override
+    public KeyPair deriveKeyPair(byte[] secret) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        BigInteger p = dhParameterSpec.getP();
+        BigInteger g = dhParameterSpec.getG();
+        BigInteger x = new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(secret));
+
+        KeyFactory keyFactory = KeyFactory.getInstance("DH");
+        PrivateKey privateKey = keyFactory.generatePrivate(new DHPrivateKeySpec(x, p, g));
+        PublicKey publicKey = keyFactory.generatePublic(new DHPublicKeySpec(g.modPow(x, p), p, g));
+        return new KeyPair(publicKey, privateKey);
+    }
+}
@@ -0,0 +1,154 @@
+package com.shiver.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.List;
+
+/**
+ * An input stream that reads a payload in the {@link ShiverChunkedFormat} from another stream and decrypts it chunk by chunk.
+ * Only one chunk is kept in memory, no matter how big the payload is.
+ * A chunk is only handed out after its tag got verified. A manipulated, reordered or cut off payload results in an {@link IOException}.
+ * When more than one key is given, the first chunk picks the key it authenticates with and the rest of the payload gets decrypted with that key.
+ */
+public class ShiverDecryptingInputStream extends InputStream {
+    private final InputStream inputStream;
+    private final List<Key> keys;
+    private final Cipher cipher;
+
+    private Key key;
+
+    private ShiverChunkedFormat.Header header;
+    private byte[] encryptedChunk;
+    private byte[] plainChunk;
+    private int plainChunkPosition = 0;
+    private int plainChunkLength = 0;
+    private long chunkIndex = 0;
+    private boolean finalChunkRead = false;
+    private boolean closed = false;
+
+    /**
+     * @param key         - the group key
+     * @param inputStream - stream to read the encrypted payload from
+     */
+    public ShiverDecryptingInputStream(Key key, InputStream inputStream) throws GeneralSecurityException {
+        this(List.of(key), inputStream);
+    }
+
+    /**
+     * @param keys        - the keys the payload might be encrypted with, in the order they get tried
+     * @param inputStream - stream to read the encrypted payload from
+     */
+    public ShiverDecryptingInputStream(List<Key> keys, InputStream inputStream) throws GeneralSecurityException {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one key is needed");
+        }
+        this.inputStream = inputStream;
+        this.keys = List.copyOf(keys);
+        this.cipher = Cipher.getInstance(ShiverChunkedFormat.TRANSFORMATION);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return plainChunk[plainChunkPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || length > bytes.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int copied = Math.min(length, plainChunkLength - plainChunkPosition);
+        System.arraycopy(plainChunk, plainChunkPosition, bytes, offset, copied);
+        plainChunkPosition += copied;
+        return copied;
+    }
+
+    @Override
+    public int available() {
+        return plainChunkLength - plainChunkPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        inputStream.close();
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        while (plainChunkPosition == plainChunkLength) {
+            if (finalChunkRead) {
+                return false;
+            }
+            readChunk();
+        }
+        return true;
+    }
+
+    private void readChunk() throws IOException {
+        if (header == null) {
+            byte[] headerBytes = inputStream.readNBytes(ShiverChunkedFormat.HEADER_LENGTH);
+            header = ShiverChunkedFormat.readHeader(ByteBuffer.wrap(headerBytes));
+            encryptedChunk = new byte[header.getChunkSize() + ShiverChunkedFormat.TAG_LENGTH];
+            plainChunk = new byte[header.getChunkSize()];
+        }
+
+        int read = inputStream.readNBytes(encryptedChunk, 0, encryptedChunk.length);
+        boolean lastChunk = read < encryptedChunk.length;
+        if (read < ShiverChunkedFormat.TAG_LENGTH) {
+            throw new IOException("Encrypted payload is cut off");
+        }
+
+        try {
+            plainChunkLength = decryptChunk(read, lastChunk);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Decrypting chunk " + chunkIndex + " failed", e);
+        }
+
+        plainChunkPosition = 0;
+        finalChunkRead = lastChunk;
+        chunkIndex++;
+    }
+
+    private int decryptChunk(int read, boolean lastChunk) throws GeneralSecurityException {
+        if (key != null) {
+            return decryptChunk(key, read, lastChunk);
+        }
+
+        // only a failed tag means the key is wrong, the chunk is still in memory for the next key
+        AEADBadTagException firstException = null;
+        for (Key candidateKey : keys) {
+            try {
+                int written = decryptChunk(candidateKey, read, lastChunk);
+                key = candidateKey;
+                return written;
+            } catch (AEADBadTagException e) {
+                if (firstException == null) {
+                    firstException = e;
+                }
+            }
+        }
+        throw firstException;
+    }
+
+    private int decryptChunk(Key chunkKey, int read, boolean lastChunk) throws GeneralSecurityException {
+        ShiverChunkedFormat.initChunkCipher(cipher, Cipher.DECRYPT_MODE, chunkKey, header.noncePrefix(), chunkIndex, lastChunk);
+        return cipher.doFinal(encryptedChunk, 0, read, plainChunk, 0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.shiver.crypto;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+/**
+ * An output stream that encrypts everything written to it in the {@link ShiverChunkedFormat}
+ * and passes the encrypted chunks on to another stream.
+ * Only one chunk is kept in memory, no matter how big the payload gets.
+ * The payload is only complete after {@link #close()}, because closing writes the final chunk.
+ */
+public class ShiverEncryptingOutputStream extends OutputStream {
+    private final OutputStream outputStream;
+    private final Key key;
+    private final Cipher cipher;
+    private final byte[] noncePrefix;
+    private final byte[] plainChunk;
+    private final byte[] encryptedChunk;
+
+    private int plainChunkLength = 0;
+    private long chunkIndex = 0;
+    private boolean headerWritten = false;
+    private boolean closed = false;
+
+    /**
+     * @param key          - the group key
+     * @param outputStream - stream the encrypted chunks get written to
+     */
+    public ShiverEncryptingOutputStream(Key key, OutputStream outputStream) throws GeneralSecurityException {
+        this(key, outputStream, ShiverChunkedFormat.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param key          - the group key
+     * @param outputStream - stream the encrypted chunks get written to
+     * @param chunkSize    - plain bytes per chunk
+     */
+    public ShiverEncryptingOutputStream(Key key, OutputStream outputStream, int chunkSize) throws GeneralSecurityException {
+        if (chunkSize <= 0 || chunkSize > ShiverChunkedFormat.MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize has to be between 1 and " + ShiverChunkedFormat.MAX_CHUNK_SIZE);
+        }
+        this.outputStream = outputStream;
+        this.key = key;
+        this.cipher = Cipher.getInstance(ShiverChunkedFormat.TRANSFORMATION);
+        this.noncePrefix = ShiverChunkedFormat.createNoncePrefix();
+        this.plainChunk = new byte[chunkSize];
+        this.encryptedChunk = new byte[chunkSize + ShiverChunkedFormat.TAG_LENGTH];
+
+        // fail early if the key can not be used for the chunks.
+        // The decrypt mode is used here, because GCM refuses to get initialized twice with the same nonce for encryption
+        ShiverChunkedFormat.initChunkCipher(cipher, Cipher.DECRYPT_MODE, key, noncePrefix, 0, false);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        plainChunk[plainChunkLength++] = (byte) b;
+        if (plainChunkLength == plainChunk.length) {
+            writeChunk(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        if (offset < 0 || length < 0 || length > bytes.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (length > 0) {
+            int copied = Math.min(length, plainChunk.length - plainChunkLength);
+            System.arraycopy(bytes, offset, plainChunk, plainChunkLength, copied);
+            plainChunkLength += copied;
+            offset += copied;
+            length -= copied;
+
+            if (plainChunkLength == plainChunk.length) {
+                writeChunk(false);
+            }
+        }
+    }
+
+    /**
+     * Flushes the underlying stream. A partly filled chunk stays buffered until it is full or the stream gets closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        outputStream.flush();
+    }
+
+    /**
+     * Writes the final chunk and closes the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            writeChunk(true);
+        } finally {
+            closed = true;
+            outputStream.close();
+        }
+    }
+
+    private void writeChunk(boolean lastChunk) throws IOException {
+        if (!headerWritten) {
+            ByteBuffer header = ByteBuffer.allocate(ShiverChunkedFormat.HEADER_LENGTH);
+            ShiverChunkedFormat.writeHeader(header, plainChunk.length, noncePrefix);
+            outputStream.write(header.array());
+            headerWritten = true;
+        }
+
+        try {
+            ShiverChunkedFormat.initChunkCipher(cipher, Cipher.ENCRYPT_MODE, key, noncePrefix, chunkIndex, lastChunk);
+            int encryptedLength = cipher.doFinal(plainChunk, 0, plainChunkLength, encryptedChunk, 0);
+            outputStream.write(encryptedChunk, 0, encryptedLength);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Encrypting chunk " + chunkIndex + " failed", e);
+        }
+
+        chunkIndex++;
+        plainChunkLength = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+}
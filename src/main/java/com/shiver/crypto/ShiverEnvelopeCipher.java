@@ -0,0 +1,192 @@
+package com.shiver.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encrypts a message once for many groups.
+ * <p>
+ * The message gets encrypted a single time with a random content key (AES-GCM).
+ * Only the content key gets wrapped with the key of every target group (AES key wrap), so the cost per group is a few bytes.
+ * <p>
+ * Layout: version byte, number of groups as int, then per group the length of the group id as short, the group id (UTF-8),
+ * the length of the wrapped key as short and the wrapped key. The nonce and the encrypted message follow.
+ * Everything before the nonce is authenticated data, so the list of groups can not get changed.
+ */
+public final class ShiverEnvelopeCipher {
+    public static final byte VERSION = 1;
+    public static final int CONTENT_KEY_SIZE = 256;
+    public static final int NONCE_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String WRAP_TRANSFORMATION = "AESWrap";
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private ShiverEnvelopeCipher() {
+    }
+
+    /**
+     * Encrypts a message for every given group
+     *
+     * @param groupKeys - the keys of all target groups by group id
+     * @param message   - the plain message
+     * @return - the envelope
+     */
+    public static byte[] encrypt(Map<CharSequence, Key> groupKeys, byte[] message) throws GeneralSecurityException, IOException {
+        if (groupKeys.isEmpty()) {
+            throw new IllegalArgumentException("An envelope needs at least one group");
+        }
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(CONTENT_KEY_SIZE);
+        SecretKey contentKey = keyGenerator.generateKey();
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        dataOutputStream.writeByte(VERSION);
+        dataOutputStream.writeInt(groupKeys.size());
+
+        Cipher wrapCipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+        for (Map.Entry<CharSequence, Key> groupKey : groupKeys.entrySet()) {
+            wrapCipher.init(Cipher.WRAP_MODE, groupKey.getValue());
+            byte[] wrappedKey = wrapCipher.wrap(contentKey);
+
+            byte[] groupId = groupKey.getKey().toString().getBytes(StandardCharsets.UTF_8);
+            if (groupId.length > 0xFFFF) {
+                throw new IllegalArgumentException("Group id is too long");
+            }
+            dataOutputStream.writeShort(groupId.length);
+            dataOutputStream.write(groupId);
+            dataOutputStream.writeShort(wrappedKey.length);
+            dataOutputStream.write(wrappedKey);
+        }
+        dataOutputStream.flush();
+        byte[] header = byteArrayOutputStream.toByteArray();
+
+        byte[] nonce = new byte[NONCE_LENGTH];
+        SECURE_RANDOM.nextBytes(nonce);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, contentKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(header);
+
+        byte[] envelope = new byte[header.length + NONCE_LENGTH + message.length + TAG_LENGTH];
+        System.arraycopy(header, 0, envelope, 0, header.length);
+        System.arraycopy(nonce, 0, envelope, header.length, NONCE_LENGTH);
+        cipher.doFinal(message, 0, message.length, envelope, header.length + NONCE_LENGTH);
+        return envelope;
+    }
+
+    /**
+     * @param envelope - the envelope
+     * @return - the ids of all groups the envelope was encrypted for, in the order they were written
+     * @throws IOException - if the envelope is invalid
+     */
+    public static List<CharSequence> getGroupIds(byte[] envelope) throws IOException {
+        List<CharSequence> groupIds = new ArrayList<>();
+        for (Recipient recipient : readRecipients(ByteBuffer.wrap(envelope))) {
+            groupIds.add(recipient.groupId);
+        }
+        return groupIds;
+    }
+
+    /**
+     * Decrypts an envelope as member of one of its groups
+     *
+     * @param envelope - the envelope
+     * @param groupId  - id of a group the envelope was encrypted for
+     * @param groupKey - the key of this group
+     * @return - the plain message
+     * @throws GeneralSecurityException - if the key is wrong or the envelope got manipulated. Both fail with an {@link AEADBadTagException}
+     * @throws IOException              - if the envelope is invalid or was not encrypted for this group
+     */
+    public static byte[] decrypt(byte[] envelope, CharSequence groupId, Key groupKey) throws GeneralSecurityException, IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(envelope);
+        List<Recipient> recipients = readRecipients(buffer);
+        int headerLength = buffer.position();
+
+        Recipient recipient = null;
+        for (Recipient candidate : recipients) {
+            if (candidate.groupId.contentEquals(groupId)) {
+                recipient = candidate;
+                break;
+            }
+        }
+        if (recipient == null) {
+            throw new IOException("Envelope was not encrypted for group " + groupId);
+        }
+        if (buffer.remaining() < NONCE_LENGTH + TAG_LENGTH) {
+            throw new IOException("Envelope is cut off");
+        }
+
+        Cipher wrapCipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+        wrapCipher.init(Cipher.UNWRAP_MODE, groupKey);
+        Key contentKey;
+        try {
+            contentKey = wrapCipher.unwrap(recipient.wrappedKey, "AES", Cipher.SECRET_KEY);
+        } catch (InvalidKeyException e) {
+            // the key wrap fails its integrity check with a wrong group key, which is an authentication failure like a wrong tag
+            AEADBadTagException badTagException = new AEADBadTagException("Wrapped key failed its integrity check");
+            badTagException.initCause(e);
+            throw badTagException;
+        }
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, contentKey, new GCMParameterSpec(TAG_LENGTH * 8, envelope, headerLength, NONCE_LENGTH));
+        cipher.updateAAD(envelope, 0, headerLength);
+        int encryptedStart = headerLength + NONCE_LENGTH;
+        return cipher.doFinal(envelope, encryptedStart, envelope.length - encryptedStart);
+    }
+
+    private static List<Recipient> readRecipients(ByteBuffer buffer) throws IOException {
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unknown envelope version " + version);
+            }
+            int recipientCount = buffer.getInt();
+            // every recipient needs at least the two length fields
+            if (recipientCount <= 0 || recipientCount > buffer.remaining() / 4) {
+                throw new IOException("Invalid number of groups " + recipientCount);
+            }
+
+            List<Recipient> recipients = new ArrayList<>(recipientCount);
+            for (int i = 0; i < recipientCount; i++) {
+                byte[] groupId = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(groupId);
+                byte[] wrappedKey = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(wrappedKey);
+                recipients.add(new Recipient(new String(groupId, StandardCharsets.UTF_8), wrappedKey));
+            }
+            return recipients;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Envelope is cut off", e);
+        }
+    }
+
+    private static final class Recipient {
+        private final String groupId;
+        private final byte[] wrappedKey;
+
+        private Recipient(String groupId, byte[] wrappedKey) {
+            this.groupId = groupId;
+            this.wrappedKey = wrappedKey;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.shiver.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+
+/**
+ * An algorithm the members of a group agree on a group key with.
+ * <p>
+ * Every member applies its own private key to the intermediate keys of the others, one after another.
+ * Because applying private keys commutes, every member ends up with the same secret after applying its private key
+ * to the intermediate key that already holds the private keys of all other members.
+ * Implementations have no state and are safe to use from multiple threads.
+ */
+public interface ShiverKeyAgreement {
+
+    /**
+     * Name of the algorithm, this is what gets written into the {@link com.shiver.models.GroupCredentialMessage}
+     */
+    String getName();
+
+    /**
+     * @return - a new key pair for one group
+     */
+    KeyPair generateKeyPair() throws GeneralSecurityException;
+
+    /**
+     * Applies a private key to an intermediate key, the result can get handed on to the next member
+     *
+     * @param privateKey - own private key of the group
+     * @param publicKey  - public key or intermediate key of the other members
+     * @return - the new intermediate key
+     */
+    PublicKey combine(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException;
+
+    /**
+     * Applies a private key to the intermediate key of all other members and derives the group key from the shared secret
+     *
+     * @param privateKey - own private key of the group
+     * @param publicKey  - intermediate key holding the private keys of all other members
+     * @return - the AES group key
+     */
+    Key generateGroupKey(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException;
+
+    /**
+     * @param privateKey - own private key
+     * @param publicKey  - public key of the other side
+     * @return - the raw shared secret of both keys
+     */
+    byte[] generateSecret(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException;
+
+    /**
+     * Derives a key pair from a shared secret. The same secret always results in the same key pair,
+     * so everyone who knows the secret can use the private key and everyone else can get the public key handed.
+     *
+     * @param secret - a shared secret from {@link #generateSecret}
+     * @return - the derived key pair
+     */
+    KeyPair deriveKeyPair(byte[] secret) throws NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException;
+}
@@ -0,0 +1,75 @@
+package com.shiver.crypto;
+
+import javax.crypto.spec.DHParameterSpec;
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Knows every available {@link ShiverKeyAgreement}.
+ * <p>
+ * Every peer names the agreements it supports in the group credential messages it handles.
+ * The initiator of a group picks an agreement all members are known to support, DH otherwise, and writes its name into the message.
+ * All other members use the agreement named in the message. Messages without a name are from peers that only know DH,
+ * a name a peer does not know is an error.
+ */
+public final class ShiverKeyAgreements {
+    public static final String DH_NAME = "DH";
+    public static final String X25519_NAME = "X25519";
+    public static final String P_256_NAME = "P-256";
+
+    private static final BigInteger p = new BigInteger("32317006071311007300338913926423828248817941241140239112842009751400741706634354222619689417363569347117901737909704191754605873209195028853758986185622153212175412514901774520270235796078236248884246189477587641105928646099411723245426622522193230540919037680524235519125679715870117001058055877651038861847280257976054903569732561526167081339361799541336476559160368317896729073178384589680639671900977202194168647225871031411336429319536193471636533209717077448227988588565369208645296636077250268955505928362751121174096972998068410554359584866583291642136218231078990999448652468262416972035911852507045361090559");
+    private static final BigInteger g = new BigInteger("2");
+    private static final int l = 2048;
+
+    /**
+     * The 2048 bit group every DH key pair gets generated in.
+     * Has to be initialized before the agreements, the DH agreement generates its key pairs with it
+     */
+    public static final DHParameterSpec DH_PARAMETER_SPEC = new DHParameterSpec(p, g, l);
+
+    public static final ShiverKeyAgreement DH = new ShiverDHKeyAgreement(DH_PARAMETER_SPEC);
+    public static final ShiverKeyAgreement X25519 = new ShiverX25519KeyAgreement();
+    public static final ShiverKeyAgreement P_256 = new ShiverP256KeyAgreement();
+
+    private static final List<String> NAMES = List.of(DH_NAME, X25519_NAME, P_256_NAME);
+
+    private ShiverKeyAgreements() {
+    }
+
+    /**
+     * @return - names of every agreement this peer supports
+     */
+    public static List<String> getNames() {
+        return NAMES;
+    }
+
+    /**
+     * @param name - name of an agreement or null
+     * @return - true if {@link #forName(String)} knows the agreement
+     */
+    public static boolean isSupported(String name) {
+        return name == null || NAMES.contains(name);
+    }
+
+    /**
+     * @param name - name of an agreement or null
+     * @return - the agreement with this name, {@link #DH} if the name is null
+     * @throws NoSuchAlgorithmException - if there is no agreement with this name
+     */
+    public static ShiverKeyAgreement forName(String name) throws NoSuchAlgorithmException {
+        if (name == null) {
+            return DH;
+        }
+        switch (name) {
+            case DH_NAME:
+                return DH;
+            case X25519_NAME:
+                return X25519;
+            case P_256_NAME:
+                return P_256;
+            default:
+                throw new NoSuchAlgorithmException("Unknown key agreement " + name);
+        }
+    }
+}
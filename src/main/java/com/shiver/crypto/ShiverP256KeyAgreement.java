@@ -0,0 +1,108 @@
+package com.shiver.crypto;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPrivateKeySpec;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.EllipticCurve;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.InvalidParameterSpecException;
+
+/**
+ * Group key agreement with ECDH on the NIST curve P-256.
+ * The shared secret of ECDH is only the x-coordinate of the product. To use it as intermediate public key again,
+ * the y-coordinate gets recovered from the curve equation. Which of the two possible points is taken does not matter,
+ * because the x-coordinate of the product is the same for both.
+ * The group key are the first 16 bytes of the SHA-256 of the final secret.
+ * Derived key pairs use the SHA-256 of the secret, reduced to the order of the curve, as scalar.
+ */
+class ShiverP256KeyAgreement implements ShiverKeyAgreement {
+    @Override
+    public String getName() {
+        return ShiverKeyAgreements.P_256_NAME;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("EC");
+        gen.initialize(new ECGenParameterSpec("secp256r1"));
+        return gen.generateKeyPair();
+    }
+
+    @Override
+    public PublicKey combine(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        if (!(publicKey instanceof ECPublicKey)) {
+            throw new InvalidKeyException("P-256 needs an EC public key");
+        }
+        ECParameterSpec params = ((ECPublicKey) publicKey).getParams();
+        EllipticCurve curve = params.getCurve();
+        BigInteger prime = ((ECFieldFp) curve.getField()).getP();
+
+        BigInteger x = new BigInteger(1, generateSecret(privateKey, publicKey));
+
+        // y^2 = x^3 + ax + b, the square root is a single power because p = 3 mod 4
+        BigInteger ySquare = x.pow(3).add(curve.getA().multiply(x)).add(curve.getB()).mod(prime);
+        BigInteger y = ySquare.modPow(prime.add(BigInteger.ONE).shiftRight(2), prime);
+        if (!y.multiply(y).mod(prime).equals(ySquare)) {
+            throw new InvalidKeyException("Shared secret is no point on the curve");
+        }
+
+        return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(new ECPoint(x, y), params));
+    }
+
+    @Override
+    public Key generateGroupKey(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException {
+        byte[] secret = generateSecret(privateKey, publicKey);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(secret);
+        return new SecretKeySpec(hash, 0, 16, "AES");
+    }
+
+    @Override
+    public KeyPair deriveKeyPair(byte[] secret) throws NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        ECParameterSpec params = getParameterSpec();
+        BigInteger order = params.getOrder();
+        BigInteger scalar = new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(secret))
+                .mod(order.subtract(BigInteger.ONE))
+                .add(BigInteger.ONE);
+
+        KeyFactory keyFactory = KeyFactory.getInstance("EC");
+        PrivateKey privateKey = keyFactory.generatePrivate(new ECPrivateKeySpec(scalar, params));
+        PublicKey generator = keyFactory.generatePublic(new ECPublicKeySpec(params.getGenerator(), params));
+        return new KeyPair(combine(privateKey, generator), privateKey);
+    }
+
+    @Override
+    public byte[] generateSecret(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+        keyAgreement.init(privateKey);
+        keyAgreement.doPhase(publicKey, true);
+        return keyAgreement.generateSecret();
+    }
+
+    private static ECParameterSpec getParameterSpec() throws NoSuchAlgorithmException {
+        try {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (InvalidParameterSpecException e) {
+            throw new NoSuchAlgorithmException("secp256r1 is not available", e);
+        }
+    }
+}
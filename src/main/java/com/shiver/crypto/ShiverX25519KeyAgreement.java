@@ -0,0 +1,78 @@
+package com.shiver.crypto;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.NamedParameterSpec;
+import java.security.spec.XECPrivateKeySpec;
+import java.security.spec.XECPublicKeySpec;
+
+/**
+ * Group key agreement on Curve25519.
+ * The shared secret of X25519 is the u-coordinate of the product, so it can be used as intermediate public key again.
+ * The group key are the first 16 bytes of the SHA-256 of the final secret.
+ * Derived key pairs use the SHA-256 of the secret as scalar.
+ */
+class ShiverX25519KeyAgreement implements ShiverKeyAgreement {
+    private static final BigInteger BASE_POINT = BigInteger.valueOf(9);
+
+    @Override
+    public String getName() {
+        return ShiverKeyAgreements.X25519_NAME;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() throws GeneralSecurityException {
+        return KeyPairGenerator.getInstance("X25519").generateKeyPair();
+    }
+
+    @Override
+    public PublicKey combine(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        byte[] secret = generateSecret(privateKey, publicKey);
+
+        // the secret is the little endian encoded u-coordinate
+        byte[] u = new byte[secret.length];
+        for (int i = 0; i < secret.length; i++) {
+            u[i] = secret[secret.length - 1 - i];
+        }
+
+        XECPublicKeySpec publicKeySpec = new XECPublicKeySpec(NamedParameterSpec.X25519, new BigInteger(1, u));
+        return KeyFactory.getInstance("XDH").generatePublic(publicKeySpec);
+    }
+
+    @Override
+    public Key generateGroupKey(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException {
+        byte[] secret = generateSecret(privateKey, publicKey);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(secret);
+        return new SecretKeySpec(hash, 0, 16, "AES");
+    }
+
+    @Override
+    public KeyPair deriveKeyPair(byte[] secret) throws NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        byte[] scalar = MessageDigest.getInstance("SHA-256").digest(secret);
+
+        KeyFactory keyFactory = KeyFactory.getInstance("XDH");
+        PrivateKey privateKey = keyFactory.generatePrivate(new XECPrivateKeySpec(NamedParameterSpec.X25519, scalar));
+        PublicKey basePoint = keyFactory.generatePublic(new XECPublicKeySpec(NamedParameterSpec.X25519, BASE_POINT));
+        return new KeyPair(combine(privateKey, basePoint), privateKey);
+    }
+
+    @Override
+    public byte[] generateSecret(PrivateKey privateKey, PublicKey publicKey) throws NoSuchAlgorithmException, InvalidKeyException {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("XDH");
+        keyAgreement.init(privateKey);
+        keyAgreement.doPhase(publicKey, true);
+        return keyAgreement.generateSecret();
+    }
+}
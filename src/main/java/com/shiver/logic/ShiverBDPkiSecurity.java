@@ -0,0 +1,551 @@
+package com.shiver.logic;
+
+import com.shiver.components.ShiverComponent;
+import com.shiver.crypto.ShiverKeyAgreements;
+import com.shiver.exceptions.ShiverDHKeyGenerationException;
+import com.shiver.exceptions.ShiverGroupSizeException;
+import com.shiver.exceptions.ShiverNoGroupKeyException;
+import com.shiver.exceptions.ShiverPeerNotVerifiedException;
+import com.shiver.exceptions.ShiverUnknownURIException;
+import com.shiver.models.GroupBDCredentialMessage;
+import com.shiver.models.GroupCredentialMessage;
+import com.shiver.models.ShiverPaths;
+import com.shiver.storage.ShiverDHKeyPairStorage;
+import com.shiver.storage.ShiverKeyStorage;
+import net.sharksystem.asap.*;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.utils.Log;
+
+import javax.crypto.interfaces.DHPrivateKey;
+import javax.crypto.interfaces.DHPublicKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An implementation of the [ShiverSecurity] interface with the constant round group key agreement of Burmester and Desmedt.
+ * <p>
+ * The members form a ring in the order of the peer list. In the first round every member i broadcasts z_i = g^r_i,
+ * in the second round X_i = (z_i+1 / z_i-1)^r_i. Out of all z and X every member computes the same
+ * key g^(r_1 r_2 + r_2 r_3 + ... + r_n r_1) with two exponentiations and a few multiplications per member.
+ * <p>
+ * The invitation is the first round message of the initiator. After accepting it all members send both of their messages
+ * without waiting for any single peer, so forming a group takes the invitation and two network round trips
+ * no matter how many members it has. The messages are broadcast once, signed by the sender.
+ * Adding or removing members runs both rounds again in a new epoch, so a change costs every member the same
+ * constant work as forming the group.
+ * The agreement always works in the finite field of {@link ShiverKeyAgreements#DH_PARAMETER_SPEC}.
+ */
+public class ShiverBDPkiSecurity implements ShiverSecurity, ASAPMessageReceivedListener {
+    private static final BigInteger P = ShiverKeyAgreements.DH_PARAMETER_SPEC.getP();
+
+    private ASAPPeer asapPeer;
+    private final SharkPKIComponent sharkPKIComponent;
+    private final ShiverDHKeyPairStorage dhKeyPairStorage;
+
+    private final ShiverKeyStorage shiverKeyStorage;
+
+    private ShiverPeerVerifier peerVerifier;
+
+    private ShiverEventDispatcher eventDispatcher = new ShiverEventDispatcher();
+
+    private final ConcurrentHashMap<CharSequence, GroupState> groups = new ConcurrentHashMap<>();
+
+    public ShiverBDPkiSecurity(SharkPKIComponent sharkPKIComponent, ShiverDHKeyPairStorage dhKeyPairStorage, ShiverKeyStorage shiverKeyStorage) {
+        this.sharkPKIComponent = sharkPKIComponent;
+        this.dhKeyPairStorage = dhKeyPairStorage;
+        this.shiverKeyStorage = shiverKeyStorage;
+        this.peerVerifier = new ShiverPeerVerifier(sharkPKIComponent);
+    }
+
+    /**
+     * Sets the verifier that checks the certificates of the members, for example to share one cache between securities
+     * or to change its time to live
+     *
+     * @param peerVerifier - verifier using the same PKI
+     */
+    public void setPeerVerifier(ShiverPeerVerifier peerVerifier) {
+        this.peerVerifier = peerVerifier;
+    }
+
+    /**
+     * @return - the verifier that checks the certificates of the members, with the counters of its cache
+     */
+    public ShiverPeerVerifier getPeerVerifier() {
+        return peerVerifier;
+    }
+
+    /**
+     * Sets the dispatcher that hands the events of the Burmester-Desmedt exchange to the listeners.
+     * The listeners that got added before move to the new dispatcher. Defaults to a synchronous {@link ShiverEventDispatcher}
+     *
+     * @param eventDispatcher - dispatcher for the events of this security
+     */
+    public void setEventDispatcher(ShiverEventDispatcher eventDispatcher) {
+        for (ShiverEventListener shiverEventListener : this.eventDispatcher.getListeners()) {
+            eventDispatcher.addListener(shiverEventListener);
+        }
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    /**
+     * @return - the dispatcher that hands the events to the listeners
+     */
+    public ShiverEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    @Override
+    public void onStart(ASAPPeer asapPeer) {
+        this.asapPeer = asapPeer;
+
+        asapPeer.addASAPMessageReceivedListener(ShiverComponent.SHARK_SHIVER_APP, this);
+    }
+
+    @Override
+    public void addShiverEventListener(ShiverEventListener shiverEventListener) {
+        this.eventDispatcher.addListener(shiverEventListener);
+    }
+
+    @Override
+    public void removeShiverEventListener(ShiverEventListener shiverEventListener) {
+        this.eventDispatcher.removeListener(shiverEventListener);
+    }
+
+    @Override
+    public CharSequence startKeyExchangeWithPeers(List<CharSequence> peers) throws ShiverGroupSizeException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, IOException, ASAPException {
+        List<CharSequence> orderedListOfPeers = new ArrayList<>(peers);
+        orderedListOfPeers.remove(asapPeer.getPeerID());
+        orderedListOfPeers.add(0, asapPeer.getPeerID());
+
+        if (orderedListOfPeers.size() <= 1) {
+            throw new ShiverGroupSizeException();
+        }
+
+        verifyPeers(orderedListOfPeers);
+
+        CharSequence groupId = UUID.randomUUID().toString();
+        GroupState state = new GroupState(orderedListOfPeers, 0);
+        state.accepted = true;
+        groups.put(groupId, state);
+
+        synchronized (state) {
+            try {
+                joinRoundOne(groupId, state);
+                progress(groupId, state);
+            } catch (NoSuchAlgorithmException e) {
+                groups.remove(groupId);
+                throw new ShiverDHKeyGenerationException(e);
+            }
+        }
+        return groupId;
+    }
+
+    /**
+     * Accepts the invitation into a group. Only {@link GroupBDCredentialMessage}s can get accepted
+     */
+    @Override
+    public void acceptGroupCredentialMessage(GroupCredentialMessage groupCredentialMessage) throws IOException, ASAPException, ShiverDHKeyGenerationException, NoSuchAlgorithmException, ShiverPeerNotVerifiedException {
+        if (!(groupCredentialMessage instanceof GroupBDCredentialMessage)) {
+            throw new IllegalArgumentException("Only messages of the Burmester-Desmedt key agreement can get accepted");
+        }
+        GroupBDCredentialMessage message = (GroupBDCredentialMessage) groupCredentialMessage;
+        CharSequence groupId = message.getGroupId();
+
+        if (indexOf(message.getPeerIds(), asapPeer.getPeerID()) < 0) {
+            throw new IllegalArgumentException("The own peer is no member of the group");
+        }
+        verifyPeers(message.getPeerIds());
+
+        GroupState state = getOrCreateState(groupId, message);
+
+        synchronized (state) {
+            if (state.accepted) {
+                return;
+            }
+            state.accepted = true;
+            joinRoundOne(groupId, state);
+            progress(groupId, state);
+        }
+    }
+
+    /**
+     * Adds members by running both rounds again in a new epoch with the new members in the ring.
+     * Costs every member a new key pair, two exponentiations and two messages, no matter how big the group is.
+     * The members of the group take part without accepting again, the new members have to accept the invitation first.
+     *
+     * @param groupId - id of the group
+     * @param peers   - the new members, members that are already part of the group get skipped
+     * @throws ShiverNoGroupKeyException      - if this peer is no member of the group with a key
+     * @throws ShiverPeerNotVerifiedException - if not all new members are verifiable
+     */
+    @Override
+    public void addPeersToGroup(CharSequence groupId, List<CharSequence> peers) throws ShiverNoGroupKeyException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException {
+        GroupState state = getAgreedState(groupId);
+        verifyPeers(peers);
+
+        synchronized (state) {
+            List<CharSequence> newPeers = new ArrayList<>(state.peers);
+            for (CharSequence peer : peers) {
+                if (indexOf(newPeers, peer) < 0) {
+                    newPeers.add(peer.toString());
+                }
+            }
+            if (newPeers.size() == state.peers.size()) {
+                return;
+            }
+            changeMembers(groupId, state, newPeers);
+        }
+    }
+
+    /**
+     * Removes members by running both rounds again in a new epoch without them.
+     * Costs every member a new key pair, two exponentiations and two messages, no matter how big the group is.
+     * The removed members forget the group when they get the first message of the new epoch.
+     *
+     * @param groupId - id of the group
+     * @param peers   - the members to remove, peers that are no members get skipped
+     * @throws ShiverNoGroupKeyException - if this peer is no member of the group with a key
+     * @throws ShiverGroupSizeException  - if less than two members would be left
+     */
+    @Override
+    public void removePeersFromGroup(CharSequence groupId, List<CharSequence> peers) throws ShiverNoGroupKeyException, ShiverGroupSizeException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException {
+        GroupState state = getAgreedState(groupId);
+        if (indexOf(peers, asapPeer.getPeerID()) >= 0) {
+            throw new IllegalArgumentException("The own peer can not get removed");
+        }
+
+        synchronized (state) {
+            List<CharSequence> newPeers = new ArrayList<>();
+            for (String member : state.peers) {
+                if (indexOf(peers, member) < 0) {
+                    newPeers.add(member);
+                }
+            }
+            if (newPeers.size() == state.peers.size()) {
+                return;
+            }
+            if (newPeers.size() <= 1) {
+                throw new ShiverGroupSizeException();
+            }
+            changeMembers(groupId, state, newPeers);
+        }
+    }
+
+    private void changeMembers(CharSequence groupId, GroupState state, List<CharSequence> peers) throws ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException {
+        startEpoch(groupId, state, peers, state.epoch + 1);
+        joinRoundOne(groupId, state);
+        progress(groupId, state);
+    }
+
+    @Override
+    public void asapMessagesReceived(ASAPMessages asapMessages, String s, List<ASAPHop> list) throws IOException {
+        URI messageUri = URI.create(asapMessages.getURI().toString());
+        ShiverPaths path = ShiverPaths.parsePathByValue(messageUri.getPath());
+
+        if (path == null) {
+            Log.writeLogErr(this, "Error receiving message for an unknown path");
+            eventDispatcher.onErrorReceivingGroupCredentialMessage(asapMessages.getURI().toString(), new ShiverUnknownURIException());
+
+            return;
+        }
+
+        int round;
+        switch (path) {
+            case SHIVER_GROUP_BD_MESSAGE_ROUND_ONE -> round = GroupBDCredentialMessage.ROUND_ONE;
+            case SHIVER_GROUP_BD_MESSAGE_ROUND_TWO -> round = GroupBDCredentialMessage.ROUND_TWO;
+            default -> {
+                // messages of the other key agreements are none of our business
+                return;
+            }
+        }
+
+        Iterator<byte[]> messages = asapMessages.getMessages();
+        while (messages.hasNext()) {
+            byte[] message = messages.next();
+
+            try {
+                receiveMessage(message, round);
+            } catch (Exception e) {
+                Log.writeLogErr(this, "Error receiving groupBDCredentialMessage", e.getMessage());
+
+                eventDispatcher.onErrorReceivingGroupCredentialMessage(asapMessages.getURI().toString(), e);
+            }
+        }
+    }
+
+    private void receiveMessage(byte[] signedMessage, int round) throws IOException, ClassNotFoundException, ASAPException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, NoSuchAlgorithmException {
+        ShiverSignedMessages.Verified verified = ShiverSignedMessages.verify(signedMessage, sharkPKIComponent);
+        String sender = verified.getSender();
+
+        GroupBDCredentialMessage message = GroupBDCredentialMessage.deserialize(verified.getMessageBytes());
+        // the round is signed too, so a message of one round can not get replayed as the other one
+        if (!sender.equals(message.getSenderPeerId().toString()) || isOwnPeer(sender) || message.getRound() != round) {
+            throw new ShiverPeerNotVerifiedException();
+        }
+        if (indexOf(message.getPeerIds(), sender) < 0) {
+            return;
+        }
+
+        CharSequence groupId = message.getGroupId();
+        GroupState state = groups.get(groupId);
+        if (indexOf(message.getPeerIds(), asapPeer.getPeerID()) < 0) {
+            if (state != null) {
+                removeIfLeft(groupId, state, message, sender);
+            }
+            return;
+        }
+
+        if (state == null) {
+            if (round != GroupBDCredentialMessage.ROUND_ONE) {
+                // nobody can be in the second round before this peer sent its first one
+                return;
+            }
+            GroupState newState = new GroupState(message.getPeerIds(), message.getEpoch());
+            putValue(newState.zs, sender, message.getValue(), round);
+            state = groups.putIfAbsent(groupId, newState);
+            if (state == null) {
+                eventDispatcher.onReceiveGroupCredentials(message);
+                return;
+            }
+        }
+
+        synchronized (state) {
+            if (message.getEpoch() < state.epoch) {
+                return;
+            }
+            if (message.getEpoch() > state.epoch) {
+                // only a member of the current epoch can change the members
+                if (!state.peers.contains(sender)) {
+                    throw new ShiverPeerNotVerifiedException();
+                }
+                startEpoch(groupId, state, message.getPeerIds(), message.getEpoch());
+            } else if (state.done) {
+                return;
+            } else if (!state.peers.equals(toStrings(message.getPeerIds()))) {
+                throw new IllegalStateException("Conflicting members in epoch " + message.getEpoch() + " of group " + groupId);
+            }
+
+            putValue(round == GroupBDCredentialMessage.ROUND_ONE ? state.zs : state.xs, sender, message.getValue(), round);
+            try {
+                if (state.accepted && state.keyPair == null) {
+                    // members that accepted the group once take part in every later epoch on their own
+                    joinRoundOne(groupId, state);
+                }
+                progress(groupId, state);
+            } catch (Exception e) {
+                eventDispatcher.onErrorCreatingGroupKey(groupId, e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Forgets a group when a member of it started an epoch without this peer
+     */
+    private void removeIfLeft(CharSequence groupId, GroupState state, GroupBDCredentialMessage message, String sender) {
+        synchronized (state) {
+            if (message.getEpoch() <= state.epoch || !state.peers.contains(sender)) {
+                return;
+            }
+            groups.remove(groupId, state);
+            dhKeyPairStorage.deleteKeyPairForGroupId(groupId);
+            shiverKeyStorage.deleteKeyForGroup(groupId);
+        }
+    }
+
+    private void startEpoch(CharSequence groupId, GroupState state, List<CharSequence> peers, long epoch) {
+        List<String> newPeers = toStrings(peers);
+        if (!newPeers.containsAll(state.peers)) {
+            // remembered until the next group key is stored
+            state.membersRemoved = true;
+        }
+        state.peers = newPeers;
+        state.epoch = epoch;
+        state.zs.clear();
+        state.xs.clear();
+        state.keyPair = null;
+        state.done = false;
+        // every epoch uses a new secret
+        dhKeyPairStorage.deleteKeyPairForGroupId(groupId);
+    }
+
+    private void joinRoundOne(CharSequence groupId, GroupState state) throws ShiverDHKeyGenerationException, IOException, ASAPException {
+        state.keyPair = dhKeyPairStorage.getOrGenerateKeyPairForGroup(groupId);
+        BigInteger z = ((DHPublicKey) state.keyPair.getPublic()).getY();
+        state.zs.put(asapPeer.getPeerID().toString(), z);
+
+        sendMessage(groupId, state, GroupBDCredentialMessage.ROUND_ONE, z);
+    }
+
+    /**
+     * Sends the second round as soon as every first round value is there and computes the key as soon as every second round value is there
+     */
+    private void progress(CharSequence groupId, GroupState state) throws IOException, ASAPException, NoSuchAlgorithmException {
+        if (state.keyPair == null) {
+            // the invitation did not get accepted yet
+            return;
+        }
+        int n = state.peers.size();
+        int index = state.peers.indexOf(asapPeer.getPeerID().toString());
+        BigInteger r = ((DHPrivateKey) state.keyPair.getPrivate()).getX();
+
+        if (!state.xs.containsKey(state.peers.get(index))) {
+            if (state.zs.size() < n) {
+                return;
+            }
+            BigInteger left = state.zs.get(state.peers.get((index + n - 1) % n));
+            BigInteger right = state.zs.get(state.peers.get((index + 1) % n));
+            BigInteger x = right.multiply(left.modInverse(P)).mod(P).modPow(r, P);
+            state.xs.put(state.peers.get(index), x);
+
+            sendMessage(groupId, state, GroupBDCredentialMessage.ROUND_TWO, x);
+        }
+
+        if (state.xs.size() < n) {
+            return;
+        }
+
+        // t runs through g^(r_i-1 r_i), g^(r_i r_i+1), ... around the ring, the key is the product of all of them
+        BigInteger t = state.zs.get(state.peers.get((index + n - 1) % n)).modPow(r, P);
+        BigInteger secret = t;
+        for (int j = 1; j < n; j++) {
+            t = t.multiply(state.xs.get(state.peers.get((index + j - 1) % n))).mod(P);
+            secret = secret.multiply(t).mod(P);
+        }
+
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(secret.toByteArray());
+        Key finalKey = new SecretKeySpec(hash, 0, 16, "AES");
+        // the removed members still have the old key, it must not decrypt anything anymore
+        if (state.membersRemoved) {
+            shiverKeyStorage.replaceKeyForGroup(groupId, finalKey);
+            state.membersRemoved = false;
+        } else {
+            shiverKeyStorage.storeKeyForGroup(groupId, finalKey);
+        }
+
+        // the group state is kept so late copies of the messages do not start the group again
+        state.done = true;
+        state.keyPair = null;
+        state.zs.clear();
+        state.xs.clear();
+        dhKeyPairStorage.deleteKeyPairForGroupId(groupId);
+
+        eventDispatcher.onReceivedGroupKey(groupId);
+    }
+
+    private void sendMessage(CharSequence groupId, GroupState state, int round, BigInteger value) throws IOException, ASAPException {
+        GroupBDCredentialMessage message = new GroupBDCredentialMessage(
+                groupId,
+                asapPeer.getPeerID(),
+                new ArrayList<>(state.peers),
+                state.epoch,
+                round,
+                value.toByteArray()
+        );
+        byte[] signedMessage = ShiverSignedMessages.sign(asapPeer.getPeerID(), message.serialize(), sharkPKIComponent);
+
+        ShiverPaths path = round == GroupBDCredentialMessage.ROUND_ONE
+                ? ShiverPaths.SHIVER_GROUP_BD_MESSAGE_ROUND_ONE
+                : ShiverPaths.SHIVER_GROUP_BD_MESSAGE_ROUND_TWO;
+
+        asapPeer.sendASAPMessage(
+                ShiverComponent.SHARK_SHIVER_APP,
+                path.toString(),
+                signedMessage
+        );
+    }
+
+    /**
+     * Stores the value of a member. A member can only have one value per round, anything else is an attack or a bug
+     */
+    private static void putValue(Map<String, BigInteger> values, String peerId, byte[] valueBytes, int round) {
+        BigInteger value = new BigInteger(1, valueBytes);
+        // z has to be a real element of the group, X may be 1 because X_i = 1 for a group of two
+        BigInteger min = round == GroupBDCredentialMessage.ROUND_ONE ? BigInteger.TWO : BigInteger.ONE;
+        BigInteger max = round == GroupBDCredentialMessage.ROUND_ONE ? P.subtract(BigInteger.TWO) : P.subtract(BigInteger.ONE);
+        if (value.compareTo(min) < 0 || value.compareTo(max) > 0) {
+            throw new IllegalArgumentException("Invalid value of " + peerId + " in round " + round);
+        }
+
+        BigInteger known = values.putIfAbsent(peerId, value);
+        if (known != null && !known.equals(value)) {
+            throw new IllegalStateException("Conflicting values of " + peerId + " in round " + round);
+        }
+    }
+
+    private GroupState getOrCreateState(CharSequence groupId, GroupBDCredentialMessage message) {
+        GroupState state = groups.get(groupId);
+        if (state == null) {
+            GroupState newState = new GroupState(message.getPeerIds(), message.getEpoch());
+            state = groups.putIfAbsent(groupId, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+        return state;
+    }
+
+    private GroupState getAgreedState(CharSequence groupId) throws ShiverNoGroupKeyException {
+        GroupState state = groups.get(groupId);
+        if (state == null || !state.accepted || shiverKeyStorage.getKeyForGroup(groupId) == null) {
+            throw new ShiverNoGroupKeyException();
+        }
+        return state;
+    }
+
+    private static List<String> toStrings(List<CharSequence> peerIds) {
+        List<String> strings = new ArrayList<>();
+        for (CharSequence peerId : peerIds) {
+            strings.add(peerId.toString());
+        }
+        return strings;
+    }
+
+    private static int indexOf(List<CharSequence> peerIds, CharSequence peerId) {
+        return toStrings(peerIds).indexOf(peerId.toString());
+    }
+
+    private boolean isOwnPeer(CharSequence peerId) {
+        return asapPeer.getPeerID().toString().equals(peerId.toString());
+    }
+
+    private void verifyPeers(List<CharSequence> peers) throws ShiverPeerNotVerifiedException {
+        for (CharSequence peer : peers) {
+            if (!isOwnPeer(peer) && !verifyPeer(peer)) {
+                throw new ShiverPeerNotVerifiedException();
+            }
+        }
+    }
+
+    private boolean verifyPeer(CharSequence peerId) throws ShiverPeerNotVerifiedException {
+        return peerVerifier.verifyPeer(peerId);
+    }
+
+    /**
+     * What this peer knows about a group. Only used while holding its monitor
+     */
+    private static final class GroupState {
+        // peer ids as strings, so peers of different CharSequence types match
+        private List<String> peers;
+        private long epoch;
+        private final HashMap<String, BigInteger> zs = new HashMap<>();
+        private final HashMap<String, BigInteger> xs = new HashMap<>();
+        private KeyPair keyPair;
+        private boolean accepted = false;
+        private boolean done = false;
+        private boolean membersRemoved = false;
+
+        private GroupState(List<CharSequence> peers, long epoch) {
+            this.peers = toStrings(peers);
+            this.epoch = epoch;
+        }
+    }
+}
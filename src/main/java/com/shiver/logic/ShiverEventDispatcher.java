@@ -0,0 +1,261 @@
+package com.shiver.logic;
+
+import com.shiver.models.GroupCredentialMessage;
+import net.sharksystem.utils.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hands the events of a security to its listeners. Listeners can get added and removed from any thread at any time.
+ * <p>
+ * A synchronous dispatcher calls every listener on the thread that emits the event, one after another, like the
+ * securities always did. An exception of a listener reaches the security and the following listeners miss the event.
+ * <p>
+ * An asynchronous dispatcher gives every listener its own bounded queue that gets worked off on the executor, so a slow
+ * listener does not hold up the key exchange or the other listeners. Every listener gets its events one after another
+ * in the order they got emitted, the {@link OverflowPolicy} decides what happens when the queue of a listener is full.
+ * An exception of a listener only gets logged. Events the executor does not take get dropped.
+ */
+public class ShiverEventDispatcher implements ShiverEventListener {
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * What happens with an event for a listener whose queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * The emitting thread waits until the listener took an event, so no event gets lost.
+         * The securities emit while they hold the state of a group, so a slow listener holds up the key exchange.
+         * An event a listener emits itself, by calling back into the security, does not wait but drops the oldest
+         * event, the queue it waits for could be the one it is working off
+         */
+        BLOCK,
+        /**
+         * The new event gets dropped
+         */
+        DROP_NEWEST,
+        /**
+         * The oldest event in the queue gets dropped to make room for the new one
+         */
+        DROP_OLDEST
+    }
+
+    private final Executor executor;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private final CopyOnWriteArrayList<ListenerQueue> listenerQueues = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong droppedEventCount = new AtomicLong();
+
+    // set while a thread calls a listener, events it emits must not wait for the queues
+    private final ThreadLocal<Boolean> callingListener = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Creates a synchronous dispatcher
+     */
+    public ShiverEventDispatcher() {
+        this.executor = null;
+        this.queueCapacity = 0;
+        this.overflowPolicy = null;
+    }
+
+    /**
+     * Creates an asynchronous dispatcher that queues up to {@value #DEFAULT_QUEUE_CAPACITY} events per listener
+     * and drops the oldest event when a queue is full, so the emitting security never waits for a listener
+     *
+     * @param executor - executor the listeners get called on
+     */
+    public ShiverEventDispatcher(Executor executor) {
+        this(executor, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Creates an asynchronous dispatcher
+     *
+     * @param executor       - executor the listeners get called on
+     * @param queueCapacity  - how many events get queued per listener at most
+     * @param overflowPolicy - what happens with an event for a listener whose queue is full
+     */
+    public ShiverEventDispatcher(Executor executor, int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (executor == null || overflowPolicy == null) {
+            throw new IllegalArgumentException("executor and overflowPolicy are needed for an asynchronous dispatcher");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity has to be at least 1");
+        }
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return - true if the listeners get called on the thread that emits the event
+     */
+    public boolean isSynchronous() {
+        return executor == null;
+    }
+
+    /**
+     * @param shiverEventListener - listener to add
+     */
+    public void addListener(ShiverEventListener shiverEventListener) {
+        listenerQueues.add(new ListenerQueue(shiverEventListener));
+    }
+
+    /**
+     * Removes the listener, events that are still queued for it get dropped
+     *
+     * @param shiverEventListener - listener to remove
+     */
+    public void removeListener(ShiverEventListener shiverEventListener) {
+        for (ListenerQueue listenerQueue : listenerQueues) {
+            if (listenerQueue.listener.equals(shiverEventListener)) {
+                listenerQueue.removed.set(true);
+                listenerQueues.remove(listenerQueue);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return - every listener in the order it got added
+     */
+    public List<ShiverEventListener> getListeners() {
+        List<ShiverEventListener> listeners = new ArrayList<>();
+        for (ListenerQueue listenerQueue : listenerQueues) {
+            listeners.add(listenerQueue.listener);
+        }
+        return listeners;
+    }
+
+    /**
+     * @return - how many events got dropped because the queue of a listener was full
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    @Override
+    public void onReceiveGroupCredentials(GroupCredentialMessage groupCredentialMessage) {
+        dispatch(listener -> listener.onReceiveGroupCredentials(groupCredentialMessage));
+    }
+
+    @Override
+    public void onErrorReceivingGroupCredentialMessage(String path, Exception exception) {
+        dispatch(listener -> listener.onErrorReceivingGroupCredentialMessage(path, exception));
+    }
+
+    @Override
+    public void onReceivedGroupKey(CharSequence groupId) {
+        dispatch(listener -> listener.onReceivedGroupKey(groupId));
+    }
+
+    @Override
+    public void onErrorCreatingGroupKey(CharSequence groupId, Exception exception) {
+        dispatch(listener -> listener.onErrorCreatingGroupKey(groupId, exception));
+    }
+
+    private void dispatch(Consumer<ShiverEventListener> event) {
+        for (ListenerQueue listenerQueue : listenerQueues) {
+            if (isSynchronous()) {
+                event.accept(listenerQueue.listener);
+            } else {
+                listenerQueue.enqueue(event);
+            }
+        }
+    }
+
+    /**
+     * The events of one listener. At most one task of the executor works the queue off at a time,
+     * so the listener gets its events one after another in their order
+     */
+    private class ListenerQueue {
+        private final ShiverEventListener listener;
+        private final ArrayBlockingQueue<Consumer<ShiverEventListener>> events;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final AtomicBoolean removed = new AtomicBoolean(false);
+
+        private ListenerQueue(ShiverEventListener listener) {
+            this.listener = listener;
+            this.events = isSynchronous() ? null : new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        private void enqueue(Consumer<ShiverEventListener> event) {
+            OverflowPolicy policy = overflowPolicy == OverflowPolicy.BLOCK && callingListener.get() ? OverflowPolicy.DROP_OLDEST : overflowPolicy;
+            switch (policy) {
+                case BLOCK -> {
+                    try {
+                        events.put(event);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        droppedEventCount.incrementAndGet();
+                        return;
+                    }
+                }
+                case DROP_NEWEST -> {
+                    if (!events.offer(event)) {
+                        droppedEventCount.incrementAndGet();
+                        return;
+                    }
+                }
+                case DROP_OLDEST -> {
+                    while (!events.offer(event)) {
+                        if (events.poll() != null) {
+                            droppedEventCount.incrementAndGet();
+                        }
+                    }
+                }
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::workOff);
+                } catch (RejectedExecutionException e) {
+                    // nobody works the queue off, a waiting emitter would wait forever and the next event tries again
+                    scheduled.set(false);
+                    int droppedEvents = 0;
+                    while (events.poll() != null) {
+                        droppedEvents++;
+                    }
+                    droppedEventCount.addAndGet(droppedEvents);
+                    Log.writeLogErr(ShiverEventDispatcher.this, "Executor rejected the events of a listener, dropped " + droppedEvents, e.getMessage());
+                }
+            }
+        }
+
+        private void workOff() {
+            Consumer<ShiverEventListener> event;
+            // an executor that runs the task right away can get here from within another listener
+            boolean wasCallingListener = callingListener.get();
+            callingListener.set(true);
+            try {
+                while (!removed.get() && (event = events.poll()) != null) {
+                    try {
+                        event.accept(listener);
+                    } catch (RuntimeException e) {
+                        Log.writeLogErr(ShiverEventDispatcher.this, "Listener failed to handle an event", e.getMessage());
+                    }
+                }
+            } finally {
+                callingListener.set(wasCallingListener);
+            }
+            scheduled.set(false);
+            // an event that got queued after the last poll but before the flag got reset would wait for the next one otherwise
+            if (!removed.get() && !events.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
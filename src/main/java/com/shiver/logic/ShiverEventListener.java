@@ -30,4 +30,14 @@ public interface ShiverEventListener {
      * @param groupId - if of the group that is ready to use
      */
     void onReceivedGroupKey(CharSequence groupId);
+
+    /**
+     * Gets called when this peer can not finish the key exchange of a group, no group key is going to come from it.
+     * Does nothing by default, so listeners written before this event do not need to change
+     *
+     * @param groupId   - id of the group whose exchange failed
+     * @param exception - exception that stopped the exchange
+     */
+    default void onErrorCreatingGroupKey(CharSequence groupId, Exception exception) {
+    }
 }
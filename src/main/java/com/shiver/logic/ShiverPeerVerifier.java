@@ -0,0 +1,177 @@
+package com.shiver.logic;
+
+import com.shiver.exceptions.ShiverPeerNotVerifiedException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.pki.SharkPKIComponent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Checks if the owner of the PKI has a certificate for a peer and caches the peers that have one by issuer and subject.
+ * The same members get verified for every message of a key exchange, looking the certificate up once per time to live is enough.
+ * <p>
+ * Only verified peers get cached, so a certificate that got added to the PKI counts right away.
+ * A certificate that got removed still counts until the time to live is over or {@link #invalidate} gets called for the peer.
+ * Thread safe.
+ */
+public class ShiverPeerVerifier {
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private final SharkPKIComponent sharkPKIComponent;
+    private final long timeToLiveNanos;
+    private final int maxEntries;
+    private final LongSupplier nanoClock;
+
+    // in the order of the last access, so the peer that got verified the longest time ago gets dropped first
+    private final LinkedHashMap<CacheKey, Long> verifiedUntil;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates a verifier that caches up to {@value #DEFAULT_MAX_ENTRIES} peers for a minute
+     *
+     * @param sharkPKIComponent - PKI holding the certificates
+     */
+    public ShiverPeerVerifier(SharkPKIComponent sharkPKIComponent) {
+        this(sharkPKIComponent, DEFAULT_TIME_TO_LIVE_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param sharkPKIComponent  - PKI holding the certificates
+     * @param timeToLiveMillis   - how long a verified peer counts as verified without looking at the PKI again, 0 turns the cache off
+     * @param maxEntries         - how many verified peers get cached at most
+     */
+    public ShiverPeerVerifier(SharkPKIComponent sharkPKIComponent, long timeToLiveMillis, int maxEntries) {
+        this(sharkPKIComponent, timeToLiveMillis, maxEntries, System::nanoTime);
+    }
+
+    ShiverPeerVerifier(SharkPKIComponent sharkPKIComponent, long timeToLiveMillis, int maxEntries, LongSupplier nanoClock) {
+        if (timeToLiveMillis < 0) {
+            throw new IllegalArgumentException("timeToLiveMillis can not be negative");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries has to be at least 1");
+        }
+        this.sharkPKIComponent = sharkPKIComponent;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.maxEntries = maxEntries;
+        this.nanoClock = nanoClock;
+        this.verifiedUntil = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Long> eldest) {
+                return size() > ShiverPeerVerifier.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param peerId - id of the peer
+     * @return - true if the owner of the PKI has a certificate for the peer
+     * @throws ShiverPeerNotVerifiedException - Gets thrown if the PKI fails to look up the certificate
+     */
+    public boolean verifyPeer(CharSequence peerId) throws ShiverPeerNotVerifiedException {
+        CacheKey cacheKey = new CacheKey(sharkPKIComponent.getOwnerID(), peerId);
+
+        long now = nanoClock.getAsLong();
+        synchronized (verifiedUntil) {
+            Long until = verifiedUntil.get(cacheKey);
+            if (until != null) {
+                if (now - until < 0) {
+                    hitCount.incrementAndGet();
+                    return true;
+                }
+                verifiedUntil.remove(cacheKey);
+            }
+        }
+        missCount.incrementAndGet();
+
+        boolean verified;
+        try {
+            verified = sharkPKIComponent.getCertificateByIssuerAndSubject(cacheKey.issuer, peerId) != null;
+        } catch (ASAPSecurityException e) {
+            throw new ShiverPeerNotVerifiedException(e);
+        }
+
+        if (verified && timeToLiveNanos > 0) {
+            synchronized (verifiedUntil) {
+                verifiedUntil.put(cacheKey, now + timeToLiveNanos);
+            }
+        }
+        return verified;
+    }
+
+    /**
+     * Forgets every cached verification of a peer, for example after its certificate got removed or replaced
+     *
+     * @param peerId - id of the peer
+     */
+    public void invalidate(CharSequence peerId) {
+        String subject = peerId.toString();
+        synchronized (verifiedUntil) {
+            Iterator<CacheKey> cacheKeys = verifiedUntil.keySet().iterator();
+            while (cacheKeys.hasNext()) {
+                if (cacheKeys.next().subject.equals(subject)) {
+                    cacheKeys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets every cached verification, for example after the certificates of the PKI got synchronized
+     */
+    public void invalidateAll() {
+        synchronized (verifiedUntil) {
+            verifiedUntil.clear();
+        }
+    }
+
+    /**
+     * @return - how many verifications were answered out of the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return - how many verifications had to look at the PKI
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static final class CacheKey {
+        private final String issuer;
+        private final String subject;
+
+        private CacheKey(CharSequence issuer, CharSequence subject) {
+            this.issuer = issuer == null ? null : issuer.toString();
+            this.subject = subject.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(issuer, cacheKey.issuer) && subject.equals(cacheKey.subject);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(issuer, subject);
+        }
+    }
+}
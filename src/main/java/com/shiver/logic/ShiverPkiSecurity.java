@@ -1,45 +1,217 @@
 package com.shiver.logic;
 
 import com.shiver.components.ShiverComponent;
+import com.shiver.crypto.ShiverKeyAgreement;
+import com.shiver.crypto.ShiverKeyAgreements;
 import com.shiver.exceptions.ShiverDHKeyGenerationException;
 import com.shiver.exceptions.ShiverGroupSizeException;
+import com.shiver.exceptions.ShiverNoGroupKeyException;
 import com.shiver.exceptions.ShiverPeerNotVerifiedException;
 import com.shiver.exceptions.ShiverUnknownURIException;
 import com.shiver.models.GroupCredentialMessage;
 import com.shiver.models.GroupCredentialMessageImpl;
+import com.shiver.models.GroupKeyMessage;
 import com.shiver.models.ShiverPaths;
 import com.shiver.storage.ShiverDHKeyPairStorage;
 import com.shiver.storage.ShiverKeyStorage;
+import com.shiver.storage.ShiverSeenMessageStorage;
+import com.shiver.storage.ShiverSeenMessageStorageInMemo;
 import net.sharksystem.asap.*;
 import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
 import net.sharksystem.pki.SharkPKIComponent;
 import net.sharksystem.utils.Log;
 
-import javax.crypto.KeyAgreement;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is the main implementation of the [ShiverSecurity] interface.
  */
 public class ShiverPkiSecurity implements ShiverSecurity, ASAPMessageReceivedListener {
+    // below this many receivers handing the packages to other threads costs more than encrypting them right away
+    private static final int PARALLEL_BROADCAST_THRESHOLD = 8;
+
     private ASAPPeer asapPeer;
     private final SharkPKIComponent sharkPKIComponent;
     private final ShiverDHKeyPairStorage dhKeyPairStorage;
 
     private final ShiverKeyStorage shiverKeyStorage;
 
-    private final List<ShiverEventListener> messageReceivers = new ArrayList<>();
+    private ShiverPeerVerifier peerVerifier;
+
+    private ShiverEventDispatcher eventDispatcher = new ShiverEventDispatcher();
+
+    // the last broadcast of every group with a key, it holds the intermediate key of every member without its own private key
+    private final ConcurrentHashMap<String, GroupCredentialMessage> agreedGroups = new ConcurrentHashMap<>();
+
+    private ShiverKeyAgreement keyAgreement = ShiverKeyAgreements.DH;
+
+    // the key agreements every peer named in the messages this peer received, peers without an entry only know DH
+    private final ConcurrentHashMap<String, List<String>> peerKeyAgreements = new ConcurrentHashMap<>();
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+    private boolean tailoredBroadcast = false;
+
+    private int maxParallelReceives = 1;
+
+    // set on the threads that handle received messages at the same time, see getKeyExecutor
+    private final ThreadLocal<Boolean> onReceiveTask = ThreadLocal.withInitial(() -> false);
+
+    private ShiverSeenMessageStorage seenMessageStorage = new ShiverSeenMessageStorageInMemo();
+    private final AtomicLong suppressedDuplicateCount = new AtomicLong();
+
+    // the epoch of the key of every group, broadcasts of older epochs are outdated
+    private final ConcurrentHashMap<String, Long> groupEpochs = new ConcurrentHashMap<>();
 
     public ShiverPkiSecurity(SharkPKIComponent sharkPKIComponent, ShiverDHKeyPairStorage dhKeyPairStorage, ShiverKeyStorage shiverKeyStorage) {
         this.sharkPKIComponent = sharkPKIComponent;
         this.dhKeyPairStorage = dhKeyPairStorage;
         this.shiverKeyStorage = shiverKeyStorage;
+        this.peerVerifier = new ShiverPeerVerifier(sharkPKIComponent);
+    }
+
+    /**
+     * Sets the verifier that checks the certificates of the members, for example to share one cache between securities
+     * or to change its time to live
+     *
+     * @param peerVerifier - verifier using the same PKI
+     */
+    public void setPeerVerifier(ShiverPeerVerifier peerVerifier) {
+        this.peerVerifier = peerVerifier;
+    }
+
+    /**
+     * @return - the verifier that checks the certificates of the members, with the counters of its cache
+     */
+    public ShiverPeerVerifier getPeerVerifier() {
+        return peerVerifier;
+    }
+
+    /**
+     * Sets the dispatcher that hands the events to the listeners, for example an asynchronous one so a slow listener does
+     * not hold up the key exchange. The listeners that got added before move to the new dispatcher.
+     * With an asynchronous dispatcher a received message counts as handled once its events are queued, an exception of a
+     * listener does not make it get tried again. Defaults to a synchronous {@link ShiverEventDispatcher}
+     *
+     * @param eventDispatcher - dispatcher for the events of this security
+     */
+    public void setEventDispatcher(ShiverEventDispatcher eventDispatcher) {
+        for (ShiverEventListener shiverEventListener : this.eventDispatcher.getListeners()) {
+            eventDispatcher.addListener(shiverEventListener);
+        }
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    /**
+     * @return - the dispatcher that hands the events to the listeners
+     */
+    public ShiverEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    /**
+     * Sets the key agreement this peer prefers for the groups it starts. A group only uses it if every other member is known
+     * to support it, see {@link #rememberKeyAgreements(CharSequence, List)}, otherwise it uses {@link ShiverKeyAgreements#DH}.
+     * The other members use the agreement the initiator picked. Defaults to {@link ShiverKeyAgreements#DH}, because older peers only know DH
+     *
+     * @param keyAgreement - preferred agreement for new groups
+     */
+    public void setKeyAgreement(ShiverKeyAgreement keyAgreement) {
+        this.keyAgreement = keyAgreement;
+    }
+
+    /**
+     * Remembers the key agreements a peer supports. Every group credential message names the agreements of the members
+     * that handled it, so they get learned with every exchange. This is for peers this peer never shared a group with.
+     * A peer that named its agreements also gets the messages in the binary format, older peers get java serialization
+     *
+     * @param peerId            - id of the peer
+     * @param keyAgreementNames - names of the agreements the peer supports, see {@link ShiverKeyAgreements}
+     */
+    public void rememberKeyAgreements(CharSequence peerId, List<String> keyAgreementNames) {
+        peerKeyAgreements.put(peerId.toString(), List.copyOf(keyAgreementNames));
+    }
+
+    /**
+     * @param peerId - id of the peer
+     * @return - names of the key agreements the peer is known to support, empty if this peer knows none of them
+     */
+    public List<String> getKnownKeyAgreements(CharSequence peerId) {
+        return peerKeyAgreements.getOrDefault(peerId.toString(), List.of());
+    }
+
+    /**
+     * Sets the executor the intermediate keys of the members get computed on. They do not depend on each other,
+     * so big groups get them computed on all cores. Defaults to the common {@link ForkJoinPool}.
+     * The messages are the same no matter which executor computes them
+     *
+     * @param executor - executor for the key computations, {@code Runnable::run} computes them one after another
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets how many received messages of one batch get decrypted and parsed at the same time on the executor.
+     * After an outage a peer receives many messages at once, each one costs a decryption and mostly a key agreement.
+     * Messages of the same group still get handled one after another in the order they arrived, so their listener
+     * callbacks keep that order. Callbacks of different groups can happen at the same time on different threads.
+     * Defaults to 1, which handles every message one after another on the thread that delivers them.
+     * Messages handled at the same time compute their keys and encrypt their broadcasts on their own thread,
+     * so a bounded executor does not run out of threads while the tasks wait for each other
+     *
+     * @param maxParallelReceives - how many messages get handled at the same time at most
+     */
+    public void setMaxParallelReceives(int maxParallelReceives) {
+        if (maxParallelReceives < 1) {
+            throw new IllegalArgumentException("maxParallelReceives has to be at least 1");
+        }
+        this.maxParallelReceives = maxParallelReceives;
+    }
+
+    /**
+     * Sets the storage that remembers the handled messages. ASAP delivers stored messages again on every encounter,
+     * messages that already got handled get dropped before they get decrypted. Only messages that got handled without an
+     * error get remembered, so a message that failed gets tried again on the next delivery.
+     * Defaults to a {@link ShiverSeenMessageStorageInMemo}, a storage that keeps the digests across restarts also drops
+     * messages that got handled before the restart
+     *
+     * @param seenMessageStorage - storage for the digests of the handled messages
+     */
+    public void setSeenMessageStorage(ShiverSeenMessageStorage seenMessageStorage) {
+        this.seenMessageStorage = seenMessageStorage;
+    }
+
+    /**
+     * @return - how many received messages got dropped because they already got handled
+     */
+    public long getSuppressedDuplicateCount() {
+        return suppressedDuplicateCount.get();
+    }
+
+    /**
+     * Sets if the last member sends every other member only its own intermediate key instead of the keys of all members.
+     * This makes the broadcast grow linear instead of quadratic with the size of the group. Every peer reads both kinds of
+     * broadcasts, but peers on older versions only read the full one, so this is off by default.
+     * Members that got a tailored broadcast do not know the keys of the others, so only the member that sent the
+     * broadcast can add or remove members afterwards
+     *
+     * @param tailoredBroadcast - true to send every member only its own key
+     */
+    public void setTailoredBroadcast(boolean tailoredBroadcast) {
+        this.tailoredBroadcast = tailoredBroadcast;
     }
 
     @Override
@@ -51,12 +223,12 @@ public class ShiverPkiSecurity implements ShiverSecurity, ASAPMessageReceivedLis
 
     @Override
     public void addShiverEventListener(ShiverEventListener shiverEventListener) {
-        this.messageReceivers.add(shiverEventListener);
+        this.eventDispatcher.addListener(shiverEventListener);
     }
 
     @Override
     public void removeShiverEventListener(ShiverEventListener shiverEventListener) {
-        this.messageReceivers.remove(shiverEventListener);
+        this.eventDispatcher.removeListener(shiverEventListener);
     }
 
     @Override
@@ -78,25 +250,30 @@ public class ShiverPkiSecurity implements ShiverSecurity, ASAPMessageReceivedLis
         }
 
         CharSequence groupId = UUID.randomUUID().toString();
+        ShiverKeyAgreement keyAgreement = negotiateKeyAgreement(orderedListOfPeers);
 
-        KeyPair ownGroupKeyPair = dhKeyPairStorage.getOrGenerateKeyPairForGroup(groupId);
+        KeyPair ownGroupKeyPair = getKeyPairForGroup(groupId, keyAgreement);
 
         HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        // every peer starts with the same key, the message writes it only once
+        byte[] ownPublicKey = ShiverPublicKeys.encode(ownGroupKeyPair.getPublic());
 
         for (CharSequence peer : orderedListOfPeers) {
             if (peer != asapPeer.getPeerID()) {
-                keys.put(peer, getPublicKeyBytes(ownGroupKeyPair.getPublic()));
+                keys.put(peer, ownPublicKey);
             }
         }
 
-        GroupCredentialMessage groupCredentialMessage = new GroupCredentialMessageImpl(
-                groupId,
-                orderedListOfPeers,
-                keys
-        );
+        GroupCredentialMessage groupCredentialMessage = new GroupCredentialMessageImpl.Builder()
+                .setGroupId(groupId)
+                .setPeerIds(orderedListOfPeers)
+                .putKeys(keys)
+                .setKeyAgreementAlgorithm(keyAgreement.getName())
+                .putSupportedKeyAgreements(asapPeer.getPeerID(), ShiverKeyAgreements.getNames())
+                .build();
 
         CharSequence receiver = orderedListOfPeers.get(1);
-        byte[] messageBytes = groupCredentialMessage.serialize();
+        byte[] messageBytes = serializeFor(groupCredentialMessage, List.of(receiver));
 
         byte[] encryptedMessage = ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messageBytes, receiver, sharkPKIComponent);
 
@@ -110,58 +287,61 @@ public class ShiverPkiSecurity implements ShiverSecurity, ASAPMessageReceivedLis
 
     @Override
     public void acceptGroupCredentialMessage(GroupCredentialMessage groupCredentialMessage) throws IOException, ASAPException, ShiverDHKeyGenerationException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException, ShiverPeerNotVerifiedException {
-        List<CharSequence> peers = groupCredentialMessage.getPeerIds();
-        boolean isLast = peers.indexOf(asapPeer.getPeerID()) == peers.size() - 1;
+        int peerCount = groupCredentialMessage.getPeerCount();
+        int ownIndex = groupCredentialMessage.indexOfPeer(asapPeer.getPeerID());
+        boolean isLast = ownIndex == peerCount - 1;
 
-        KeyPair keyPair = dhKeyPairStorage.getOrGenerateKeyPairForGroup(groupCredentialMessage.getGroupId());
-        KeyAgreement keyAgreement = KeyAgreement.getInstance("DH");
-        keyAgreement.init(keyPair.getPrivate());
+        ShiverKeyAgreement keyAgreement = ShiverKeyAgreements.forName(groupCredentialMessage.getKeyAgreementAlgorithm());
+        KeyPair keyPair = getKeyPairForGroup(groupCredentialMessage.getGroupId(), keyAgreement);
 
         if (isLast) {
-            for (CharSequence peer : peers) {
-                if (peer != asapPeer.getPeerID()) {
-                    if (!verifyPeer(peer)) {
+            for (int i = 0; i < peerCount; i++) {
+                if (i != ownIndex) {
+                    if (!verifyPeer(groupCredentialMessage.getPeerId(i))) {
                         throw new ShiverPeerNotVerifiedException();
                     }
                 }
             }
 
-            Key key = readPublicKeyFromBytes(groupCredentialMessage.getKeys().get(asapPeer.getPeerID()));
-            keyAgreement.doPhase(key, true);
-
-            byte[] secret = keyAgreement.generateSecret();
-            Key finalKey = new SecretKeySpec(secret, 0, 16, "AES");
+            PublicKey key = ShiverPublicKeys.decode(groupCredentialMessage.getKey(asapPeer.getPeerID()));
+            Key finalKey = keyAgreement.generateGroupKey(keyPair.getPrivate(), key);
 
             shiverKeyStorage.storeKeyForGroup(groupCredentialMessage.getGroupId(), finalKey);
 
-            for (ShiverEventListener messageReceiver : messageReceivers) {
-                messageReceiver.onReceivedGroupKey(groupCredentialMessage.getGroupId());
-            }
+            eventDispatcher.onReceivedGroupKey(groupCredentialMessage.getGroupId());
         } else {
-            CharSequence receiver = peers.get(peers.indexOf(asapPeer.getPeerID()) + 1);
-            if (verifyPeer(receiver)) {
+            CharSequence receiver = groupCredentialMessage.getPeerId(ownIndex + 1);
+            if (!verifyPeer(receiver)) {
                 throw new ShiverPeerNotVerifiedException();
             }
         }
 
-        for (CharSequence peer : peers) {
-            if (peer == asapPeer.getPeerID()) {
-                continue;
+        List<CharSequence> otherPeers = new ArrayList<>(peerCount);
+        for (int i = 0; i < peerCount; i++) {
+            CharSequence peer = groupCredentialMessage.getPeerId(i);
+            if (!isOwnPeer(peer)) {
+                otherPeers.add(peer);
             }
+        }
 
-            byte[] oldKey = groupCredentialMessage.getKeys().get(peer);
-            if (oldKey != null) {
-                Key key = readPublicKeyFromBytes(oldKey);
-                Key newKey = keyAgreement.doPhase(key, false);
-                groupCredentialMessage.putKeyForPeerId(peer, getPublicKeyBytes(newKey));
-            } else {
-                groupCredentialMessage.putKeyForPeerId(peer, getPublicKeyBytes(keyPair.getPublic()));
+        byte[] ownPublicKey = ShiverPublicKeys.encode(keyPair.getPublic());
+        Map<CharSequence, byte[]> newKeys = computeKeys(otherPeers, peer -> {
+            byte[] oldKey = groupCredentialMessage.getKey(peer);
+            if (oldKey == null) {
+                return ownPublicKey;
             }
-        }
+            PublicKey key = ShiverPublicKeys.decode(oldKey);
+            return ShiverPublicKeys.encode(keyAgreement.combine(keyPair.getPrivate(), key));
+        });
+        // the received message stays as it is, the next hop gets built from it with one copy
+        GroupCredentialMessage nextMessage = new GroupCredentialMessageImpl.Builder(groupCredentialMessage)
+                .putKeys(newKeys)
+                .putSupportedKeyAgreements(asapPeer.getPeerID(), ShiverKeyAgreements.getNames())
+                .build();
 
         if (!isLast) {
-            CharSequence receiver = peers.get(peers.indexOf(asapPeer.getPeerID()) + 1);
-            byte[] messageBytes = groupCredentialMessage.serialize();
+            CharSequence receiver = nextMessage.getPeerId(ownIndex + 1);
+            byte[] messageBytes = serializeFor(nextMessage, List.of(receiver));
 
             byte[] encryptedMessage = ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messageBytes, receiver, sharkPKIComponent);
 
@@ -171,138 +351,609 @@ public class ShiverPkiSecurity implements ShiverSecurity, ASAPMessageReceivedLis
                     encryptedMessage
             );
         } else {
-            for (CharSequence peer : peers) {
-                if (peer == asapPeer.getPeerID()) {
-                    continue;
-                }
+            rememberGroup(nextMessage);
+
+            broadcast(nextMessage, otherPeers);
+        }
+    }
+
+    /**
+     * Adds members without a new exchange through every member.
+     * This peer blinds the intermediate key of every member with a new secret, so every old member only has to apply
+     * its own private key once more when the broadcast of the new members arrives. The new members get the upflow
+     * like in a new exchange, the last of them broadcasts. The new members can not compute any of the old keys.
+     * Every old member needs a single agreement, but this peer needs one per old member, see {@link #blind}.
+     */
+    @Override
+    public void addPeersToGroup(CharSequence groupId, List<CharSequence> peers) throws ShiverNoGroupKeyException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        GroupCredentialMessage agreedGroup = getAgreedGroup(groupId);
+        List<CharSequence> members = agreedGroup.getPeerIds();
+
+        List<CharSequence> newPeers = new ArrayList<>();
+        for (CharSequence peer : peers) {
+            if (agreedGroup.indexOfPeer(peer) < 0 && !containsPeer(newPeers, peer)) {
+                newPeers.add(peer);
+            }
+        }
+        if (newPeers.isEmpty()) {
+            return;
+        }
+        for (CharSequence peer : newPeers) {
+            if (!verifyPeer(peer)) {
+                throw new ShiverPeerNotVerifiedException();
+            }
+        }
+
+        ShiverKeyAgreement keyAgreement = ShiverKeyAgreements.forName(agreedGroup.getKeyAgreementAlgorithm());
+        KeyPair keyPair = getKeyPairForGroup(groupId, keyAgreement);
+        PrivateKey blindingKey = generateBlindingKey(keyAgreement);
 
-                groupCredentialMessage.getKeys().remove(asapPeer.getPeerID());
+        HashMap<CharSequence, byte[]> keys = blind(agreedGroup, members, keyAgreement, blindingKey);
 
-                byte[] messageBytes = groupCredentialMessage.serialize();
+        // the new members start from the key of all old members
+        PublicKey ownKey = ShiverPublicKeys.decode(agreedGroup.getKey(asapPeer.getPeerID()));
+        byte[] oldMembersKey = ShiverPublicKeys.encode(keyAgreement.combine(blindingKey, keyAgreement.combine(keyPair.getPrivate(), ownKey)));
+        for (CharSequence peer : newPeers) {
+            keys.put(peer, oldMembersKey);
+        }
 
-                byte[] encryptedMessage = ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messageBytes, peer, sharkPKIComponent);
+        List<CharSequence> allPeers = new ArrayList<>(members);
+        allPeers.addAll(newPeers);
 
-                asapPeer.sendASAPMessage(
-                        ShiverComponent.SHARK_SHIVER_APP,
-                        ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST.toString(),
-                        encryptedMessage
-                );
+        GroupCredentialMessage groupCredentialMessage = new GroupCredentialMessageImpl(
+                groupId,
+                allPeers,
+                keys,
+                keyAgreement.getName(),
+                agreedGroup.getEpoch() + 1
+        );
+
+        byte[] encryptedMessage = ASAPCryptoAlgorithms.produceEncryptedMessagePackage(serializeFor(groupCredentialMessage, List.of(newPeers.get(0))), newPeers.get(0), sharkPKIComponent);
+
+        asapPeer.sendASAPMessage(
+                ShiverComponent.SHARK_SHIVER_APP,
+                ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW.toString(),
+                encryptedMessage
+        );
+    }
+
+    /**
+     * Removes members without a new exchange through every member.
+     * This peer blinds the intermediate key of every remaining member with a new secret and broadcasts them,
+     * so every remaining member only has to apply its own private key once. The removed members do not get the broadcast
+     * and can not compute the new key out of the old one without the new secret.
+     * Every remaining member needs a single agreement, but this peer needs one per remaining member, see {@link #blind}.
+     */
+    @Override
+    public void removePeersFromGroup(CharSequence groupId, List<CharSequence> peers) throws ShiverNoGroupKeyException, ShiverGroupSizeException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        GroupCredentialMessage agreedGroup = getAgreedGroup(groupId);
+        if (containsPeer(peers, asapPeer.getPeerID())) {
+            throw new IllegalArgumentException("The own peer can not get removed");
+        }
+
+        Set<String> removedPeers = new HashSet<>();
+        for (CharSequence peer : peers) {
+            removedPeers.add(peer.toString());
+        }
+        List<CharSequence> remainingPeers = new ArrayList<>();
+        for (int i = 0; i < agreedGroup.getPeerCount(); i++) {
+            CharSequence member = agreedGroup.getPeerId(i);
+            if (!removedPeers.contains(member.toString())) {
+                remainingPeers.add(member);
             }
         }
+        if (remainingPeers.size() == agreedGroup.getPeerCount()) {
+            return;
+        }
+        if (remainingPeers.size() <= 1) {
+            throw new ShiverGroupSizeException();
+        }
+
+        ShiverKeyAgreement keyAgreement = ShiverKeyAgreements.forName(agreedGroup.getKeyAgreementAlgorithm());
+        KeyPair keyPair = getKeyPairForGroup(groupId, keyAgreement);
+        PrivateKey blindingKey = generateBlindingKey(keyAgreement);
+
+        GroupCredentialMessage groupCredentialMessage = new GroupCredentialMessageImpl(
+                groupId,
+                remainingPeers,
+                blind(agreedGroup, remainingPeers, keyAgreement, blindingKey),
+                keyAgreement.getName(),
+                agreedGroup.getEpoch() + 1
+        );
+
+        PublicKey key = ShiverPublicKeys.decode(groupCredentialMessage.getKey(asapPeer.getPeerID()));
+        Key finalKey = keyAgreement.generateGroupKey(keyPair.getPrivate(), key);
+
+        // the removed members still have the old key, it must not decrypt anything anymore
+        shiverKeyStorage.replaceKeyForGroup(groupId, finalKey);
+        rememberGroup(groupCredentialMessage);
+
+        List<CharSequence> otherPeers = new ArrayList<>();
+        for (CharSequence peer : remainingPeers) {
+            if (!isOwnPeer(peer)) {
+                otherPeers.add(peer);
+            }
+        }
+        broadcast(groupCredentialMessage, otherPeers);
+
+        eventDispatcher.onReceivedGroupKey(groupId);
     }
 
     @Override
-    public void asapMessagesReceived(ASAPMessages asapMessages, String s, List<ASAPHop> list) throws IOException {
+    public void asapMessagesReceived(ASAPMessages asapMessages, String sender, List<ASAPHop> list) throws IOException {
         URI messageUri = URI.create(asapMessages.getURI().toString());
         ShiverPaths path = ShiverPaths.parsePathByValue(messageUri.getPath());
 
         if (path == null) {
             Log.writeLogErr(this, "Error receiving message for an unknown path");
-            for (ShiverEventListener messageReceiver : messageReceivers) {
-                messageReceiver.onErrorReceivingGroupCredentialMessage(asapMessages.getURI().toString(), new ShiverUnknownURIException());
+            eventDispatcher.onErrorReceivingGroupCredentialMessage(asapMessages.getURI().toString(), new ShiverUnknownURIException());
+
+            return;
+        }
+
+        String uri = asapMessages.getURI().toString();
+        List<byte[]> messages = new ArrayList<>();
+        List<byte[]> digests = new ArrayList<>();
+        Set<ByteBuffer> batchDigests = new HashSet<>();
+        Iterator<byte[]> messageIterator = asapMessages.getMessages();
+        while (messageIterator.hasNext()) {
+            byte[] message = messageIterator.next();
+
+            byte[] digest = digest(message);
+            if (seenMessageStorage.isMessageSeen(digest) || !batchDigests.add(ByteBuffer.wrap(digest))) {
+                suppressedDuplicateCount.incrementAndGet();
+                continue;
             }
+            messages.add(message);
+            digests.add(digest);
+        }
 
+        if (maxParallelReceives <= 1 || messages.size() <= 1) {
+            for (int i = 0; i < messages.size(); i++) {
+                handleReceivedMessage(path, uri, sender, decodeReceivedMessage(path, messages.get(i), digests.get(i)));
+            }
             return;
         }
 
-        switch (path) {
-            case SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW -> {
-                Iterator<byte[]> messages = asapMessages.getMessages();
-                while (messages.hasNext()) {
-                    byte[] message = messages.next();
+        ReceivedMessage[] receivedMessages = new ReceivedMessage[messages.size()];
+        List<Runnable> decodings = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            int index = i;
+            decodings.add(() -> receivedMessages[index] = decodeReceivedMessage(path, messages.get(index), digests.get(index)));
+        }
+        runReceiveTasks(decodings);
+
+        // the messages of a group get handled one after another in the order they arrived, different groups at the same time
+        LinkedHashMap<String, List<ReceivedMessage>> messagesByGroup = new LinkedHashMap<>();
+        List<Runnable> handlings = new ArrayList<>();
+        for (ReceivedMessage receivedMessage : receivedMessages) {
+            if (receivedMessage.groupId == null) {
+                handlings.add(() -> handleReceivedMessage(path, uri, sender, receivedMessage));
+            } else {
+                messagesByGroup.computeIfAbsent(receivedMessage.groupId.toString(), groupId -> new ArrayList<>()).add(receivedMessage);
+            }
+        }
+        for (List<ReceivedMessage> groupMessages : messagesByGroup.values()) {
+            handlings.add(() -> {
+                for (ReceivedMessage receivedMessage : groupMessages) {
+                    handleReceivedMessage(path, uri, sender, receivedMessage);
+                }
+            });
+        }
+        runReceiveTasks(handlings);
+    }
 
-                    try {
-                        ASAPCryptoAlgorithms.EncryptedMessagePackage encryptedMessagePackage = ASAPCryptoAlgorithms.parseEncryptedMessagePackage(message);
-                        byte[] plainMessageBytes = ASAPCryptoAlgorithms.decryptPackage(encryptedMessagePackage, sharkPKIComponent);
+    /**
+     * Decrypts and parses a received message. Does not touch the state of this security, so messages can get decoded at the same time
+     */
+    private ReceivedMessage decodeReceivedMessage(ShiverPaths path, byte[] message, byte[] digest) {
+        ReceivedMessage receivedMessage = new ReceivedMessage();
+        receivedMessage.digest = digest;
+        try {
+            ASAPCryptoAlgorithms.EncryptedMessagePackage encryptedMessagePackage = ASAPCryptoAlgorithms.parseEncryptedMessagePackage(message);
+            byte[] plainMessageBytes = ASAPCryptoAlgorithms.decryptPackage(encryptedMessagePackage, sharkPKIComponent);
+
+            if (path == ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST) {
+                receivedMessage.groupKeyMessage = GroupKeyMessage.deserialize(plainMessageBytes);
+                receivedMessage.groupId = receivedMessage.groupKeyMessage.getGroupId();
+                // an agreement this peer does not know fails the message, the group gets told about it
+                ShiverKeyAgreements.forName(receivedMessage.groupKeyMessage.getKeyAgreementAlgorithm());
+            } else {
+                receivedMessage.groupCredentialMessage = GroupCredentialMessageImpl.deserialize(plainMessageBytes);
+                receivedMessage.groupId = receivedMessage.groupCredentialMessage.getGroupId();
+                ShiverKeyAgreements.forName(receivedMessage.groupCredentialMessage.getKeyAgreementAlgorithm());
+            }
+        } catch (Exception e) {
+            receivedMessage.error = e;
+        }
+        return receivedMessage;
+    }
 
-                        GroupCredentialMessage groupCredentialMessage = GroupCredentialMessageImpl.deserialize(plainMessageBytes);
+    /**
+     * Does the stage of the path for a decoded message and tells the listeners.
+     * Remembers the message as handled if that worked, outdated broadcasts count as handled
+     */
+    private void handleReceivedMessage(ShiverPaths path, String uri, String sender, ReceivedMessage receivedMessage) {
+        try {
+            if (receivedMessage.error != null) {
+                throw receivedMessage.error;
+            }
 
-                        for (ShiverEventListener messageReceiver : messageReceivers) {
-                            messageReceiver.onReceiveGroupCredentials(groupCredentialMessage);
-                        }
-                    } catch (Exception e) {
-                        Log.writeLogErr(this, "Error receiving groupCredentialMessage and doing the upflow stage", e.getMessage());
+            if (receivedMessage.groupCredentialMessage != null) {
+                rememberKeyAgreements(path, sender, receivedMessage.groupCredentialMessage);
+            }
 
-                        for (ShiverEventListener messageReceiver : messageReceivers) {
-                            messageReceiver.onErrorReceivingGroupCredentialMessage(asapMessages.getURI().toString(), e);
-                        }
+            switch (path) {
+                case SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW -> {
+                    eventDispatcher.onReceiveGroupCredentials(receivedMessage.groupCredentialMessage);
+                }
+                case SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST -> {
+                    GroupCredentialMessage groupCredentialMessage = receivedMessage.groupCredentialMessage;
+                    CharSequence groupId = groupCredentialMessage.getGroupId();
+                    if (isOutdated(groupId, groupCredentialMessage.getEpoch())) {
+                        seenMessageStorage.storeSeenMessage(receivedMessage.digest);
+                        return;
                     }
+
+                    storeGroupKey(groupId, groupCredentialMessage.getKeyAgreementAlgorithm(), groupCredentialMessage.getKey(asapPeer.getPeerID()), membersRemoved(groupCredentialMessage));
+                    rememberGroup(groupCredentialMessage);
+
+                    eventDispatcher.onReceivedGroupKey(groupId);
                 }
+                case SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST -> {
+                    GroupKeyMessage groupKeyMessage = receivedMessage.groupKeyMessage;
+                    CharSequence groupId = groupKeyMessage.getGroupId();
+                    if (isOutdated(groupId, groupKeyMessage.getEpoch())) {
+                        seenMessageStorage.storeSeenMessage(receivedMessage.digest);
+                        return;
+                    }
+
+                    // the message does not name the members, so a removal can not be ruled out
+                    storeGroupKey(groupId, groupKeyMessage.getKeyAgreementAlgorithm(), groupKeyMessage.getKey(), true);
+                    // the keys of the other members are unknown, older ones must not get used for changes of the members
+                    agreedGroups.remove(groupId.toString());
+                    groupEpochs.put(groupId.toString(), groupKeyMessage.getEpoch());
+
+                    eventDispatcher.onReceivedGroupKey(groupId);
+                }
+            }
+            seenMessageStorage.storeSeenMessage(receivedMessage.digest);
+        } catch (Exception e) {
+            switch (path) {
+                case SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW -> Log.writeLogErr(this, "Error receiving groupCredentialMessage and doing the upflow stage", e.getMessage());
+                case SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST -> Log.writeLogErr(this, "Error receiving groupCredentialMessage and doing the broadcast stage", e.getMessage());
+                case SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST -> Log.writeLogErr(this, "Error receiving groupKeyMessage and doing the broadcast stage", e.getMessage());
             }
-            case SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST -> {
-                Iterator<byte[]> messages = asapMessages.getMessages();
-                while (messages.hasNext()) {
-                    byte[] message = messages.next();
 
-                    try {
-                        ASAPCryptoAlgorithms.EncryptedMessagePackage encryptedMessagePackage = ASAPCryptoAlgorithms.parseEncryptedMessagePackage(message);
-                        byte[] plainMessageBytes = ASAPCryptoAlgorithms.decryptPackage(encryptedMessagePackage, sharkPKIComponent);
+            eventDispatcher.onErrorReceivingGroupCredentialMessage(uri, e);
+            if (receivedMessage.groupId != null) {
+                eventDispatcher.onErrorCreatingGroupKey(receivedMessage.groupId, e);
+            }
+        }
+    }
+
+    /**
+     * Digest of the encrypted message, computing it costs far less than the public key decryption it saves
+     */
+    private static byte[] digest(byte[] message) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(message);
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
 
-                        GroupCredentialMessage groupCredentialMessage = GroupCredentialMessageImpl.deserialize(plainMessageBytes);
+    /**
+     * Runs the tasks on at most {@link #maxParallelReceives} tasks of the executor and waits for all of them
+     */
+    private void runReceiveTasks(List<Runnable> tasks) {
+        AtomicInteger nextTask = new AtomicInteger();
+        int workerCount = Math.min(maxParallelReceives, tasks.size());
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = CompletableFuture.runAsync(() -> {
+                onReceiveTask.set(true);
+                try {
+                    int task;
+                    while ((task = nextTask.getAndIncrement()) < tasks.size()) {
+                        tasks.get(task).run();
+                    }
+                } finally {
+                    onReceiveTask.remove();
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(workers).join();
+    }
 
-                        KeyPair keyPair = dhKeyPairStorage.getOrGenerateKeyPairForGroup(groupCredentialMessage.getGroupId());
-                        KeyAgreement keyAgreement = KeyAgreement.getInstance("DH");
-                        keyAgreement.init(keyPair.getPrivate());
+    /**
+     * Picks the preferred agreement if every other member is known to support it, {@link ShiverKeyAgreements#DH} otherwise,
+     * which every peer knows
+     */
+    private ShiverKeyAgreement negotiateKeyAgreement(List<CharSequence> peers) {
+        ShiverKeyAgreement preferredKeyAgreement = this.keyAgreement;
+        for (CharSequence peer : peers) {
+            if (!isOwnPeer(peer) && !getKnownKeyAgreements(peer).contains(preferredKeyAgreement.getName())) {
+                return ShiverKeyAgreements.DH;
+            }
+        }
+        return preferredKeyAgreement;
+    }
 
-                        Key key = readPublicKeyFromBytes(groupCredentialMessage.getKeys().get(asapPeer.getPeerID()));
-                        keyAgreement.doPhase(key, true);
-                        byte[] secret = keyAgreement.generateSecret();
-                        Key finalKey = new SecretKeySpec(secret, 0, 16, "AES");
+    /**
+     * Only remembers the agreements the peer that produced the message names for itself. The entries of the other peers
+     * got written by other hops, one of them could claim agreements for a peer that this peer does not support.
+     * The producer is the hop before this peer in the upflow and the last peer for the broadcast, it has to be the sender of the message
+     */
+    private void rememberKeyAgreements(ShiverPaths path, String sender, GroupCredentialMessage groupCredentialMessage) {
+        int producerIndex = path == ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW
+                ? groupCredentialMessage.indexOfPeer(asapPeer.getPeerID()) - 1
+                : groupCredentialMessage.getPeerCount() - 1;
+        if (sender == null || producerIndex < 0) {
+            return;
+        }
+        CharSequence producer = groupCredentialMessage.getPeerId(producerIndex);
+        if (!producer.toString().equals(sender) || isOwnPeer(producer)) {
+            return;
+        }
 
-                        shiverKeyStorage.storeKeyForGroup(groupCredentialMessage.getGroupId(), finalKey);
+        for (Map.Entry<CharSequence, List<String>> entry : groupCredentialMessage.getSupportedKeyAgreements().entrySet()) {
+            if (entry.getKey().toString().equals(sender)) {
+                rememberKeyAgreements(producer, entry.getValue());
+            }
+        }
+    }
 
-                        for (ShiverEventListener messageReceiver : messageReceivers) {
-                            messageReceiver.onReceivedGroupKey(groupCredentialMessage.getGroupId());
-                        }
-                    } catch (Exception e) {
-                        Log.writeLogErr(this, "Error receiving groupCredentialMessage and doing the broadcast stage", e.getMessage());
+    /**
+     * A task of {@link #runReceiveTasks(List)} that waited for tasks queued behind the other receive tasks would block
+     * a thread of the executor, with a bounded executor all of them. Those tasks compute their keys on their own thread
+     */
+    private Executor getKeyExecutor() {
+        return onReceiveTask.get() ? Runnable::run : executor;
+    }
 
-                        for (ShiverEventListener messageReceiver : messageReceivers) {
-                            messageReceiver.onErrorReceivingGroupCredentialMessage(asapMessages.getURI().toString(), e);
-                        }
+    private KeyPair getKeyPairForGroup(CharSequence groupId, ShiverKeyAgreement keyAgreement) throws ShiverDHKeyGenerationException {
+        // DH groups keep using the old method, so storages that only know DH keep working
+        if (ShiverKeyAgreements.DH_NAME.equals(keyAgreement.getName())) {
+            return dhKeyPairStorage.getOrGenerateKeyPairForGroup(groupId);
+        }
+        return dhKeyPairStorage.getOrGenerateKeyPairForGroup(groupId, keyAgreement);
+    }
+
+    /**
+     * Sends the message to every receiver on its own. The full message gets serialized only once,
+     * a tailored broadcast only holds the key of the receiver.
+     * Bigger groups get their packages encrypted on the executor. The sends only start after every package is encrypted
+     * and happen one after another on the calling thread, in the order of the receivers
+     */
+    private void broadcast(GroupCredentialMessage groupCredentialMessage, List<CharSequence> receivers) throws IOException, ASAPException {
+        ShiverPaths path;
+        List<byte[]> messages = new ArrayList<>(receivers.size());
+        if (tailoredBroadcast) {
+            path = ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST;
+            for (CharSequence receiver : receivers) {
+                GroupKeyMessage groupKeyMessage = new GroupKeyMessage(
+                        groupCredentialMessage.getGroupId(),
+                        groupCredentialMessage.getEpoch(),
+                        groupCredentialMessage.getKeyAgreementAlgorithm(),
+                        groupCredentialMessage.getKey(receiver)
+                );
+                messages.add(groupKeyMessage.serialize());
+            }
+        } else {
+            path = ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST;
+            byte[] messageBytes = serializeFor(groupCredentialMessage, receivers);
+            for (int i = 0; i < receivers.size(); i++) {
+                messages.add(messageBytes);
+            }
+        }
+
+        List<byte[]> encryptedMessages = new ArrayList<>(receivers.size());
+        if (receivers.size() < PARALLEL_BROADCAST_THRESHOLD) {
+            for (int i = 0; i < receivers.size(); i++) {
+                encryptedMessages.add(ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messages.get(i), receivers.get(i), sharkPKIComponent));
+            }
+        } else {
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>(receivers.size());
+            for (int i = 0; i < receivers.size(); i++) {
+                byte[] message = messages.get(i);
+                CharSequence receiver = receivers.get(i);
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ASAPCryptoAlgorithms.produceEncryptedMessagePackage(message, receiver, sharkPKIComponent);
+                    } catch (ASAPSecurityException e) {
+                        throw new CompletionException(e);
                     }
+                }, getKeyExecutor()));
+            }
+            try {
+                for (CompletableFuture<byte[]> future : futures) {
+                    encryptedMessages.add(future.join());
+                }
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ASAPSecurityException) {
+                    throw (ASAPSecurityException) e.getCause();
                 }
+                throw e;
             }
         }
+
+        for (byte[] encryptedMessage : encryptedMessages) {
+            asapPeer.sendASAPMessage(
+                    ShiverComponent.SHARK_SHIVER_APP,
+                    path.toString(),
+                    encryptedMessage
+            );
+        }
     }
 
-    private boolean verifyPeer(CharSequence peerId) throws ShiverPeerNotVerifiedException {
+    /**
+     * Writes the binary format only if every receiver named its key agreements, peers do that since the binary format
+     * of {@link GroupCredentialMessageImpl#FORMAT_VERSION}. Older peers only read java serialization, so groups with them keep working
+     */
+    private byte[] serializeFor(GroupCredentialMessage groupCredentialMessage, List<CharSequence> receivers) throws IOException {
+        for (CharSequence receiver : receivers) {
+            if (!peerKeyAgreements.containsKey(receiver.toString())) {
+                return groupCredentialMessage.serializeJavaSerialization();
+            }
+        }
+        return groupCredentialMessage.serialize();
+    }
+
+    /**
+     * Applies a new secret to the intermediate keys of the given members. Costs one agreement per member.
+     * So with GDH the peer changing the members does O(n) agreements, only the other members get along with a constant
+     * number. The secret has to reach every intermediate key and GDH keeps one per member, a constant cost for the
+     * changing peer as well needs the key tree of {@link ShiverTreePkiSecurity} (O(log n)) or the two rounds of
+     * {@link ShiverBDPkiSecurity}. The agreements run on the key executor, so they do not add up on a single thread
+     */
+    private HashMap<CharSequence, byte[]> blind(GroupCredentialMessage agreedGroup, List<CharSequence> members, ShiverKeyAgreement keyAgreement, PrivateKey blindingKey) throws IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        return new HashMap<>(computeKeys(members, member -> {
+            PublicKey key = ShiverPublicKeys.decode(agreedGroup.getKey(member));
+            return ShiverPublicKeys.encode(keyAgreement.combine(blindingKey, key));
+        }));
+    }
+
+    /**
+     * Computes the key of every peer on the executor. Every computation creates its own {@link javax.crypto.KeyAgreement},
+     * so they can run at the same time. The result is in the order of the peers, so the messages built from it
+     * are the same as if the keys got computed one after another
+     */
+    private Map<CharSequence, byte[]> computeKeys(List<CharSequence> peers, KeyComputation keyComputation) throws IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(peers.size());
+        for (CharSequence peer : peers) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return keyComputation.compute(peer);
+                } catch (IOException | GeneralSecurityException e) {
+                    throw new CompletionException(e);
+                }
+            }, getKeyExecutor()));
+        }
+
+        Map<CharSequence, byte[]> keys = new LinkedHashMap<>();
         try {
-            return sharkPKIComponent.getCertificateByIssuerAndSubject(sharkPKIComponent.getOwnerID(), peerId) != null;
-        } catch (ASAPSecurityException e) {
-            throw new ShiverPeerNotVerifiedException(e);
+            for (int i = 0; i < peers.size(); i++) {
+                keys.put(peers.get(i), futures.get(i).join());
+            }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) cause;
+            }
+            if (cause instanceof InvalidKeyException) {
+                throw (InvalidKeyException) cause;
+            }
+            if (cause instanceof InvalidKeySpecException) {
+                throw (InvalidKeySpecException) cause;
+            }
+            throw e;
         }
+        return keys;
     }
 
-    private byte[] getPublicKeyBytes(Key publicKey) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
+    private interface KeyComputation {
+        byte[] compute(CharSequence peer) throws IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException;
+    }
 
-        String format = publicKey.getFormat();
-        String algorithm = publicKey.getAlgorithm();
-        byte[] byteEncodedPublicKey = publicKey.getEncoded();
+    private PrivateKey generateBlindingKey(ShiverKeyAgreement keyAgreement) throws ShiverDHKeyGenerationException {
+        try {
+            return keyAgreement.generateKeyPair().getPrivate();
+        } catch (GeneralSecurityException e) {
+            throw new ShiverDHKeyGenerationException(e);
+        }
+    }
+
+    /**
+     * Applies the own private key to the intermediate key holding the private keys of all other members and stores the result.
+     * If members got removed the previous key gets dropped, the removed members still have it
+     */
+    private void storeGroupKey(CharSequence groupId, String keyAgreementAlgorithm, byte[] ownIntermediateKey, boolean membersRemoved) throws ShiverDHKeyGenerationException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        ShiverKeyAgreement keyAgreement = ShiverKeyAgreements.forName(keyAgreementAlgorithm);
+        KeyPair keyPair = getKeyPairForGroup(groupId, keyAgreement);
+
+        PublicKey key = ShiverPublicKeys.decode(ownIntermediateKey);
+        Key finalKey = keyAgreement.generateGroupKey(keyPair.getPrivate(), key);
+
+        if (membersRemoved) {
+            shiverKeyStorage.replaceKeyForGroup(groupId, finalKey);
+        } else {
+            shiverKeyStorage.storeKeyForGroup(groupId, finalKey);
+        }
+    }
+
+    /**
+     * Whether a member of the group agreed before is missing in the message
+     */
+    private boolean membersRemoved(GroupCredentialMessage groupCredentialMessage) {
+        GroupCredentialMessage agreedGroup = agreedGroups.get(groupCredentialMessage.getGroupId().toString());
+        if (agreedGroup == null) {
+            return false;
+        }
+        for (int i = 0; i < agreedGroup.getPeerCount(); i++) {
+            if (groupCredentialMessage.indexOfPeer(agreedGroup.getPeerId(i)) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        dos.writeUTF(format);
-        dos.writeUTF(algorithm);
-        dos.writeInt(byteEncodedPublicKey.length);
-        dos.write(byteEncodedPublicKey);
+    /**
+     * A broadcast is outdated if this peer already has the key of a newer epoch, for example when broadcasts of two
+     * changes of the members arrive in the wrong order
+     */
+    private boolean isOutdated(CharSequence groupId, long epoch) {
+        Long knownEpoch = groupEpochs.get(groupId.toString());
+        if (knownEpoch != null && epoch < knownEpoch) {
+            Log.writeLog(this, "Ignoring broadcast of epoch " + epoch + " for group " + groupId + ", the key of epoch " + knownEpoch + " is known");
+            return true;
+        }
+        return false;
+    }
 
-        return baos.toByteArray();
+    private void rememberGroup(GroupCredentialMessage groupCredentialMessage) {
+        GroupCredentialMessage agreedGroup = new GroupCredentialMessageImpl.Builder(groupCredentialMessage).build();
+        agreedGroups.put(groupCredentialMessage.getGroupId().toString(), agreedGroup);
+        groupEpochs.put(groupCredentialMessage.getGroupId().toString(), groupCredentialMessage.getEpoch());
     }
 
-    private PublicKey readPublicKeyFromBytes(byte[] publicKeyBytes) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(publicKeyBytes);
-        DataInputStream dis = new DataInputStream(bais);
+    private GroupCredentialMessage getAgreedGroup(CharSequence groupId) throws ShiverNoGroupKeyException {
+        GroupCredentialMessage agreedGroup = agreedGroups.get(groupId.toString());
+        if (agreedGroup == null || shiverKeyStorage.getKeyForGroup(groupId) == null) {
+            throw new ShiverNoGroupKeyException();
+        }
+        return agreedGroup;
+    }
 
-        dis.readUTF();
-        String algorithm = dis.readUTF();
-        int len = dis.readInt();
-        byte[] byteEncodedPublicKey = new byte[len];
-        dis.readFully(byteEncodedPublicKey);
+    private boolean containsPeer(List<CharSequence> peers, CharSequence peerId) {
+        for (CharSequence peer : peers) {
+            if (peer.toString().equals(peerId.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isOwnPeer(CharSequence peerId) {
+        return asapPeer.getPeerID().toString().equals(peerId.toString());
+    }
 
-        X509EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(byteEncodedPublicKey);
-        KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
+    private boolean verifyPeer(CharSequence peerId) throws ShiverPeerNotVerifiedException {
+        return peerVerifier.verifyPeer(peerId);
+    }
 
-        return keyFactory.generatePublic(pubKeySpec);
+    /**
+     * A received message after decrypting and parsing it, or the exception that stopped it
+     */
+    private static final class ReceivedMessage {
+        private byte[] digest;
+        private CharSequence groupId;
+        private GroupCredentialMessage groupCredentialMessage;
+        private GroupKeyMessage groupKeyMessage;
+        private Exception error;
     }
 }
@@ -0,0 +1,171 @@
+package com.shiver.logic;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The thread safe codec behind {@link ShiverPublicKeys}.
+ * During an exchange every member decodes the same intermediate keys over and over, once per peer and per hop.
+ * So the decoded keys get cached by their encoded bytes, and the {@link KeyFactory} instances get pooled per algorithm
+ * the same way {@link com.shiver.crypto.ShiverCipherCache} pools ciphers. Public keys are immutable, so a cached key
+ * can get handed to every thread.
+ */
+final class ShiverPublicKeyCodec {
+    private final int maxCachedKeys;
+    private final int maxIdleKeyFactoriesPerAlgorithm;
+
+    private final ConcurrentHashMap<String, BlockingQueue<KeyFactory>> keyFactories = new ConcurrentHashMap<>();
+
+    // in the order of the last access, so the key that got used the longest time ago gets dropped first
+    private final LinkedHashMap<EncodedKey, PublicKey> decodedKeys;
+
+    /**
+     * @param maxCachedKeys                   - how many decoded keys get cached at most, 0 turns the cache off
+     * @param maxIdleKeyFactoriesPerAlgorithm - how many idle key factories get kept per algorithm
+     */
+    ShiverPublicKeyCodec(int maxCachedKeys, int maxIdleKeyFactoriesPerAlgorithm) {
+        if (maxCachedKeys < 0) {
+            throw new IllegalArgumentException("maxCachedKeys can not be negative");
+        }
+        if (maxIdleKeyFactoriesPerAlgorithm < 1) {
+            throw new IllegalArgumentException("maxIdleKeyFactoriesPerAlgorithm has to be at least 1");
+        }
+        this.maxCachedKeys = maxCachedKeys;
+        this.maxIdleKeyFactoriesPerAlgorithm = maxIdleKeyFactoriesPerAlgorithm;
+        this.decodedKeys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<EncodedKey, PublicKey> eldest) {
+                return size() > ShiverPublicKeyCodec.this.maxCachedKeys;
+            }
+        };
+    }
+
+    /**
+     * Writes the key into an array of the exact size, the bytes are the same a {@link DataOutputStream} writes
+     */
+    byte[] encode(Key publicKey) throws IOException {
+        String format = publicKey.getFormat();
+        String algorithm = publicKey.getAlgorithm();
+        byte[] byteEncodedPublicKey = publicKey.getEncoded();
+
+        if (!isAscii(format) || !isAscii(algorithm)) {
+            return encodeWithStream(format, algorithm, byteEncodedPublicKey);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 + format.length() + 2 + algorithm.length() + 4 + byteEncodedPublicKey.length);
+        putAscii(buffer, format);
+        putAscii(buffer, algorithm);
+        buffer.putInt(byteEncodedPublicKey.length);
+        buffer.put(byteEncodedPublicKey);
+        return buffer.array();
+    }
+
+    PublicKey decode(byte[] publicKeyBytes) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+        EncodedKey encodedKey = new EncodedKey(publicKeyBytes);
+        if (maxCachedKeys > 0) {
+            synchronized (decodedKeys) {
+                PublicKey publicKey = decodedKeys.get(encodedKey);
+                if (publicKey != null) {
+                    return publicKey;
+                }
+            }
+        }
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(publicKeyBytes));
+        dis.readUTF();
+        String algorithm = dis.readUTF();
+        int len = dis.readInt();
+        byte[] byteEncodedPublicKey = new byte[len];
+        dis.readFully(byteEncodedPublicKey);
+
+        PublicKey publicKey = generatePublic(algorithm, new X509EncodedKeySpec(byteEncodedPublicKey));
+
+        if (maxCachedKeys > 0) {
+            synchronized (decodedKeys) {
+                // copied, so a caller that reuses its array can not change the cached entry
+                decodedKeys.put(new EncodedKey(publicKeyBytes.clone()), publicKey);
+            }
+        }
+        return publicKey;
+    }
+
+    int getCachedKeyCount() {
+        synchronized (decodedKeys) {
+            return decodedKeys.size();
+        }
+    }
+
+    private PublicKey generatePublic(String algorithm, X509EncodedKeySpec keySpec) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        BlockingQueue<KeyFactory> idleKeyFactories = keyFactories.computeIfAbsent(algorithm, a -> new ArrayBlockingQueue<>(maxIdleKeyFactoriesPerAlgorithm));
+
+        KeyFactory keyFactory = idleKeyFactories.poll();
+        if (keyFactory == null) {
+            keyFactory = KeyFactory.getInstance(algorithm);
+        }
+        PublicKey publicKey = keyFactory.generatePublic(keySpec);
+        // a factory that failed does not get handed back, like the contexts of the cipher cache
+        idleKeyFactories.offer(keyFactory);
+        return publicKey;
+    }
+
+    private static byte[] encodeWithStream(String format, String algorithm, byte[] byteEncodedPublicKey) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeUTF(format);
+        dos.writeUTF(algorithm);
+        dos.writeInt(byteEncodedPublicKey.length);
+        dos.write(byteEncodedPublicKey);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Modified UTF-8 writes ASCII without the null character as one byte per char
+     */
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putAscii(ByteBuffer buffer, String value) {
+        buffer.putShort((short) value.length());
+        buffer.put(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static final class EncodedKey {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        private EncodedKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EncodedKey && Arrays.equals(bytes, ((EncodedKey) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.shiver.logic;
+
+import java.io.IOException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+
+/**
+ * Encodes the public keys that get exchanged in the key agreements.
+ * A key is written as its format, its algorithm, the length of the encoded key and the encoded key.
+ * Decoded keys get cached and the key factories get reused, see {@link ShiverPublicKeyCodec}.
+ */
+final class ShiverPublicKeys {
+    // enough for the intermediate keys of a few big exchanges at the same time
+    private static final ShiverPublicKeyCodec CODEC = new ShiverPublicKeyCodec(1024, Runtime.getRuntime().availableProcessors() * 2);
+
+    private ShiverPublicKeys() {
+    }
+
+    static byte[] encode(Key publicKey) throws IOException {
+        return CODEC.encode(publicKey);
+    }
+
+    static PublicKey decode(byte[] publicKeyBytes) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+        return CODEC.decode(publicKeyBytes);
+    }
+}
@@ -2,6 +2,7 @@ package com.shiver.logic;
 
 import com.shiver.exceptions.ShiverDHKeyGenerationException;
 import com.shiver.exceptions.ShiverGroupSizeException;
+import com.shiver.exceptions.ShiverNoGroupKeyException;
 import com.shiver.exceptions.ShiverPeerNotVerifiedException;
 import com.shiver.models.GroupCredentialMessage;
 import net.sharksystem.asap.ASAPException;
@@ -70,4 +71,39 @@ public interface ShiverSecurity {
      * @throws InvalidKeySpecException
      */
     void acceptGroupCredentialMessage(GroupCredentialMessage groupCredentialMessage) throws IOException, ASAPException, ShiverDHKeyGenerationException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException, ShiverPeerNotVerifiedException;
+
+    /**
+     * Adds members to a group this peer is part of without running the whole key exchange again.
+     * The new key gets derived from what the members already agreed on, the new members have to accept the
+     * {@link GroupCredentialMessage} first. Every listener gets notified when the new key is ready.
+     *
+     * @param groupId - id of the group
+     * @param peers   - the new members, members that are already part of the group get skipped
+     * @throws ShiverNoGroupKeyException      - Gets thrown if this peer is no member of the group with a key or does not know what the change needs, like the intermediate keys of all members after a tailored broadcast
+     * @throws ShiverPeerNotVerifiedException - Gets thrown if not all new members are verifiable
+     * @throws ShiverDHKeyGenerationException - Gets thrown if something with the DH-key generation fails
+     * @throws IOException
+     * @throws ASAPException
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws InvalidKeySpecException
+     */
+    void addPeersToGroup(CharSequence groupId, List<CharSequence> peers) throws ShiverNoGroupKeyException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException;
+
+    /**
+     * Removes members from a group this peer is part of without running the whole key exchange again.
+     * The other members get a new key the removed members can not compute. Every listener gets notified when the new key is ready.
+     *
+     * @param groupId - id of the group
+     * @param peers   - the members to remove, peers that are no members get skipped
+     * @throws ShiverNoGroupKeyException      - Gets thrown if this peer is no member of the group with a key or does not know what the change needs, like the intermediate keys of all members after a tailored broadcast
+     * @throws ShiverGroupSizeException       - Gets thrown if less than two members would be left
+     * @throws ShiverDHKeyGenerationException - Gets thrown if something with the DH-key generation fails
+     * @throws IOException
+     * @throws ASAPException
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws InvalidKeySpecException
+     */
+    void removePeersFromGroup(CharSequence groupId, List<CharSequence> peers) throws ShiverNoGroupKeyException, ShiverGroupSizeException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException;
 }
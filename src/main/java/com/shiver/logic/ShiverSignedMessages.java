@@ -0,0 +1,70 @@
+package com.shiver.logic;
+
+import com.shiver.exceptions.ShiverPeerNotVerifiedException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
+import net.sharksystem.asap.crypto.ASAPKeyStore;
+
+import java.io.*;
+
+/**
+ * Signs the messages of the key agreements that get broadcast to every member at once instead of getting encrypted for each of them.
+ * A signed message is written as the id of the sender, the length of the signature, the signature and the message.
+ */
+final class ShiverSignedMessages {
+
+    private ShiverSignedMessages() {
+    }
+
+    static byte[] sign(CharSequence sender, byte[] messageBytes, ASAPKeyStore asapKeyStore) throws IOException, ASAPSecurityException {
+        byte[] signature = ASAPCryptoAlgorithms.sign(messageBytes, asapKeyStore);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeUTF(sender.toString());
+        dos.writeInt(signature.length);
+        dos.write(signature);
+        dos.write(messageBytes);
+
+        return baos.toByteArray();
+    }
+
+    /**
+     * Checks the signature before anything of the message gets parsed
+     *
+     * @param signedMessage - a message from {@link #sign}
+     * @param asapKeyStore  - key store knowing the public key of the sender
+     * @return - the verified message
+     * @throws ShiverPeerNotVerifiedException - if the signature does not belong to the sender
+     */
+    static Verified verify(byte[] signedMessage, ASAPKeyStore asapKeyStore) throws IOException, ASAPSecurityException, ShiverPeerNotVerifiedException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(signedMessage));
+        String sender = dis.readUTF();
+        byte[] signature = new byte[dis.readInt()];
+        dis.readFully(signature);
+        byte[] messageBytes = dis.readAllBytes();
+
+        if (!ASAPCryptoAlgorithms.verify(messageBytes, signature, sender, asapKeyStore)) {
+            throw new ShiverPeerNotVerifiedException();
+        }
+        return new Verified(sender, messageBytes);
+    }
+
+    static final class Verified {
+        private final String sender;
+        private final byte[] messageBytes;
+
+        private Verified(String sender, byte[] messageBytes) {
+            this.sender = sender;
+            this.messageBytes = messageBytes;
+        }
+
+        String getSender() {
+            return sender;
+        }
+
+        byte[] getMessageBytes() {
+            return messageBytes;
+        }
+    }
+}
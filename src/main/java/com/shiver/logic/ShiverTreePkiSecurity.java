@@ -0,0 +1,586 @@
+package com.shiver.logic;
+
+import com.shiver.components.ShiverComponent;
+import com.shiver.crypto.ShiverKeyAgreement;
+import com.shiver.crypto.ShiverKeyAgreements;
+import com.shiver.exceptions.ShiverDHKeyGenerationException;
+import com.shiver.exceptions.ShiverGroupSizeException;
+import com.shiver.exceptions.ShiverNoGroupKeyException;
+import com.shiver.exceptions.ShiverPeerNotVerifiedException;
+import com.shiver.exceptions.ShiverUnknownURIException;
+import com.shiver.models.GroupCredentialMessage;
+import com.shiver.models.GroupTreeCredentialMessage;
+import com.shiver.models.ShiverKeyTree;
+import com.shiver.models.ShiverPaths;
+import com.shiver.storage.ShiverDHKeyPairStorage;
+import com.shiver.storage.ShiverKeyStorage;
+import net.sharksystem.asap.*;
+import net.sharksystem.pki.SharkPKIComponent;
+import net.sharksystem.utils.Log;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.URI;
+import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An implementation of the [ShiverSecurity] interface with a tree based group key agreement (TGDH).
+ * <p>
+ * The members sit on the leaves of a binary {@link ShiverKeyTree}. Every member computes the keys on the path from its leaf
+ * up to the root out of its own leaf key and the public keys of the siblings on that path. The secret of the root is the group key.
+ * Joining, leaving and refreshing only changes the keys on a single path, so each change costs O(log n) agreements and messages
+ * instead of a new exchange through every member.
+ * <p>
+ * The public keys of the tree are no secret. They get broadcast once, signed by the sender, instead of encrypting the message
+ * for every receiver on its own. Every member of a group can change its members.
+ * Two changes of the same group at the same time are not supported, the one that arrives second gets reported as an error.
+ */
+public class ShiverTreePkiSecurity implements ShiverSecurity, ASAPMessageReceivedListener {
+    private ASAPPeer asapPeer;
+    private final SharkPKIComponent sharkPKIComponent;
+    private final ShiverDHKeyPairStorage dhKeyPairStorage;
+
+    private final ShiverKeyStorage shiverKeyStorage;
+
+    private ShiverPeerVerifier peerVerifier;
+
+    private ShiverEventDispatcher eventDispatcher = new ShiverEventDispatcher();
+
+    private final ConcurrentHashMap<CharSequence, GroupState> groups = new ConcurrentHashMap<>();
+
+    private ShiverKeyAgreement keyAgreement = ShiverKeyAgreements.X25519;
+
+    public ShiverTreePkiSecurity(SharkPKIComponent sharkPKIComponent, ShiverDHKeyPairStorage dhKeyPairStorage, ShiverKeyStorage shiverKeyStorage) {
+        this.sharkPKIComponent = sharkPKIComponent;
+        this.dhKeyPairStorage = dhKeyPairStorage;
+        this.shiverKeyStorage = shiverKeyStorage;
+        this.peerVerifier = new ShiverPeerVerifier(sharkPKIComponent);
+    }
+
+    /**
+     * Sets the verifier that checks the certificates of the members, for example to share one cache between securities
+     * or to change its time to live
+     *
+     * @param peerVerifier - verifier using the same PKI
+     */
+    public void setPeerVerifier(ShiverPeerVerifier peerVerifier) {
+        this.peerVerifier = peerVerifier;
+    }
+
+    /**
+     * @return - the verifier that checks the certificates of the members, with the counters of its cache
+     */
+    public ShiverPeerVerifier getPeerVerifier() {
+        return peerVerifier;
+    }
+
+    /**
+     * Sets the dispatcher that hands the events of the tree exchange to the listeners.
+     * The listeners that got added before move to the new dispatcher. Defaults to a synchronous {@link ShiverEventDispatcher}
+     *
+     * @param eventDispatcher - dispatcher for the events of this security
+     */
+    public void setEventDispatcher(ShiverEventDispatcher eventDispatcher) {
+        for (ShiverEventListener shiverEventListener : this.eventDispatcher.getListeners()) {
+            eventDispatcher.addListener(shiverEventListener);
+        }
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    /**
+     * @return - the dispatcher that hands the events to the listeners
+     */
+    public ShiverEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    /**
+     * Sets the key agreement for the groups this peer starts. The other members use the agreement the initiator picked.
+     * Defaults to {@link ShiverKeyAgreements#X25519}, every peer that knows the tree based agreement also knows X25519
+     *
+     * @param keyAgreement - agreement for new groups
+     */
+    public void setKeyAgreement(ShiverKeyAgreement keyAgreement) {
+        this.keyAgreement = keyAgreement;
+    }
+
+    @Override
+    public void onStart(ASAPPeer asapPeer) {
+        this.asapPeer = asapPeer;
+
+        asapPeer.addASAPMessageReceivedListener(ShiverComponent.SHARK_SHIVER_APP, this);
+    }
+
+    @Override
+    public void addShiverEventListener(ShiverEventListener shiverEventListener) {
+        this.eventDispatcher.addListener(shiverEventListener);
+    }
+
+    @Override
+    public void removeShiverEventListener(ShiverEventListener shiverEventListener) {
+        this.eventDispatcher.removeListener(shiverEventListener);
+    }
+
+    @Override
+    public CharSequence startKeyExchangeWithPeers(List<CharSequence> peers) throws ShiverGroupSizeException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, IOException, ASAPException {
+        List<CharSequence> orderedListOfPeers = new ArrayList<>(peers);
+        orderedListOfPeers.remove(asapPeer.getPeerID());
+        orderedListOfPeers.add(0, asapPeer.getPeerID());
+
+        if (orderedListOfPeers.size() <= 1) {
+            throw new ShiverGroupSizeException();
+        }
+
+        verifyPeers(orderedListOfPeers);
+
+        CharSequence groupId = UUID.randomUUID().toString();
+        GroupState state = new GroupState(ShiverKeyTree.balanced(orderedListOfPeers), 0, keyAgreement, new HashMap<>());
+        groups.put(groupId, state);
+
+        synchronized (state) {
+            try {
+                refreshLeaf(groupId, state);
+                update(groupId, state, true);
+            } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidKeySpecException e) {
+                groups.remove(groupId);
+                throw new ShiverDHKeyGenerationException(e);
+            }
+        }
+        return groupId;
+    }
+
+    /**
+     * Accepts the invitation into a group. Only {@link GroupTreeCredentialMessage}s can get accepted
+     */
+    @Override
+    public void acceptGroupCredentialMessage(GroupCredentialMessage groupCredentialMessage) throws IOException, ASAPException, ShiverDHKeyGenerationException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException, ShiverPeerNotVerifiedException {
+        if (!(groupCredentialMessage instanceof GroupTreeCredentialMessage)) {
+            throw new IllegalArgumentException("Only messages of the tree based key agreement can get accepted");
+        }
+        GroupTreeCredentialMessage message = (GroupTreeCredentialMessage) groupCredentialMessage;
+        CharSequence groupId = message.getGroupId();
+
+        if (!message.getKeyTree().contains(asapPeer.getPeerID())) {
+            throw new IllegalArgumentException("The own peer is no member of the group");
+        }
+        verifyPeers(message.getPeerIds());
+
+        GroupState state = groups.get(groupId);
+        if (state == null) {
+            GroupState newState = createState(message);
+            state = groups.putIfAbsent(groupId, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+
+        synchronized (state) {
+            if (state.leafKeyPair != null) {
+                return;
+            }
+            if (message.getEpoch() > state.epoch) {
+                state.adopt(message);
+            }
+            refreshLeaf(groupId, state);
+            update(groupId, state, true);
+        }
+    }
+
+    /**
+     * Adds members to a group this peer is part of. Every member gets a new group key, the new members have to accept
+     * the invitation first. Costs O(log n) agreements and messages per new member.
+     *
+     * @param groupId - id of the group
+     * @param peers   - the new members, members that are already part of the group get skipped
+     * @throws ShiverNoGroupKeyException      - if this peer is no accepted member of the group
+     * @throws ShiverPeerNotVerifiedException - if not all new members are verifiable
+     */
+    @Override
+    public void addPeersToGroup(CharSequence groupId, List<CharSequence> peers) throws ShiverNoGroupKeyException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        GroupState state = getAcceptedState(groupId);
+        verifyPeers(peers);
+
+        synchronized (state) {
+            ShiverKeyTree keyTree = state.keyTree;
+            HashMap<CharSequence, byte[]> keys = new HashMap<>(state.keys);
+
+            for (CharSequence peer : peers) {
+                if (keyTree.contains(peer)) {
+                    continue;
+                }
+                keyTree = keyTree.withPeer(peer);
+                CharSequence sponsor = keyTree.getSponsor(ShiverKeyTree.getSibling(keyTree.getLeaf(peer)));
+                removePath(keys, keyTree, sponsor);
+            }
+
+            if (keyTree == state.keyTree) {
+                return;
+            }
+            changeEpoch(groupId, state, keyTree, keys);
+        }
+    }
+
+    /**
+     * Removes members from a group this peer is part of. The other members get a new group key the removed members
+     * can not compute. Costs O(log n) agreements and messages per removed member.
+     *
+     * @param groupId - id of the group
+     * @param peers   - the members to remove, peers that are no members get skipped
+     * @throws ShiverNoGroupKeyException - if this peer is no accepted member of the group
+     * @throws ShiverGroupSizeException  - if less than two members would be left
+     */
+    @Override
+    public void removePeersFromGroup(CharSequence groupId, List<CharSequence> peers) throws ShiverNoGroupKeyException, ShiverGroupSizeException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        GroupState state = getAcceptedState(groupId);
+
+        synchronized (state) {
+            ShiverKeyTree keyTree = state.keyTree;
+            HashMap<CharSequence, byte[]> keys = state.keys;
+
+            for (CharSequence peer : peers) {
+                String leaf = keyTree.getLeaf(peer);
+                if (leaf == null) {
+                    continue;
+                }
+                if (isOwnPeer(peer)) {
+                    throw new IllegalArgumentException("The own peer can not get removed");
+                }
+                if (keyTree.size() <= 2) {
+                    throw new ShiverGroupSizeException();
+                }
+
+                HashMap<CharSequence, byte[]> movedKeys = new HashMap<>();
+                for (Map.Entry<CharSequence, byte[]> entry : keys.entrySet()) {
+                    String label = ShiverKeyTree.afterRemoval(leaf, entry.getKey().toString());
+                    if (label != null) {
+                        movedKeys.put(label, entry.getValue());
+                    }
+                }
+
+                keyTree = keyTree.withoutPeer(peer);
+                keys = movedKeys;
+                removePath(keys, keyTree, keyTree.getSponsor(ShiverKeyTree.getParent(leaf)));
+            }
+
+            if (keyTree == state.keyTree) {
+                return;
+            }
+            changeEpoch(groupId, state, keyTree, new HashMap<>(keys));
+        }
+    }
+
+    /**
+     * Replaces the own leaf key and with it the group key. Costs O(log n) agreements and a single message
+     *
+     * @param groupId - id of the group
+     * @throws ShiverNoGroupKeyException - if this peer is no accepted member of the group
+     */
+    public void refreshGroupKey(CharSequence groupId) throws ShiverNoGroupKeyException, ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        GroupState state = getAcceptedState(groupId);
+
+        synchronized (state) {
+            HashMap<CharSequence, byte[]> keys = new HashMap<>(state.keys);
+            removePath(keys, state.keyTree, asapPeer.getPeerID());
+
+            changeEpoch(groupId, state, state.keyTree, keys);
+        }
+    }
+
+    @Override
+    public void asapMessagesReceived(ASAPMessages asapMessages, String s, List<ASAPHop> list) throws IOException {
+        URI messageUri = URI.create(asapMessages.getURI().toString());
+        ShiverPaths path = ShiverPaths.parsePathByValue(messageUri.getPath());
+
+        if (path == null) {
+            Log.writeLogErr(this, "Error receiving message for an unknown path");
+            eventDispatcher.onErrorReceivingGroupCredentialMessage(asapMessages.getURI().toString(), new ShiverUnknownURIException());
+
+            return;
+        }
+
+        if (path != ShiverPaths.SHIVER_GROUP_TREE_MESSAGE) {
+            // messages of the other key agreements are none of our business
+            return;
+        }
+
+        Iterator<byte[]> messages = asapMessages.getMessages();
+        while (messages.hasNext()) {
+            byte[] message = messages.next();
+
+            try {
+                receiveTreeMessage(message);
+            } catch (Exception e) {
+                Log.writeLogErr(this, "Error receiving groupTreeCredentialMessage", e.getMessage());
+
+                eventDispatcher.onErrorReceivingGroupCredentialMessage(asapMessages.getURI().toString(), e);
+            }
+        }
+    }
+
+    private void receiveTreeMessage(byte[] signedMessage) throws IOException, ClassNotFoundException, ASAPException, ShiverPeerNotVerifiedException, ShiverDHKeyGenerationException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        ShiverSignedMessages.Verified verified = ShiverSignedMessages.verify(signedMessage, sharkPKIComponent);
+        String sender = verified.getSender();
+
+        GroupTreeCredentialMessage message = GroupTreeCredentialMessage.deserialize(verified.getMessageBytes());
+        if (!sender.equals(message.getSenderPeerId().toString()) || isOwnPeer(sender)) {
+            throw new ShiverPeerNotVerifiedException();
+        }
+
+        CharSequence groupId = message.getGroupId();
+        GroupState state = groups.get(groupId);
+        if (state == null) {
+            if (!message.getKeyTree().contains(asapPeer.getPeerID()) || !message.getKeyTree().contains(sender)) {
+                return;
+            }
+            GroupState newState = createState(message);
+            state = groups.putIfAbsent(groupId, newState);
+            if (state == null) {
+                eventDispatcher.onReceiveGroupCredentials(message);
+                return;
+            }
+        }
+
+        synchronized (state) {
+            // only members can change the group, an outsider must not get to start a new epoch
+            if (!state.keyTree.contains(sender)) {
+                throw new ShiverPeerNotVerifiedException();
+            }
+            if (message.getEpoch() < state.epoch) {
+                return;
+            }
+
+            if (message.getEpoch() > state.epoch) {
+                List<CharSequence> newPeers = new ArrayList<>();
+                for (CharSequence peer : message.getKeyTree().getPeerIds()) {
+                    if (!state.keyTree.contains(peer)) {
+                        newPeers.add(peer);
+                    }
+                }
+                verifyPeers(newPeers);
+
+                state.adopt(message);
+                if (!state.keyTree.contains(asapPeer.getPeerID())) {
+                    // this peer got removed from the group
+                    groups.remove(groupId);
+                    dhKeyPairStorage.deleteKeyPairForGroupId(groupId);
+                    shiverKeyStorage.deleteKeyForGroup(groupId);
+                    return;
+                }
+            } else if (!state.keyTree.equals(message.getKeyTree())) {
+                throw new IllegalStateException("Conflicting members in epoch " + message.getEpoch() + " of group " + groupId);
+            } else {
+                for (Map.Entry<CharSequence, byte[]> entry : message.getKeys().entrySet()) {
+                    state.keys.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+
+            if (state.leafKeyPair == null) {
+                // the invitation did not get accepted yet
+                return;
+            }
+
+            try {
+                byte[] ownLeafKey = state.keys.get(state.keyTree.getLeaf(asapPeer.getPeerID()));
+                boolean refreshed = false;
+                if (ownLeafKey == null) {
+                    refreshLeaf(groupId, state);
+                    refreshed = true;
+                } else if (!Arrays.equals(ownLeafKey, ShiverPublicKeys.encode(state.leafKeyPair.getPublic()))) {
+                    throw new IllegalStateException("Foreign key for the own leaf in group " + groupId);
+                }
+
+                update(groupId, state, refreshed);
+            } catch (Exception e) {
+                eventDispatcher.onErrorCreatingGroupKey(groupId, e);
+                throw e;
+            }
+        }
+    }
+
+    private void changeEpoch(CharSequence groupId, GroupState state, ShiverKeyTree keyTree, HashMap<CharSequence, byte[]> keys) throws ShiverDHKeyGenerationException, IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        state.setKeyTree(keyTree);
+        state.epoch++;
+        state.keys = keys;
+
+        if (!keys.containsKey(keyTree.getLeaf(asapPeer.getPeerID()))) {
+            refreshLeaf(groupId, state);
+        }
+        update(groupId, state, true);
+    }
+
+    /**
+     * Computes the keys on the own path as far as possible. Publishes them if this peer is the sponsor of a new one,
+     * and stores the group key when the root is reached.
+     */
+    private void update(CharSequence groupId, GroupState state, boolean broadcast) throws IOException, ASAPException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        List<String> computedLabels = new ArrayList<>();
+        byte[] rootSecret = computePath(state, computedLabels);
+
+        for (String label : computedLabels) {
+            if (isOwnPeer(state.keyTree.getSponsor(label))) {
+                broadcast = true;
+            }
+        }
+        if (broadcast) {
+            sendTreeMessage(groupId, state);
+        }
+
+        if (rootSecret != null && state.keyEpoch != state.epoch) {
+            state.keyEpoch = state.epoch;
+
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(rootSecret);
+            Key finalKey = new SecretKeySpec(hash, 0, 16, "AES");
+
+            // the removed members still have the old key, it must not decrypt anything anymore
+            if (state.membersRemoved) {
+                shiverKeyStorage.replaceKeyForGroup(groupId, finalKey);
+                state.membersRemoved = false;
+            } else {
+                shiverKeyStorage.storeKeyForGroup(groupId, finalKey);
+            }
+
+            eventDispatcher.onReceivedGroupKey(groupId);
+        }
+    }
+
+    /**
+     * @return - the secret of the root or null if a key on the way is still missing
+     */
+    private byte[] computePath(GroupState state, List<String> computedLabels) throws IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        String label = state.keyTree.getLeaf(asapPeer.getPeerID());
+        PrivateKey privateKey = state.leafKeyPair.getPrivate();
+
+        while (!label.equals(ShiverKeyTree.ROOT)) {
+            byte[] siblingKey = state.keys.get(ShiverKeyTree.getSibling(label));
+            if (siblingKey == null) {
+                return null;
+            }
+
+            byte[] secret = state.keyAgreement.generateSecret(privateKey, ShiverPublicKeys.decode(siblingKey));
+            String parent = ShiverKeyTree.getParent(label);
+            if (parent.equals(ShiverKeyTree.ROOT)) {
+                return secret;
+            }
+
+            KeyPair nodeKeyPair = state.keyAgreement.deriveKeyPair(secret);
+            if (!state.keys.containsKey(parent)) {
+                state.keys.put(parent, ShiverPublicKeys.encode(nodeKeyPair.getPublic()));
+                computedLabels.add(parent);
+            }
+
+            privateKey = nodeKeyPair.getPrivate();
+            label = parent;
+        }
+        return null;
+    }
+
+    private void sendTreeMessage(CharSequence groupId, GroupState state) throws IOException, ASAPException {
+        GroupTreeCredentialMessage message = new GroupTreeCredentialMessage(
+                groupId,
+                asapPeer.getPeerID(),
+                state.keyTree,
+                state.epoch,
+                new HashMap<>(state.keys),
+                state.keyAgreement.getName()
+        );
+        byte[] signedMessage = ShiverSignedMessages.sign(asapPeer.getPeerID(), message.serialize(), sharkPKIComponent);
+
+        asapPeer.sendASAPMessage(
+                ShiverComponent.SHARK_SHIVER_APP,
+                ShiverPaths.SHIVER_GROUP_TREE_MESSAGE.toString(),
+                signedMessage
+        );
+    }
+
+    private void refreshLeaf(CharSequence groupId, GroupState state) throws ShiverDHKeyGenerationException, IOException {
+        dhKeyPairStorage.deleteKeyPairForGroupId(groupId);
+        state.leafKeyPair = getKeyPairForGroup(groupId, state.keyAgreement);
+        state.keys.put(state.keyTree.getLeaf(asapPeer.getPeerID()), ShiverPublicKeys.encode(state.leafKeyPair.getPublic()));
+    }
+
+    /**
+     * Removes the keys of a leaf and of every node above it
+     */
+    private void removePath(HashMap<CharSequence, byte[]> keys, ShiverKeyTree keyTree, CharSequence peerId) {
+        for (String label : ShiverKeyTree.getPath(keyTree.getLeaf(peerId))) {
+            keys.remove(label);
+        }
+    }
+
+    private GroupState createState(GroupTreeCredentialMessage message) throws NoSuchAlgorithmException {
+        ShiverKeyAgreement keyAgreement = ShiverKeyAgreements.forName(message.getKeyAgreementAlgorithm());
+        return new GroupState(message.getKeyTree(), message.getEpoch(), keyAgreement, message.getKeys());
+    }
+
+    private GroupState getAcceptedState(CharSequence groupId) throws ShiverNoGroupKeyException {
+        GroupState state = groups.get(groupId);
+        if (state == null || state.leafKeyPair == null) {
+            throw new ShiverNoGroupKeyException();
+        }
+        return state;
+    }
+
+    private KeyPair getKeyPairForGroup(CharSequence groupId, ShiverKeyAgreement keyAgreement) throws ShiverDHKeyGenerationException {
+        if (ShiverKeyAgreements.DH_NAME.equals(keyAgreement.getName())) {
+            return dhKeyPairStorage.getOrGenerateKeyPairForGroup(groupId);
+        }
+        return dhKeyPairStorage.getOrGenerateKeyPairForGroup(groupId, keyAgreement);
+    }
+
+    private boolean isOwnPeer(CharSequence peerId) {
+        return asapPeer.getPeerID().toString().equals(peerId.toString());
+    }
+
+    private void verifyPeers(List<CharSequence> peers) throws ShiverPeerNotVerifiedException {
+        for (CharSequence peer : peers) {
+            if (!isOwnPeer(peer) && !verifyPeer(peer)) {
+                throw new ShiverPeerNotVerifiedException();
+            }
+        }
+    }
+
+    private boolean verifyPeer(CharSequence peerId) throws ShiverPeerNotVerifiedException {
+        return peerVerifier.verifyPeer(peerId);
+    }
+
+    /**
+     * What this peer knows about a group. Only used while holding its monitor
+     */
+    private static final class GroupState {
+        private ShiverKeyTree keyTree;
+        private long epoch;
+        private final ShiverKeyAgreement keyAgreement;
+        private HashMap<CharSequence, byte[]> keys;
+        private KeyPair leafKeyPair;
+        private long keyEpoch = -1;
+        private boolean membersRemoved;
+
+        private GroupState(ShiverKeyTree keyTree, long epoch, ShiverKeyAgreement keyAgreement, HashMap<CharSequence, byte[]> keys) {
+            this.keyTree = keyTree;
+            this.epoch = epoch;
+            this.keyAgreement = keyAgreement;
+            this.keys = keys;
+        }
+
+        private void adopt(GroupTreeCredentialMessage message) {
+            setKeyTree(message.getKeyTree());
+            epoch = message.getEpoch();
+            keys = message.getKeys();
+        }
+
+        /**
+         * Remembers if a member got removed until the next group key is stored
+         */
+        private void setKeyTree(ShiverKeyTree newKeyTree) {
+            for (CharSequence peer : keyTree.getPeerIds()) {
+                if (!newKeyTree.contains(peer)) {
+                    membersRemoved = true;
+                }
+            }
+            keyTree = newKeyTree;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.shiver.models;
+
+import com.shiver.crypto.ShiverKeyAgreements;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The message of the Burmester-Desmedt group key agreement.
+ * Every member broadcasts one of these in each of the two rounds. It only carries the value of its sender,
+ * the peers are the ring of members in the order every member uses.
+ * Every change of the members runs both rounds again in a new epoch. Values of different epochs never get mixed.
+ */
+public class GroupBDCredentialMessage implements GroupCredentialMessage, Serializable {
+    public static final int ROUND_ONE = 1;
+    public static final int ROUND_TWO = 2;
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=8;com.shiver.models.GroupBDCredentialMessage;java.util.*;java.lang.*;!*");
+
+    private final CharSequence groupId;
+    private final CharSequence senderPeerId;
+    private final ArrayList<CharSequence> peerIds;
+    private final long epoch;
+    private final int round;
+    private final HashMap<CharSequence, byte[]> keys = new HashMap<>();
+
+    /**
+     * @param groupId      - id of the group
+     * @param senderPeerId - id of the peer that sends the message
+     * @param peerIds      - every member of the group in the order of the ring
+     * @param epoch        - the epoch the members and the value belong to
+     * @param round        - {@link #ROUND_ONE} or {@link #ROUND_TWO}
+     * @param value        - the value of the sender for this round
+     */
+    public GroupBDCredentialMessage(CharSequence groupId, CharSequence senderPeerId, List<CharSequence> peerIds, long epoch, int round, byte[] value) {
+        this.groupId = groupId;
+        this.senderPeerId = senderPeerId;
+        this.peerIds = new ArrayList<>(peerIds);
+        this.epoch = epoch;
+        this.round = round;
+        this.keys.put(senderPeerId, value);
+    }
+
+    public CharSequence getGroupId() {
+        return groupId;
+    }
+
+    public CharSequence getSenderPeerId() {
+        return senderPeerId;
+    }
+
+    public List<CharSequence> getPeerIds() {
+        return new ArrayList<>(peerIds);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    /**
+     * @return - the value of the sender for the round of this message
+     */
+    public byte[] getValue() {
+        return keys.get(senderPeerId);
+    }
+
+    /**
+     * The value of the sender by its peer id
+     */
+    public HashMap<CharSequence, byte[]> getKeys() {
+        return new HashMap<>(keys);
+    }
+
+    /**
+     * The agreement needs the arithmetic of the finite field, so it is always DH
+     */
+    public String getKeyAgreementAlgorithm() {
+        return ShiverKeyAgreements.DH_NAME;
+    }
+
+    @Override
+    public void putKeyForPeerId(CharSequence peerId, byte[] key) {
+        keys.put(peerId, key);
+    }
+
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(this);
+        oos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Static method to deserialize bytes into an {@link GroupBDCredentialMessage} object
+     *
+     * @param messageBytes - raw bytes to serialize from
+     */
+    public static GroupBDCredentialMessage deserialize(byte[] messageBytes) throws IOException, ClassNotFoundException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(messageBytes);
+        ObjectInputStream ois = new ObjectInputStream(bais);
+        // the message only consists of these classes, everything else does not get resolved at all
+        ois.setObjectInputFilter(FILTER);
+        return (GroupBDCredentialMessage) ois.readObject();
+    }
+}
@@ -1,6 +1,8 @@
 package com.shiver.models;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
@@ -27,7 +29,79 @@ public interface GroupCredentialMessage extends Serializable {
     public HashMap<CharSequence, byte[]> getKeys();
 
     /**
-     * Used to put in a new calculated key
+     * Name of the key agreement the initiator picked for this group, see {@link com.shiver.crypto.ShiverKeyAgreements}.
+     * Null for messages of peers that only know DH
+     */
+    public String getKeyAgreementAlgorithm();
+
+    /**
+     * Counts the changes of the members of the group, the first key of a group has epoch 0.
+     * Messages of an older epoch than the one a peer knows are outdated. 0 for messages of peers that know no epochs
+     */
+    public long getEpoch();
+
+    /**
+     * Names of the key agreements every peer that handled the message supports, see {@link com.shiver.crypto.ShiverKeyAgreements}.
+     * Peers that do not name any only know DH
+     *
+     * @return - the supported key agreements by the id of their peer
+     */
+    default HashMap<CharSequence, List<String>> getSupportedKeyAgreements() {
+        return new HashMap<>();
+    }
+
+    /**
+     * The accessors by position and by peer below read the message without copying it.
+     * The defaults go through the copies of {@link #getPeerIds()} and {@link #getKeys()}, implementations that get
+     * read once per peer should override them.
+     *
+     * @return - how many members the group has
+     */
+    default int getPeerCount() {
+        return getPeerIds().size();
+    }
+
+    /**
+     * @param index - position of the peer in {@link #getPeerIds()}
+     * @return - id of the peer at the position
+     */
+    default CharSequence getPeerId(int index) {
+        return getPeerIds().get(index);
+    }
+
+    /**
+     * @param peerId - id of the peer
+     * @return - position of the peer in {@link #getPeerIds()}, -1 if it is no member
+     */
+    default int indexOfPeer(CharSequence peerId) {
+        List<CharSequence> peerIds = getPeerIds();
+        for (int i = 0; i < peerIds.size(); i++) {
+            if (peerIds.get(i).toString().equals(peerId.toString())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param peerId - id of the peer
+     * @return - key of the peer, null if the message holds none. The array must not get changed
+     */
+    default byte[] getKey(CharSequence peerId) {
+        return getKeys().get(peerId);
+    }
+
+    /**
+     * @param index - position of the peer in {@link #getPeerIds()}
+     * @return - key of the peer at the position, null if the message holds none. The array must not get changed
+     */
+    default byte[] getKeyAt(int index) {
+        return getKey(getPeerId(index));
+    }
+
+    /**
+     * Used to put in a new calculated key.
+     * Messages built by {@link GroupCredentialMessageImpl.Builder} copy their keys first, the builder does not see the change
      *
      * @param peerId - id to put it in for
      * @param key    - the new key
@@ -38,4 +112,16 @@ public interface GroupCredentialMessage extends Serializable {
      * method to serialize the object
      */
     byte[] serialize() throws IOException;
+
+    /**
+     * Serializes the message with java serialization, the only format peers from before the binary format read.
+     * Only for receivers that did not name their key agreements yet, see {@link GroupCredentialMessageImpl#FORMAT_VERSION}
+     */
+    default byte[] serializeJavaSerialization() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(this);
+        oos.flush();
+        return baos.toByteArray();
+    }
 }
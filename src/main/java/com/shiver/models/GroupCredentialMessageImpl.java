@@ -1,19 +1,78 @@
 package com.shiver.models;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class GroupCredentialMessageImpl implements GroupCredentialMessage, Serializable {
+    // the uid the class had before the key agreement got added. Peers from before the binary format still get
+    // java serialization, they skip the fields they do not know
+    private static final long serialVersionUID = -1588747944774650273L;
+
+    /**
+     * Version of the binary format {@link #serialize()} writes.
+     * Java serialization starts with 0xACED, so the first byte tells both formats apart.
+     * Peers name their key agreements since this version, so a peer that named them reads it.
+     * The others only get {@link #serializeJavaSerialization()}
+     */
+    public static final int FORMAT_VERSION = 3;
+    // the first binary format, writes every key of every peer on its own
+    private static final int FORMAT_VERSION_WITHOUT_KEY_TABLE = 1;
+    // the format before the peers named the key agreements they support
+    private static final int FORMAT_VERSION_WITHOUT_KEY_AGREEMENTS = 2;
+    private static final int UNKNOWN_PEER_POSITION = -1;
+    private static final int NO_HEADER = -1;
+    private static final ObjectInputFilter LEGACY_FORMAT_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=8;com.shiver.models.GroupCredentialMessageImpl;java.util.*;java.lang.*;!*");
+
     private final CharSequence groupId;
     private final List<CharSequence> peerIds;
-    private final HashMap<CharSequence, byte[]> keys;
+    private HashMap<CharSequence, byte[]> keys;
+    private final String keyAgreementAlgorithm;
+    // added after the key agreement, messages of older peers get read with epoch 0
+    private final long epoch;
+    // added with the format version 3, messages of older peers get read without any
+    private final HashMap<CharSequence, List<String>> supportedKeyAgreements;
+
+    // position of every peer, so looking a peer up does not scan the peer ids
+    private final transient HashMap<String, Integer> peerPositions;
+    // the keys of a built message belong to its builder as well, the first change copies them
+    private transient boolean keysShared;
 
     public GroupCredentialMessageImpl(CharSequence groupId, List<CharSequence> peerIds, HashMap<CharSequence, byte[]> keys) {
+        this(groupId, peerIds, keys, null);
+    }
+
+    public GroupCredentialMessageImpl(CharSequence groupId, List<CharSequence> peerIds, HashMap<CharSequence, byte[]> keys, String keyAgreementAlgorithm) {
+        this(groupId, peerIds, keys, keyAgreementAlgorithm, 0);
+    }
+
+    public GroupCredentialMessageImpl(CharSequence groupId, List<CharSequence> peerIds, HashMap<CharSequence, byte[]> keys, String keyAgreementAlgorithm, long epoch) {
+        this(groupId, Collections.unmodifiableList(new ArrayList<>(peerIds)), keys, keyAgreementAlgorithm, epoch, new HashMap<>(), false);
+    }
+
+    private GroupCredentialMessageImpl(CharSequence groupId, List<CharSequence> peerIds, HashMap<CharSequence, byte[]> keys, String keyAgreementAlgorithm, long epoch,
+                                       HashMap<CharSequence, List<String>> supportedKeyAgreements, boolean keysShared) {
         this.groupId = groupId;
         this.peerIds = peerIds;
         this.keys = keys;
+        this.keyAgreementAlgorithm = keyAgreementAlgorithm;
+        this.epoch = epoch;
+        this.supportedKeyAgreements = supportedKeyAgreements;
+        this.keysShared = keysShared;
+
+        this.peerPositions = new HashMap<>();
+        for (int i = 0; i < peerIds.size(); i++) {
+            peerPositions.putIfAbsent(peerIds.get(i).toString(), i);
+        }
     }
 
     public CharSequence getGroupId() {
@@ -28,27 +87,508 @@ public class GroupCredentialMessageImpl implements GroupCredentialMessage, Seria
         return new HashMap<>(keys);
     }
 
+    public String getKeyAgreementAlgorithm() {
+        return keyAgreementAlgorithm;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public HashMap<CharSequence, List<String>> getSupportedKeyAgreements() {
+        return new HashMap<>(supportedKeyAgreements);
+    }
+
+    @Override
+    public int getPeerCount() {
+        return peerIds.size();
+    }
+
+    @Override
+    public CharSequence getPeerId(int index) {
+        return peerIds.get(index);
+    }
+
+    @Override
+    public int indexOfPeer(CharSequence peerId) {
+        Integer position = peerPositions.get(peerId.toString());
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    public byte[] getKey(CharSequence peerId) {
+        byte[] key = keys.get(peerId);
+        if (key == null && !(peerId instanceof String)) {
+            key = keys.get(peerId.toString());
+        }
+        return key;
+    }
+
+    @Override
+    public byte[] getKeyAt(int index) {
+        return getKey(peerIds.get(index));
+    }
+
     @Override
     public void putKeyForPeerId(CharSequence peerId, byte[] key) {
+        if (keysShared) {
+            keys = new HashMap<>(keys);
+            keysShared = false;
+        }
         keys.put(peerId, key);
     }
 
+    /**
+     * Writes the message in the binary format of version {@value #FORMAT_VERSION}.
+     * The peer ids get written once and every key refers to its peer by the position in the peer ids,
+     * a key of a peer that is not in the peer ids carries the id itself.
+     * <p>
+     * Equal keys get written once into a table of values the keys refer to by index, the first upflow holds the same key for every peer.
+     * Values in the format public keys get encoded in (format, algorithm, length, encoded key) get split into their format and algorithm,
+     * which get written once into a table of headers, and the encoded key.
+     */
     public byte[] serialize() throws IOException {
+        LinkedHashMap<KeyHeader, Integer> headerIndices = new LinkedHashMap<>();
+        LinkedHashMap<KeyValue, Integer> valueIndices = new LinkedHashMap<>();
+        // the same array is the same value, saves hashing the key again for every peer that shares it
+        IdentityHashMap<byte[], Integer> arrayIndices = new IdentityHashMap<>();
+        ArrayList<Integer> valueIndicesOfKeys = new ArrayList<>(keys.size());
+        for (byte[] key : keys.values()) {
+            Integer valueIndex = arrayIndices.get(key);
+            if (valueIndex == null) {
+                KeyValue keyValue = new KeyValue(key);
+                valueIndex = valueIndices.get(keyValue);
+                if (valueIndex == null) {
+                    valueIndex = valueIndices.size();
+                    valueIndices.put(keyValue, valueIndex);
+                    keyValue.splitHeader();
+                    if (keyValue.header != null) {
+                        headerIndices.putIfAbsent(keyValue.header, headerIndices.size());
+                    }
+                }
+                arrayIndices.put(key, valueIndex);
+            }
+            valueIndicesOfKeys.add(valueIndex);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(estimateSize(valueIndices.keySet()));
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeByte(FORMAT_VERSION);
+        writeNullableUTF(dos, groupId);
+        writeNullableUTF(dos, keyAgreementAlgorithm);
+        dos.writeLong(epoch);
+
+        dos.writeInt(peerIds.size());
+        for (CharSequence peerId : peerIds) {
+            dos.writeUTF(peerId.toString());
+        }
+
+        dos.writeInt(headerIndices.size());
+        for (KeyHeader keyHeader : headerIndices.keySet()) {
+            dos.writeUTF(keyHeader.format);
+            dos.writeUTF(keyHeader.algorithm);
+        }
+
+        dos.writeInt(valueIndices.size());
+        for (KeyValue keyValue : valueIndices.keySet()) {
+            if (keyValue.header != null) {
+                dos.writeInt(headerIndices.get(keyValue.header));
+                dos.writeInt(keyValue.bytes.length - keyValue.bodyOffset);
+                dos.write(keyValue.bytes, keyValue.bodyOffset, keyValue.bytes.length - keyValue.bodyOffset);
+            } else {
+                dos.writeInt(NO_HEADER);
+                dos.writeInt(keyValue.bytes.length);
+                dos.write(keyValue.bytes);
+            }
+        }
+
+        dos.writeInt(keys.size());
+        int keyIndex = 0;
+        for (CharSequence peerId : keys.keySet()) {
+            writePeerPosition(dos, peerPositions, peerId);
+            dos.writeInt(valueIndicesOfKeys.get(keyIndex++));
+        }
+
+        dos.writeInt(supportedKeyAgreements.size());
+        for (Map.Entry<CharSequence, List<String>> entry : supportedKeyAgreements.entrySet()) {
+            writePeerPosition(dos, peerPositions, entry.getKey());
+            dos.writeInt(entry.getValue().size());
+            for (String keyAgreementName : entry.getValue()) {
+                dos.writeUTF(keyAgreementName);
+            }
+        }
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * The receivers only resolve classes of java itself, so the ids of the peers get written as strings
+     */
+    @Override
+    public byte[] serializeJavaSerialization() throws IOException {
+        List<CharSequence> stringPeerIds = new ArrayList<>(peerIds.size());
+        for (CharSequence peerId : peerIds) {
+            stringPeerIds.add(peerId.toString());
+        }
+        HashMap<CharSequence, byte[]> stringKeys = new HashMap<>();
+        for (Map.Entry<CharSequence, byte[]> entry : keys.entrySet()) {
+            stringKeys.put(entry.getKey().toString(), entry.getValue());
+        }
+        HashMap<CharSequence, List<String>> stringSupportedKeyAgreements = new HashMap<>();
+        for (Map.Entry<CharSequence, List<String>> entry : supportedKeyAgreements.entrySet()) {
+            stringSupportedKeyAgreements.put(entry.getKey().toString(), new ArrayList<>(entry.getValue()));
+        }
+
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(this);
+        oos.writeObject(new GroupCredentialMessageImpl(groupId == null ? null : groupId.toString(), stringPeerIds, stringKeys, keyAgreementAlgorithm, epoch,
+                stringSupportedKeyAgreements, false));
         oos.flush();
         return baos.toByteArray();
     }
 
     /**
-     * Static method to deserialize bytes into an {@link GroupCredentialMessageImpl} object
+     * Static method to deserialize bytes into an {@link GroupCredentialMessageImpl} object.
+     * Reads every version of the binary format and the java serialization older peers send.
      *
      * @param messageBytes - raw bytes to serialize from
      */
     public static GroupCredentialMessage deserialize(byte[] messageBytes) throws IOException, ClassNotFoundException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(messageBytes);
-        ObjectInputStream ois = new ObjectInputStream(bais);
+        if (messageBytes.length >= 2 && (messageBytes[0] & 0xFF) == 0xAC && (messageBytes[1] & 0xFF) == 0xED) {
+            return deserializeJavaSerialization(messageBytes);
+        }
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(messageBytes));
+        int version = dis.readUnsignedByte();
+        if (version != FORMAT_VERSION && version != FORMAT_VERSION_WITHOUT_KEY_AGREEMENTS && version != FORMAT_VERSION_WITHOUT_KEY_TABLE) {
+            throw new IOException("Unknown format version of the group credential message: " + version);
+        }
+        String groupId = readNullableUTF(dis);
+        String keyAgreementAlgorithm = readNullableUTF(dis);
+        long epoch = dis.readLong();
+
+        int peerCount = readCount(dis);
+        List<CharSequence> peerIds = new ArrayList<>(peerCount);
+        for (int i = 0; i < peerCount; i++) {
+            peerIds.add(dis.readUTF());
+        }
+
+        HashMap<CharSequence, byte[]> keys = version == FORMAT_VERSION_WITHOUT_KEY_TABLE
+                ? readKeysWithoutKeyTable(dis, peerIds)
+                : readKeysWithKeyTable(dis, peerIds);
+        HashMap<CharSequence, List<String>> supportedKeyAgreements = version == FORMAT_VERSION
+                ? readSupportedKeyAgreements(dis, peerIds)
+                : new HashMap<>();
+
+        return new GroupCredentialMessageImpl(groupId, Collections.unmodifiableList(peerIds), keys, keyAgreementAlgorithm, epoch, supportedKeyAgreements, false);
+    }
+
+    private static HashMap<CharSequence, List<String>> readSupportedKeyAgreements(DataInputStream dis, List<CharSequence> peerIds) throws IOException {
+        int peerCount = readCount(dis);
+        HashMap<CharSequence, List<String>> supportedKeyAgreements = new HashMap<>();
+        for (int i = 0; i < peerCount; i++) {
+            CharSequence peerId = readPeerId(dis, peerIds);
+            int nameCount = readCount(dis);
+            List<String> keyAgreementNames = new ArrayList<>(nameCount);
+            for (int j = 0; j < nameCount; j++) {
+                keyAgreementNames.add(dis.readUTF());
+            }
+            supportedKeyAgreements.put(peerId, Collections.unmodifiableList(keyAgreementNames));
+        }
+        return supportedKeyAgreements;
+    }
+
+    private static HashMap<CharSequence, byte[]> readKeysWithKeyTable(DataInputStream dis, List<CharSequence> peerIds) throws IOException {
+        int headerCount = readCount(dis);
+        byte[][] headers = new byte[headerCount][];
+        for (int i = 0; i < headerCount; i++) {
+            headers[i] = encodeHeader(dis.readUTF(), dis.readUTF());
+        }
+
+        int valueCount = readCount(dis);
+        byte[][] values = new byte[valueCount][];
+        for (int i = 0; i < valueCount; i++) {
+            int headerIndex = dis.readInt();
+            int length = readCount(dis);
+            if (headerIndex == NO_HEADER) {
+                values[i] = new byte[length];
+                dis.readFully(values[i]);
+            } else if (headerIndex >= 0 && headerIndex < headerCount) {
+                byte[] header = headers[headerIndex];
+                values[i] = new byte[header.length + 4 + length];
+                ByteBuffer.wrap(values[i]).put(header).putInt(length);
+                dis.readFully(values[i], header.length + 4, length);
+            } else {
+                throw new IOException("Key refers to a header that is not part of the message: " + headerIndex);
+            }
+        }
+
+        int keyCount = readCount(dis);
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            CharSequence peerId = readPeerId(dis, peerIds);
+            int valueIndex = dis.readInt();
+            if (valueIndex < 0 || valueIndex >= valueCount) {
+                throw new IOException("Key refers to a value that is not part of the message: " + valueIndex);
+            }
+            // peers with the same key share the array, like they did when the message got created
+            keys.put(peerId, values[valueIndex]);
+        }
+        return keys;
+    }
+
+    private static HashMap<CharSequence, byte[]> readKeysWithoutKeyTable(DataInputStream dis, List<CharSequence> peerIds) throws IOException {
+        int keyCount = readCount(dis);
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            CharSequence peerId = readPeerId(dis, peerIds);
+            byte[] key = new byte[readCount(dis)];
+            dis.readFully(key);
+            keys.put(peerId, key);
+        }
+        return keys;
+    }
+
+    private static void writePeerPosition(DataOutputStream dos, Map<String, Integer> peerPositions, CharSequence peerId) throws IOException {
+        Integer position = peerPositions.get(peerId.toString());
+        if (position != null) {
+            dos.writeInt(position);
+        } else {
+            dos.writeInt(UNKNOWN_PEER_POSITION);
+            dos.writeUTF(peerId.toString());
+        }
+    }
+
+    private static CharSequence readPeerId(DataInputStream dis, List<CharSequence> peerIds) throws IOException {
+        int position = dis.readInt();
+        if (position == UNKNOWN_PEER_POSITION) {
+            return dis.readUTF();
+        }
+        if (position < 0 || position >= peerIds.size()) {
+            throw new IOException("Key refers to a peer that is not part of the message: " + position);
+        }
+        return peerIds.get(position);
+    }
+
+    private static byte[] encodeHeader(String format, String algorithm) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeUTF(format);
+        dos.writeUTF(algorithm);
+        return baos.toByteArray();
+    }
+
+    private static GroupCredentialMessage deserializeJavaSerialization(byte[] messageBytes) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(messageBytes));
+        // the message only consists of these classes, everything else does not get resolved at all
+        ois.setObjectInputFilter(LEGACY_FORMAT_FILTER);
         return (GroupCredentialMessageImpl) ois.readObject();
     }
+
+    private int estimateSize(Collection<KeyValue> values) {
+        int size = 64 + 8 * keys.size();
+        for (CharSequence peerId : peerIds) {
+            size += 2 + peerId.length();
+        }
+        for (KeyValue value : values) {
+            size += 8 + value.bytes.length;
+        }
+        return size;
+    }
+
+    private static void writeNullableUTF(DataOutputStream dos, CharSequence value) throws IOException {
+        dos.writeBoolean(value != null);
+        if (value != null) {
+            dos.writeUTF(value.toString());
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream dis) throws IOException {
+        return dis.readBoolean() ? dis.readUTF() : null;
+    }
+
+    /**
+     * Every counted element takes at least one byte, so a count above the remaining bytes is a broken message
+     */
+    private static int readCount(DataInputStream dis) throws IOException {
+        int count = dis.readInt();
+        if (count < 0 || count > dis.available()) {
+            throw new IOException("Invalid length in group credential message: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Java serialization does not run the constructor, the message gets created again so the positions of the peers exist
+     */
+    private Object readResolve() {
+        return new GroupCredentialMessageImpl(groupId, Collections.unmodifiableList(new ArrayList<>(peerIds)), keys, keyAgreementAlgorithm, epoch,
+                supportedKeyAgreements == null ? new HashMap<>() : supportedKeyAgreements, false);
+    }
+
+    /**
+     * Builds a message, for example the message of the next hop of an upflow.
+     * Starting from an existing message copies it once, every key put in afterwards replaces the key of its peer.
+     * The built message and the builder share the keys until one of them changes them, that one copies them first
+     */
+    public static class Builder {
+        private CharSequence groupId;
+        private List<CharSequence> peerIds;
+        private HashMap<CharSequence, byte[]> keys;
+        private String keyAgreementAlgorithm;
+        private long epoch;
+        private HashMap<CharSequence, List<String>> supportedKeyAgreements;
+        private boolean keysShared;
+
+        public Builder() {
+            this.peerIds = new ArrayList<>();
+            this.keys = new HashMap<>();
+            this.supportedKeyAgreements = new HashMap<>();
+        }
+
+        /**
+         * @param groupCredentialMessage - message to start from
+         */
+        public Builder(GroupCredentialMessage groupCredentialMessage) {
+            this.groupId = groupCredentialMessage.getGroupId();
+            this.peerIds = groupCredentialMessage.getPeerIds();
+            this.keys = groupCredentialMessage.getKeys();
+            this.keyAgreementAlgorithm = groupCredentialMessage.getKeyAgreementAlgorithm();
+            this.epoch = groupCredentialMessage.getEpoch();
+            this.supportedKeyAgreements = groupCredentialMessage.getSupportedKeyAgreements();
+        }
+
+        public Builder setGroupId(CharSequence groupId) {
+            this.groupId = groupId;
+            return this;
+        }
+
+        public Builder setPeerIds(List<CharSequence> peerIds) {
+            this.peerIds = new ArrayList<>(peerIds);
+            return this;
+        }
+
+        public Builder setKeyAgreementAlgorithm(String keyAgreementAlgorithm) {
+            this.keyAgreementAlgorithm = keyAgreementAlgorithm;
+            return this;
+        }
+
+        public Builder setEpoch(long epoch) {
+            this.epoch = epoch;
+            return this;
+        }
+
+        /**
+         * @param peerId - id of the peer
+         * @param key    - the key of the peer
+         */
+        public Builder putKey(CharSequence peerId, byte[] key) {
+            ownKeys().put(peerId, key);
+            return this;
+        }
+
+        /**
+         * @param keys - keys by the id of their peer
+         */
+        public Builder putKeys(Map<CharSequence, byte[]> keys) {
+            ownKeys().putAll(keys);
+            return this;
+        }
+
+        /**
+         * @param peerId            - id of the peer
+         * @param keyAgreementNames - names of the key agreements the peer supports, see {@link com.shiver.crypto.ShiverKeyAgreements}
+         */
+        public Builder putSupportedKeyAgreements(CharSequence peerId, List<String> keyAgreementNames) {
+            supportedKeyAgreements.put(peerId, Collections.unmodifiableList(new ArrayList<>(keyAgreementNames)));
+            return this;
+        }
+
+        /**
+         * The builder can go on after building, the built message does not change with it
+         */
+        public GroupCredentialMessageImpl build() {
+            keysShared = true;
+            return new GroupCredentialMessageImpl(groupId, Collections.unmodifiableList(new ArrayList<>(peerIds)), keys, keyAgreementAlgorithm, epoch,
+                    new HashMap<>(supportedKeyAgreements), true);
+        }
+
+        private HashMap<CharSequence, byte[]> ownKeys() {
+            if (keysShared) {
+                keys = new HashMap<>(keys);
+                keysShared = false;
+            }
+            return keys;
+        }
+    }
+
+    private static final class KeyHeader {
+        private final String format;
+        private final String algorithm;
+
+        private KeyHeader(String format, String algorithm) {
+            this.format = format;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof KeyHeader)) {
+                return false;
+            }
+            KeyHeader keyHeader = (KeyHeader) o;
+            return format.equals(keyHeader.format) && algorithm.equals(keyHeader.algorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * format.hashCode() + algorithm.hashCode();
+        }
+    }
+
+    /**
+     * A key compared by its content, split into header and encoded key if it is in the format of an encoded public key
+     */
+    private static final class KeyValue {
+        private final byte[] bytes;
+        private final int hashCode;
+        private KeyHeader header;
+        private int bodyOffset;
+
+        private KeyValue(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        private void splitHeader() {
+            try {
+                DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+                String format = dis.readUTF();
+                String algorithm = dis.readUTF();
+                byte[] encodedHeader = encodeHeader(format, algorithm);
+                // only if writing the header again gives the same bytes, otherwise the key could not get restored exactly
+                if (!Arrays.equals(bytes, 0, encodedHeader.length, encodedHeader, 0, encodedHeader.length)) {
+                    return;
+                }
+                if (dis.readInt() != bytes.length - encodedHeader.length - 4) {
+                    return;
+                }
+                header = new KeyHeader(format, algorithm);
+                bodyOffset = encodedHeader.length + 4;
+            } catch (IOException e) {
+                // not in the format of the public keys, gets written as it is
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof KeyValue && Arrays.equals(bytes, ((KeyValue) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
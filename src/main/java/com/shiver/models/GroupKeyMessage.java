@@ -0,0 +1,68 @@
+package com.shiver.models;
+
+import java.io.*;
+
+/**
+ * The message of the tailored broadcast phase.
+ * Instead of the intermediate keys of every member it only carries the one intermediate key of the receiver,
+ * so the broadcast to all members grows linear with the size of the group.
+ */
+public class GroupKeyMessage implements Serializable {
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=4;com.shiver.models.GroupKeyMessage;java.lang.*;!*");
+
+    private final CharSequence groupId;
+    private final long epoch;
+    private final String keyAgreementAlgorithm;
+    private final byte[] key;
+
+    /**
+     * @param groupId               - id of the group
+     * @param epoch                 - the epoch the key belongs to, see {@link GroupCredentialMessage#getEpoch()}
+     * @param keyAgreementAlgorithm - name of the key agreement of the group
+     * @param key                   - intermediate key of the receiver, holding the private keys of all other members
+     */
+    public GroupKeyMessage(CharSequence groupId, long epoch, String keyAgreementAlgorithm, byte[] key) {
+        this.groupId = groupId;
+        this.epoch = epoch;
+        this.keyAgreementAlgorithm = keyAgreementAlgorithm;
+        this.key = key;
+    }
+
+    public CharSequence getGroupId() {
+        return groupId;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public String getKeyAgreementAlgorithm() {
+        return keyAgreementAlgorithm;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(this);
+        oos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Static method to deserialize bytes into an {@link GroupKeyMessage} object
+     *
+     * @param messageBytes - raw bytes to serialize from
+     */
+    public static GroupKeyMessage deserialize(byte[] messageBytes) throws IOException, ClassNotFoundException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(messageBytes);
+        ObjectInputStream ois = new ObjectInputStream(bais);
+        // the message only consists of these classes, everything else does not get resolved at all
+        ois.setObjectInputFilter(FILTER);
+        return (GroupKeyMessage) ois.readObject();
+    }
+}
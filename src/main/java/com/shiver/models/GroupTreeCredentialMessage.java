@@ -0,0 +1,105 @@
+package com.shiver.models;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The message of the tree based group key agreement.
+ * It carries the key tree of an epoch and the public keys of its nodes, stored by the label of the node.
+ * Every change of the members or of a leaf key starts a new epoch. Keys of different epochs never get mixed.
+ */
+public class GroupTreeCredentialMessage implements GroupCredentialMessage, Serializable {
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=8;com.shiver.models.GroupTreeCredentialMessage;com.shiver.models.ShiverKeyTree;java.util.*;java.lang.*;!*");
+
+    private final CharSequence groupId;
+    private final CharSequence senderPeerId;
+    private final ShiverKeyTree keyTree;
+    private final long epoch;
+    private final HashMap<CharSequence, byte[]> keys;
+    private final String keyAgreementAlgorithm;
+
+    /**
+     * @param groupId               - id of the group
+     * @param senderPeerId          - id of the peer that sends the message
+     * @param keyTree               - the key tree of the epoch
+     * @param epoch                 - the epoch the tree and the keys belong to
+     * @param keys                  - public keys of the nodes by their label
+     * @param keyAgreementAlgorithm - name of the key agreement of the group
+     */
+    public GroupTreeCredentialMessage(CharSequence groupId, CharSequence senderPeerId, ShiverKeyTree keyTree, long epoch, HashMap<CharSequence, byte[]> keys, String keyAgreementAlgorithm) {
+        this.groupId = groupId;
+        this.senderPeerId = senderPeerId;
+        this.keyTree = keyTree;
+        this.epoch = epoch;
+        this.keys = keys;
+        this.keyAgreementAlgorithm = keyAgreementAlgorithm;
+    }
+
+    public CharSequence getGroupId() {
+        return groupId;
+    }
+
+    public CharSequence getSenderPeerId() {
+        return senderPeerId;
+    }
+
+    public ShiverKeyTree getKeyTree() {
+        return keyTree;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Every member of the group, from the leftmost to the rightmost leaf of the tree
+     */
+    public List<CharSequence> getPeerIds() {
+        return keyTree.getPeerIds();
+    }
+
+    /**
+     * The public keys of the nodes of the tree by the label of the node
+     */
+    public HashMap<CharSequence, byte[]> getKeys() {
+        return new HashMap<>(keys);
+    }
+
+    public String getKeyAgreementAlgorithm() {
+        return keyAgreementAlgorithm;
+    }
+
+    /**
+     * Puts in the public key of a node
+     *
+     * @param peerId - label of the node
+     * @param key    - the public key of the node
+     */
+    @Override
+    public void putKeyForPeerId(CharSequence peerId, byte[] key) {
+        keys.put(peerId, key);
+    }
+
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(this);
+        oos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Static method to deserialize bytes into an {@link GroupTreeCredentialMessage} object
+     *
+     * @param messageBytes - raw bytes to serialize from
+     */
+    public static GroupTreeCredentialMessage deserialize(byte[] messageBytes) throws IOException, ClassNotFoundException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(messageBytes);
+        ObjectInputStream ois = new ObjectInputStream(bais);
+        // the message only consists of these classes, everything else does not get resolved at all
+        ois.setObjectInputFilter(FILTER);
+        return (GroupTreeCredentialMessage) ois.readObject();
+    }
+}
@@ -0,0 +1,68 @@
+package com.shiver.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The result of encrypting or decrypting many messages at once.
+ * Every message has its own outcome, so one broken message does not fail the whole batch.
+ * The indices are the same as in the list of messages that got handed in.
+ */
+public class ShiverBatchResult {
+    private final byte[][] results;
+    private final Exception[] errors;
+
+    public ShiverBatchResult(byte[][] results, Exception[] errors) {
+        if (results.length != errors.length) {
+            throw new IllegalArgumentException("results and errors need the same length");
+        }
+        this.results = results;
+        this.errors = errors;
+    }
+
+    /**
+     * Number of messages in this batch
+     */
+    public int size() {
+        return results.length;
+    }
+
+    /**
+     * @param index - index of the message
+     * @return - if the message at this index got processed
+     */
+    public boolean isSuccess(int index) {
+        return errors[index] == null;
+    }
+
+    /**
+     * @return - if at least one message failed
+     */
+    public boolean hasErrors() {
+        return Arrays.stream(errors).anyMatch(error -> error != null);
+    }
+
+    /**
+     * @param index - index of the message
+     * @return - the processed message or null if it failed
+     */
+    public byte[] getResult(int index) {
+        return results[index];
+    }
+
+    /**
+     * @param index - index of the message
+     * @return - the exception of the failed message or null if it succeeded
+     */
+    public Exception getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * @return - all processed messages in order. Failed messages are null
+     */
+    public List<byte[]> getResults() {
+        return new ArrayList<>(Arrays.asList(results));
+    }
+}
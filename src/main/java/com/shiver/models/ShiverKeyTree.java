@@ -0,0 +1,221 @@
+package com.shiver.models;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The binary key tree of a tree based group key agreement (TGDH).
+ * <p>
+ * Every member of the group sits on a leaf. A node is named by its path from the root: the root is the empty label,
+ * a "0" appended means the left child and a "1" the right child. The key of an inner node is agreed between its two children,
+ * so a member only needs the keys on its own path and the public keys of their siblings to compute the root.
+ * The sponsor of a node is the member on the rightmost leaf below it. The sponsor is the one that publishes the node.
+ * <p>
+ * Instances are immutable, every change of the members results in a new tree.
+ */
+public class ShiverKeyTree implements Serializable {
+    public static final String ROOT = "";
+
+    // labels of the leaves are prefix free, so their natural order is the order of the leaves from left to right
+    private final TreeMap<String, CharSequence> leaves;
+
+    private ShiverKeyTree(TreeMap<String, CharSequence> leaves) {
+        this.leaves = leaves;
+    }
+
+    /**
+     * Creates a tree of minimal height. The peers sit on the leaves in the order of the list
+     *
+     * @param peerIds - members of the group, at least one
+     */
+    public static ShiverKeyTree balanced(List<CharSequence> peerIds) {
+        if (peerIds.isEmpty()) {
+            throw new IllegalArgumentException("A key tree needs at least one member");
+        }
+        TreeMap<String, CharSequence> leaves = new TreeMap<>();
+        fill(leaves, peerIds, ROOT);
+        return new ShiverKeyTree(leaves);
+    }
+
+    private static void fill(TreeMap<String, CharSequence> leaves, List<CharSequence> peerIds, String label) {
+        if (peerIds.size() == 1) {
+            leaves.put(label, peerIds.get(0));
+            return;
+        }
+        int half = (peerIds.size() + 1) / 2;
+        fill(leaves, peerIds.subList(0, half), label + "0");
+        fill(leaves, peerIds.subList(half, peerIds.size()), label + "1");
+    }
+
+    /**
+     * Adds a member by splitting the rightmost of the shallowest leaves, so the tree grows as little as possible.
+     * The member of the split leaf moves to the left child and becomes the sponsor of the new member.
+     *
+     * @param peerId - the new member
+     * @return - the new tree
+     */
+    public ShiverKeyTree withPeer(CharSequence peerId) {
+        if (contains(peerId)) {
+            throw new IllegalArgumentException(peerId + " is already a member");
+        }
+        String insertion = null;
+        for (String label : leaves.keySet()) {
+            if (insertion == null || label.length() <= insertion.length()) {
+                insertion = label;
+            }
+        }
+
+        TreeMap<String, CharSequence> newLeaves = new TreeMap<>(leaves);
+        CharSequence sponsor = newLeaves.remove(insertion);
+        newLeaves.put(insertion + "0", sponsor);
+        newLeaves.put(insertion + "1", peerId);
+        return new ShiverKeyTree(newLeaves);
+    }
+
+    /**
+     * Removes a member. The subtree of its sibling moves up into the place of their parent
+     *
+     * @param peerId - the member to remove
+     * @return - the new tree
+     */
+    public ShiverKeyTree withoutPeer(CharSequence peerId) {
+        String leaf = getLeaf(peerId);
+        if (leaf == null) {
+            throw new IllegalArgumentException(peerId + " is no member");
+        }
+        if (leaf.equals(ROOT)) {
+            throw new IllegalArgumentException("The last member can not get removed");
+        }
+
+        TreeMap<String, CharSequence> newLeaves = new TreeMap<>();
+        for (Map.Entry<String, CharSequence> entry : leaves.entrySet()) {
+            String label = afterRemoval(leaf, entry.getKey());
+            if (label != null) {
+                newLeaves.put(label, entry.getValue());
+            }
+        }
+        return new ShiverKeyTree(newLeaves);
+    }
+
+    /**
+     * Tells where a node ends up when the member on a leaf gets removed
+     *
+     * @param removedLeaf - label of the leaf that gets removed
+     * @param label       - label of a node before the removal
+     * @return - label of the node after the removal or null if the node is gone
+     */
+    public static String afterRemoval(String removedLeaf, String label) {
+        if (label.startsWith(removedLeaf)) {
+            return null;
+        }
+        String sibling = getSibling(removedLeaf);
+        if (label.startsWith(sibling)) {
+            return getParent(removedLeaf) + label.substring(sibling.length());
+        }
+        if (removedLeaf.startsWith(label)) {
+            // the parent of the removed leaf is replaced by the sibling
+            return label.length() == removedLeaf.length() - 1 ? null : label;
+        }
+        return label;
+    }
+
+    /**
+     * @return - all members from the leftmost to the rightmost leaf
+     */
+    public List<CharSequence> getPeerIds() {
+        return new ArrayList<>(leaves.values());
+    }
+
+    public int size() {
+        return leaves.size();
+    }
+
+    public boolean contains(CharSequence peerId) {
+        return getLeaf(peerId) != null;
+    }
+
+    /**
+     * @param peerId - id of a member
+     * @return - label of the leaf of the member or null if it is no member
+     */
+    public String getLeaf(CharSequence peerId) {
+        for (Map.Entry<String, CharSequence> entry : leaves.entrySet()) {
+            if (entry.getValue().toString().equals(peerId.toString())) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param label - label of a node
+     * @return - the member on the rightmost leaf below the node
+     */
+    public CharSequence getSponsor(String label) {
+        Map.Entry<String, CharSequence> entry = leaves.floorEntry(label + "2");
+        if (entry == null || !entry.getKey().startsWith(label)) {
+            throw new IllegalArgumentException("There is no node " + label);
+        }
+        return entry.getValue();
+    }
+
+    /**
+     * @param label - label of a node
+     * @return - labels from the node up to the root, the root included
+     */
+    public static List<String> getPath(String label) {
+        List<String> path = new ArrayList<>();
+        for (int length = label.length(); length >= 0; length--) {
+            path.add(label.substring(0, length));
+        }
+        return path;
+    }
+
+    public static String getParent(String label) {
+        return label.substring(0, label.length() - 1);
+    }
+
+    public static String getSibling(String label) {
+        char last = label.charAt(label.length() - 1);
+        return getParent(label) + (last == '0' ? '1' : '0');
+    }
+
+    /**
+     * @return - the number of edges between the root and the deepest leaf
+     */
+    public int getHeight() {
+        int height = 0;
+        for (String label : leaves.keySet()) {
+            height = Math.max(height, label.length());
+        }
+        return height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ShiverKeyTree)) {
+            return false;
+        }
+        ShiverKeyTree other = (ShiverKeyTree) o;
+        if (!leaves.keySet().equals(other.leaves.keySet())) {
+            return false;
+        }
+        for (Map.Entry<String, CharSequence> entry : leaves.entrySet()) {
+            if (!entry.getValue().toString().equals(other.leaves.get(entry.getKey()).toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return leaves.keySet().hashCode();
+    }
+}
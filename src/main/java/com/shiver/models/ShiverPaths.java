@@ -15,7 +15,27 @@ public enum ShiverPaths {
     /**
      * Path representing the broadcast phase
      */
-    SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST("shark/shiver/group_credential_message/broadcast");
+    SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST("shark/shiver/group_credential_message/broadcast"),
+
+    /**
+     * Path representing the broadcast phase, where every member only gets its own key
+     */
+    SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST("shark/shiver/group_credential_message/tailored_broadcast"),
+
+    /**
+     * Path representing the signed broadcasts of the tree based key agreement
+     */
+    SHIVER_GROUP_TREE_MESSAGE("shark/shiver/group_tree_message"),
+
+    /**
+     * Path representing the first round of the Burmester-Desmedt key agreement
+     */
+    SHIVER_GROUP_BD_MESSAGE_ROUND_ONE("shark/shiver/group_bd_message/round_one"),
+
+    /**
+     * Path representing the second round of the Burmester-Desmedt key agreement
+     */
+    SHIVER_GROUP_BD_MESSAGE_ROUND_TWO("shark/shiver/group_bd_message/round_two");
     private final String value;
 
     private ShiverPaths(String value) {
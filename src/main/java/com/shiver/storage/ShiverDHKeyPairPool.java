@@ -0,0 +1,176 @@
+package com.shiver.storage;
+
+import com.shiver.crypto.ShiverKeyAgreements;
+import com.shiver.exceptions.ShiverDHKeyGenerationException;
+import net.sharksystem.utils.Log;
+
+import javax.crypto.spec.DHParameterSpec;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of pre generated DH key pairs, so starting or accepting a group does not have to wait for a new key pair.
+ * <p>
+ * A low priority background thread fills the pool up to the high watermark.
+ * When the pool drops below the low watermark, it gets filled up to the high watermark again.
+ * If the pool is empty, a key pair gets generated on the calling thread.
+ * The refill thread gets started by {@link #start()} or the first {@link #take()}, it is a daemon thread.
+ * It is safe to use from multiple threads.
+ */
+public class ShiverDHKeyPairPool implements AutoCloseable {
+    public static final int DEFAULT_LOW_WATERMARK = 2;
+    public static final int DEFAULT_HIGH_WATERMARK = 4;
+
+    private final DHParameterSpec dhParameterSpec;
+    private final int lowWatermark;
+    private final int highWatermark;
+
+    private final ConcurrentLinkedQueue<KeyPair> keyPairs = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Object refillLock = new Object();
+    private Thread refillThread;
+    private boolean closed = false;
+
+    /**
+     * Uses the default watermarks
+     */
+    public ShiverDHKeyPairPool() {
+        this(DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK);
+    }
+
+    /**
+     * @param lowWatermark  - the pool gets refilled when it holds less key pairs than this
+     * @param highWatermark - the pool gets refilled up to this many key pairs. With 0 nothing gets pre generated
+     */
+    public ShiverDHKeyPairPool(int lowWatermark, int highWatermark) {
+        this(ShiverKeyAgreements.DH_PARAMETER_SPEC, lowWatermark, highWatermark);
+    }
+
+    /**
+     * @param dhParameterSpec - the parameters of the generated key pairs
+     * @param lowWatermark    - the pool gets refilled when it holds less key pairs than this
+     * @param highWatermark   - the pool gets refilled up to this many key pairs. With 0 nothing gets pre generated
+     */
+    public ShiverDHKeyPairPool(DHParameterSpec dhParameterSpec, int lowWatermark, int highWatermark) {
+        if (lowWatermark < 0 || highWatermark < lowWatermark) {
+            throw new IllegalArgumentException("The watermarks need 0 <= lowWatermark <= highWatermark");
+        }
+        this.dhParameterSpec = dhParameterSpec;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    /**
+     * Starts the refill thread, so the pool gets filled before the first key pair is needed
+     */
+    public void start() {
+        synchronized (refillLock) {
+            if (closed) {
+                throw new IllegalStateException("Pool is closed");
+            }
+            if (refillThread == null && highWatermark > 0) {
+                refillThread = new Thread(this::refill, "shiver-dh-key-pair-pool");
+                refillThread.setDaemon(true);
+                refillThread.setPriority(Thread.MIN_PRIORITY);
+                refillThread.start();
+            }
+        }
+    }
+
+    /**
+     * Takes a key pair out of the pool or generates one if the pool is empty.
+     * Every key pair is only handed out once.
+     *
+     * @return - a new DH key pair
+     * @throws ShiverDHKeyGenerationException - if the pool is empty and generating a key pair fails
+     */
+    public KeyPair take() throws ShiverDHKeyGenerationException {
+        start();
+
+        KeyPair keyPair = keyPairs.poll();
+        if (keyPair != null) {
+            if (size.decrementAndGet() < lowWatermark) {
+                signalRefill();
+            }
+            return keyPair;
+        }
+
+        signalRefill();
+        return generateKeyPair(dhParameterSpec);
+    }
+
+    /**
+     * Puts a key pair back that was taken but never used or handed out
+     */
+    void recycle(KeyPair keyPair) {
+        if (size.get() < highWatermark) {
+            keyPairs.offer(keyPair);
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return - how many key pairs are ready right now
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Stops the refill thread and drops all pre generated key pairs
+     */
+    @Override
+    public void close() {
+        synchronized (refillLock) {
+            closed = true;
+            refillLock.notifyAll();
+        }
+        keyPairs.clear();
+        size.set(0);
+    }
+
+    static KeyPair generateKeyPair(DHParameterSpec dhParameterSpec) throws ShiverDHKeyGenerationException {
+        try {
+            KeyPairGenerator gen = KeyPairGenerator.getInstance("DH");
+            gen.initialize(dhParameterSpec);
+            return gen.generateKeyPair();
+        } catch (Exception e) {
+            throw new ShiverDHKeyGenerationException(e);
+        }
+    }
+
+    private void signalRefill() {
+        synchronized (refillLock) {
+            refillLock.notifyAll();
+        }
+    }
+
+    private void refill() {
+        boolean filling = true;
+        try {
+            while (true) {
+                synchronized (refillLock) {
+                    while (!closed && !filling && size.get() >= lowWatermark) {
+                        refillLock.wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+
+                filling = true;
+                keyPairs.offer(generateKeyPair(dhParameterSpec));
+                if (size.incrementAndGet() >= highWatermark) {
+                    filling = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ShiverDHKeyGenerationException e) {
+            // callers still get their key pairs, they just get generated on their own thread now
+            Log.writeLogErr(this, "Stopped pre generating DH key pairs", e.getMessage());
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.shiver.storage;
 
+import com.shiver.crypto.ShiverKeyAgreement;
+import com.shiver.crypto.ShiverKeyAgreements;
 import com.shiver.exceptions.ShiverDHKeyGenerationException;
 
 import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
 
 /**
- * This interface helps to store DH KeyPairs for the process of exchanging keys
+ * This interface helps to store DH KeyPairs for the process of exchanging keys.
+ * Groups that use another {@link ShiverKeyAgreement} get their key pairs from here as well
  */
 public interface ShiverDHKeyPairStorage {
     /**
@@ -17,6 +21,23 @@ public interface ShiverDHKeyPairStorage {
      */
     KeyPair getOrGenerateKeyPairForGroup(CharSequence groupId) throws ShiverDHKeyGenerationException;
 
+    /**
+     * Fetches an already stored key associated with a groupId or generates a new one for the agreement and stores it.
+     * Storages that only know DH do not need to implement this, DH groups get their key pair from
+     * {@link #getOrGenerateKeyPairForGroup(CharSequence)} and every other agreement gets rejected
+     *
+     * @param groupId      - id associated with the key
+     * @param keyAgreement - the agreement the group uses
+     * @return - KeyPair to do the agreement with
+     * @throws ShiverDHKeyGenerationException - if something fails when generating a new key or the storage does not support the agreement
+     */
+    default KeyPair getOrGenerateKeyPairForGroup(CharSequence groupId, ShiverKeyAgreement keyAgreement) throws ShiverDHKeyGenerationException {
+        if (ShiverKeyAgreements.DH_NAME.equals(keyAgreement.getName())) {
+            return getOrGenerateKeyPairForGroup(groupId);
+        }
+        throw new ShiverDHKeyGenerationException(new NoSuchAlgorithmException("The storage only supports DH key pairs, not " + keyAgreement.getName()));
+    }
+
     /**
      * Delete the key for the group
      *
@@ -1,5 +1,7 @@
 package com.shiver.storage;
 
+import com.shiver.crypto.ShiverCipherSuites;
+
 import java.security.Key;
 
 /**
@@ -7,13 +9,40 @@ import java.security.Key;
  */
 public interface ShiverKeyStorage {
     /**
-     * Stores a group key by an id
+     * Stores a group key by an id. The group uses the default cipher suite of the storage
      *
      * @param groupId    - id to store for
      * @param privateKey - key to store
      */
     void storeKeyForGroup(CharSequence groupId, Key privateKey);
 
+    /**
+     * Stores a group key by an id together with the cipher suite the group messages get encrypted with.
+     * Storages that do not know about cipher suites do not need to implement this, the key gets stored with
+     * {@link #storeKeyForGroup(CharSequence, Key)} and the group keeps the suite of {@link #getCipherSuiteIdForGroup(CharSequence)}
+     *
+     * @param groupId       - id to store for
+     * @param privateKey    - key to store
+     * @param cipherSuiteId - id of the suite, see {@link ShiverCipherSuites}
+     */
+    default void storeKeyForGroup(CharSequence groupId, Key privateKey, byte cipherSuiteId) {
+        storeKeyForGroup(groupId, privateKey);
+    }
+
+    /**
+     * Stores a new key for a group and forgets its previous key, so messages of the old key do not get decrypted anymore.
+     * Used when members got removed, they still have the old key. The suite of the group stays the same.
+     * The default deletes the group and stores the key again
+     *
+     * @param groupId    - id to store for
+     * @param privateKey - key to store
+     */
+    default void replaceKeyForGroup(CharSequence groupId, Key privateKey) {
+        byte cipherSuiteId = getCipherSuiteIdForGroup(groupId);
+        deleteKeyForGroup(groupId);
+        storeKeyForGroup(groupId, privateKey, cipherSuiteId);
+    }
+
     /**
      * Fetches a key for a group
      *
@@ -22,6 +51,31 @@ public interface ShiverKeyStorage {
      */
     Key getKeyForGroup(CharSequence groupId);
 
+    /**
+     * Fetches the key a group had before its current key. Messages that were still on their way while the members of a
+     * group changed are encrypted with this key
+     *
+     * Storages that do not keep the previous key do not need to implement this, their groups only decrypt with the current key
+     *
+     * @param groupId - id of the group
+     * @return - returns null if the group never had another key
+     */
+    default Key getPreviousKeyForGroup(CharSequence groupId) {
+        return null;
+    }
+
+    /**
+     * Fetches the id of the cipher suite a group encrypts its messages with.
+     * Storages that do not know about cipher suites do not need to implement this, their groups keep the legacy ECB suite
+     * they encrypted with before
+     *
+     * @param groupId - id of the group
+     * @return - the id of the suite, see {@link ShiverCipherSuites}
+     */
+    default byte getCipherSuiteIdForGroup(CharSequence groupId) {
+        return ShiverCipherSuites.LEGACY_AES_ECB_ID;
+    }
+
     /**
      * deletes all keys associated with a groupId
      *
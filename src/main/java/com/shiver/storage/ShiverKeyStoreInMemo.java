@@ -1,19 +1,86 @@
 package com.shiver.storage;
 
+import com.shiver.crypto.ShiverCipherSuites;
+
 import java.security.Key;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 /**
  * This class is an in memory implementation for the {@link ShiverKeyStorage}
+ * The previous key of a group is only kept for a short time after the key changed, long enough for the messages
+ * that were on their way. A member that got removed still has that key, so it must not open the group for long.
  * All data gets lost when restarting the process
+ * It is safe to use from multiple threads
  */
 public class ShiverKeyStoreInMemo implements ShiverKeyStorage {
+    public static final long DEFAULT_PREVIOUS_KEY_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ConcurrentHashMap<CharSequence, Key> keys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CharSequence, PreviousKey> previousKeys = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CharSequence, Byte> cipherSuiteIds = new ConcurrentHashMap<>();
+    private final byte defaultCipherSuiteId;
+    private final long previousKeyLifetimeNanos;
+    private final LongSupplier nanoClock;
+
+    /**
+     * Groups that get stored without a suite use AES-GCM, previous keys are kept for a minute
+     */
+    public ShiverKeyStoreInMemo() {
+        this(ShiverCipherSuites.AES_GCM_ID);
+    }
+
+    /**
+     * Previous keys are kept for a minute
+     *
+     * @param defaultCipherSuiteId - suite of the groups that get stored without a suite
+     */
+    public ShiverKeyStoreInMemo(byte defaultCipherSuiteId) {
+        this(defaultCipherSuiteId, DEFAULT_PREVIOUS_KEY_LIFETIME_MILLIS);
+    }
 
-    private final HashMap<CharSequence, Key> keys = new HashMap<>();
+    /**
+     * @param defaultCipherSuiteId      - suite of the groups that get stored without a suite
+     * @param previousKeyLifetimeMillis - how long the previous key of a group still decrypts after the key changed, 0 keeps no previous key
+     */
+    public ShiverKeyStoreInMemo(byte defaultCipherSuiteId, long previousKeyLifetimeMillis) {
+        this(defaultCipherSuiteId, previousKeyLifetimeMillis, System::nanoTime);
+    }
+
+    ShiverKeyStoreInMemo(byte defaultCipherSuiteId, long previousKeyLifetimeMillis, LongSupplier nanoClock) {
+        ShiverCipherSuites.forId(defaultCipherSuiteId);
+        if (previousKeyLifetimeMillis < 0) {
+            throw new IllegalArgumentException("previousKeyLifetimeMillis can not be negative");
+        }
+        this.defaultCipherSuiteId = defaultCipherSuiteId;
+        this.previousKeyLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(previousKeyLifetimeMillis);
+        this.nanoClock = nanoClock;
+    }
 
     @Override
     public void storeKeyForGroup(CharSequence groupId, Key key) {
+        storeKeyForGroup(groupId, key, defaultCipherSuiteId);
+    }
+
+    @Override
+    public void storeKeyForGroup(CharSequence groupId, Key key, byte cipherSuiteId) {
+        ShiverCipherSuites.forId(cipherSuiteId);
+        cipherSuiteIds.put(groupId, cipherSuiteId);
+        Key previousKey = keys.put(groupId, key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            if (previousKeyLifetimeNanos > 0) {
+                previousKeys.put(groupId, new PreviousKey(previousKey, nanoClock.getAsLong() + previousKeyLifetimeNanos));
+            } else {
+                previousKeys.remove(groupId);
+            }
+        }
+    }
+
+    @Override
+    public void replaceKeyForGroup(CharSequence groupId, Key key) {
         keys.put(groupId, key);
+        previousKeys.remove(groupId);
     }
 
     @Override
@@ -21,8 +88,38 @@ public class ShiverKeyStoreInMemo implements ShiverKeyStorage {
         return keys.get(groupId);
     }
 
+    @Override
+    public Key getPreviousKeyForGroup(CharSequence groupId) {
+        PreviousKey previousKey = previousKeys.get(groupId);
+        if (previousKey == null) {
+            return null;
+        }
+        if (nanoClock.getAsLong() - previousKey.until >= 0) {
+            previousKeys.remove(groupId, previousKey);
+            return null;
+        }
+        return previousKey.key;
+    }
+
+    @Override
+    public byte getCipherSuiteIdForGroup(CharSequence groupId) {
+        return cipherSuiteIds.getOrDefault(groupId, defaultCipherSuiteId);
+    }
+
     @Override
     public void deleteKeyForGroup(CharSequence groupId) {
         keys.remove(groupId);
+        previousKeys.remove(groupId);
+        cipherSuiteIds.remove(groupId);
+    }
+
+    private static final class PreviousKey {
+        private final Key key;
+        private final long until;
+
+        private PreviousKey(Key key, long until) {
+            this.key = key;
+            this.until = until;
+        }
     }
 }
@@ -0,0 +1,21 @@
+package com.shiver.storage;
+
+/**
+ * A storage for the digests of the received messages that already got handled.
+ * ASAP delivers stored messages again on every encounter, messages with a known digest get dropped before they get decrypted.
+ * Implementations that keep the digests across restarts also drop the messages that got handled before the restart
+ */
+public interface ShiverSeenMessageStorage {
+    /**
+     * @param digest - digest of the encrypted message
+     * @return - true if a message with this digest already got handled
+     */
+    boolean isMessageSeen(byte[] digest);
+
+    /**
+     * Stores the digest of a handled message
+     *
+     * @param digest - digest of the encrypted message
+     */
+    void storeSeenMessage(byte[] digest);
+}
@@ -0,0 +1,67 @@
+package com.shiver.storage;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is an in memory implementation for the {@link ShiverSeenMessageStorage}
+ * It keeps a bounded number of digests and forgets the ones that got seen the longest time ago first.
+ * All data gets lost when restarting the process
+ * It is safe to use from multiple threads
+ */
+public class ShiverSeenMessageStorageInMemo implements ShiverSeenMessageStorage {
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private final int maxEntries;
+
+    // in the order of the last access, so the digest that got seen the longest time ago gets dropped first
+    private final LinkedHashMap<ByteBuffer, Boolean> seenMessages;
+
+    /**
+     * Keeps up to {@value #DEFAULT_MAX_ENTRIES} digests
+     */
+    public ShiverSeenMessageStorageInMemo() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries - how many digests get kept at most
+     */
+    public ShiverSeenMessageStorageInMemo(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries has to be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.seenMessages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+                return size() > ShiverSeenMessageStorageInMemo.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public boolean isMessageSeen(byte[] digest) {
+        synchronized (seenMessages) {
+            return seenMessages.get(ByteBuffer.wrap(digest)) != null;
+        }
+    }
+
+    @Override
+    public void storeSeenMessage(byte[] digest) {
+        synchronized (seenMessages) {
+            // copied, so a caller that reuses its array can not change the stored digest
+            seenMessages.put(ByteBuffer.wrap(digest.clone()), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return - how many digests are kept right now
+     */
+    public int size() {
+        synchronized (seenMessages) {
+            return seenMessages.size();
+        }
+    }
+}
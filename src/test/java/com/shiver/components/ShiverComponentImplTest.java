@@ -1,9 +1,13 @@
 package com.shiver.components;
 
+import com.shiver.crypto.ShiverChunkedCipher;
+import com.shiver.crypto.ShiverCipherCache;
+import com.shiver.crypto.ShiverCipherSuites;
 import com.shiver.exceptions.*;
 import com.shiver.logic.ShiverEventListener;
 import com.shiver.logic.ShiverSecurity;
 import com.shiver.models.GroupCredentialMessage;
+import com.shiver.models.ShiverBatchResult;
 import com.shiver.storage.ShiverDHKeyPairStorage;
 import com.shiver.storage.ShiverKeyStorage;
 import net.sharksystem.asap.ASAPException;
@@ -11,17 +15,31 @@ import net.sharksystem.asap.ASAPPeer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import javax.crypto.*;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ShiverComponentImplTest {
 
@@ -240,4 +258,744 @@ public class ShiverComponentImplTest {
             shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, testEncryptedMessage);
         });
     }
+
+    @Test
+    public void encryptMessageForGroup_usesNewKeyAfterInvalidate() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        String testMessage = "test_message";
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey oldKey = keyGenerator.generateKey();
+        SecretKey newKey = keyGenerator.generateKey();
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(oldKey);
+        byte[] oldEncrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage.getBytes());
+
+        shiverComponent.invalidateGroupKey(TEST_GROUP_ID);
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(newKey);
+        byte[] newEncrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage.getBytes());
+
+        Assertions.assertFalse(Arrays.equals(oldEncrypted, newEncrypted));
+        Assertions.assertEquals(testMessage, new String(shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, newEncrypted)));
+    }
+
+    @Test
+    public void encryptMessageForGroup_usesCipherSuiteOfGroup() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        String testMessage = "test_message";
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.AES_GCM_ID);
+        byte[] gcmEncrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage.getBytes());
+
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.AES_CTR_HMAC_ID);
+        byte[] ctrEncrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage.getBytes());
+
+        Assertions.assertSame(ShiverCipherSuites.AES_GCM, ShiverCipherSuites.detect(ByteBuffer.wrap(gcmEncrypted)));
+        Assertions.assertSame(ShiverCipherSuites.AES_CTR_HMAC, ShiverCipherSuites.detect(ByteBuffer.wrap(ctrEncrypted)));
+        Assertions.assertEquals(ShiverCipherSuites.AES_CTR_HMAC.getEncryptedLength(testMessage.length()), shiverComponent.getEncryptedMessageLength(TEST_GROUP_ID, testMessage.length()));
+        Assertions.assertEquals(testMessage, new String(shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, gcmEncrypted)));
+        Assertions.assertEquals(testMessage, new String(shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, ctrEncrypted)));
+    }
+
+    @Test
+    public void decryptMessageForGroup_legacyMessageOfAuthenticatedGroup() throws Exception {
+        String testMessage = "test_message";
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.AES_GCM_ID);
+
+        Cipher symmetricCipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        symmetricCipher.init(Cipher.ENCRYPT_MODE, testKey);
+        byte[] legacyEncrypted = symmetricCipher.doFinal(testMessage.getBytes());
+
+        ShiverBatchResult result = shiverComponent.decryptBatchForGroup(TEST_GROUP_ID, List.of(
+                legacyEncrypted,
+                shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage.getBytes())
+        ));
+
+        Assertions.assertEquals(testMessage, new String(shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, legacyEncrypted)));
+        Assertions.assertFalse(result.hasErrors());
+        Assertions.assertEquals(testMessage, new String(result.getResult(0)));
+        Assertions.assertEquals(testMessage, new String(result.getResult(1)));
+    }
+
+    @Test
+    public void decryptMessageForGroup_manipulatedAuthenticatedMessage() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.AES_GCM_ID);
+
+        byte[] encrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "test_message".getBytes());
+        encrypted[encrypted.length - 1] ^= 1;
+
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, encrypted);
+        });
+    }
+
+    @Test
+    public void decryptMessageForGroup_messageOfPreviousKey() throws Exception {
+        String testMessage = "test_message";
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey previousKey = keyGenerator.generateKey();
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.AES_GCM_ID);
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+        byte[] encrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage.getBytes());
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+        Mockito.when(mockShiverKeyStorage.getPreviousKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+
+        Assertions.assertEquals(testMessage, new String(shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, encrypted)));
+    }
+
+    @Test
+    public void decryptMessageForGroup_unknownKeyWithPreviousKey() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey unknownKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.AES_GCM_ID);
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(unknownKey);
+        byte[] encrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "test_message".getBytes());
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        Mockito.when(mockShiverKeyStorage.getPreviousKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, encrypted);
+        });
+    }
+
+    @Test
+    public void decryptMessageForGroup_legacySuiteDoesNotTryPreviousKey() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.LEGACY_AES_ECB_ID);
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        byte[] encrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "test_message".getBytes());
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        Mockito.when(mockShiverKeyStorage.getPreviousKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+
+        // a wrong key only fails the padding now and then, so the result is not checked, only that no other key gets tried
+        try {
+            shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, encrypted);
+        } catch (ShiverDecryptionException e) {
+            // expected most of the time
+        }
+
+        Mockito.verify(mockShiverKeyStorage, Mockito.never()).getPreviousKeyForGroup(TEST_GROUP_ID);
+    }
+
+    @Test
+    public void addMembersToGroup_delegatesMethodToSecurity() throws Exception {
+        List<CharSequence> testPeers = List.of("peer1");
+
+        shiverComponent.addMembersToGroup(TEST_GROUP_ID, testPeers);
+
+        Mockito.verify(mockShiverSecurity, Mockito.times(1)).addPeersToGroup(TEST_GROUP_ID, testPeers);
+    }
+
+    @Test
+    public void removeMembersFromGroup_delegatesMethodToSecurity() throws Exception {
+        List<CharSequence> testPeers = List.of("peer1");
+
+        shiverComponent.removeMembersFromGroup(TEST_GROUP_ID, testPeers);
+
+        Mockito.verify(mockShiverSecurity, Mockito.times(1)).removePeersFromGroup(TEST_GROUP_ID, testPeers);
+    }
+
+    @Test
+    public void removeMembersFromGroup_throwsShiverGroupSizeException() throws Exception {
+        List<CharSequence> testPeers = List.of("peer1");
+        Mockito.doThrow(new ShiverGroupSizeException()).when(mockShiverSecurity).removePeersFromGroup(TEST_GROUP_ID, testPeers);
+
+        Assertions.assertThrows(ShiverGroupSizeException.class, () -> {
+            shiverComponent.removeMembersFromGroup(TEST_GROUP_ID, testPeers);
+        });
+    }
+
+    @Test
+    public void encryptMessageForGroup_directByteBuffers() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        byte[] testMessage = "test_message".getBytes();
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        ByteBuffer plainBuffer = ByteBuffer.allocateDirect(testMessage.length);
+        plainBuffer.put(testMessage).flip();
+        ByteBuffer encryptedBuffer = ByteBuffer.allocateDirect(shiverComponent.getEncryptedMessageLength(TEST_GROUP_ID, testMessage.length));
+
+        int encryptedLength = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, plainBuffer, encryptedBuffer);
+        encryptedBuffer.flip();
+
+        byte[] encryptedBytes = new byte[encryptedBuffer.remaining()];
+        encryptedBuffer.duplicate().get(encryptedBytes);
+
+        ByteBuffer decryptedBuffer = ByteBuffer.allocateDirect(shiverComponent.getMaxDecryptedMessageLength(TEST_GROUP_ID, encryptedLength));
+        int decryptedLength = shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, encryptedBuffer, decryptedBuffer);
+        decryptedBuffer.flip();
+
+        byte[] decryptedBytes = new byte[decryptedLength];
+        decryptedBuffer.get(decryptedBytes);
+
+        Assertions.assertEquals(encryptedBytes.length, encryptedLength);
+        Assertions.assertArrayEquals(shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage), encryptedBytes);
+        Assertions.assertArrayEquals(testMessage, decryptedBytes);
+    }
+
+    @Test
+    public void encryptMessageForGroup_callerOwnedArrays() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        byte[] testMessage = "xxtest_messagexx".getBytes();
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        byte[] encrypted = new byte[4 + shiverComponent.getEncryptedMessageLength(TEST_GROUP_ID, 12)];
+        int encryptedLength = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage, 2, 12, encrypted, 4);
+
+        byte[] decrypted = new byte[shiverComponent.getMaxDecryptedMessageLength(TEST_GROUP_ID, encryptedLength)];
+        int decryptedLength = shiverComponent.decryptMessageForGroup(TEST_GROUP_ID, encrypted, 4, encryptedLength, decrypted, 0);
+
+        Assertions.assertEquals("test_message", new String(decrypted, 0, decryptedLength));
+    }
+
+    @Test
+    public void encryptMessageForGroup_outputTooSmall() throws NoSuchAlgorithmException {
+        byte[] testMessage = "test_message".getBytes();
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        Assertions.assertThrows(ShiverEncryptionException.class, () -> {
+            shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessage, 0, testMessage.length, new byte[4], 0);
+        });
+    }
+
+    @Test
+    public void getEncryptedMessageLength_noKey() {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            shiverComponent.getEncryptedMessageLength(TEST_GROUP_ID, 12);
+        });
+    }
+
+    @Test
+    public void openEncryptingStream_roundTrip() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException, IOException {
+        byte[] testMessage = new byte[200_000];
+        Arrays.fill(testMessage, (byte) 7);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream outputStream = shiverComponent.openEncryptingStream(TEST_GROUP_ID, encrypted)) {
+            outputStream.write(testMessage);
+        }
+
+        byte[] result;
+        try (InputStream inputStream = shiverComponent.openDecryptingStream(TEST_GROUP_ID, new ByteArrayInputStream(encrypted.toByteArray()))) {
+            result = inputStream.readAllBytes();
+        }
+
+        Assertions.assertArrayEquals(testMessage, result);
+    }
+
+    @Test
+    public void openDecryptingStream_streamOfPreviousKey() throws Exception {
+        byte[] testMessage = new byte[200 * 1024 + 3];
+        Arrays.fill(testMessage, (byte) 7);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey previousKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream outputStream = shiverComponent.openEncryptingStream(TEST_GROUP_ID, encrypted)) {
+            outputStream.write(testMessage);
+        }
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        Mockito.when(mockShiverKeyStorage.getPreviousKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+
+        byte[] result;
+        try (InputStream inputStream = shiverComponent.openDecryptingStream(TEST_GROUP_ID, new ByteArrayInputStream(encrypted.toByteArray()))) {
+            result = inputStream.readAllBytes();
+        }
+
+        Assertions.assertArrayEquals(testMessage, result);
+    }
+
+    @Test
+    public void openDecryptingStream_unknownKeyWithPreviousKey() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream outputStream = shiverComponent.openEncryptingStream(TEST_GROUP_ID, encrypted)) {
+            outputStream.write("test_message".getBytes());
+        }
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        Mockito.when(mockShiverKeyStorage.getPreviousKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+
+        try (InputStream inputStream = shiverComponent.openDecryptingStream(TEST_GROUP_ID, new ByteArrayInputStream(encrypted.toByteArray()))) {
+            Assertions.assertThrows(IOException.class, inputStream::readAllBytes);
+        }
+    }
+
+    @Test
+    public void openEncryptingStream_noKey() {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            shiverComponent.openEncryptingStream(TEST_GROUP_ID, new ByteArrayOutputStream());
+        });
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            shiverComponent.openDecryptingStream(TEST_GROUP_ID, new ByteArrayInputStream(new byte[0]));
+        });
+    }
+
+    @Test
+    public void encryptBatchForGroup_roundTrip() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        List<byte[]> testMessages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            testMessages.add(("test_message_" + i).getBytes());
+        }
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        ShiverBatchResult encrypted = shiverComponent.encryptBatchForGroup(TEST_GROUP_ID, testMessages);
+        ShiverBatchResult decrypted = shiverComponent.decryptBatchForGroup(TEST_GROUP_ID, encrypted.getResults());
+
+        Assertions.assertFalse(encrypted.hasErrors());
+        Assertions.assertFalse(decrypted.hasErrors());
+        for (int i = 0; i < testMessages.size(); i++) {
+            Assertions.assertArrayEquals(shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, testMessages.get(i)), encrypted.getResult(i));
+            Assertions.assertArrayEquals(testMessages.get(i), decrypted.getResult(i));
+        }
+        Mockito.verify(mockShiverKeyStorage, Mockito.times(2 + testMessages.size())).getKeyForGroup(TEST_GROUP_ID);
+    }
+
+    @Test
+    public void decryptBatchForGroup_reportsErrorsPerMessage() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        List<byte[]> testMessages = new ArrayList<>();
+        testMessages.add(shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "first".getBytes()));
+        testMessages.add("not_encrypted".getBytes());
+        testMessages.add(shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "third".getBytes()));
+
+        ShiverBatchResult result = shiverComponent.decryptBatchForGroup(TEST_GROUP_ID, testMessages);
+
+        Assertions.assertTrue(result.hasErrors());
+        Assertions.assertEquals("first", new String(result.getResult(0)));
+        Assertions.assertNull(result.getResult(1));
+        Assertions.assertInstanceOf(ShiverDecryptionException.class, result.getError(1));
+        Assertions.assertEquals("third", new String(result.getResult(2)));
+    }
+
+    @Test
+    public void decryptBatchForGroup_messagesOfPreviousKey() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey previousKey = keyGenerator.generateKey();
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.AES_GCM_ID);
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+        byte[] firstOfPreviousKey = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "first".getBytes());
+        byte[] thirdOfPreviousKey = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "third".getBytes());
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        byte[] fourthOfUnknownKey = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "fourth".getBytes());
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+        byte[] secondOfCurrentKey = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "second".getBytes());
+        Mockito.when(mockShiverKeyStorage.getPreviousKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+
+        ShiverBatchResult result = shiverComponent.decryptBatchForGroup(TEST_GROUP_ID, List.of(firstOfPreviousKey, secondOfCurrentKey, thirdOfPreviousKey, fourthOfUnknownKey));
+
+        Assertions.assertEquals("first", new String(result.getResult(0)));
+        Assertions.assertEquals("second", new String(result.getResult(1)));
+        Assertions.assertEquals("third", new String(result.getResult(2)));
+        Assertions.assertNull(result.getResult(3));
+        Assertions.assertInstanceOf(ShiverDecryptionException.class, result.getError(3));
+    }
+
+    @Test
+    public void decryptBatchForGroup_nullAndTruncatedMessagesFailOnlyTheirSlot() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+        Mockito.when(mockShiverKeyStorage.getCipherSuiteIdForGroup(TEST_GROUP_ID)).thenReturn(ShiverCipherSuites.AES_GCM_ID);
+
+        byte[] encrypted = shiverComponent.encryptMessageForGroup(TEST_GROUP_ID, "first".getBytes());
+        List<byte[]> testMessages = new ArrayList<>();
+        testMessages.add(null);
+        testMessages.add(Arrays.copyOf(encrypted, ShiverCipherSuites.HEADER_LENGTH + 2));
+        testMessages.add(encrypted);
+
+        ShiverBatchResult result = shiverComponent.decryptBatchForGroup(TEST_GROUP_ID, testMessages);
+
+        Assertions.assertInstanceOf(ShiverDecryptionException.class, result.getError(0));
+        Assertions.assertInstanceOf(ShiverDecryptionException.class, result.getError(1));
+        Assertions.assertEquals("first", new String(result.getResult(2)));
+    }
+
+    @Test
+    public void encryptBatchForGroup_noKey() {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            shiverComponent.encryptBatchForGroup(TEST_GROUP_ID, new ArrayList<>());
+        });
+    }
+
+    @Test
+    public void encryptChunkedMessageForGroup_roundTrip() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        byte[] testMessage = new byte[3 * 1024 * 1024 + 5];
+        Arrays.fill(testMessage, (byte) 3);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        byte[] encrypted = shiverComponent.encryptChunkedMessageForGroup(TEST_GROUP_ID, testMessage);
+        byte[] result = shiverComponent.decryptChunkedMessageForGroup(TEST_GROUP_ID, encrypted);
+
+        Assertions.assertArrayEquals(testMessage, result);
+    }
+
+    @Test
+    public void decryptChunkedMessageForGroup_messageOfPreviousKey() throws Exception {
+        byte[] testMessage = new byte[3 * 1024 * 1024 + 5];
+        Arrays.fill(testMessage, (byte) 3);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey previousKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+        byte[] encrypted = shiverComponent.encryptChunkedMessageForGroup(TEST_GROUP_ID, testMessage);
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        Mockito.when(mockShiverKeyStorage.getPreviousKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+
+        Assertions.assertArrayEquals(testMessage, shiverComponent.decryptChunkedMessageForGroup(TEST_GROUP_ID, encrypted));
+    }
+
+    @Test
+    public void decryptChunkedMessageForGroup_throwsShiverDecryptionException() throws NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            shiverComponent.decryptChunkedMessageForGroup(TEST_GROUP_ID, "not_chunked".getBytes());
+        });
+    }
+
+    @Test
+    public void encryptFileForGroup_roundTrip(@TempDir Path tempDir) throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException, IOException {
+        byte[] testMessage = new byte[3 * 1024 * 1024 + 5];
+        Arrays.fill(testMessage, (byte) 3);
+        Path plainFile = Files.write(tempDir.resolve("plain"), testMessage);
+        Path encryptedFile = tempDir.resolve("encrypted");
+        Path decryptedFile = tempDir.resolve("decrypted");
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        shiverComponent.encryptFileForGroup(TEST_GROUP_ID, plainFile, encryptedFile);
+        shiverComponent.decryptFileForGroup(TEST_GROUP_ID, encryptedFile, decryptedFile);
+
+        Assertions.assertArrayEquals(testMessage, shiverComponent.decryptChunkedMessageForGroup(TEST_GROUP_ID, Files.readAllBytes(encryptedFile)));
+        Assertions.assertArrayEquals(testMessage, Files.readAllBytes(decryptedFile));
+    }
+
+    @Test
+    public void decryptFileForGroup_throwsShiverDecryptionException(@TempDir Path tempDir) throws NoSuchAlgorithmException, IOException {
+        Path encryptedFile = Files.write(tempDir.resolve("encrypted"), "not_chunked".getBytes());
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey testKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(testKey);
+
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            shiverComponent.decryptFileForGroup(TEST_GROUP_ID, encryptedFile, tempDir.resolve("decrypted"));
+        });
+    }
+
+    @Test
+    public void encryptFileForGroup_noKey(@TempDir Path tempDir) {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            shiverComponent.encryptFileForGroup(TEST_GROUP_ID, tempDir.resolve("plain"), tempDir.resolve("encrypted"));
+        });
+    }
+
+    @Test
+    public void encryptEnvelopeForGroups_decryptableWithAnyGroupKey() throws ShiverNoGroupKeyException, ShiverEncryptionException, ShiverDecryptionException, NoSuchAlgorithmException {
+        String testMessage = "test_message";
+        CharSequence otherGroupId = "otherGroupId";
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(otherGroupId)).thenReturn(keyGenerator.generateKey());
+
+        byte[] envelope = shiverComponent.encryptEnvelopeForGroups(List.of(TEST_GROUP_ID, otherGroupId), testMessage.getBytes());
+        byte[] resultBoth = shiverComponent.decryptEnvelope(envelope);
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+        byte[] resultOther = shiverComponent.decryptEnvelope(envelope);
+
+        Assertions.assertEquals(testMessage, new String(resultBoth));
+        Assertions.assertEquals(testMessage, new String(resultOther));
+    }
+
+    @Test
+    public void encryptEnvelopeForGroups_noKey() {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            shiverComponent.encryptEnvelopeForGroups(List.of(TEST_GROUP_ID), "test_message".getBytes());
+        });
+    }
+
+    @Test
+    public void decryptEnvelope_noKeyForAnyGroup() throws ShiverNoGroupKeyException, ShiverEncryptionException, NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        byte[] envelope = shiverComponent.encryptEnvelopeForGroups(List.of(TEST_GROUP_ID), "test_message".getBytes());
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            shiverComponent.decryptEnvelope(envelope);
+        });
+    }
+
+    @Test
+    public void decryptEnvelope_envelopeOfPreviousKey() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        SecretKey previousKey = keyGenerator.generateKey();
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+        byte[] envelope = shiverComponent.encryptEnvelopeForGroups(List.of(TEST_GROUP_ID), "test_message".getBytes());
+
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        Mockito.when(mockShiverKeyStorage.getPreviousKeyForGroup(TEST_GROUP_ID)).thenReturn(previousKey);
+
+        Assertions.assertEquals("test_message", new String(shiverComponent.decryptEnvelope(envelope)));
+    }
+
+    @Test
+    public void decryptEnvelope_throwsShiverDecryptionException() throws ShiverNoGroupKeyException, ShiverEncryptionException, NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+        byte[] envelope = shiverComponent.encryptEnvelopeForGroups(List.of(TEST_GROUP_ID), "test_message".getBytes());
+        envelope[envelope.length - 1] ^= 1;
+
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            shiverComponent.decryptEnvelope(envelope);
+        });
+    }
+
+    @Test
+    public void encryptMessageForGroupAsync_roundTrip() throws Exception {
+        String testMessage = "test_message";
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(keyGenerator.generateKey());
+
+        byte[] result = shiverComponent.encryptMessageForGroupAsync(TEST_GROUP_ID, testMessage.getBytes())
+                .thenCompose(encrypted -> shiverComponent.decryptMessageForGroupAsync(TEST_GROUP_ID, encrypted))
+                .get(10, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(testMessage, new String(result));
+    }
+
+    @Test
+    public void encryptMessageForGroupAsync_noKey() {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> {
+            shiverComponent.encryptMessageForGroupAsync(TEST_GROUP_ID, "test_message".getBytes()).get(10, TimeUnit.SECONDS);
+        });
+        Assertions.assertInstanceOf(ShiverNoGroupKeyException.class, exception.getCause());
+    }
+
+    @Test
+    public void acceptGroupCredentialMessageAsync_runsOnExecutor() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        ShiverComponentImpl component = new ShiverComponentImpl(mockShiverSecurity, mockShiverKeyStorage, mockShiverDHKeyPairStorage,
+                new ShiverCipherCache(), new ShiverChunkedCipher(), tasks::add);
+        GroupCredentialMessage mockGroupCredentialMessage = Mockito.mock(GroupCredentialMessage.class);
+
+        CompletableFuture<Void> result = component.acceptGroupCredentialMessageAsync(mockGroupCredentialMessage);
+        Mockito.verify(mockShiverSecurity, Mockito.never()).acceptGroupCredentialMessage(mockGroupCredentialMessage);
+
+        tasks.forEach(Runnable::run);
+
+        Assertions.assertTrue(result.isDone());
+        Mockito.verify(mockShiverSecurity, Mockito.times(1)).acceptGroupCredentialMessage(mockGroupCredentialMessage);
+    }
+
+    @Test
+    public void awaitGroupKey_completesWhenKeyIsReceived() {
+        ArgumentCaptor<ShiverEventListener> listenerCaptor = ArgumentCaptor.forClass(ShiverEventListener.class);
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        CompletableFuture<CharSequence> result = shiverComponent.awaitGroupKey(TEST_GROUP_ID);
+        CompletableFuture<CharSequence> otherResult = shiverComponent.awaitGroupKey(TEST_GROUP_ID);
+        otherResult.cancel(false);
+
+        Mockito.verify(mockShiverSecurity, Mockito.times(1)).addShiverEventListener(listenerCaptor.capture());
+        Assertions.assertFalse(result.isDone());
+
+        listenerCaptor.getValue().onReceivedGroupKey("otherGroupId");
+        Assertions.assertFalse(result.isDone());
+
+        listenerCaptor.getValue().onReceivedGroupKey(TEST_GROUP_ID);
+        Assertions.assertEquals(TEST_GROUP_ID, result.getNow(null));
+    }
+
+    @Test
+    public void awaitGroupKey_failsWhenExchangeFails() {
+        ArgumentCaptor<ShiverEventListener> listenerCaptor = ArgumentCaptor.forClass(ShiverEventListener.class);
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+        ShiverDHKeyGenerationException testException = new ShiverDHKeyGenerationException();
+
+        CompletableFuture<CharSequence> result = shiverComponent.awaitGroupKey(TEST_GROUP_ID);
+        Mockito.verify(mockShiverSecurity, Mockito.times(1)).addShiverEventListener(listenerCaptor.capture());
+
+        listenerCaptor.getValue().onErrorCreatingGroupKey(TEST_GROUP_ID, testException);
+
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> {
+            result.get(10, TimeUnit.SECONDS);
+        });
+        Assertions.assertSame(testException, exception.getCause());
+        Assertions.assertEquals(0, shiverComponent.getPendingGroupKeyCount());
+    }
+
+    @Test
+    public void awaitGroupKey_timeoutStopsWaiting() {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        CompletableFuture<CharSequence> result = shiverComponent.awaitGroupKey(TEST_GROUP_ID, 10, TimeUnit.MILLISECONDS);
+
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> {
+            result.get(10, TimeUnit.SECONDS);
+        });
+        Assertions.assertInstanceOf(TimeoutException.class, exception.getCause());
+        Assertions.assertEquals(0, shiverComponent.getPendingGroupKeyCount());
+    }
+
+    @Test
+    public void awaitGroupKey_cancelStopsWaiting() {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(null);
+
+        CompletableFuture<CharSequence> result = shiverComponent.awaitGroupKey(TEST_GROUP_ID);
+        CompletableFuture<CharSequence> otherResult = shiverComponent.awaitGroupKey(TEST_GROUP_ID);
+        Assertions.assertEquals(2, shiverComponent.getPendingGroupKeyCount());
+
+        result.cancel(false);
+        Assertions.assertEquals(1, shiverComponent.getPendingGroupKeyCount());
+        Assertions.assertFalse(otherResult.isDone());
+
+        otherResult.cancel(false);
+        Assertions.assertEquals(0, shiverComponent.getPendingGroupKeyCount());
+    }
+
+    @Test
+    public void awaitGroupKey_alreadyExistingKey() {
+        Mockito.when(mockShiverKeyStorage.getKeyForGroup(TEST_GROUP_ID)).thenReturn(Mockito.mock(Key.class));
+
+        Assertions.assertEquals(TEST_GROUP_ID, shiverComponent.awaitGroupKey(TEST_GROUP_ID).getNow(null));
+    }
+
+    @Test
+    public void createGroupKeyAsync_completesWithKey() throws Exception {
+        ShiverComponentImpl component = new ShiverComponentImpl(mockShiverSecurity, mockShiverKeyStorage, mockShiverDHKeyPairStorage,
+                new ShiverCipherCache(), new ShiverChunkedCipher(), Runnable::run);
+        ArgumentCaptor<ShiverEventListener> listenerCaptor = ArgumentCaptor.forClass(ShiverEventListener.class);
+        List<CharSequence> testPeers = new ArrayList<>();
+        Mockito.when(mockShiverSecurity.startKeyExchangeWithPeers(testPeers)).thenReturn(TEST_GROUP_ID);
+
+        CompletableFuture<CharSequence> result = component.createGroupKeyAsync(testPeers);
+
+        Mockito.verify(mockShiverSecurity, Mockito.times(1)).addShiverEventListener(listenerCaptor.capture());
+        Assertions.assertFalse(result.isDone());
+
+        listenerCaptor.getValue().onReceivedGroupKey(TEST_GROUP_ID);
+        Assertions.assertEquals(TEST_GROUP_ID, result.getNow(null));
+    }
+
+    @Test
+    public void createGroupKeyAsync_cancelStopsWaiting() throws Exception {
+        ShiverComponentImpl component = new ShiverComponentImpl(mockShiverSecurity, mockShiverKeyStorage, mockShiverDHKeyPairStorage,
+                new ShiverCipherCache(), new ShiverChunkedCipher(), Runnable::run);
+        List<CharSequence> testPeers = new ArrayList<>();
+        Mockito.when(mockShiverSecurity.startKeyExchangeWithPeers(testPeers)).thenReturn(TEST_GROUP_ID);
+
+        CompletableFuture<CharSequence> result = component.createGroupKeyAsync(testPeers);
+        Assertions.assertEquals(1, component.getPendingGroupKeyCount());
+
+        result.cancel(false);
+        Assertions.assertEquals(0, component.getPendingGroupKeyCount());
+    }
+
+    @Test
+    public void createGroupKeyAsync_failsWhenProcessCanNotStart() throws Exception {
+        ShiverComponentImpl component = new ShiverComponentImpl(mockShiverSecurity, mockShiverKeyStorage, mockShiverDHKeyPairStorage,
+                new ShiverCipherCache(), new ShiverChunkedCipher(), Runnable::run);
+        List<CharSequence> testPeers = new ArrayList<>();
+        Mockito.when(mockShiverSecurity.startKeyExchangeWithPeers(testPeers)).thenThrow(new ShiverGroupSizeException());
+
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> {
+            component.createGroupKeyAsync(testPeers).get(10, TimeUnit.SECONDS);
+        });
+        Assertions.assertInstanceOf(ShiverGroupSizeException.class, exception.getCause());
+        Assertions.assertEquals(0, component.getPendingGroupKeyCount());
+    }
 }
@@ -0,0 +1,158 @@
+package com.shiver.crypto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ShiverChunkedCipherTest {
+    private static final int TEST_CHUNK_SIZE = 64;
+
+    private ForkJoinPool forkJoinPool;
+    private SecretKey testKey;
+
+    @BeforeEach
+    public void beforeEach() throws GeneralSecurityException {
+        forkJoinPool = new ForkJoinPool(4);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        testKey = keyGenerator.generateKey();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        forkJoinPool.shutdown();
+    }
+
+    @Test
+    public void roundTrip_parallel() throws GeneralSecurityException, IOException {
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, 0);
+
+        for (int length : new int[]{0, 1, TEST_CHUNK_SIZE, 100 * TEST_CHUNK_SIZE, 100 * TEST_CHUNK_SIZE + 7}) {
+            byte[] testPayload = createPayload(length);
+
+            byte[] encrypted = shiverChunkedCipher.encrypt(testKey, testPayload);
+
+            Assertions.assertEquals(ShiverChunkedFormat.getEncryptedLength(length, TEST_CHUNK_SIZE), encrypted.length);
+            Assertions.assertArrayEquals(testPayload, shiverChunkedCipher.decrypt(testKey, encrypted));
+        }
+    }
+
+    @Test
+    public void roundTrip_smallPayloadStaysOnCallingThread() throws GeneralSecurityException, IOException {
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, Integer.MAX_VALUE);
+        byte[] testPayload = createPayload(10 * TEST_CHUNK_SIZE);
+
+        byte[] encrypted = shiverChunkedCipher.encrypt(testKey, testPayload);
+
+        Assertions.assertArrayEquals(testPayload, shiverChunkedCipher.decrypt(testKey, encrypted));
+        Assertions.assertEquals(0, forkJoinPool.getStealCount());
+        Assertions.assertEquals(0, forkJoinPool.getPoolSize());
+    }
+
+    @Test
+    public void encrypt_readableByDecryptingStream() throws GeneralSecurityException, IOException {
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, 0);
+        byte[] testPayload = createPayload(50 * TEST_CHUNK_SIZE + 3);
+
+        byte[] encrypted = shiverChunkedCipher.encrypt(testKey, testPayload);
+
+        try (InputStream inputStream = new ShiverDecryptingInputStream(testKey, new ByteArrayInputStream(encrypted))) {
+            Assertions.assertArrayEquals(testPayload, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void decrypt_manipulatedChunkFails() throws GeneralSecurityException {
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, 0);
+        byte[] encrypted = shiverChunkedCipher.encrypt(testKey, createPayload(100 * TEST_CHUNK_SIZE));
+        encrypted[encrypted.length / 2] ^= 1;
+
+        Assertions.assertThrows(GeneralSecurityException.class, () -> shiverChunkedCipher.decrypt(testKey, encrypted));
+    }
+
+    @Test
+    public void decrypt_invalidLengthFails() throws GeneralSecurityException {
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, 0);
+        byte[] encrypted = shiverChunkedCipher.encrypt(testKey, createPayload(0));
+
+        Assertions.assertThrows(IOException.class, () -> shiverChunkedCipher.decrypt(testKey, new byte[encrypted.length - 1]));
+    }
+
+    @Test
+    public void fileRoundTrip_manyRegions(@TempDir Path tempDir) throws GeneralSecurityException, IOException {
+        // three chunks per region
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, 0, 3 * (TEST_CHUNK_SIZE + ShiverChunkedFormat.TAG_LENGTH));
+        Path plainFile = tempDir.resolve("plain");
+        Path encryptedFile = tempDir.resolve("encrypted");
+        Path decryptedFile = tempDir.resolve("decrypted");
+
+        for (int length : new int[]{0, 1, TEST_CHUNK_SIZE, 3 * TEST_CHUNK_SIZE, 100 * TEST_CHUNK_SIZE + 7}) {
+            byte[] testPayload = createPayload(length);
+            Files.write(plainFile, testPayload);
+
+            shiverChunkedCipher.encryptFile(testKey, plainFile, encryptedFile);
+            shiverChunkedCipher.decryptFile(testKey, encryptedFile, decryptedFile);
+
+            Assertions.assertEquals(ShiverChunkedFormat.getEncryptedLength(length, TEST_CHUNK_SIZE), Files.size(encryptedFile));
+            Assertions.assertArrayEquals(testPayload, shiverChunkedCipher.decrypt(testKey, Files.readAllBytes(encryptedFile)));
+            Assertions.assertArrayEquals(testPayload, Files.readAllBytes(decryptedFile));
+        }
+    }
+
+    @Test
+    public void decryptFile_readsEncryptedMessage(@TempDir Path tempDir) throws GeneralSecurityException, IOException {
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, Integer.MAX_VALUE, TEST_CHUNK_SIZE);
+        byte[] testPayload = createPayload(20 * TEST_CHUNK_SIZE + 5);
+        Path encryptedFile = tempDir.resolve("encrypted");
+        Path decryptedFile = tempDir.resolve("decrypted");
+        Files.write(encryptedFile, shiverChunkedCipher.encrypt(testKey, testPayload));
+
+        shiverChunkedCipher.decryptFile(testKey, encryptedFile, decryptedFile);
+
+        Assertions.assertArrayEquals(testPayload, Files.readAllBytes(decryptedFile));
+        Assertions.assertEquals(0, forkJoinPool.getPoolSize());
+    }
+
+    @Test
+    public void decryptFile_manipulatedChunkDeletesPlainFile(@TempDir Path tempDir) throws GeneralSecurityException, IOException {
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, 0, 4 * TEST_CHUNK_SIZE);
+        byte[] encrypted = shiverChunkedCipher.encrypt(testKey, createPayload(100 * TEST_CHUNK_SIZE));
+        encrypted[encrypted.length / 2] ^= 1;
+        Path encryptedFile = tempDir.resolve("encrypted");
+        Path decryptedFile = tempDir.resolve("decrypted");
+        Files.write(encryptedFile, encrypted);
+
+        Assertions.assertThrows(GeneralSecurityException.class, () -> shiverChunkedCipher.decryptFile(testKey, encryptedFile, decryptedFile));
+        Assertions.assertFalse(Files.exists(decryptedFile));
+    }
+
+    @Test
+    public void encryptFile_missingPlainFileKeepsTarget(@TempDir Path tempDir) throws IOException {
+        ShiverChunkedCipher shiverChunkedCipher = new ShiverChunkedCipher(forkJoinPool, TEST_CHUNK_SIZE, 0);
+        Path encryptedFile = tempDir.resolve("encrypted");
+        Files.write(encryptedFile, new byte[]{1, 2, 3});
+
+        Assertions.assertThrows(IOException.class, () -> shiverChunkedCipher.encryptFile(testKey, tempDir.resolve("missing"), encryptedFile));
+        Assertions.assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(encryptedFile));
+    }
+
+    private byte[] createPayload(int length) {
+        byte[] payload = new byte[length];
+        new Random(length).nextBytes(payload);
+        return payload;
+    }
+}
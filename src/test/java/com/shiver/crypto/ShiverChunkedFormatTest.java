@@ -0,0 +1,50 @@
+package com.shiver.crypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class ShiverChunkedFormatTest {
+
+    @Test
+    public void lengths_roundTrip() throws IOException {
+        int chunkSize = 16;
+        for (long plainLength = 0; plainLength < 100; plainLength++) {
+            long encryptedLength = ShiverChunkedFormat.getEncryptedLength(plainLength, chunkSize);
+
+            Assertions.assertEquals(plainLength, ShiverChunkedFormat.getPlainLength(encryptedLength, chunkSize));
+        }
+    }
+
+    @Test
+    public void getPlainLength_invalidLength() {
+        long tooShort = ShiverChunkedFormat.HEADER_LENGTH + ShiverChunkedFormat.TAG_LENGTH - 1;
+
+        Assertions.assertThrows(IOException.class, () -> ShiverChunkedFormat.getPlainLength(tooShort, 16));
+    }
+
+    @Test
+    public void header_roundTrip() throws IOException {
+        byte[] noncePrefix = ShiverChunkedFormat.createNoncePrefix();
+
+        ByteBuffer buffer = ByteBuffer.allocate(ShiverChunkedFormat.HEADER_LENGTH);
+        ShiverChunkedFormat.writeHeader(buffer, 1234, noncePrefix);
+        buffer.flip();
+
+        ShiverChunkedFormat.Header header = ShiverChunkedFormat.readHeader(buffer);
+
+        Assertions.assertEquals(1234, header.getChunkSize());
+        Assertions.assertArrayEquals(noncePrefix, header.getNoncePrefix());
+    }
+
+    @Test
+    public void readHeader_unknownVersion() {
+        ByteBuffer buffer = ByteBuffer.allocate(ShiverChunkedFormat.HEADER_LENGTH);
+        ShiverChunkedFormat.writeHeader(buffer, 1234, ShiverChunkedFormat.createNoncePrefix());
+        buffer.put(0, (byte) 42);
+
+        Assertions.assertThrows(IOException.class, () -> ShiverChunkedFormat.readHeader(buffer.flip()));
+    }
+}
@@ -0,0 +1,121 @@
+package com.shiver.crypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ShiverCipherCacheTest {
+    private final CharSequence TEST_GROUP_ID = "groupId";
+
+    private ShiverCipherCache shiverCipherCache;
+    private SecretKey testKey;
+
+    @BeforeEach
+    public void beforeEach() throws NoSuchAlgorithmException {
+        shiverCipherCache = new ShiverCipherCache(2);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        testKey = keyGenerator.generateKey();
+    }
+
+    @Test
+    public void acquire_reusesReleasedContext() throws Exception {
+        ShiverCipherSuite.Context context = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM);
+        shiverCipherCache.release(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM, context);
+
+        ShiverCipherSuite.Context result = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM);
+
+        Assertions.assertSame(context, result);
+    }
+
+    @Test
+    public void acquire_separatesSuites() throws Exception {
+        ShiverCipherSuite.Context context = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM);
+        shiverCipherCache.release(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM, context);
+
+        ShiverCipherSuite.Context result = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_CTR_HMAC);
+
+        Assertions.assertNotSame(context, result);
+    }
+
+    @Test
+    public void acquire_dropsContextsOfOldKey() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        SecretKey newKey = keyGenerator.generateKey();
+
+        ShiverCipherSuite.Context context = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM);
+        shiverCipherCache.release(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM, context);
+
+        ShiverCipherSuite.Context result = shiverCipherCache.acquire(TEST_GROUP_ID, newKey, ShiverCipherSuites.AES_GCM);
+        byte[] encrypted = encrypt(result, "test_message".getBytes());
+
+        ShiverCipherSuite.Context checkContext = ShiverCipherSuites.AES_GCM.createContext(newKey);
+
+        Assertions.assertNotSame(context, result);
+        Assertions.assertEquals("test_message", new String(decrypt(checkContext, encrypted)));
+    }
+
+    @Test
+    public void invalidate_dropsContexts() throws Exception {
+        ShiverCipherSuite.Context context = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM);
+        shiverCipherCache.release(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM, context);
+
+        shiverCipherCache.invalidate(TEST_GROUP_ID);
+        ShiverCipherSuite.Context result = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM);
+
+        Assertions.assertNotSame(context, result);
+    }
+
+    @Test
+    public void acquire_concurrentUse() throws Exception {
+        byte[] testMessage = "test_message".getBytes();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executorService.submit(() -> {
+                    ShiverCipherSuite.Context encryptContext = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM);
+                    byte[] encrypted = encrypt(encryptContext, testMessage);
+                    shiverCipherCache.release(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM, encryptContext);
+
+                    ShiverCipherSuite.Context decryptContext = shiverCipherCache.acquire(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM);
+                    byte[] decrypted = decrypt(decryptContext, encrypted);
+                    shiverCipherCache.release(TEST_GROUP_ID, testKey, ShiverCipherSuites.AES_GCM, decryptContext);
+                    return decrypted;
+                }));
+            }
+
+            for (Future<byte[]> future : futures) {
+                Assertions.assertArrayEquals(testMessage, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static byte[] encrypt(ShiverCipherSuite.Context context, byte[] message) throws Exception {
+        byte[] encrypted = new byte[ShiverCipherSuites.AES_GCM.getEncryptedLength(message.length)];
+        context.encrypt(ByteBuffer.wrap(message), ByteBuffer.wrap(encrypted));
+        return encrypted;
+    }
+
+    private static byte[] decrypt(ShiverCipherSuite.Context context, byte[] encrypted) throws Exception {
+        byte[] decrypted = new byte[encrypted.length];
+        int written = context.decrypt(ByteBuffer.wrap(encrypted), ByteBuffer.wrap(decrypted));
+        return Arrays.copyOf(decrypted, written);
+    }
+}
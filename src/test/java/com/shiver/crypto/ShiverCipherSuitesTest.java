@@ -0,0 +1,98 @@
+package com.shiver.crypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+public class ShiverCipherSuitesTest {
+    private final byte[] testMessage = "test_message_that_is_longer_than_one_block".getBytes();
+
+    private SecretKey testKey;
+
+    @BeforeEach
+    public void beforeEach() throws NoSuchAlgorithmException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        testKey = keyGenerator.generateKey();
+    }
+
+    @ParameterizedTest
+    @ValueSource(bytes = {ShiverCipherSuites.LEGACY_AES_ECB_ID, ShiverCipherSuites.AES_GCM_ID, ShiverCipherSuites.AES_CTR_HMAC_ID})
+    public void roundTrip(byte suiteId) throws GeneralSecurityException {
+        ShiverCipherSuite suite = ShiverCipherSuites.forId(suiteId);
+
+        byte[] encrypted = encrypt(suite, testMessage);
+        byte[] decrypted = decrypt(suite, encrypted);
+
+        Assertions.assertEquals(suiteId, suite.getId());
+        Assertions.assertEquals(suite.getEncryptedLength(testMessage.length), encrypted.length);
+        Assertions.assertSame(suite, ShiverCipherSuites.detect(ByteBuffer.wrap(encrypted)));
+        Assertions.assertArrayEquals(testMessage, decrypted);
+    }
+
+    @ParameterizedTest
+    @ValueSource(bytes = {ShiverCipherSuites.AES_GCM_ID, ShiverCipherSuites.AES_CTR_HMAC_ID})
+    public void decrypt_detectsManipulation(byte suiteId) throws GeneralSecurityException {
+        ShiverCipherSuite suite = ShiverCipherSuites.forId(suiteId);
+
+        byte[] encrypted = encrypt(suite, testMessage);
+        encrypted[encrypted.length / 2] ^= 1;
+
+        Assertions.assertThrows(GeneralSecurityException.class, () -> decrypt(suite, encrypted));
+    }
+
+    @ParameterizedTest
+    @ValueSource(bytes = {ShiverCipherSuites.AES_GCM_ID, ShiverCipherSuites.AES_CTR_HMAC_ID})
+    public void encrypt_isRandomized(byte suiteId) throws GeneralSecurityException {
+        ShiverCipherSuite suite = ShiverCipherSuites.forId(suiteId);
+
+        Assertions.assertFalse(Arrays.equals(encrypt(suite, testMessage), encrypt(suite, testMessage)));
+    }
+
+    @Test
+    public void decrypt_wrongSuiteInHeader() throws GeneralSecurityException {
+        byte[] encrypted = encrypt(ShiverCipherSuites.AES_GCM, testMessage);
+
+        Assertions.assertThrows(GeneralSecurityException.class, () -> decrypt(ShiverCipherSuites.AES_CTR_HMAC, encrypted));
+    }
+
+    @Test
+    public void detect_legacyMessage() throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, testKey);
+        byte[] encrypted = cipher.doFinal(testMessage);
+
+        ByteBuffer buffer = ByteBuffer.wrap(encrypted);
+
+        Assertions.assertSame(ShiverCipherSuites.LEGACY_AES_ECB, ShiverCipherSuites.detect(buffer));
+        Assertions.assertEquals(0, buffer.position());
+        Assertions.assertArrayEquals(testMessage, decrypt(ShiverCipherSuites.LEGACY_AES_ECB, encrypted));
+    }
+
+    @Test
+    public void forId_unknownSuite() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ShiverCipherSuites.forId((byte) 42));
+    }
+
+    private byte[] encrypt(ShiverCipherSuite suite, byte[] message) throws GeneralSecurityException {
+        byte[] encrypted = new byte[suite.getEncryptedLength(message.length)];
+        int written = suite.createContext(testKey).encrypt(ByteBuffer.wrap(message), ByteBuffer.wrap(encrypted));
+        return Arrays.copyOf(encrypted, written);
+    }
+
+    private byte[] decrypt(ShiverCipherSuite suite, byte[] encrypted) throws GeneralSecurityException {
+        byte[] decrypted = new byte[encrypted.length];
+        int written = suite.createContext(testKey).decrypt(ByteBuffer.wrap(encrypted), ByteBuffer.wrap(decrypted));
+        return Arrays.copyOf(decrypted, written);
+    }
+}
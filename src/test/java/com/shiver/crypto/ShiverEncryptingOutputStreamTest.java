@@ -0,0 +1,144 @@
+package com.shiver.crypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ShiverEncryptingOutputStreamTest {
+    private static final int TEST_CHUNK_SIZE = 32;
+
+    private SecretKey testKey;
+
+    @BeforeEach
+    public void beforeEach() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        testKey = keyGenerator.generateKey();
+    }
+
+    @Test
+    public void roundTrip_differentLengths() throws GeneralSecurityException, IOException {
+        for (int length : new int[]{0, 1, TEST_CHUNK_SIZE - 1, TEST_CHUNK_SIZE, TEST_CHUNK_SIZE + 1, 5 * TEST_CHUNK_SIZE, 1000}) {
+            byte[] testPayload = createPayload(length);
+
+            byte[] encrypted = encrypt(testPayload);
+
+            Assertions.assertEquals(ShiverChunkedFormat.getEncryptedLength(length, TEST_CHUNK_SIZE), encrypted.length);
+            Assertions.assertArrayEquals(testPayload, decrypt(encrypted));
+        }
+    }
+
+    @Test
+    public void roundTrip_singleByteWrites() throws GeneralSecurityException, IOException {
+        byte[] testPayload = createPayload(100);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new ShiverEncryptingOutputStream(testKey, encrypted, TEST_CHUNK_SIZE)) {
+            for (byte b : testPayload) {
+                outputStream.write(b);
+            }
+        }
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        try (InputStream inputStream = new ShiverDecryptingInputStream(testKey, new ByteArrayInputStream(encrypted.toByteArray()))) {
+            int read;
+            while ((read = inputStream.read()) != -1) {
+                decrypted.write(read);
+            }
+        }
+
+        Assertions.assertArrayEquals(testPayload, decrypted.toByteArray());
+    }
+
+    @Test
+    public void decrypt_manipulatedChunkFails() throws GeneralSecurityException, IOException {
+        byte[] encrypted = encrypt(createPayload(100));
+        encrypted[ShiverChunkedFormat.HEADER_LENGTH + TEST_CHUNK_SIZE + 20] ^= 1;
+
+        Assertions.assertThrows(IOException.class, () -> decrypt(encrypted));
+    }
+
+    @Test
+    public void decrypt_cutOffAtChunkBorderFails() throws GeneralSecurityException, IOException {
+        byte[] encrypted = encrypt(createPayload(100));
+        byte[] cutOff = Arrays.copyOf(encrypted, ShiverChunkedFormat.HEADER_LENGTH + 2 * (TEST_CHUNK_SIZE + ShiverChunkedFormat.TAG_LENGTH));
+
+        Assertions.assertThrows(IOException.class, () -> decrypt(cutOff));
+    }
+
+    @Test
+    public void decrypt_missingLastChunkFails() throws GeneralSecurityException, IOException {
+        byte[] encrypted = encrypt(createPayload(100));
+        byte[] cutOff = Arrays.copyOf(encrypted, encrypted.length - 5);
+
+        Assertions.assertThrows(IOException.class, () -> decrypt(cutOff));
+    }
+
+    @Test
+    public void decrypt_wrongKeyFails() throws GeneralSecurityException, IOException {
+        byte[] encrypted = encrypt(createPayload(100));
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        testKey = keyGenerator.generateKey();
+
+        Assertions.assertThrows(IOException.class, () -> decrypt(encrypted));
+    }
+
+    @Test
+    public void decrypt_firstChunkPicksTheKey() throws GeneralSecurityException, IOException {
+        byte[] testPayload = createPayload(5 * TEST_CHUNK_SIZE);
+        byte[] encrypted = encrypt(testPayload);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        SecretKey otherKey = keyGenerator.generateKey();
+
+        try (InputStream inputStream = new ShiverDecryptingInputStream(List.of(otherKey, testKey), new ByteArrayInputStream(encrypted))) {
+            Assertions.assertArrayEquals(testPayload, inputStream.readAllBytes());
+        }
+        try (InputStream inputStream = new ShiverDecryptingInputStream(List.of(otherKey, keyGenerator.generateKey()), new ByteArrayInputStream(encrypted))) {
+            Assertions.assertThrows(IOException.class, inputStream::readAllBytes);
+        }
+    }
+
+    @Test
+    public void write_afterCloseFails() throws GeneralSecurityException, IOException {
+        OutputStream outputStream = new ShiverEncryptingOutputStream(testKey, new ByteArrayOutputStream(), TEST_CHUNK_SIZE);
+        outputStream.close();
+
+        Assertions.assertThrows(IOException.class, () -> outputStream.write(1));
+    }
+
+    private byte[] encrypt(byte[] payload) throws GeneralSecurityException, IOException {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new ShiverEncryptingOutputStream(testKey, encrypted, TEST_CHUNK_SIZE)) {
+            outputStream.write(payload);
+        }
+        return encrypted.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] encrypted) throws GeneralSecurityException, IOException {
+        try (InputStream inputStream = new ShiverDecryptingInputStream(testKey, new ByteArrayInputStream(encrypted))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private byte[] createPayload(int length) {
+        byte[] payload = new byte[length];
+        new Random(length).nextBytes(payload);
+        return payload;
+    }
+}
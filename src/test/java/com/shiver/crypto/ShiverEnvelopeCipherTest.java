@@ -0,0 +1,73 @@
+package com.shiver.crypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.KeyGenerator;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ShiverEnvelopeCipherTest {
+    private final byte[] testMessage = "test_message".getBytes();
+
+    private Map<CharSequence, Key> groupKeys;
+
+    @BeforeEach
+    public void beforeEach() throws GeneralSecurityException {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+
+        groupKeys = new LinkedHashMap<>();
+        groupKeys.put("group1", keyGenerator.generateKey());
+        groupKeys.put("group2", keyGenerator.generateKey());
+        groupKeys.put("group3", keyGenerator.generateKey());
+    }
+
+    @Test
+    public void decrypt_everyGroup() throws GeneralSecurityException, IOException {
+        byte[] envelope = ShiverEnvelopeCipher.encrypt(groupKeys, testMessage);
+
+        Assertions.assertEquals(List.of("group1", "group2", "group3"), ShiverEnvelopeCipher.getGroupIds(envelope));
+        for (Map.Entry<CharSequence, Key> groupKey : groupKeys.entrySet()) {
+            Assertions.assertArrayEquals(testMessage, ShiverEnvelopeCipher.decrypt(envelope, groupKey.getKey(), groupKey.getValue()));
+        }
+    }
+
+    @Test
+    public void decrypt_wrongKeyFails() throws GeneralSecurityException, IOException {
+        byte[] envelope = ShiverEnvelopeCipher.encrypt(groupKeys, testMessage);
+
+        Assertions.assertThrows(AEADBadTagException.class, () -> ShiverEnvelopeCipher.decrypt(envelope, "group1", groupKeys.get("group2")));
+    }
+
+    @Test
+    public void decrypt_unknownGroupFails() throws GeneralSecurityException, IOException {
+        byte[] envelope = ShiverEnvelopeCipher.encrypt(groupKeys, testMessage);
+
+        Assertions.assertThrows(IOException.class, () -> ShiverEnvelopeCipher.decrypt(envelope, "group4", groupKeys.get("group1")));
+    }
+
+    @Test
+    public void decrypt_manipulatedGroupListFails() throws GeneralSecurityException, IOException {
+        byte[] envelope = ShiverEnvelopeCipher.encrypt(groupKeys, testMessage);
+        // the last character of the first group id
+        envelope[1 + 4 + 2 + 5] = '9';
+
+        Assertions.assertEquals("group9", ShiverEnvelopeCipher.getGroupIds(envelope).get(0));
+        Assertions.assertThrows(GeneralSecurityException.class, () -> ShiverEnvelopeCipher.decrypt(envelope, "group2", groupKeys.get("group2")));
+    }
+
+    @Test
+    public void getGroupIds_cutOffEnvelopeFails() throws GeneralSecurityException, IOException {
+        byte[] envelope = ShiverEnvelopeCipher.encrypt(groupKeys, testMessage);
+
+        Assertions.assertThrows(IOException.class, () -> ShiverEnvelopeCipher.getGroupIds(Arrays.copyOf(envelope, 12)));
+    }
+}
@@ -0,0 +1,113 @@
+package com.shiver.crypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import javax.crypto.KeyAgreement;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+public class ShiverKeyAgreementsTest {
+
+    static Stream<ShiverKeyAgreement> keyAgreements() {
+        return Stream.of(ShiverKeyAgreements.DH, ShiverKeyAgreements.X25519, ShiverKeyAgreements.P_256);
+    }
+
+    @Test
+    public void forName_findsEveryAgreement() throws NoSuchAlgorithmException {
+        Assertions.assertSame(ShiverKeyAgreements.DH, ShiverKeyAgreements.forName(ShiverKeyAgreements.DH_NAME));
+        Assertions.assertSame(ShiverKeyAgreements.X25519, ShiverKeyAgreements.forName(ShiverKeyAgreements.X25519_NAME));
+        Assertions.assertSame(ShiverKeyAgreements.P_256, ShiverKeyAgreements.forName(ShiverKeyAgreements.P_256_NAME));
+    }
+
+    @Test
+    public void forName_nullIsDH() throws NoSuchAlgorithmException {
+        Assertions.assertSame(ShiverKeyAgreements.DH, ShiverKeyAgreements.forName(null));
+    }
+
+    @Test
+    public void forName_throwsForUnknownName() {
+        Assertions.assertThrows(NoSuchAlgorithmException.class, () -> ShiverKeyAgreements.forName("unknown"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("keyAgreements")
+    public void getName_roundTrip(ShiverKeyAgreement keyAgreement) throws NoSuchAlgorithmException {
+        Assertions.assertSame(keyAgreement, ShiverKeyAgreements.forName(keyAgreement.getName()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("keyAgreements")
+    public void generateGroupKey_threeMembersAgree(ShiverKeyAgreement keyAgreement) throws GeneralSecurityException {
+        KeyPair alice = keyAgreement.generateKeyPair();
+        KeyPair bob = keyAgreement.generateKeyPair();
+        KeyPair carol = keyAgreement.generateKeyPair();
+
+        PublicKey aliceBob = reencode(keyAgreement.combine(bob.getPrivate(), alice.getPublic()));
+        PublicKey aliceCarol = reencode(keyAgreement.combine(carol.getPrivate(), alice.getPublic()));
+        PublicKey bobCarol = reencode(keyAgreement.combine(carol.getPrivate(), bob.getPublic()));
+
+        Key aliceGroupKey = keyAgreement.generateGroupKey(alice.getPrivate(), bobCarol);
+        Key bobGroupKey = keyAgreement.generateGroupKey(bob.getPrivate(), aliceCarol);
+        Key carolGroupKey = keyAgreement.generateGroupKey(carol.getPrivate(), aliceBob);
+
+        Assertions.assertEquals("AES", aliceGroupKey.getAlgorithm());
+        Assertions.assertEquals(16, aliceGroupKey.getEncoded().length);
+        Assertions.assertArrayEquals(aliceGroupKey.getEncoded(), bobGroupKey.getEncoded());
+        Assertions.assertArrayEquals(aliceGroupKey.getEncoded(), carolGroupKey.getEncoded());
+    }
+
+    @ParameterizedTest
+    @MethodSource("keyAgreements")
+    public void generateGroupKey_differsForOtherMembers(ShiverKeyAgreement keyAgreement) throws GeneralSecurityException {
+        KeyPair alice = keyAgreement.generateKeyPair();
+        KeyPair bob = keyAgreement.generateKeyPair();
+        KeyPair eve = keyAgreement.generateKeyPair();
+
+        Key aliceGroupKey = keyAgreement.generateGroupKey(alice.getPrivate(), bob.getPublic());
+        Key eveGroupKey = keyAgreement.generateGroupKey(eve.getPrivate(), bob.getPublic());
+
+        Assertions.assertFalse(Arrays.equals(aliceGroupKey.getEncoded(), eveGroupKey.getEncoded()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("keyAgreements")
+    public void deriveKeyPair_isDeterministicAndUsable(ShiverKeyAgreement keyAgreement) throws GeneralSecurityException {
+        byte[] secret = "some shared secret".getBytes();
+        KeyPair derived = keyAgreement.deriveKeyPair(secret);
+        KeyPair other = keyAgreement.generateKeyPair();
+
+        Assertions.assertArrayEquals(derived.getPublic().getEncoded(), keyAgreement.deriveKeyPair(secret).getPublic().getEncoded());
+        Assertions.assertFalse(Arrays.equals(derived.getPublic().getEncoded(), keyAgreement.deriveKeyPair("another secret".getBytes()).getPublic().getEncoded()));
+        Assertions.assertArrayEquals(
+                keyAgreement.generateSecret(derived.getPrivate(), other.getPublic()),
+                keyAgreement.generateSecret(other.getPrivate(), reencode(derived.getPublic()))
+        );
+    }
+
+    @Test
+    public void dh_combineMatchesKeyAgreement() throws GeneralSecurityException {
+        KeyPair alice = ShiverKeyAgreements.DH.generateKeyPair();
+        KeyPair bob = ShiverKeyAgreements.DH.generateKeyPair();
+
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("DH");
+        keyAgreement.init(bob.getPrivate());
+        Key expected = keyAgreement.doPhase(alice.getPublic(), false);
+
+        Assertions.assertArrayEquals(expected.getEncoded(), ShiverKeyAgreements.DH.combine(bob.getPrivate(), alice.getPublic()).getEncoded());
+    }
+
+    // the intermediate keys travel encoded, like in the group credential message
+    private PublicKey reencode(PublicKey publicKey) throws GeneralSecurityException {
+        return KeyFactory.getInstance(publicKey.getAlgorithm()).generatePublic(new X509EncodedKeySpec(publicKey.getEncoded()));
+    }
+}
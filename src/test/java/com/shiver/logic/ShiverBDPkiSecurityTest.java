@@ -0,0 +1,344 @@
+package com.shiver.logic;
+
+import com.shiver.exceptions.ShiverGroupSizeException;
+import com.shiver.exceptions.ShiverNoGroupKeyException;
+import com.shiver.models.GroupBDCredentialMessage;
+import com.shiver.models.GroupCredentialMessage;
+import com.shiver.models.GroupCredentialMessageImpl;
+import com.shiver.models.ShiverPaths;
+import com.shiver.storage.ShiverDHKeyPairStorageInMemo;
+import com.shiver.storage.ShiverKeyStoreInMemo;
+import net.sharksystem.asap.ASAPMessages;
+import net.sharksystem.asap.ASAPPeer;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.security.Key;
+import java.util.*;
+
+public class ShiverBDPkiSecurityTest {
+    private MockedStatic<ASAPCryptoAlgorithms> mockASAPCryptoAlgorithms;
+
+    // messages that got sent but not delivered yet
+    private List<SentMessage> network = new ArrayList<>();
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    private int rounds = 0;
+
+    @BeforeEach
+    public void beforeEach() {
+        mockASAPCryptoAlgorithms = Mockito.mockStatic(ASAPCryptoAlgorithms.class);
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.sign(Mockito.any(), Mockito.any())).thenReturn(new byte[]{1, 2, 3});
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.verify(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(true);
+    }
+
+    @AfterEach
+    public void afterEach() {
+        mockASAPCryptoAlgorithms.close();
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_allMembersAgree() throws Exception {
+        List<CharSequence> peers = createMembers(5);
+
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        assertSameKey(groupId, peers);
+        for (Member member : members.values()) {
+            Assertions.assertEquals(List.of(groupId), member.receivedGroupKeys);
+            Assertions.assertTrue(member.errors.isEmpty());
+        }
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_twoMembers() throws Exception {
+        List<CharSequence> peers = createMembers(2);
+
+        CharSequence groupId = members.get("peer1").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        assertSameKey(groupId, peers);
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_constantRounds() throws Exception {
+        List<CharSequence> peers = createMembers(8);
+
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        assertSameKey(groupId, peers);
+        // the invitation, the first and the second round
+        Assertions.assertEquals(3, rounds);
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_differentGroupsDifferentKeys() throws Exception {
+        List<CharSequence> peers = createMembers(3);
+
+        CharSequence firstGroupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        CharSequence secondGroupId = members.get("peer2").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        Assertions.assertNotEquals(assertSameKey(firstGroupId, peers), assertSameKey(secondGroupId, peers));
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_throwsShiverGroupSizeException() {
+        createMembers(1);
+
+        Assertions.assertThrows(ShiverGroupSizeException.class, () -> {
+            members.get("peer0").security.startKeyExchangeWithPeers(List.of("peer0"));
+        });
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_waitsForAcceptance() throws Exception {
+        List<CharSequence> peers = createMembers(3);
+        members.get("peer2").autoAccept = false;
+
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        Assertions.assertNull(members.get("peer0").keyStore.getKeyForGroup(groupId));
+        Assertions.assertEquals(1, members.get("peer2").invitations.size());
+
+        members.get("peer2").security.acceptGroupCredentialMessage(members.get("peer2").invitations.get(0));
+        deliverAll();
+
+        assertSameKey(groupId, peers);
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_throwsForOtherMessages() {
+        createMembers(2);
+        GroupCredentialMessage groupCredentialMessage = new GroupCredentialMessageImpl("groupId", new ArrayList<>(), new HashMap<>());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            members.get("peer0").security.acceptGroupCredentialMessage(groupCredentialMessage);
+        });
+    }
+
+    @Test
+    public void addPeersToGroup_newKeyInConstantRounds() throws Exception {
+        List<CharSequence> peers = createMembers(6);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+        Key oldKey = assertSameKey(groupId, peers);
+
+        members.put("newPeer", new Member("newPeer"));
+        members.get("peer3").security.addPeersToGroup(groupId, List.of("newPeer", "peer1"));
+        deliverAll();
+
+        List<CharSequence> newPeers = new ArrayList<>(peers);
+        newPeers.add("newPeer");
+        Key newKey = assertSameKey(groupId, newPeers);
+
+        Assertions.assertNotEquals(oldKey, newKey);
+        Assertions.assertEquals(3, rounds);
+        // only the new member had to accept
+        Assertions.assertEquals(1, members.get("peer1").invitations.size());
+        Assertions.assertEquals(oldKey, members.get("peer1").keyStore.getPreviousKeyForGroup(groupId));
+    }
+
+    @Test
+    public void removePeersFromGroup_removedPeerLosesKey() throws Exception {
+        List<CharSequence> peers = createMembers(5);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+        Key oldKey = assertSameKey(groupId, peers);
+
+        members.get("peer1").security.removePeersFromGroup(groupId, List.of("peer4", "unknownPeer"));
+        deliverAll();
+
+        List<CharSequence> remainingPeers = new ArrayList<>(peers);
+        remainingPeers.remove("peer4");
+        Key newKey = assertSameKey(groupId, remainingPeers);
+
+        Assertions.assertNotEquals(oldKey, newKey);
+        Assertions.assertEquals(3, rounds);
+        Assertions.assertNull(members.get("peer4").keyStore.getKeyForGroup(groupId));
+        // the removed member still knows the old key, nobody accepts it anymore
+        for (CharSequence peer : remainingPeers) {
+            Assertions.assertNull(members.get(peer.toString()).keyStore.getPreviousKeyForGroup(groupId));
+        }
+    }
+
+    @Test
+    public void removePeersFromGroup_throwsShiverGroupSizeException() throws Exception {
+        List<CharSequence> peers = createMembers(2);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        Assertions.assertThrows(ShiverGroupSizeException.class, () -> {
+            members.get("peer0").security.removePeersFromGroup(groupId, List.of("peer1"));
+        });
+    }
+
+    @Test
+    public void addPeersToGroup_throwsForUnknownGroup() {
+        createMembers(2);
+
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            members.get("peer0").security.addPeersToGroup("unknownGroup", List.of("peer1"));
+        });
+    }
+
+    @Test
+    public void asapMessagesReceived_ignoresLateCopies() throws Exception {
+        List<CharSequence> peers = createMembers(3);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+
+        List<SentMessage> invitation = new ArrayList<>(network);
+        deliverAll();
+        Key groupKey = assertSameKey(groupId, peers);
+
+        network.addAll(invitation);
+        deliverAll();
+
+        Assertions.assertEquals(groupKey, assertSameKey(groupId, peers));
+        Assertions.assertEquals(1, members.get("peer1").invitations.size());
+        Assertions.assertTrue(members.get("peer1").errors.isEmpty());
+    }
+
+    @Test
+    public void asapMessagesReceived_reportsRoundOnWrongPath() throws Exception {
+        createMembers(2);
+        GroupBDCredentialMessage message = new GroupBDCredentialMessage("groupId", "peer0", List.of("peer0", "peer1"), 0, GroupBDCredentialMessage.ROUND_ONE, new byte[]{5});
+        byte[] signedMessage = ShiverSignedMessages.sign("peer0", message.serialize(), null);
+
+        network.add(new SentMessage("peer0", ShiverPaths.SHIVER_GROUP_BD_MESSAGE_ROUND_TWO.toString(), signedMessage));
+        deliverAll();
+
+        Assertions.assertTrue(members.get("peer1").invitations.isEmpty());
+        Assertions.assertEquals(1, members.get("peer1").errors.size());
+    }
+
+    @Test
+    public void asapMessagesReceived_dropsUnverifiedMessages() throws Exception {
+        List<CharSequence> peers = createMembers(2);
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.verify(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(false);
+
+        members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        Assertions.assertTrue(members.get("peer1").invitations.isEmpty());
+        Assertions.assertEquals(1, members.get("peer1").errors.size());
+    }
+
+    private List<CharSequence> createMembers(int count) {
+        List<CharSequence> peers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String peerId = "peer" + i;
+            members.put(peerId, new Member(peerId));
+            peers.add(peerId);
+        }
+        return peers;
+    }
+
+    /**
+     * Delivers the messages in rounds. Everything sent while delivering a round gets delivered in the next one
+     */
+    private void deliverAll() throws Exception {
+        rounds = 0;
+        while (!network.isEmpty()) {
+            List<SentMessage> round = network;
+            network = new ArrayList<>();
+            rounds++;
+
+            for (SentMessage sentMessage : round) {
+                for (Member member : members.values()) {
+                    if (member.peerId.equals(sentMessage.sender)) {
+                        continue;
+                    }
+                    ASAPMessages asapMessages = Mockito.mock(ASAPMessages.class);
+                    Mockito.when(asapMessages.getURI()).thenReturn(sentMessage.uri);
+                    Mockito.when(asapMessages.getMessages()).thenReturn(List.of(sentMessage.message).iterator());
+                    member.security.asapMessagesReceived(asapMessages, sentMessage.sender, null);
+                }
+            }
+        }
+    }
+
+    private Key assertSameKey(CharSequence groupId, List<CharSequence> peers) {
+        Key groupKey = members.get(peers.get(0).toString()).keyStore.getKeyForGroup(groupId);
+        Assertions.assertNotNull(groupKey);
+        for (CharSequence peer : peers) {
+            Assertions.assertEquals(groupKey, members.get(peer.toString()).keyStore.getKeyForGroup(groupId), peer + " has another key");
+        }
+        return groupKey;
+    }
+
+    private static class SentMessage {
+        private final String sender;
+        private final CharSequence uri;
+        private final byte[] message;
+
+        private SentMessage(String sender, CharSequence uri, byte[] message) {
+            this.sender = sender;
+            this.uri = uri;
+            this.message = message;
+        }
+    }
+
+    private class Member implements ShiverEventListener {
+        private final String peerId;
+        private final ShiverBDPkiSecurity security;
+        private final ShiverKeyStoreInMemo keyStore = new ShiverKeyStoreInMemo();
+        private final List<GroupCredentialMessage> invitations = new ArrayList<>();
+        private final List<CharSequence> receivedGroupKeys = new ArrayList<>();
+        private final List<Exception> errors = new ArrayList<>();
+        private boolean autoAccept = true;
+
+        private Member(String peerId) {
+            this.peerId = peerId;
+
+            SharkPKIComponent mockSharkPKIComponent = Mockito.mock(SharkPKIComponent.class);
+            try {
+                Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+                ASAPPeer mockASAPPeer = Mockito.mock(ASAPPeer.class);
+                Mockito.when(mockASAPPeer.getPeerID()).thenReturn(peerId);
+                Mockito.doAnswer(invocation -> {
+                    network.add(new SentMessage(peerId, invocation.getArgument(1), invocation.getArgument(2)));
+                    return null;
+                }).when(mockASAPPeer).sendASAPMessage(Mockito.any(), Mockito.any(), Mockito.any());
+
+                security = new ShiverBDPkiSecurity(mockSharkPKIComponent, new ShiverDHKeyPairStorageInMemo(), keyStore);
+                security.onStart(mockASAPPeer);
+                security.addShiverEventListener(this);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onReceiveGroupCredentials(GroupCredentialMessage groupCredentialMessage) {
+            invitations.add(groupCredentialMessage);
+            if (autoAccept) {
+                try {
+                    security.acceptGroupCredentialMessage(groupCredentialMessage);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        public void onErrorReceivingGroupCredentialMessage(String path, Exception exception) {
+            errors.add(exception);
+        }
+
+        @Override
+        public void onReceivedGroupKey(CharSequence groupId) {
+            receivedGroupKeys.add(groupId);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.shiver.logic;
+
+import com.shiver.models.GroupCredentialMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ShiverEventDispatcherTest {
+    private final String TEST_GROUP_ID_1 = "groupId1";
+    private final String TEST_GROUP_ID_2 = "groupId2";
+    private final String TEST_GROUP_ID_3 = "groupId3";
+
+    private Queue<Runnable> tasks;
+    private ShiverEventListener mockShiverEventListener1;
+    private ShiverEventListener mockShiverEventListener2;
+
+    @BeforeEach
+    public void beforeEach() {
+        tasks = new ArrayDeque<>();
+        mockShiverEventListener1 = Mockito.mock(ShiverEventListener.class);
+        mockShiverEventListener2 = Mockito.mock(ShiverEventListener.class);
+    }
+
+    @Test
+    public void synchronous_callsListenersRightAway() {
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher();
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+        shiverEventDispatcher.addListener(mockShiverEventListener2);
+
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+
+        InOrder inOrder = Mockito.inOrder(mockShiverEventListener1, mockShiverEventListener2);
+        inOrder.verify(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_1);
+        inOrder.verify(mockShiverEventListener2).onReceivedGroupKey(TEST_GROUP_ID_1);
+        Assertions.assertTrue(shiverEventDispatcher.isSynchronous());
+    }
+
+    @Test
+    public void synchronous_exceptionReachesCaller() {
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher();
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+        Mockito.doThrow(new IllegalStateException("test")).when(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_1);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> {
+            shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+        });
+    }
+
+    @Test
+    public void asynchronous_callsListenersOnExecutorInOrder() {
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(tasks::add);
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+        shiverEventDispatcher.onErrorReceivingGroupCredentialMessage("path", null);
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_2);
+
+        Mockito.verifyNoInteractions(mockShiverEventListener1);
+        Assertions.assertEquals(1, tasks.size());
+
+        runTasks();
+
+        InOrder inOrder = Mockito.inOrder(mockShiverEventListener1);
+        inOrder.verify(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_1);
+        inOrder.verify(mockShiverEventListener1).onErrorReceivingGroupCredentialMessage("path", null);
+        inOrder.verify(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_2);
+    }
+
+    @Test
+    public void asynchronous_slowListenerDoesNotHoldUpOthers() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch received = new CountDownLatch(1);
+            ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(executorService);
+            shiverEventDispatcher.addListener(new TestListener() {
+                @Override
+                public void onReceivedGroupKey(CharSequence groupId) {
+                    awaitQuietly(release);
+                }
+            });
+            shiverEventDispatcher.addListener(new TestListener() {
+                @Override
+                public void onReceivedGroupKey(CharSequence groupId) {
+                    received.countDown();
+                }
+            });
+
+            shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+
+            Assertions.assertTrue(received.await(5, TimeUnit.SECONDS));
+            release.countDown();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void asynchronous_dropNewest() {
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(tasks::add, 1, ShiverEventDispatcher.OverflowPolicy.DROP_NEWEST);
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_2);
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_3);
+        runTasks();
+
+        Mockito.verify(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_1);
+        Mockito.verifyNoMoreInteractions(mockShiverEventListener1);
+        Assertions.assertEquals(2, shiverEventDispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    public void asynchronous_dropOldest() {
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(tasks::add, 1, ShiverEventDispatcher.OverflowPolicy.DROP_OLDEST);
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_2);
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_3);
+        runTasks();
+
+        Mockito.verify(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_3);
+        Mockito.verifyNoMoreInteractions(mockShiverEventListener1);
+        Assertions.assertEquals(2, shiverEventDispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    public void asynchronous_blockWaitsForListener() throws InterruptedException {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch allReceived = new CountDownLatch(3);
+            ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(executorService, 1, ShiverEventDispatcher.OverflowPolicy.BLOCK);
+            shiverEventDispatcher.addListener(new TestListener() {
+                @Override
+                public void onReceivedGroupKey(CharSequence groupId) {
+                    awaitQuietly(release);
+                    allReceived.countDown();
+                }
+            });
+
+            Thread emitter = new Thread(() -> {
+                shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+                shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_2);
+                shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_3);
+            });
+            emitter.start();
+
+            // the first event is in the listener, the second in the queue, the third has to wait
+            emitter.join(200);
+            Assertions.assertTrue(emitter.isAlive());
+
+            release.countDown();
+            emitter.join(5000);
+            Assertions.assertFalse(emitter.isAlive());
+            Assertions.assertTrue(allReceived.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(0, shiverEventDispatcher.getDroppedEventCount());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void asynchronous_defaultDropsOldest() {
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(tasks::add);
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+
+        for (int i = 0; i <= ShiverEventDispatcher.DEFAULT_QUEUE_CAPACITY; i++) {
+            shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+        }
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_2);
+        runTasks();
+
+        Mockito.verify(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_2);
+        Assertions.assertEquals(2, shiverEventDispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    public void asynchronous_blockDoesNotWaitForEventsOfListener() throws InterruptedException {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch emitted = new CountDownLatch(1);
+            ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(executorService, 1, ShiverEventDispatcher.OverflowPolicy.BLOCK);
+            shiverEventDispatcher.addListener(new TestListener() {
+                @Override
+                public void onReceivedGroupKey(CharSequence groupId) {
+                    if (TEST_GROUP_ID_1.equals(groupId)) {
+                        // like a listener calling back into the security, the second event finds its own queue full
+                        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_2);
+                        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_3);
+                        emitted.countDown();
+                    }
+                }
+            });
+
+            shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+
+            Assertions.assertTrue(emitted.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, shiverEventDispatcher.getDroppedEventCount());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void asynchronous_rejectedExecutionGetsTriedAgain() {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(task -> {
+            if (reject.get()) {
+                throw new RejectedExecutionException("test");
+            }
+            tasks.add(task);
+        }, 1, ShiverEventDispatcher.OverflowPolicy.BLOCK);
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+        // the queue got emptied, otherwise this would wait for a worker that never comes
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_2);
+        reject.set(false);
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_3);
+        runTasks();
+
+        Mockito.verify(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_3);
+        Mockito.verifyNoMoreInteractions(mockShiverEventListener1);
+        Assertions.assertEquals(2, shiverEventDispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    public void asynchronous_listenerExceptionDoesNotStopQueue() {
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(tasks::add);
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+        Mockito.doThrow(new IllegalStateException("test")).when(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_1);
+
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_2);
+        runTasks();
+
+        Mockito.verify(mockShiverEventListener1).onReceivedGroupKey(TEST_GROUP_ID_2);
+    }
+
+    @Test
+    public void removeListener_dropsQueuedEvents() {
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher(tasks::add);
+        shiverEventDispatcher.addListener(mockShiverEventListener1);
+        shiverEventDispatcher.addListener(mockShiverEventListener2);
+
+        shiverEventDispatcher.onReceivedGroupKey(TEST_GROUP_ID_1);
+        shiverEventDispatcher.removeListener(mockShiverEventListener1);
+        runTasks();
+
+        Mockito.verifyNoInteractions(mockShiverEventListener1);
+        Mockito.verify(mockShiverEventListener2).onReceivedGroupKey(TEST_GROUP_ID_1);
+        Assertions.assertEquals(List.of(mockShiverEventListener2), shiverEventDispatcher.getListeners());
+    }
+
+    @Test
+    public void constructor_throwsForInvalidQueueCapacity() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            new ShiverEventDispatcher(tasks::add, 0, ShiverEventDispatcher.OverflowPolicy.BLOCK);
+        });
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch countDownLatch) {
+        try {
+            countDownLatch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class TestListener implements ShiverEventListener {
+        @Override
+        public void onReceiveGroupCredentials(GroupCredentialMessage groupCredentialMessage) {
+        }
+
+        @Override
+        public void onErrorReceivingGroupCredentialMessage(String path, Exception exception) {
+        }
+
+        @Override
+        public void onReceivedGroupKey(CharSequence groupId) {
+        }
+    }
+}
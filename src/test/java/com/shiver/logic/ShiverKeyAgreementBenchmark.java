@@ -0,0 +1,84 @@
+package com.shiver.logic;
+
+import com.shiver.crypto.ShiverKeyAgreement;
+import com.shiver.crypto.ShiverKeyAgreements;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times a whole exchange of every key agreement, the upflow through every member and the final key of every member,
+ * with the keys encoded like in the messages. Only runs with SHIVER_BENCHMARK=true, for example
+ * {@code SHIVER_BENCHMARK=true gradle test --tests com.shiver.logic.ShiverKeyAgreementBenchmark}
+ */
+@EnabledIfEnvironmentVariable(named = "SHIVER_BENCHMARK", matches = "true")
+public class ShiverKeyAgreementBenchmark {
+    private static final int[] GROUP_SIZES = {2, 8};
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void exchange() throws Exception {
+        List<ShiverKeyAgreement> keyAgreements = List.of(ShiverKeyAgreements.DH, ShiverKeyAgreements.X25519, ShiverKeyAgreements.P_256);
+
+        System.out.printf("%-8s %6s %12s %16s%n", "agreement", "peers", "exchange ms", "public key bytes");
+        for (ShiverKeyAgreement keyAgreement : keyAgreements) {
+            int publicKeyLength = ShiverPublicKeys.encode(keyAgreement.generateKeyPair().getPublic()).length;
+            for (int groupSize : GROUP_SIZES) {
+                for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                    exchange(keyAgreement, groupSize);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    exchange(keyAgreement, groupSize);
+                }
+                double millis = (System.nanoTime() - start) / 1_000_000.0 / ROUNDS;
+                System.out.printf("%-8s %6d %12.1f %16d%n", keyAgreement.getName(), groupSize, millis, publicKeyLength);
+            }
+        }
+    }
+
+    /**
+     * Does the exchange like {@link ShiverPkiSecurity} does it and checks every member ends up with the same key
+     */
+    private void exchange(ShiverKeyAgreement keyAgreement, int groupSize) throws Exception {
+        List<KeyPair> keyPairs = new ArrayList<>(groupSize);
+        for (int i = 0; i < groupSize; i++) {
+            keyPairs.add(keyAgreement.generateKeyPair());
+        }
+
+        // the initiator starts every other member with its public key
+        Map<Integer, byte[]> keys = new HashMap<>();
+        byte[] initiatorKey = ShiverPublicKeys.encode(keyPairs.get(0).getPublic());
+        for (int peer = 1; peer < groupSize; peer++) {
+            keys.put(peer, initiatorKey);
+        }
+
+        for (int hop = 1; hop < groupSize; hop++) {
+            Map<Integer, byte[]> nextKeys = new HashMap<>();
+            for (int peer = 0; peer < groupSize; peer++) {
+                if (peer == hop) {
+                    nextKeys.put(peer, keys.get(peer));
+                    continue;
+                }
+                byte[] oldKey = keys.get(peer);
+                nextKeys.put(peer, oldKey == null
+                        ? ShiverPublicKeys.encode(keyPairs.get(hop).getPublic())
+                        : ShiverPublicKeys.encode(keyAgreement.combine(keyPairs.get(hop).getPrivate(), ShiverPublicKeys.decode(oldKey))));
+            }
+            keys = nextKeys;
+        }
+
+        Key groupKey = keyAgreement.generateGroupKey(keyPairs.get(0).getPrivate(), ShiverPublicKeys.decode(keys.get(0)));
+        for (int peer = 1; peer < groupSize; peer++) {
+            Assertions.assertEquals(groupKey, keyAgreement.generateGroupKey(keyPairs.get(peer).getPrivate(), ShiverPublicKeys.decode(keys.get(peer))));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.shiver.logic;
+
+import com.shiver.exceptions.ShiverPeerNotVerifiedException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ShiverPeerVerifierTest {
+    private final String TEST_OWNER_ID = "ownerId";
+    private final String TEST_PEER_ID_1 = "peerId1";
+    private final String TEST_PEER_ID_2 = "peerId2";
+
+    private SharkPKIComponent mockSharkPKIComponent;
+    private AtomicLong nanoTime;
+    private ShiverPeerVerifier shiverPeerVerifier;
+
+    @BeforeEach
+    public void beforeEach() throws ASAPSecurityException {
+        mockSharkPKIComponent = Mockito.mock(SharkPKIComponent.class);
+        Mockito.when(mockSharkPKIComponent.getOwnerID()).thenReturn(TEST_OWNER_ID);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+        nanoTime = new AtomicLong();
+        shiverPeerVerifier = new ShiverPeerVerifier(mockSharkPKIComponent, 1000, 2, nanoTime::get);
+    }
+
+    @Test
+    public void verifyPeer_cachesVerifiedPeer() throws ShiverPeerNotVerifiedException, ASAPSecurityException {
+        Assertions.assertTrue(shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1));
+        Assertions.assertTrue(shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1));
+        Assertions.assertTrue(shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1));
+
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(1)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1);
+        Assertions.assertEquals(2, shiverPeerVerifier.getHitCount());
+        Assertions.assertEquals(1, shiverPeerVerifier.getMissCount());
+    }
+
+    @Test
+    public void verifyPeer_looksUpAgainAfterTimeToLive() throws ShiverPeerNotVerifiedException, ASAPSecurityException {
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(1)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1);
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(2)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1);
+    }
+
+    @Test
+    public void verifyPeer_doesNotCacheUnverifiedPeer() throws ShiverPeerNotVerifiedException, ASAPSecurityException {
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1)).thenReturn(null);
+        Assertions.assertFalse(shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1));
+
+        // the certificate got added to the PKI
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1)).thenReturn(Mockito.mock(ASAPCertificate.class));
+        Assertions.assertTrue(shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1));
+
+        Assertions.assertEquals(0, shiverPeerVerifier.getHitCount());
+        Assertions.assertEquals(2, shiverPeerVerifier.getMissCount());
+    }
+
+    @Test
+    public void verifyPeer_keyedByIssuer() throws ShiverPeerNotVerifiedException, ASAPSecurityException {
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+
+        Mockito.when(mockSharkPKIComponent.getOwnerID()).thenReturn("otherOwnerId");
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(1)).getCertificateByIssuerAndSubject("otherOwnerId", TEST_PEER_ID_1);
+        Assertions.assertEquals(2, shiverPeerVerifier.getMissCount());
+    }
+
+    @Test
+    public void verifyPeer_dropsLeastRecentlyUsedPeer() throws ShiverPeerNotVerifiedException, ASAPSecurityException {
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_2);
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        shiverPeerVerifier.verifyPeer("peerId3");
+
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_2);
+
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(1)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1);
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(2)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_2);
+    }
+
+    @Test
+    public void invalidate() throws ShiverPeerNotVerifiedException, ASAPSecurityException {
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_2);
+
+        shiverPeerVerifier.invalidate(TEST_PEER_ID_1);
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_2);
+
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(2)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1);
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(1)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_2);
+
+        shiverPeerVerifier.invalidateAll();
+        shiverPeerVerifier.verifyPeer(TEST_PEER_ID_2);
+
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(2)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_2);
+    }
+
+    @Test
+    public void verifyPeer_timeToLiveZeroDoesNotCache() throws ShiverPeerNotVerifiedException, ASAPSecurityException {
+        ShiverPeerVerifier uncachedPeerVerifier = new ShiverPeerVerifier(mockSharkPKIComponent, 0, 1);
+
+        uncachedPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        uncachedPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+
+        Mockito.verify(mockSharkPKIComponent, Mockito.times(2)).getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1);
+        Assertions.assertEquals(0, uncachedPeerVerifier.getHitCount());
+    }
+
+    @Test
+    public void verifyPeer_throwsShiverPeerNotVerifiedException() throws ASAPSecurityException {
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(TEST_OWNER_ID, TEST_PEER_ID_1)).thenThrow(new ASAPSecurityException("test"));
+
+        Assertions.assertThrows(ShiverPeerNotVerifiedException.class, () -> {
+            shiverPeerVerifier.verifyPeer(TEST_PEER_ID_1);
+        });
+    }
+}
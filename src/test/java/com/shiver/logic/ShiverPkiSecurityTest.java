@@ -1,14 +1,17 @@
 package com.shiver.logic;
 
 import com.shiver.components.ShiverComponent;
+import com.shiver.crypto.ShiverKeyAgreements;
 import com.shiver.exceptions.ShiverDHKeyGenerationException;
 import com.shiver.exceptions.ShiverGroupSizeException;
 import com.shiver.exceptions.ShiverPeerNotVerifiedException;
 import com.shiver.models.GroupCredentialMessage;
 import com.shiver.models.GroupCredentialMessageImpl;
+import com.shiver.models.GroupKeyMessage;
 import com.shiver.models.ShiverPaths;
 import com.shiver.storage.ShiverDHKeyPairStorage;
 import com.shiver.storage.ShiverKeyStorage;
+import com.shiver.storage.ShiverSeenMessageStorage;
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.ASAPMessages;
 import net.sharksystem.asap.ASAPPeer;
@@ -19,6 +22,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 
@@ -29,10 +33,15 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ShiverPkiSecurityTest {
     private ShiverPkiSecurity shiverPkiSecurity;
@@ -101,6 +110,18 @@ public class ShiverPkiSecurityTest {
         });
     }
 
+    @Test
+    public void setEventDispatcher_movesListeners() {
+        ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+        shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+
+        ShiverEventDispatcher shiverEventDispatcher = new ShiverEventDispatcher();
+        shiverPkiSecurity.setEventDispatcher(shiverEventDispatcher);
+
+        Assertions.assertSame(shiverEventDispatcher, shiverPkiSecurity.getEventDispatcher());
+        Assertions.assertEquals(List.of(mockShiverEventListener), shiverEventDispatcher.getListeners());
+    }
+
     @Test
     public void startKeyExchangeWithPeers_successSortsPeers() throws ShiverDHKeyGenerationException, IOException, ShiverGroupSizeException, ASAPException, ShiverPeerNotVerifiedException, NoSuchAlgorithmException, ClassNotFoundException {
         List<CharSequence> testPeers = new ArrayList<>();
@@ -136,6 +157,9 @@ public class ShiverPkiSecurityTest {
                 ASAPCryptoAlgorithms.produceEncryptedMessagePackage(Mockito.any(), Mockito.eq(TEST_PEER_ID_1), Mockito.eq(mockSharkPKIComponent));
             }, Mockito.times(1));
 
+            // the receiver did not name its key agreements yet, it could be a peer from before the binary format
+            Assertions.assertEquals((byte) 0xAC, messageCaptor.getValue()[0]);
+            Assertions.assertEquals((byte) 0xED, messageCaptor.getValue()[1]);
             GroupCredentialMessage resultGroupCredential = GroupCredentialMessageImpl.deserialize(messageCaptor.getValue());
 
             Assertions.assertEquals(resultGroupCredential.getGroupId(), result);
@@ -152,6 +176,88 @@ public class ShiverPkiSecurityTest {
         }
     }
 
+    @Test
+    public void startKeyExchangeWithPeers_recordsKeyAgreement() throws GeneralSecurityException, ShiverDHKeyGenerationException, IOException, ShiverGroupSizeException, ASAPException, ShiverPeerNotVerifiedException, ClassNotFoundException {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+
+        KeyPair testKeyPair = ShiverKeyAgreements.X25519.generateKeyPair();
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(Mockito.any(), Mockito.eq(ShiverKeyAgreements.X25519))).thenReturn(testKeyPair);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
+
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messageCaptor.capture(), Mockito.eq(TEST_PEER_ID_1), Mockito.eq(mockSharkPKIComponent));
+            }).thenReturn(new byte[0]);
+
+            shiverPkiSecurity.setKeyAgreement(ShiverKeyAgreements.X25519);
+            shiverPkiSecurity.rememberKeyAgreements(TEST_PEER_ID_1, List.of(ShiverKeyAgreements.DH_NAME, ShiverKeyAgreements.X25519_NAME));
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.startKeyExchangeWithPeers(testPeers);
+
+            Assertions.assertEquals(GroupCredentialMessageImpl.FORMAT_VERSION, messageCaptor.getValue()[0]);
+            GroupCredentialMessage resultGroupCredential = GroupCredentialMessageImpl.deserialize(messageCaptor.getValue());
+
+            Assertions.assertEquals(ShiverKeyAgreements.X25519_NAME, resultGroupCredential.getKeyAgreementAlgorithm());
+            Assertions.assertArrayEquals(getPublicKeyBytes(testKeyPair.getPublic()), resultGroupCredential.getKeys().get(TEST_PEER_ID_1));
+            Mockito.verify(mockShiverDHKeyPairStorage, Mockito.never()).getOrGenerateKeyPairForGroup(Mockito.any());
+        }
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_usesDHIfAPeerDoesNotSupportTheKeyAgreement() throws Exception {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+        testPeers.add(TEST_PEER_ID_2);
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair testKeyPair = keyPairGenerator.generateKeyPair();
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(Mockito.any())).thenReturn(testKeyPair);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
+
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messageCaptor.capture(), Mockito.eq(TEST_PEER_ID_1), Mockito.eq(mockSharkPKIComponent));
+            }).thenReturn(new byte[0]);
+
+            shiverPkiSecurity.setKeyAgreement(ShiverKeyAgreements.X25519);
+            // the second peer is not known to support X25519
+            shiverPkiSecurity.rememberKeyAgreements(TEST_PEER_ID_1, List.of(ShiverKeyAgreements.DH_NAME, ShiverKeyAgreements.X25519_NAME));
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.startKeyExchangeWithPeers(testPeers);
+
+            GroupCredentialMessage resultGroupCredential = GroupCredentialMessageImpl.deserialize(messageCaptor.getValue());
+
+            Assertions.assertEquals(ShiverKeyAgreements.DH_NAME, resultGroupCredential.getKeyAgreementAlgorithm());
+            Assertions.assertEquals(ShiverKeyAgreements.getNames(), resultGroupCredential.getSupportedKeyAgreements().get(TEST_OWN_ASAP_ID));
+            Mockito.verify(mockShiverDHKeyPairStorage, Mockito.never()).getOrGenerateKeyPairForGroup(Mockito.any(), Mockito.any());
+        }
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_usesPeerVerifier() throws ShiverPeerNotVerifiedException {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+
+        ShiverPeerVerifier mockShiverPeerVerifier = Mockito.mock(ShiverPeerVerifier.class);
+        Mockito.when(mockShiverPeerVerifier.verifyPeer(TEST_PEER_ID_1)).thenReturn(false);
+
+        Assertions.assertNotNull(shiverPkiSecurity.getPeerVerifier());
+        shiverPkiSecurity.setPeerVerifier(mockShiverPeerVerifier);
+        shiverPkiSecurity.onStart(mockASAPPeer);
+
+        Assertions.assertThrows(ShiverPeerNotVerifiedException.class, () -> {
+            shiverPkiSecurity.startKeyExchangeWithPeers(testPeers);
+        });
+        Mockito.verify(mockShiverPeerVerifier).verifyPeer(TEST_PEER_ID_1);
+        Mockito.verifyNoInteractions(mockSharkPKIComponent);
+    }
+
     @Test
     public void startKeyExchangeWithPeers_throwsShiverGroupSizeException() {
         List<CharSequence> testPeers = new ArrayList<>();
@@ -190,6 +296,7 @@ public class ShiverPkiSecurityTest {
         );
 
         Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID)).thenReturn(ownKeyPair);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.eq(TEST_PEER_ID_2))).thenReturn(Mockito.mock(ASAPCertificate.class));
 
         try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
             byte[] testArray = new byte[0];
@@ -218,6 +325,88 @@ public class ShiverPkiSecurityTest {
             Assertions.assertArrayEquals(getPublicKeyBytes(resultDHOwnKey), resultGroupCredential.getKeys().get(TEST_PEER_ID_2));
 
             Mockito.verify(mockASAPPeer).sendASAPMessage(ShiverComponent.SHARK_SHIVER_APP, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW.toString(), testArray);
+
+            // the next hop got built from the received message without changing it
+            Assertions.assertNull(testGroupCredentialMessage.getKey(TEST_PEER_ID_1));
+            Assertions.assertSame(keys.get(TEST_PEER_ID_2), testGroupCredentialMessage.getKey(TEST_PEER_ID_2));
+        }
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_notLast_throwsForUnverifiedReceiver() throws Exception {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+        testPeers.add(TEST_OWN_ASAP_ID);
+        testPeers.add(TEST_PEER_ID_2);
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        byte[] testKey = getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic());
+
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        keys.put(TEST_PEER_ID_2, testKey);
+        keys.put(TEST_OWN_ASAP_ID, testKey);
+
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.eq(TEST_PEER_ID_2))).thenReturn(null);
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID)).thenReturn(keyPairGenerator.generateKeyPair());
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            shiverPkiSecurity.onStart(mockASAPPeer);
+
+            Assertions.assertThrows(ShiverPeerNotVerifiedException.class, () -> {
+                shiverPkiSecurity.acceptGroupCredentialMessage(new GroupCredentialMessageImpl(TEST_GROUP_ID, testPeers, keys));
+            });
+            mockedStatic.verifyNoInteractions();
+            Mockito.verify(mockASAPPeer, Mockito.never()).sendASAPMessage(Mockito.any(), Mockito.any(), Mockito.any());
+        }
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_parallelKeysSameAsSequential() throws Exception {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+        testPeers.add(TEST_OWN_ASAP_ID);
+        testPeers.add(TEST_PEER_ID_2);
+        testPeers.add("peerId3");
+        testPeers.add("peerId4");
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        keys.put(TEST_OWN_ASAP_ID, getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic()));
+        keys.put(TEST_PEER_ID_2, getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic()));
+        keys.put("peerId3", getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic()));
+        keys.put("peerId4", getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic()));
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID)).thenReturn(ownKeyPair);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.eq(TEST_PEER_ID_2))).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        AtomicInteger tasks = new AtomicInteger();
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messageCaptor.capture(), Mockito.eq(TEST_PEER_ID_2), Mockito.eq(mockSharkPKIComponent));
+            }).thenReturn(new byte[0]);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.setExecutor(Runnable::run);
+            shiverPkiSecurity.acceptGroupCredentialMessage(new GroupCredentialMessageImpl(TEST_GROUP_ID, testPeers, new HashMap<>(keys)));
+
+            shiverPkiSecurity.setExecutor(runnable -> {
+                tasks.incrementAndGet();
+                executorService.execute(runnable);
+            });
+            shiverPkiSecurity.acceptGroupCredentialMessage(new GroupCredentialMessageImpl(TEST_GROUP_ID, testPeers, new HashMap<>(keys)));
+
+            List<byte[]> messages = messageCaptor.getAllValues();
+            Assertions.assertEquals(2, messages.size());
+            Assertions.assertArrayEquals(messages.get(0), messages.get(1));
+            Assertions.assertEquals(4, tasks.get());
+        } finally {
+            executorService.shutdown();
         }
     }
 
@@ -283,6 +472,155 @@ public class ShiverPkiSecurityTest {
         }
     }
 
+    @Test
+    public void acceptGroupCredentialMessage_successIsLast_bigGroupBroadcast() throws Exception {
+        List<CharSequence> testPeers = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            testPeers.add("peerId" + i);
+        }
+        testPeers.add(TEST_OWN_ASAP_ID);
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        keys.put(TEST_OWN_ASAP_ID, getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic()));
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID)).thenReturn(ownKeyPair);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+        // the packages get encrypted on the calling thread, because the static mock only exists there
+        AtomicInteger tasks = new AtomicInteger();
+        shiverPkiSecurity.setExecutor(runnable -> {
+            tasks.incrementAndGet();
+            runnable.run();
+        });
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messageCaptor.capture(), Mockito.any(), Mockito.eq(mockSharkPKIComponent));
+            }).thenAnswer(invocation -> invocation.getArgument(1).toString().getBytes());
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.acceptGroupCredentialMessage(new GroupCredentialMessageImpl(TEST_GROUP_ID, testPeers, keys));
+
+            List<byte[]> messages = messageCaptor.getAllValues();
+            Assertions.assertEquals(9, messages.size());
+            for (byte[] message : messages) {
+                Assertions.assertSame(messages.get(0), message);
+            }
+
+            // 9 intermediate keys and 9 packages
+            Assertions.assertEquals(18, tasks.get());
+
+            InOrder inOrder = Mockito.inOrder(mockASAPPeer);
+            for (int i = 0; i < 9; i++) {
+                inOrder.verify(mockASAPPeer).sendASAPMessage(ShiverComponent.SHARK_SHIVER_APP, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST.getValue(), ("peerId" + i).getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_successIsLast_tailoredBroadcast() throws Exception {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+        testPeers.add(TEST_PEER_ID_2);
+        testPeers.add(TEST_OWN_ASAP_ID);
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        keys.put(TEST_OWN_ASAP_ID, getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic()));
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID)).thenReturn(ownKeyPair);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
+            ArgumentCaptor<CharSequence> receiverCaptor = ArgumentCaptor.forClass(CharSequence.class);
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.produceEncryptedMessagePackage(messageCaptor.capture(), receiverCaptor.capture(), Mockito.eq(mockSharkPKIComponent));
+            }).thenReturn(new byte[0]);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.setTailoredBroadcast(true);
+            shiverPkiSecurity.acceptGroupCredentialMessage(new GroupCredentialMessageImpl(TEST_GROUP_ID, testPeers, keys, ShiverKeyAgreements.DH_NAME, 2));
+
+            Assertions.assertEquals(List.of(TEST_PEER_ID_1, TEST_PEER_ID_2), receiverCaptor.getAllValues());
+            for (byte[] message : messageCaptor.getAllValues()) {
+                GroupKeyMessage groupKeyMessage = GroupKeyMessage.deserialize(message);
+
+                Assertions.assertEquals(TEST_GROUP_ID, groupKeyMessage.getGroupId());
+                Assertions.assertEquals(2, groupKeyMessage.getEpoch());
+                Assertions.assertEquals(ShiverKeyAgreements.DH_NAME, groupKeyMessage.getKeyAgreementAlgorithm());
+                Assertions.assertArrayEquals(getPublicKeyBytes(ownKeyPair.getPublic()), groupKeyMessage.getKey());
+            }
+
+            Mockito.verify(mockASAPPeer, Mockito.times(2)).sendASAPMessage(ShiverComponent.SHARK_SHIVER_APP, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST.getValue(), new byte[0]);
+            Mockito.verify(mockASAPPeer, Mockito.never()).sendASAPMessage(Mockito.any(), Mockito.eq(ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST.getValue()), Mockito.any());
+        }
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_successIsLast_keyAgreementOfMessage() throws GeneralSecurityException, IOException, ShiverDHKeyGenerationException, ASAPException, ShiverPeerNotVerifiedException {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+        testPeers.add(TEST_OWN_ASAP_ID);
+
+        KeyPair testKeyPair1 = ShiverKeyAgreements.P_256.generateKeyPair();
+        KeyPair ownKeyPair = ShiverKeyAgreements.P_256.generateKeyPair();
+
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        keys.put(TEST_OWN_ASAP_ID, getPublicKeyBytes(testKeyPair1.getPublic()));
+
+        Key finalKey = ShiverKeyAgreements.P_256.generateGroupKey(testKeyPair1.getPrivate(), ownKeyPair.getPublic());
+
+        GroupCredentialMessage testGroupCredentialMessage = new GroupCredentialMessageImpl(
+                TEST_GROUP_ID,
+                testPeers,
+                keys,
+                ShiverKeyAgreements.P_256_NAME
+        );
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID, ShiverKeyAgreements.P_256)).thenReturn(ownKeyPair);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.produceEncryptedMessagePackage(Mockito.any(), Mockito.eq(TEST_PEER_ID_1), Mockito.eq(mockSharkPKIComponent));
+            }).thenReturn(new byte[0]);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.acceptGroupCredentialMessage(testGroupCredentialMessage);
+
+            Mockito.verify(mockShiverKeyStorage).storeKeyForGroup(TEST_GROUP_ID, finalKey);
+        }
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_throwsForUnknownKeyAgreement() {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+        testPeers.add(TEST_OWN_ASAP_ID);
+
+        GroupCredentialMessage testGroupCredentialMessage = new GroupCredentialMessageImpl(
+                TEST_GROUP_ID,
+                testPeers,
+                new HashMap<>(),
+                "unknown"
+        );
+
+        shiverPkiSecurity.onStart(mockASAPPeer);
+        Assertions.assertThrows(NoSuchAlgorithmException.class, () -> {
+            shiverPkiSecurity.acceptGroupCredentialMessage(testGroupCredentialMessage);
+        });
+        Mockito.verifyNoInteractions(mockShiverKeyStorage);
+    }
+
     @Test
     public void asapMessagesReceived_successUpcast() throws ShiverDHKeyGenerationException, IOException, NoSuchAlgorithmException {
         List<CharSequence> testPeers = new ArrayList<>();
@@ -495,6 +833,409 @@ public class ShiverPkiSecurityTest {
         }
     }
 
+    @Test
+    public void asapMessagesReceived_successTailoredBroadcast() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair testKeyPair1 = keyPairGenerator.generateKeyPair();
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+
+        KeyAgreement ownTestKeyAgreement = KeyAgreement.getInstance("DH");
+        ownTestKeyAgreement.init(ownKeyPair.getPrivate());
+        ownTestKeyAgreement.doPhase(testKeyPair1.getPublic(), true);
+        Key finalKey = new SecretKeySpec(ownTestKeyAgreement.generateSecret(), 0, 16, "AES");
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID)).thenReturn(ownKeyPair);
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST, new GroupKeyMessage(TEST_GROUP_ID, 0, ShiverKeyAgreements.DH_NAME, getPublicKeyBytes(testKeyPair1.getPublic())).serialize());
+
+            // the message does not name the members, so the previous key gets dropped
+            Mockito.verify(mockShiverKeyStorage).replaceKeyForGroup(TEST_GROUP_ID, finalKey);
+            Mockito.verify(mockShiverKeyStorage, Mockito.never()).storeKeyForGroup(Mockito.any(), Mockito.any());
+            Mockito.verify(mockShiverEventListener).onReceivedGroupKey(TEST_GROUP_ID);
+            Mockito.verify(mockShiverEventListener, Mockito.never()).onErrorReceivingGroupCredentialMessage(Mockito.any(), Mockito.any());
+        }
+    }
+
+    @Test
+    public void asapMessagesReceived_ignoresOutdatedBroadcast() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+        byte[] newKey = getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic());
+        byte[] outdatedKey = getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic());
+
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        keys.put(TEST_OWN_ASAP_ID, outdatedKey);
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add(TEST_PEER_ID_1);
+        testPeers.add(TEST_OWN_ASAP_ID);
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID)).thenReturn(ownKeyPair);
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST, new GroupKeyMessage(TEST_GROUP_ID, 2, ShiverKeyAgreements.DH_NAME, newKey).serialize());
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST, new GroupKeyMessage(TEST_GROUP_ID, 1, ShiverKeyAgreements.DH_NAME, outdatedKey).serialize());
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST, new GroupCredentialMessageImpl(TEST_GROUP_ID, testPeers, keys, ShiverKeyAgreements.DH_NAME, 1).serialize());
+
+            Mockito.verify(mockShiverKeyStorage, Mockito.times(1)).replaceKeyForGroup(Mockito.eq(TEST_GROUP_ID), Mockito.any());
+            Mockito.verify(mockShiverKeyStorage, Mockito.never()).storeKeyForGroup(Mockito.eq(TEST_GROUP_ID), Mockito.any());
+            Mockito.verify(mockShiverEventListener, Mockito.times(1)).onReceivedGroupKey(TEST_GROUP_ID);
+        }
+    }
+
+    @Test
+    public void asapMessagesReceived_parallelKeepsOrderOfGroup() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+        KeyPair testKeyPair1 = keyPairGenerator.generateKeyPair();
+        KeyPair testKeyPair2 = keyPairGenerator.generateKeyPair();
+        String otherGroupId = "otherGroupId";
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(Mockito.any())).thenReturn(ownKeyPair);
+
+        AtomicInteger executedTasks = new AtomicInteger();
+        // the static mock only exists on this thread, so the tasks run right here
+        shiverPkiSecurity.setExecutor(runnable -> {
+            executedTasks.incrementAndGet();
+            runnable.run();
+        });
+        shiverPkiSecurity.setMaxParallelReceives(4);
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST,
+                    new GroupKeyMessage(TEST_GROUP_ID, 1, ShiverKeyAgreements.DH_NAME, getPublicKeyBytes(testKeyPair1.getPublic())).serialize(),
+                    "broken".getBytes(),
+                    new GroupKeyMessage(otherGroupId, 0, ShiverKeyAgreements.DH_NAME, getPublicKeyBytes(testKeyPair1.getPublic())).serialize(),
+                    new GroupKeyMessage(TEST_GROUP_ID, 2, ShiverKeyAgreements.DH_NAME, getPublicKeyBytes(testKeyPair2.getPublic())).serialize()
+            );
+
+            InOrder inOrder = Mockito.inOrder(mockShiverKeyStorage);
+            inOrder.verify(mockShiverKeyStorage).replaceKeyForGroup(TEST_GROUP_ID, getFinalKey(ownKeyPair, testKeyPair1));
+            inOrder.verify(mockShiverKeyStorage).replaceKeyForGroup(TEST_GROUP_ID, getFinalKey(ownKeyPair, testKeyPair2));
+            Mockito.verify(mockShiverKeyStorage).replaceKeyForGroup(otherGroupId, getFinalKey(ownKeyPair, testKeyPair1));
+
+            Mockito.verify(mockShiverEventListener, Mockito.times(2)).onReceivedGroupKey(TEST_GROUP_ID);
+            Mockito.verify(mockShiverEventListener).onReceivedGroupKey(otherGroupId);
+            Mockito.verify(mockShiverEventListener).onErrorReceivingGroupCredentialMessage(Mockito.eq(ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST.toString()), Mockito.any());
+            // four decodings on four tasks, then the broken message and both groups on three tasks
+            Assertions.assertEquals(7, executedTasks.get());
+        }
+    }
+
+    @Test
+    public void asapMessagesReceived_parallelDoesNotBlockBoundedExecutor() throws Exception {
+        List<CharSequence> testPeers = List.of(TEST_PEER_ID_1, TEST_OWN_ASAP_ID, TEST_PEER_ID_2);
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+        byte[] testKey = getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic());
+
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        keys.put(TEST_OWN_ASAP_ID, testKey);
+        keys.put(TEST_PEER_ID_2, testKey);
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(Mockito.any())).thenReturn(ownKeyPair);
+        Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+        // a package is the plain message, the static mock only exists on the thread that opens it, so every task opens its own
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        shiverPkiSecurity.setExecutor(runnable -> executorService.execute(() -> {
+            try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+                ASAPCryptoAlgorithms.EncryptedMessagePackage mockEncryptedMessagePackage = Mockito.mock(ASAPCryptoAlgorithms.EncryptedMessagePackage.class);
+                ArgumentCaptor<byte[]> packageCaptor = ArgumentCaptor.forClass(byte[].class);
+                mockedStatic.when(() -> ASAPCryptoAlgorithms.parseEncryptedMessagePackage(packageCaptor.capture())).thenReturn(mockEncryptedMessagePackage);
+                mockedStatic.when(() -> ASAPCryptoAlgorithms.decryptPackage(Mockito.any(), Mockito.any())).thenAnswer(invocation -> packageCaptor.getValue());
+                mockedStatic.when(() -> ASAPCryptoAlgorithms.produceEncryptedMessagePackage(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(new byte[0]);
+                runnable.run();
+            }
+        }));
+        shiverPkiSecurity.setMaxParallelReceives(2);
+
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        shiverPkiSecurity.onStart(mockASAPPeer);
+        shiverPkiSecurity.addShiverEventListener(new ShiverEventListener() {
+            @Override
+            public void onReceiveGroupCredentials(GroupCredentialMessage groupCredentialMessage) {
+                try {
+                    shiverPkiSecurity.acceptGroupCredentialMessage(groupCredentialMessage);
+                } catch (Exception e) {
+                    errors.add(e);
+                }
+            }
+
+            @Override
+            public void onErrorReceivingGroupCredentialMessage(String path, Exception exception) {
+                errors.add(exception);
+            }
+
+            @Override
+            public void onReceivedGroupKey(CharSequence groupId) {
+            }
+        });
+
+        ArrayList<byte[]> messages = new ArrayList<>();
+        messages.add(new GroupCredentialMessageImpl("groupId1", testPeers, new HashMap<>(keys)).serialize());
+        messages.add(new GroupCredentialMessageImpl("groupId2", testPeers, new HashMap<>(keys)).serialize());
+        ASAPMessages mockASAPMessages = Mockito.mock(ASAPMessages.class);
+        Mockito.when(mockASAPMessages.getMessages()).thenReturn(messages.iterator());
+        Mockito.when(mockASAPMessages.getURI()).thenReturn(ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW.toString());
+
+        try {
+            // both threads of the executor handle a message, the keys of the upflow must not wait for a third one
+            Assertions.assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                shiverPkiSecurity.asapMessagesReceived(mockASAPMessages, TEST_PEER_ID_1, null);
+            });
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Assertions.assertEquals(List.of(), errors);
+        Mockito.verify(mockASAPPeer, Mockito.times(2)).sendASAPMessage(Mockito.eq(ShiverComponent.SHARK_SHIVER_APP), Mockito.eq(ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW.toString()), Mockito.any());
+    }
+
+    @Test
+    public void asapMessagesReceived_oneAfterAnotherByDefault() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+        byte[] testKey = getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic());
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(Mockito.any())).thenReturn(ownKeyPair);
+
+        AtomicInteger executedTasks = new AtomicInteger();
+        shiverPkiSecurity.setExecutor(runnable -> {
+            executedTasks.incrementAndGet();
+            runnable.run();
+        });
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST,
+                    new GroupKeyMessage(TEST_GROUP_ID, 0, ShiverKeyAgreements.DH_NAME, testKey).serialize(),
+                    new GroupKeyMessage("otherGroupId", 0, ShiverKeyAgreements.DH_NAME, testKey).serialize()
+            );
+
+            Mockito.verify(mockShiverEventListener).onReceivedGroupKey(TEST_GROUP_ID);
+            Mockito.verify(mockShiverEventListener).onReceivedGroupKey("otherGroupId");
+            Assertions.assertEquals(0, executedTasks.get());
+        }
+    }
+
+    @Test
+    public void setMaxParallelReceives_throwsForLessThanOne() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            shiverPkiSecurity.setMaxParallelReceives(0);
+        });
+    }
+
+    @Test
+    public void asapMessagesReceived_dropsDuplicatesBeforeDecrypting() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DH");
+        keyPairGenerator.initialize(2048);
+        KeyPair ownKeyPair = keyPairGenerator.generateKeyPair();
+        byte[] plainMessageBytes = new GroupKeyMessage(TEST_GROUP_ID, 0, ShiverKeyAgreements.DH_NAME, getPublicKeyBytes(keyPairGenerator.generateKeyPair().getPublic())).serialize();
+
+        Mockito.when(mockShiverDHKeyPairStorage.getOrGenerateKeyPairForGroup(TEST_GROUP_ID)).thenReturn(ownKeyPair);
+
+        byte[] testArray = "testArray".getBytes();
+        ASAPMessages mockASAPMessages = Mockito.mock(ASAPMessages.class);
+        Mockito.when(mockASAPMessages.getMessages())
+                .thenReturn(List.of(testArray, testArray.clone()).iterator())
+                .thenReturn(List.of(testArray.clone()).iterator());
+        Mockito.when(mockASAPMessages.getURI()).thenReturn(ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST.toString());
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ASAPCryptoAlgorithms.EncryptedMessagePackage mockEncryptedMessagePackage = Mockito.mock(ASAPCryptoAlgorithms.EncryptedMessagePackage.class);
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.parseEncryptedMessagePackage(Mockito.any(byte[].class));
+            }).thenReturn(mockEncryptedMessagePackage);
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.decryptPackage(mockEncryptedMessagePackage, mockSharkPKIComponent);
+            }).thenReturn(plainMessageBytes);
+
+            ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+            shiverPkiSecurity.asapMessagesReceived(mockASAPMessages, TEST_PEER_ID_1, null);
+            shiverPkiSecurity.asapMessagesReceived(mockASAPMessages, TEST_PEER_ID_1, null);
+
+            mockedStatic.verify(() -> {
+                ASAPCryptoAlgorithms.decryptPackage(mockEncryptedMessagePackage, mockSharkPKIComponent);
+            }, Mockito.times(1));
+            Mockito.verify(mockShiverEventListener, Mockito.times(1)).onReceivedGroupKey(TEST_GROUP_ID);
+            Assertions.assertEquals(2, shiverPkiSecurity.getSuppressedDuplicateCount());
+        }
+    }
+
+    @Test
+    public void asapMessagesReceived_triesFailedMessageAgain() throws Exception {
+        ShiverSeenMessageStorage mockShiverSeenMessageStorage = Mockito.mock(ShiverSeenMessageStorage.class);
+        shiverPkiSecurity.setSeenMessageStorage(mockShiverSeenMessageStorage);
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST, "broken".getBytes());
+
+            Mockito.verify(mockShiverSeenMessageStorage).isMessageSeen(Mockito.any());
+            Mockito.verify(mockShiverSeenMessageStorage, Mockito.never()).storeSeenMessage(Mockito.any());
+            Mockito.verify(mockShiverEventListener).onErrorReceivingGroupCredentialMessage(Mockito.any(), Mockito.any());
+            Assertions.assertEquals(0, shiverPkiSecurity.getSuppressedDuplicateCount());
+        }
+    }
+
+    @Test
+    public void asapMessagesReceived_reportsFailedGroup() throws Exception {
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST,
+                    "broken".getBytes(),
+                    new GroupKeyMessage(TEST_GROUP_ID, 1, ShiverKeyAgreements.DH_NAME, "broken_key".getBytes()).serialize()
+            );
+
+            // only the message that belongs to a group fails it
+            Mockito.verify(mockShiverEventListener, Mockito.times(2)).onErrorReceivingGroupCredentialMessage(Mockito.any(), Mockito.any());
+            Mockito.verify(mockShiverEventListener, Mockito.times(1)).onErrorCreatingGroupKey(Mockito.any(), Mockito.any());
+            Mockito.verify(mockShiverEventListener).onErrorCreatingGroupKey(Mockito.eq(TEST_GROUP_ID), Mockito.any());
+        }
+    }
+
+    @Test
+    public void asapMessagesReceived_remembersKeyAgreementsOfPeers() throws Exception {
+        GroupCredentialMessage testGroupCredentialMessage = new GroupCredentialMessageImpl.Builder()
+                .setGroupId(TEST_GROUP_ID)
+                .setPeerIds(List.of(TEST_PEER_ID_1, TEST_OWN_ASAP_ID))
+                .setKeyAgreementAlgorithm(ShiverKeyAgreements.DH_NAME)
+                .putSupportedKeyAgreements(TEST_PEER_ID_1, List.of(ShiverKeyAgreements.DH_NAME, ShiverKeyAgreements.P_256_NAME))
+                .build();
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW, testGroupCredentialMessage.serialize());
+        }
+
+        Assertions.assertEquals(List.of(ShiverKeyAgreements.DH_NAME, ShiverKeyAgreements.P_256_NAME), shiverPkiSecurity.getKnownKeyAgreements(TEST_PEER_ID_1));
+        Assertions.assertEquals(List.of(), shiverPkiSecurity.getKnownKeyAgreements(TEST_PEER_ID_2));
+    }
+
+    @Test
+    public void asapMessagesReceived_remembersOnlyKeyAgreementsOfProducer() throws Exception {
+        GroupCredentialMessage testGroupCredentialMessage = new GroupCredentialMessageImpl.Builder()
+                .setGroupId(TEST_GROUP_ID)
+                .setPeerIds(List.of(TEST_PEER_ID_1, TEST_OWN_ASAP_ID, TEST_PEER_ID_2))
+                .setKeyAgreementAlgorithm(ShiverKeyAgreements.DH_NAME)
+                .putSupportedKeyAgreements(TEST_PEER_ID_1, List.of(ShiverKeyAgreements.DH_NAME, ShiverKeyAgreements.P_256_NAME))
+                .putSupportedKeyAgreements(TEST_PEER_ID_2, List.of(ShiverKeyAgreements.DH_NAME))
+                .build();
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.rememberKeyAgreements(TEST_PEER_ID_2, List.of(ShiverKeyAgreements.DH_NAME, ShiverKeyAgreements.X25519_NAME));
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW, testGroupCredentialMessage.serialize());
+        }
+
+        // the entry for peer 2 was written by peer 1, it must not downgrade what peer 2 said about itself
+        Assertions.assertEquals(List.of(ShiverKeyAgreements.DH_NAME, ShiverKeyAgreements.P_256_NAME), shiverPkiSecurity.getKnownKeyAgreements(TEST_PEER_ID_1));
+        Assertions.assertEquals(List.of(ShiverKeyAgreements.DH_NAME, ShiverKeyAgreements.X25519_NAME), shiverPkiSecurity.getKnownKeyAgreements(TEST_PEER_ID_2));
+    }
+
+    @Test
+    public void asapMessagesReceived_ignoresKeyAgreementsOfOtherSender() throws Exception {
+        GroupCredentialMessage testGroupCredentialMessage = new GroupCredentialMessageImpl.Builder()
+                .setGroupId(TEST_GROUP_ID)
+                .setPeerIds(List.of(TEST_PEER_ID_2, TEST_OWN_ASAP_ID))
+                .setKeyAgreementAlgorithm(ShiverKeyAgreements.DH_NAME)
+                .putSupportedKeyAgreements(TEST_PEER_ID_2, List.of(ShiverKeyAgreements.DH_NAME))
+                .build();
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            // the message comes from peer 1, but the hop before this peer is peer 2
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW, testGroupCredentialMessage.serialize());
+        }
+
+        Assertions.assertEquals(List.of(), shiverPkiSecurity.getKnownKeyAgreements(TEST_PEER_ID_1));
+        Assertions.assertEquals(List.of(), shiverPkiSecurity.getKnownKeyAgreements(TEST_PEER_ID_2));
+    }
+
+    @Test
+    public void asapMessagesReceived_rejectsUnknownKeyAgreement() throws Exception {
+        GroupCredentialMessage testGroupCredentialMessage = new GroupCredentialMessageImpl(
+                TEST_GROUP_ID,
+                List.of(TEST_PEER_ID_1, TEST_OWN_ASAP_ID),
+                new HashMap<>(),
+                "unknown"
+        );
+
+        try (MockedStatic<ASAPCryptoAlgorithms> mockedStatic = Mockito.mockStatic(ASAPCryptoAlgorithms.class)) {
+            ShiverEventListener mockShiverEventListener = Mockito.mock(ShiverEventListener.class);
+
+            shiverPkiSecurity.onStart(mockASAPPeer);
+            shiverPkiSecurity.addShiverEventListener(mockShiverEventListener);
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW, testGroupCredentialMessage.serialize());
+            receive(mockedStatic, ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST, new GroupKeyMessage(TEST_GROUP_ID, 0, "unknown", "key".getBytes()).serialize());
+
+            Mockito.verify(mockShiverEventListener, Mockito.never()).onReceiveGroupCredentials(Mockito.any());
+            Mockito.verify(mockShiverEventListener, Mockito.times(2)).onErrorReceivingGroupCredentialMessage(Mockito.any(), Mockito.any(NoSuchAlgorithmException.class));
+            Mockito.verify(mockShiverEventListener, Mockito.times(2)).onErrorCreatingGroupKey(Mockito.eq(TEST_GROUP_ID), Mockito.any(NoSuchAlgorithmException.class));
+            Mockito.verifyNoInteractions(mockShiverKeyStorage);
+        }
+    }
+
+    private void receive(MockedStatic<ASAPCryptoAlgorithms> mockedStatic, ShiverPaths path, byte[]... plainMessages) throws IOException {
+        ArrayList<byte[]> messages = new ArrayList<>();
+        for (byte[] plainMessageBytes : plainMessages) {
+            byte[] testArray = UUID.randomUUID().toString().getBytes();
+            messages.add(testArray);
+
+            ASAPCryptoAlgorithms.EncryptedMessagePackage mockEncryptedMessagePackage = Mockito.mock(ASAPCryptoAlgorithms.EncryptedMessagePackage.class);
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.parseEncryptedMessagePackage(testArray);
+            }).thenReturn(mockEncryptedMessagePackage);
+            mockedStatic.when(() -> {
+                ASAPCryptoAlgorithms.decryptPackage(mockEncryptedMessagePackage, mockSharkPKIComponent);
+            }).thenReturn(plainMessageBytes);
+        }
+
+        ASAPMessages mockASAPMessages = Mockito.mock(ASAPMessages.class);
+        Mockito.when(mockASAPMessages.getMessages()).thenReturn(messages.iterator());
+        Mockito.when(mockASAPMessages.getURI()).thenReturn(path.toString());
+
+        shiverPkiSecurity.asapMessagesReceived(mockASAPMessages, TEST_PEER_ID_1, null);
+    }
+
+    private Key getFinalKey(KeyPair ownKeyPair, KeyPair otherKeyPair) throws GeneralSecurityException {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("DH");
+        keyAgreement.init(ownKeyPair.getPrivate());
+        keyAgreement.doPhase(otherKeyPair.getPublic(), true);
+        return new SecretKeySpec(keyAgreement.generateSecret(), 0, 16, "AES");
+    }
+
     private byte[] getPublicKeyBytes(Key publicKey) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         DataOutputStream dos = new DataOutputStream(baos);
@@ -0,0 +1,117 @@
+package com.shiver.logic;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.Key;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+
+public class ShiverPublicKeyCodecTest {
+
+    @Test
+    public void encode_sameBytesAsDataOutputStream() throws Exception {
+        ShiverPublicKeyCodec shiverPublicKeyCodec = new ShiverPublicKeyCodec(4, 1);
+
+        for (PublicKey publicKey : createPublicKeys()) {
+            Assertions.assertArrayEquals(encodeWithStream(publicKey), shiverPublicKeyCodec.encode(publicKey));
+        }
+    }
+
+    @Test
+    public void encode_nonAsciiAlgorithm() throws IOException {
+        ShiverPublicKeyCodec shiverPublicKeyCodec = new ShiverPublicKeyCodec(4, 1);
+        Key testKey = new Key() {
+            @Override
+            public String getAlgorithm() {
+                return "\u00c4lgorithm";
+            }
+
+            @Override
+            public String getFormat() {
+                return "X.509";
+            }
+
+            @Override
+            public byte[] getEncoded() {
+                return new byte[]{1, 2, 3};
+            }
+        };
+
+        Assertions.assertArrayEquals(encodeWithStream(testKey), shiverPublicKeyCodec.encode(testKey));
+    }
+
+    @Test
+    public void decode_roundTrip() throws Exception {
+        ShiverPublicKeyCodec shiverPublicKeyCodec = new ShiverPublicKeyCodec(4, 1);
+
+        for (PublicKey publicKey : createPublicKeys()) {
+            Assertions.assertEquals(publicKey, shiverPublicKeyCodec.decode(encodeWithStream(publicKey)));
+        }
+    }
+
+    @Test
+    public void decode_cachesDecodedKey() throws Exception {
+        ShiverPublicKeyCodec shiverPublicKeyCodec = new ShiverPublicKeyCodec(4, 1);
+        byte[] encodedKey = encodeWithStream(createPublicKeys()[0]);
+
+        PublicKey decodedKey = shiverPublicKeyCodec.decode(encodedKey);
+
+        Assertions.assertSame(decodedKey, shiverPublicKeyCodec.decode(encodedKey.clone()));
+        Assertions.assertEquals(1, shiverPublicKeyCodec.getCachedKeyCount());
+    }
+
+    @Test
+    public void decode_cacheIsBounded() throws Exception {
+        ShiverPublicKeyCodec shiverPublicKeyCodec = new ShiverPublicKeyCodec(2, 1);
+        PublicKey[] publicKeys = createPublicKeys();
+
+        PublicKey firstKey = shiverPublicKeyCodec.decode(encodeWithStream(publicKeys[0]));
+        for (PublicKey publicKey : publicKeys) {
+            shiverPublicKeyCodec.decode(encodeWithStream(publicKey));
+        }
+
+        Assertions.assertEquals(2, shiverPublicKeyCodec.getCachedKeyCount());
+        Assertions.assertNotSame(firstKey, shiverPublicKeyCodec.decode(encodeWithStream(publicKeys[0])));
+    }
+
+    @Test
+    public void decode_withoutCache() throws Exception {
+        ShiverPublicKeyCodec shiverPublicKeyCodec = new ShiverPublicKeyCodec(0, 1);
+        byte[] encodedKey = encodeWithStream(createPublicKeys()[1]);
+
+        PublicKey decodedKey = shiverPublicKeyCodec.decode(encodedKey);
+
+        Assertions.assertNotSame(decodedKey, shiverPublicKeyCodec.decode(encodedKey));
+        Assertions.assertEquals(decodedKey, shiverPublicKeyCodec.decode(encodedKey));
+        Assertions.assertEquals(0, shiverPublicKeyCodec.getCachedKeyCount());
+    }
+
+    private PublicKey[] createPublicKeys() throws Exception {
+        KeyPairGenerator dhKeyPairGenerator = KeyPairGenerator.getInstance("DH");
+        dhKeyPairGenerator.initialize(2048);
+        KeyPairGenerator x25519KeyPairGenerator = KeyPairGenerator.getInstance("X25519");
+        KeyPairGenerator ecKeyPairGenerator = KeyPairGenerator.getInstance("EC");
+        ecKeyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+
+        return new PublicKey[]{
+                dhKeyPairGenerator.generateKeyPair().getPublic(),
+                x25519KeyPairGenerator.generateKeyPair().getPublic(),
+                ecKeyPairGenerator.generateKeyPair().getPublic()
+        };
+    }
+
+    private byte[] encodeWithStream(Key publicKey) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeUTF(publicKey.getFormat());
+        dos.writeUTF(publicKey.getAlgorithm());
+        dos.writeInt(publicKey.getEncoded().length);
+        dos.write(publicKey.getEncoded());
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,359 @@
+package com.shiver.logic;
+
+import com.shiver.crypto.ShiverKeyAgreements;
+import com.shiver.exceptions.ShiverGroupSizeException;
+import com.shiver.exceptions.ShiverNoGroupKeyException;
+import com.shiver.exceptions.ShiverPeerNotVerifiedException;
+import com.shiver.models.GroupCredentialMessage;
+import com.shiver.models.GroupCredentialMessageImpl;
+import com.shiver.models.GroupTreeCredentialMessage;
+import com.shiver.models.ShiverKeyTree;
+import com.shiver.models.ShiverPaths;
+import com.shiver.storage.ShiverDHKeyPairStorageInMemo;
+import com.shiver.storage.ShiverKeyStoreInMemo;
+import net.sharksystem.asap.ASAPMessages;
+import net.sharksystem.asap.ASAPPeer;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.security.Key;
+import java.util.*;
+
+public class ShiverTreePkiSecurityTest {
+    private MockedStatic<ASAPCryptoAlgorithms> mockASAPCryptoAlgorithms;
+
+    // messages that got sent but not delivered yet, delivered one after another by deliverAll
+    private final Deque<SentMessage> network = new ArrayDeque<>();
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    private int deliveredMessages = 0;
+
+    @BeforeEach
+    public void beforeEach() {
+        mockASAPCryptoAlgorithms = Mockito.mockStatic(ASAPCryptoAlgorithms.class);
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.sign(Mockito.any(), Mockito.any())).thenReturn(new byte[]{1, 2, 3});
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.verify(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(true);
+    }
+
+    @AfterEach
+    public void afterEach() {
+        mockASAPCryptoAlgorithms.close();
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_allMembersAgree() throws Exception {
+        List<CharSequence> peers = createMembers(5);
+
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        Key groupKey = assertSameKey(groupId, peers);
+        Assertions.assertNotNull(groupKey);
+        for (Member member : members.values()) {
+            Assertions.assertEquals(List.of(groupId), member.receivedGroupKeys);
+        }
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_otherKeyAgreements() throws Exception {
+        List<CharSequence> peers = createMembers(3);
+
+        members.get("peer0").security.setKeyAgreement(ShiverKeyAgreements.DH);
+        CharSequence dhGroupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        members.get("peer1").security.setKeyAgreement(ShiverKeyAgreements.P_256);
+        CharSequence p256GroupId = members.get("peer1").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        assertSameKey(dhGroupId, peers);
+        assertSameKey(p256GroupId, peers);
+    }
+
+    @Test
+    public void startKeyExchangeWithPeers_throwsShiverGroupSizeException() {
+        createMembers(1);
+
+        Assertions.assertThrows(ShiverGroupSizeException.class, () -> {
+            members.get("peer0").security.startKeyExchangeWithPeers(List.of("peer0"));
+        });
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_waitsForAcceptance() throws Exception {
+        List<CharSequence> peers = createMembers(3);
+        members.get("peer2").autoAccept = false;
+
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        Assertions.assertNull(members.get("peer0").keyStore.getKeyForGroup(groupId));
+        Assertions.assertEquals(1, members.get("peer2").invitations.size());
+
+        members.get("peer2").security.acceptGroupCredentialMessage(members.get("peer2").invitations.get(0));
+        deliverAll();
+
+        assertSameKey(groupId, peers);
+    }
+
+    @Test
+    public void acceptGroupCredentialMessage_throwsForOtherMessages() {
+        createMembers(2);
+        GroupCredentialMessage groupCredentialMessage = new GroupCredentialMessageImpl("groupId", new ArrayList<>(), new HashMap<>());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            members.get("peer0").security.acceptGroupCredentialMessage(groupCredentialMessage);
+        });
+    }
+
+    @Test
+    public void addPeersToGroup_newKeyWithLogarithmicMessages() throws Exception {
+        List<CharSequence> peers = createMembers(16);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+        Key oldKey = assertSameKey(groupId, peers);
+
+        createMember("newPeer");
+        deliveredMessages = 0;
+        members.get("peer3").security.addPeersToGroup(groupId, List.of("newPeer"));
+        deliverAll();
+
+        List<CharSequence> newPeers = new ArrayList<>(peers);
+        newPeers.add("newPeer");
+        Key newKey = assertSameKey(groupId, newPeers);
+
+        Assertions.assertNotEquals(oldKey, newKey);
+        // the change, the refreshed key of the sponsor, the key of the new member and the new path
+        Assertions.assertTrue(deliveredMessages <= 4, "sent " + deliveredMessages + " messages");
+    }
+
+    @Test
+    public void removePeersFromGroup_removedPeerLosesKey() throws Exception {
+        List<CharSequence> peers = createMembers(8);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+        Key oldKey = assertSameKey(groupId, peers);
+
+        deliveredMessages = 0;
+        members.get("peer0").security.removePeersFromGroup(groupId, List.of("peer5"));
+        deliverAll();
+
+        List<CharSequence> remainingPeers = new ArrayList<>(peers);
+        remainingPeers.remove("peer5");
+        Key newKey = assertSameKey(groupId, remainingPeers);
+
+        Assertions.assertNotEquals(oldKey, newKey);
+        Assertions.assertNull(members.get("peer5").keyStore.getKeyForGroup(groupId));
+        // the removed member still knows the old key, nobody accepts it anymore
+        for (CharSequence peer : remainingPeers) {
+            Assertions.assertNull(members.get(peer.toString()).keyStore.getPreviousKeyForGroup(groupId));
+        }
+        // the change and the refreshed path of the sponsor
+        Assertions.assertTrue(deliveredMessages <= 2, "sent " + deliveredMessages + " messages");
+    }
+
+    @Test
+    public void removePeersFromGroup_throwsShiverGroupSizeException() throws Exception {
+        List<CharSequence> peers = createMembers(2);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        Assertions.assertThrows(ShiverGroupSizeException.class, () -> {
+            members.get("peer0").security.removePeersFromGroup(groupId, List.of("peer1"));
+        });
+    }
+
+    @Test
+    public void refreshGroupKey_singleMessage() throws Exception {
+        List<CharSequence> peers = createMembers(8);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+        Key oldKey = assertSameKey(groupId, peers);
+
+        deliveredMessages = 0;
+        members.get("peer2").security.refreshGroupKey(groupId);
+        deliverAll();
+
+        Assertions.assertNotEquals(oldKey, assertSameKey(groupId, peers));
+        Assertions.assertEquals(1, deliveredMessages);
+    }
+
+    @Test
+    public void refreshGroupKey_throwsForUnknownGroup() {
+        createMembers(2);
+
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            members.get("peer0").security.refreshGroupKey("unknownGroup");
+        });
+    }
+
+    @Test
+    public void asapMessagesReceived_dropsUnverifiedMessages() throws Exception {
+        List<CharSequence> peers = createMembers(2);
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.verify(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(false);
+
+        members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+
+        Assertions.assertTrue(members.get("peer1").invitations.isEmpty());
+        Assertions.assertEquals(1, members.get("peer1").errors.size());
+    }
+
+    @Test
+    public void asapMessagesReceived_rejectsNewEpochOfOutsider() throws Exception {
+        List<CharSequence> peers = createMembers(3);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+        Key groupKey = assertSameKey(groupId, peers);
+
+        createMember("outsider");
+        sendTreeMessage("outsider", new GroupTreeCredentialMessage(groupId, "outsider", ShiverKeyTree.balanced(peers).withPeer("outsider"), 5, new HashMap<>(), ShiverKeyAgreements.DH_NAME));
+        deliverAll();
+
+        Assertions.assertEquals(groupKey, assertSameKey(groupId, peers));
+        Assertions.assertInstanceOf(ShiverPeerNotVerifiedException.class, members.get("peer1").errors.get(0));
+
+        // the group still works in the epoch it had
+        members.get("peer1").security.refreshGroupKey(groupId);
+        deliverAll();
+        Assertions.assertNotEquals(groupKey, assertSameKey(groupId, peers));
+    }
+
+    @Test
+    public void asapMessagesReceived_rejectsUnverifiedNewMember() throws Exception {
+        List<CharSequence> peers = createMembers(3);
+        CharSequence groupId = members.get("peer0").security.startKeyExchangeWithPeers(peers);
+        deliverAll();
+        Key groupKey = assertSameKey(groupId, peers);
+
+        ShiverPeerVerifier mockShiverPeerVerifier = Mockito.mock(ShiverPeerVerifier.class);
+        Mockito.when(mockShiverPeerVerifier.verifyPeer(Mockito.any())).thenReturn(true);
+        Mockito.when(mockShiverPeerVerifier.verifyPeer("unverified")).thenReturn(false);
+        members.get("peer1").security.setPeerVerifier(mockShiverPeerVerifier);
+
+        sendTreeMessage("peer0", new GroupTreeCredentialMessage(groupId, "peer0", ShiverKeyTree.balanced(peers).withPeer("unverified"), 5, new HashMap<>(), ShiverKeyAgreements.DH_NAME));
+        deliverAll();
+
+        Assertions.assertEquals(groupKey, members.get("peer1").keyStore.getKeyForGroup(groupId));
+        Assertions.assertInstanceOf(ShiverPeerNotVerifiedException.class, members.get("peer1").errors.get(0));
+        // the other members verify with a PKI that knows every peer, the keys they send for the new epoch get rejected as well
+        Mockito.verify(mockShiverPeerVerifier, Mockito.atLeastOnce()).verifyPeer("unverified");
+    }
+
+    /**
+     * Sends a message like a member would, with the signature every peer accepts in these tests
+     */
+    private void sendTreeMessage(String sender, GroupTreeCredentialMessage message) throws Exception {
+        byte[] signedMessage = ShiverSignedMessages.sign(sender, message.serialize(), Mockito.mock(SharkPKIComponent.class));
+        network.add(new SentMessage(sender, ShiverPaths.SHIVER_GROUP_TREE_MESSAGE.toString(), signedMessage));
+    }
+
+    private List<CharSequence> createMembers(int count) {
+        List<CharSequence> peers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            peers.add(createMember("peer" + i).peerId);
+        }
+        return peers;
+    }
+
+    private Member createMember(String peerId) {
+        Member member = new Member(peerId);
+        members.put(peerId, member);
+        return member;
+    }
+
+    private void deliverAll() throws Exception {
+        while (!network.isEmpty()) {
+            SentMessage sentMessage = network.poll();
+            deliveredMessages++;
+            for (Member member : members.values()) {
+                if (member.peerId.equals(sentMessage.sender)) {
+                    continue;
+                }
+                ASAPMessages asapMessages = Mockito.mock(ASAPMessages.class);
+                Mockito.when(asapMessages.getURI()).thenReturn(sentMessage.uri);
+                Mockito.when(asapMessages.getMessages()).thenReturn(List.of(sentMessage.message).iterator());
+                member.security.asapMessagesReceived(asapMessages, sentMessage.sender, null);
+            }
+        }
+    }
+
+    private Key assertSameKey(CharSequence groupId, List<CharSequence> peers) {
+        Key groupKey = members.get(peers.get(0).toString()).keyStore.getKeyForGroup(groupId);
+        Assertions.assertNotNull(groupKey);
+        for (CharSequence peer : peers) {
+            Assertions.assertEquals(groupKey, members.get(peer.toString()).keyStore.getKeyForGroup(groupId), peer + " has another key");
+        }
+        return groupKey;
+    }
+
+    private static class SentMessage {
+        private final String sender;
+        private final CharSequence uri;
+        private final byte[] message;
+
+        private SentMessage(String sender, CharSequence uri, byte[] message) {
+            this.sender = sender;
+            this.uri = uri;
+            this.message = message;
+        }
+    }
+
+    private class Member implements ShiverEventListener {
+        private final String peerId;
+        private final ShiverTreePkiSecurity security;
+        private final ShiverKeyStoreInMemo keyStore = new ShiverKeyStoreInMemo();
+        private final List<GroupCredentialMessage> invitations = new ArrayList<>();
+        private final List<CharSequence> receivedGroupKeys = new ArrayList<>();
+        private final List<Exception> errors = new ArrayList<>();
+        private boolean autoAccept = true;
+
+        private Member(String peerId) {
+            this.peerId = peerId;
+
+            SharkPKIComponent mockSharkPKIComponent = Mockito.mock(SharkPKIComponent.class);
+            try {
+                Mockito.when(mockSharkPKIComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+                ASAPPeer mockASAPPeer = Mockito.mock(ASAPPeer.class);
+                Mockito.when(mockASAPPeer.getPeerID()).thenReturn(peerId);
+                Mockito.doAnswer(invocation -> {
+                    network.add(new SentMessage(peerId, invocation.getArgument(1), invocation.getArgument(2)));
+                    return null;
+                }).when(mockASAPPeer).sendASAPMessage(Mockito.any(), Mockito.eq(ShiverPaths.SHIVER_GROUP_TREE_MESSAGE.toString()), Mockito.any());
+
+                security = new ShiverTreePkiSecurity(mockSharkPKIComponent, new ShiverDHKeyPairStorageInMemo(), keyStore);
+                security.onStart(mockASAPPeer);
+                security.addShiverEventListener(this);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onReceiveGroupCredentials(GroupCredentialMessage groupCredentialMessage) {
+            invitations.add(groupCredentialMessage);
+            if (autoAccept) {
+                try {
+                    security.acceptGroupCredentialMessage(groupCredentialMessage);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        public void onErrorReceivingGroupCredentialMessage(String path, Exception exception) {
+            errors.add(exception);
+        }
+
+        @Override
+        public void onReceivedGroupKey(CharSequence groupId) {
+            receivedGroupKeys.add(groupId);
+        }
+    }
+}
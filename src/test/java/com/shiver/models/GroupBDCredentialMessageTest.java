@@ -0,0 +1,106 @@
+package com.shiver.models;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GroupBDCredentialMessageTest {
+
+    @Test
+    public void serializeTest() throws IOException, ClassNotFoundException {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add("testPeer1");
+        testPeers.add("testPeer2");
+        testPeers.add("testPeer3");
+
+        GroupBDCredentialMessage groupBDCredentialMessage = new GroupBDCredentialMessage(
+                "groupId",
+                "testPeer2",
+                testPeers,
+                4,
+                GroupBDCredentialMessage.ROUND_TWO,
+                "testValue".getBytes()
+        );
+
+        GroupBDCredentialMessage deserializedMessage = GroupBDCredentialMessage.deserialize(groupBDCredentialMessage.serialize());
+
+        Assertions.assertEquals("groupId", deserializedMessage.getGroupId());
+        Assertions.assertEquals("testPeer2", deserializedMessage.getSenderPeerId());
+        Assertions.assertEquals(testPeers, deserializedMessage.getPeerIds());
+        Assertions.assertEquals(4, deserializedMessage.getEpoch());
+        Assertions.assertEquals(GroupBDCredentialMessage.ROUND_TWO, deserializedMessage.getRound());
+        Assertions.assertEquals("DH", deserializedMessage.getKeyAgreementAlgorithm());
+        Assertions.assertArrayEquals("testValue".getBytes(), deserializedMessage.getValue());
+        Assertions.assertArrayEquals("testValue".getBytes(), deserializedMessage.getKeys().get("testPeer2"));
+    }
+
+    @Test
+    public void getPeerIdsAndKeys_returnCopies() {
+        List<CharSequence> testPeers = new ArrayList<>(List.of("testPeer1", "testPeer2"));
+        GroupBDCredentialMessage groupBDCredentialMessage = new GroupBDCredentialMessage(
+                "groupId",
+                "testPeer1",
+                testPeers,
+                0,
+                GroupBDCredentialMessage.ROUND_ONE,
+                new byte[1]
+        );
+
+        testPeers.add("testPeer3");
+        groupBDCredentialMessage.getPeerIds().add("testPeer4");
+        groupBDCredentialMessage.getKeys().put("testPeer2", new byte[1]);
+
+        Assertions.assertEquals(List.of("testPeer1", "testPeer2"), groupBDCredentialMessage.getPeerIds());
+        Assertions.assertEquals(1, groupBDCredentialMessage.getKeys().size());
+    }
+
+    @Test
+    public void deserializeTest_rejectsOtherClasses() throws IOException {
+        GroupBDCredentialMessage groupBDCredentialMessage = new GroupBDCredentialMessage(
+                new TestGroupId("groupId"),
+                "testPeer1",
+                List.of("testPeer1", "testPeer2"),
+                0,
+                GroupBDCredentialMessage.ROUND_ONE,
+                "testValue".getBytes()
+        );
+        byte[] serializedMessage = groupBDCredentialMessage.serialize();
+
+        Assertions.assertThrows(InvalidClassException.class, () -> {
+            GroupBDCredentialMessage.deserialize(serializedMessage);
+        });
+    }
+
+    private static class TestGroupId implements CharSequence, Serializable {
+        private final String groupId;
+
+        private TestGroupId(String groupId) {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public int length() {
+            return groupId.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return groupId.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return groupId.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return groupId;
+        }
+    }
+}
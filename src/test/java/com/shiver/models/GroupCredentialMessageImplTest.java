@@ -3,10 +3,17 @@ package com.shiver.models;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class GroupCredentialMessageImplTest {
 
@@ -41,4 +48,411 @@ public class GroupCredentialMessageImplTest {
         Assertions.assertArrayEquals(groupCredentialMessage.getKeys().get("testPeer3"), deserializedMessage.getKeys().get("testPeer3"));
         Assertions.assertArrayEquals(groupCredentialMessage.getKeys().get("testPeer4"), deserializedMessage.getKeys().get("testPeer4"));
     }
+
+    @Test
+    public void serializeTest_keyAgreementAlgorithm() throws IOException, ClassNotFoundException {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add("testPeer1");
+        testPeers.add("testPeer2");
+
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl(
+                "groupId",
+                testPeers,
+                new HashMap<>(),
+                "X25519"
+        );
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(groupCredentialMessage.serialize());
+
+        Assertions.assertEquals("X25519", deserializedMessage.getKeyAgreementAlgorithm());
+    }
+
+    @Test
+    public void serializeTest_epoch() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl(
+                "groupId",
+                new ArrayList<>(),
+                new HashMap<>(),
+                "DH",
+                7
+        );
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(groupCredentialMessage.serialize());
+
+        Assertions.assertEquals(7, deserializedMessage.getEpoch());
+        Assertions.assertEquals(0, new GroupCredentialMessageImpl("groupId", new ArrayList<>(), new HashMap<>()).getEpoch());
+    }
+
+    @Test
+    public void getKeyAgreementAlgorithm_nullWithoutAlgorithm() {
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl(
+                "groupId",
+                new ArrayList<>(),
+                new HashMap<>()
+        );
+
+        Assertions.assertNull(groupCredentialMessage.getKeyAgreementAlgorithm());
+    }
+
+    @Test
+    public void serializeTest_binaryFormat() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2")));
+
+        byte[] serializedMessage = groupCredentialMessage.serialize();
+
+        Assertions.assertEquals(GroupCredentialMessageImpl.FORMAT_VERSION, serializedMessage[0]);
+        Assertions.assertTrue(serializedMessage.length < serializeWithObjectOutputStream(groupCredentialMessage).length);
+        assertSameMessage(groupCredentialMessage, GroupCredentialMessageImpl.deserialize(serializedMessage));
+    }
+
+    @Test
+    public void serializeTest_keyOfPeerNotInPeerIds() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(new ArrayList<>(List.of("testPeer1")));
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(groupCredentialMessage.serialize());
+
+        Assertions.assertArrayEquals("testPeer2".getBytes(), deserializedMessage.getKeys().get("testPeer2"));
+        assertSameMessage(groupCredentialMessage, deserializedMessage);
+    }
+
+    @Test
+    public void serializeTest_nullGroupIdAndAlgorithm() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl(null, new ArrayList<>(), new HashMap<>());
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(groupCredentialMessage.serialize());
+
+        Assertions.assertNull(deserializedMessage.getGroupId());
+        Assertions.assertNull(deserializedMessage.getKeyAgreementAlgorithm());
+    }
+
+    @Test
+    public void deserializeTest_javaSerialization() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2")));
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(serializeWithObjectOutputStream(groupCredentialMessage));
+
+        assertSameMessage(groupCredentialMessage, deserializedMessage);
+    }
+
+    @Test
+    public void serializeJavaSerialization() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl.Builder(createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2"))))
+                .putKey(new TestPeerId("testPeer3"), "testPeer3".getBytes())
+                .putSupportedKeyAgreements(new TestPeerId("testPeer1"), List.of("DH", "X25519"))
+                .build();
+
+        byte[] serializedMessage = groupCredentialMessage.serializeJavaSerialization();
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(serializedMessage);
+
+        Assertions.assertEquals((byte) 0xAC, serializedMessage[0]);
+        Assertions.assertEquals((byte) 0xED, serializedMessage[1]);
+        // other ids get written as strings, the receivers would not resolve their classes
+        Assertions.assertArrayEquals("testPeer3".getBytes(), deserializedMessage.getKey("testPeer3"));
+        Assertions.assertEquals(groupCredentialMessage.getPeerIds(), deserializedMessage.getPeerIds());
+        Assertions.assertEquals(List.of("DH", "X25519"), deserializedMessage.getSupportedKeyAgreements().get("testPeer1"));
+    }
+
+    @Test
+    public void deserializeTest_javaSerializationRejectsOtherClasses() throws IOException {
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2")));
+        groupCredentialMessage.putKeyForPeerId(new TestPeerId("testPeer3"), "testPeer3".getBytes());
+        byte[] serializedMessage = serializeWithObjectOutputStream(groupCredentialMessage);
+
+        Assertions.assertThrows(InvalidClassException.class, () -> {
+            GroupCredentialMessageImpl.deserialize(serializedMessage);
+        });
+    }
+
+    @Test
+    public void deserializeTest_unknownVersion() throws IOException {
+        byte[] serializedMessage = createTestMessage(new ArrayList<>(List.of("testPeer1"))).serialize();
+        serializedMessage[0] = GroupCredentialMessageImpl.FORMAT_VERSION + 1;
+
+        Assertions.assertThrows(IOException.class, () -> {
+            GroupCredentialMessageImpl.deserialize(serializedMessage);
+        });
+    }
+
+    @Test
+    public void deserializeTest_truncatedMessage() throws IOException {
+        byte[] serializedMessage = createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2"))).serialize();
+        byte[] truncatedMessage = Arrays.copyOf(serializedMessage, serializedMessage.length - 4);
+
+        Assertions.assertThrows(IOException.class, () -> {
+            GroupCredentialMessageImpl.deserialize(truncatedMessage);
+        });
+    }
+
+    @Test
+    public void serializeTest_equalKeysWrittenOnce() throws IOException, ClassNotFoundException {
+        byte[] publicKey = encodePublicKey("X.509", "DH", new byte[300]);
+        List<CharSequence> testPeers = new ArrayList<>();
+        HashMap<CharSequence, byte[]> testKeys = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            testPeers.add("testPeer" + i);
+            testKeys.put("testPeer" + i, publicKey.clone());
+        }
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl("groupId", testPeers, testKeys, "DH");
+
+        byte[] serializedMessage = groupCredentialMessage.serialize();
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(serializedMessage);
+
+        Assertions.assertTrue(serializedMessage.length < 2 * publicKey.length + 50 * 20);
+        assertSameMessage(groupCredentialMessage, deserializedMessage);
+        Assertions.assertSame(deserializedMessage.getKeys().get("testPeer0"), deserializedMessage.getKeys().get("testPeer49"));
+    }
+
+    @Test
+    public void serializeTest_publicKeysAndRawValues() throws IOException, ClassNotFoundException {
+        HashMap<CharSequence, byte[]> testKeys = new HashMap<>();
+        testKeys.put("testPeer1", encodePublicKey("X.509", "DH", new byte[]{1, 2, 3}));
+        testKeys.put("testPeer2", encodePublicKey("X.509", "DH", new byte[]{4, 5}));
+        testKeys.put("testPeer3", encodePublicKey("X.509", "X25519", new byte[]{6}));
+        testKeys.put("testPeer4", "testPeer4".getBytes());
+        testKeys.put("testPeer5", new byte[0]);
+        byte[] wrongLength = encodePublicKey("X.509", "DH", new byte[]{7, 8});
+        testKeys.put("testPeer6", Arrays.copyOf(wrongLength, wrongLength.length - 1));
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl(
+                "groupId",
+                new ArrayList<>(List.of("testPeer1", "testPeer2", "testPeer3", "testPeer4", "testPeer5", "testPeer6")),
+                testKeys
+        );
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(groupCredentialMessage.serialize());
+
+        assertSameMessage(groupCredentialMessage, deserializedMessage);
+    }
+
+    @Test
+    public void deserializeTest_formatWithoutKeyTable() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeByte(1);
+        dos.writeBoolean(true);
+        dos.writeUTF("groupId");
+        dos.writeBoolean(true);
+        dos.writeUTF("X25519");
+        dos.writeLong(3);
+        dos.writeInt(2);
+        dos.writeUTF("testPeer1");
+        dos.writeUTF("testPeer2");
+        dos.writeInt(2);
+        dos.writeInt(1);
+        dos.writeInt("testPeer2".length());
+        dos.write("testPeer2".getBytes());
+        dos.writeInt(-1);
+        dos.writeUTF("testPeer3");
+        dos.writeInt("testPeer3".length());
+        dos.write("testPeer3".getBytes());
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(baos.toByteArray());
+
+        Assertions.assertEquals("groupId", deserializedMessage.getGroupId());
+        Assertions.assertEquals("X25519", deserializedMessage.getKeyAgreementAlgorithm());
+        Assertions.assertEquals(3, deserializedMessage.getEpoch());
+        Assertions.assertEquals(List.of("testPeer1", "testPeer2"), deserializedMessage.getPeerIds());
+        Assertions.assertArrayEquals("testPeer2".getBytes(), deserializedMessage.getKeys().get("testPeer2"));
+        Assertions.assertArrayEquals("testPeer3".getBytes(), deserializedMessage.getKeys().get("testPeer3"));
+        Assertions.assertEquals(2, deserializedMessage.getKeys().size());
+    }
+
+    @Test
+    public void deserializeTest_formatWithoutKeyAgreements() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeByte(2);
+        dos.writeBoolean(true);
+        dos.writeUTF("groupId");
+        dos.writeBoolean(false);
+        dos.writeLong(0);
+        dos.writeInt(1);
+        dos.writeUTF("testPeer1");
+        dos.writeInt(0);
+        dos.writeInt(1);
+        dos.writeInt(-1);
+        dos.writeInt("testPeer1".length());
+        dos.write("testPeer1".getBytes());
+        dos.writeInt(1);
+        dos.writeInt(0);
+        dos.writeInt(0);
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(baos.toByteArray());
+
+        Assertions.assertEquals("groupId", deserializedMessage.getGroupId());
+        Assertions.assertArrayEquals("testPeer1".getBytes(), deserializedMessage.getKey("testPeer1"));
+        Assertions.assertTrue(deserializedMessage.getSupportedKeyAgreements().isEmpty());
+    }
+
+    @Test
+    public void serializeTest_supportedKeyAgreements() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl.Builder(createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2"))))
+                .putSupportedKeyAgreements("testPeer1", List.of("DH", "X25519"))
+                .putSupportedKeyAgreements("testPeer3", List.of("DH"))
+                .build();
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(groupCredentialMessage.serialize());
+
+        assertSameMessage(groupCredentialMessage, deserializedMessage);
+        Assertions.assertEquals(List.of("DH", "X25519"), deserializedMessage.getSupportedKeyAgreements().get("testPeer1"));
+        Assertions.assertEquals(List.of("DH"), deserializedMessage.getSupportedKeyAgreements().get("testPeer3"));
+        Assertions.assertEquals(2, deserializedMessage.getSupportedKeyAgreements().size());
+    }
+
+    @Test
+    public void deserializeTest_javaSerializationKeepsSupportedKeyAgreements() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = new GroupCredentialMessageImpl.Builder(createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2"))))
+                .putSupportedKeyAgreements("testPeer1", List.of("DH", "X25519"))
+                .build();
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(serializeWithObjectOutputStream(groupCredentialMessage));
+
+        Assertions.assertEquals(List.of("DH", "X25519"), deserializedMessage.getSupportedKeyAgreements().get("testPeer1"));
+    }
+
+    @Test
+    public void indexOfPeer() {
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2", "testPeer3")));
+
+        Assertions.assertEquals(3, groupCredentialMessage.getPeerCount());
+        Assertions.assertEquals(0, groupCredentialMessage.indexOfPeer("testPeer1"));
+        Assertions.assertEquals(2, groupCredentialMessage.indexOfPeer(new StringBuilder("testPeer3")));
+        Assertions.assertEquals(-1, groupCredentialMessage.indexOfPeer("testPeer4"));
+        Assertions.assertEquals("testPeer2", groupCredentialMessage.getPeerId(1));
+    }
+
+    @Test
+    public void getKeyAt() {
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2", "testPeer3")));
+
+        Assertions.assertArrayEquals("testPeer2".getBytes(), groupCredentialMessage.getKeyAt(1));
+        Assertions.assertArrayEquals("testPeer1".getBytes(), groupCredentialMessage.getKey(new StringBuilder("testPeer1")));
+        Assertions.assertNull(groupCredentialMessage.getKeyAt(2));
+    }
+
+    @Test
+    public void getPeerIds_notChangedByConstructorList() {
+        List<CharSequence> testPeers = new ArrayList<>(List.of("testPeer1", "testPeer2"));
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(testPeers);
+
+        testPeers.add(0, "testPeer3");
+
+        Assertions.assertEquals(List.of("testPeer1", "testPeer2"), groupCredentialMessage.getPeerIds());
+        Assertions.assertEquals(0, groupCredentialMessage.indexOfPeer("testPeer1"));
+    }
+
+    @Test
+    public void builder_nextHop() {
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2", "testPeer3")));
+
+        GroupCredentialMessageImpl nextMessage = new GroupCredentialMessageImpl.Builder(groupCredentialMessage)
+                .putKey("testPeer3", "testPeer3".getBytes())
+                .putKeys(Map.of("testPeer1", "newKey".getBytes()))
+                .build();
+
+        Assertions.assertEquals("groupId", nextMessage.getGroupId());
+        Assertions.assertEquals("X25519", nextMessage.getKeyAgreementAlgorithm());
+        Assertions.assertEquals(3, nextMessage.getEpoch());
+        Assertions.assertEquals(groupCredentialMessage.getPeerIds(), nextMessage.getPeerIds());
+        Assertions.assertArrayEquals("newKey".getBytes(), nextMessage.getKey("testPeer1"));
+        Assertions.assertArrayEquals("testPeer2".getBytes(), nextMessage.getKey("testPeer2"));
+        Assertions.assertArrayEquals("testPeer3".getBytes(), nextMessage.getKeyAt(2));
+
+        Assertions.assertArrayEquals("testPeer1".getBytes(), groupCredentialMessage.getKey("testPeer1"));
+        Assertions.assertNull(groupCredentialMessage.getKey("testPeer3"));
+    }
+
+    @Test
+    public void builder_builtMessageAndBuilderDoNotShareChanges() {
+        GroupCredentialMessageImpl.Builder builder = new GroupCredentialMessageImpl.Builder()
+                .setGroupId("groupId")
+                .setPeerIds(List.of("testPeer1", "testPeer2"))
+                .setKeyAgreementAlgorithm("DH")
+                .setEpoch(1)
+                .putKey("testPeer1", "testPeer1".getBytes());
+        GroupCredentialMessageImpl groupCredentialMessage = builder.build();
+
+        builder.putKey("testPeer2", "testPeer2".getBytes());
+        groupCredentialMessage.putKeyForPeerId("testPeer1", "newKey".getBytes());
+        GroupCredentialMessageImpl nextMessage = builder.build();
+
+        Assertions.assertNull(groupCredentialMessage.getKey("testPeer2"));
+        Assertions.assertArrayEquals("newKey".getBytes(), groupCredentialMessage.getKey("testPeer1"));
+        Assertions.assertArrayEquals("testPeer1".getBytes(), nextMessage.getKey("testPeer1"));
+        Assertions.assertArrayEquals("testPeer2".getBytes(), nextMessage.getKey("testPeer2"));
+    }
+
+    @Test
+    public void deserializeTest_javaSerializationHasPeerPositions() throws IOException, ClassNotFoundException {
+        GroupCredentialMessageImpl groupCredentialMessage = createTestMessage(new ArrayList<>(List.of("testPeer1", "testPeer2")));
+
+        GroupCredentialMessage deserializedMessage = GroupCredentialMessageImpl.deserialize(serializeWithObjectOutputStream(groupCredentialMessage));
+
+        Assertions.assertEquals(1, deserializedMessage.indexOfPeer("testPeer2"));
+        Assertions.assertArrayEquals("testPeer2".getBytes(), deserializedMessage.getKeyAt(1));
+    }
+
+    private GroupCredentialMessageImpl createTestMessage(List<CharSequence> testPeers) {
+        HashMap<CharSequence, byte[]> testKeys = new HashMap<>();
+        testKeys.put("testPeer1", "testPeer1".getBytes());
+        testKeys.put("testPeer2", "testPeer2".getBytes());
+
+        return new GroupCredentialMessageImpl("groupId", testPeers, testKeys, "X25519", 3);
+    }
+
+    private void assertSameMessage(GroupCredentialMessage expected, GroupCredentialMessage actual) {
+        Assertions.assertEquals(expected.getGroupId(), actual.getGroupId());
+        Assertions.assertEquals(expected.getKeyAgreementAlgorithm(), actual.getKeyAgreementAlgorithm());
+        Assertions.assertEquals(expected.getEpoch(), actual.getEpoch());
+        Assertions.assertArrayEquals(expected.getPeerIds().toArray(), actual.getPeerIds().toArray());
+        Assertions.assertEquals(expected.getKeys().keySet(), actual.getKeys().keySet());
+        for (CharSequence peerId : expected.getKeys().keySet()) {
+            Assertions.assertArrayEquals(expected.getKeys().get(peerId), actual.getKeys().get(peerId));
+        }
+    }
+
+    private byte[] encodePublicKey(String format, String algorithm, byte[] encodedKey) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeUTF(format);
+        dos.writeUTF(algorithm);
+        dos.writeInt(encodedKey.length);
+        dos.write(encodedKey);
+        return baos.toByteArray();
+    }
+
+    private byte[] serializeWithObjectOutputStream(GroupCredentialMessage groupCredentialMessage) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(groupCredentialMessage);
+        oos.flush();
+        return baos.toByteArray();
+    }
+
+    private static class TestPeerId implements CharSequence, Serializable {
+        private final String peerId;
+
+        private TestPeerId(String peerId) {
+            this.peerId = peerId;
+        }
+
+        @Override
+        public int length() {
+            return peerId.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return peerId.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return peerId.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return peerId;
+        }
+    }
 }
@@ -0,0 +1,91 @@
+package com.shiver.models;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Times writing and reading a group credential message in the binary format and with java serialization,
+ * the format older peers still get. Every peer has its own key, like after the first hop of an upflow.
+ * Only runs with SHIVER_BENCHMARK=true, for example
+ * {@code SHIVER_BENCHMARK=true gradle test --tests com.shiver.models.GroupCredentialMessageSerializationBenchmark}
+ */
+@EnabledIfEnvironmentVariable(named = "SHIVER_BENCHMARK", matches = "true")
+public class GroupCredentialMessageSerializationBenchmark {
+    private static final int[] GROUP_SIZES = {8, 64, 256};
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int ROUNDS = 5_000;
+
+    @Test
+    public void serialize() throws Exception {
+        System.out.printf("%-6s %6s %10s %10s %10s%n", "format", "peers", "write us", "read us", "bytes");
+        for (int groupSize : GROUP_SIZES) {
+            GroupCredentialMessage groupCredentialMessage = createMessage(groupSize);
+
+            measure("binary", groupSize, groupCredentialMessage::serialize);
+            measure("java", groupSize, groupCredentialMessage::serializeJavaSerialization);
+        }
+    }
+
+    private void measure(String format, int groupSize, Serialization serialization) throws Exception {
+        byte[] serializedMessage = serialization.serialize();
+        Assertions.assertEquals(groupSize, GroupCredentialMessageImpl.deserialize(serializedMessage).getPeerCount());
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            serialization.serialize();
+            GroupCredentialMessageImpl.deserialize(serializedMessage);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            serialization.serialize();
+        }
+        double writeMicros = (System.nanoTime() - start) / 1_000.0 / ROUNDS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            GroupCredentialMessageImpl.deserialize(serializedMessage);
+        }
+        double readMicros = (System.nanoTime() - start) / 1_000.0 / ROUNDS;
+
+        System.out.printf("%-6s %6d %10.1f %10.1f %10d%n", format, groupSize, writeMicros, readMicros, serializedMessage.length);
+    }
+
+    private GroupCredentialMessage createMessage(int groupSize) throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("X25519");
+        List<CharSequence> peerIds = new ArrayList<>(groupSize);
+        HashMap<CharSequence, byte[]> keys = new HashMap<>();
+        for (int i = 0; i < groupSize; i++) {
+            String peerId = "peer" + i;
+            peerIds.add(peerId);
+            keys.put(peerId, encodePublicKey(keyPairGenerator.generateKeyPair().getPublic()));
+        }
+        return new GroupCredentialMessageImpl("groupId", peerIds, keys, "X25519", 1);
+    }
+
+    /**
+     * Writes the key the way the securities encode public keys into the messages
+     */
+    private byte[] encodePublicKey(PublicKey publicKey) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeUTF(publicKey.getFormat());
+        dos.writeUTF(publicKey.getAlgorithm());
+        dos.writeInt(publicKey.getEncoded().length);
+        dos.write(publicKey.getEncoded());
+        return baos.toByteArray();
+    }
+
+    private interface Serialization {
+        byte[] serialize() throws IOException;
+    }
+}
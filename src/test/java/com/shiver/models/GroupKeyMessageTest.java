@@ -0,0 +1,82 @@
+package com.shiver.models;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+public class GroupKeyMessageTest {
+
+    @Test
+    public void serializeTest() throws IOException, ClassNotFoundException {
+        GroupKeyMessage groupKeyMessage = new GroupKeyMessage("groupId", 3, "X25519", "testKey".getBytes());
+
+        GroupKeyMessage deserializedMessage = GroupKeyMessage.deserialize(groupKeyMessage.serialize());
+
+        Assertions.assertEquals("groupId", deserializedMessage.getGroupId());
+        Assertions.assertEquals(3, deserializedMessage.getEpoch());
+        Assertions.assertEquals("X25519", deserializedMessage.getKeyAgreementAlgorithm());
+        Assertions.assertArrayEquals("testKey".getBytes(), deserializedMessage.getKey());
+    }
+
+    @Test
+    public void serialize_smallerThanFullBroadcast() throws IOException {
+        List<CharSequence> testPeers = new ArrayList<>();
+        HashMap<CharSequence, byte[]> testKeys = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            testPeers.add("testPeer" + i);
+            byte[] testKey = new byte[256];
+            // every member has its own intermediate key in a broadcast
+            Arrays.fill(testKey, (byte) i);
+            testKeys.put("testPeer" + i, testKey);
+        }
+
+        byte[] fullMessage = new GroupCredentialMessageImpl("groupId", testPeers, testKeys, "DH").serialize();
+        byte[] tailoredMessage = new GroupKeyMessage("groupId", 0, "DH", new byte[256]).serialize();
+
+        Assertions.assertTrue(tailoredMessage.length * 10 < fullMessage.length);
+    }
+
+    @Test
+    public void deserializeTest_rejectsOtherClasses() throws IOException {
+        byte[] serializedMessage = new GroupKeyMessage(new TestGroupId("groupId"), 0, "X25519", "testKey".getBytes()).serialize();
+
+        Assertions.assertThrows(InvalidClassException.class, () -> {
+            GroupKeyMessage.deserialize(serializedMessage);
+        });
+    }
+
+    private static class TestGroupId implements CharSequence, Serializable {
+        private final String groupId;
+
+        private TestGroupId(String groupId) {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public int length() {
+            return groupId.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return groupId.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return groupId.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return groupId;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.shiver.models;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class GroupTreeCredentialMessageTest {
+
+    @Test
+    public void serializeTest() throws IOException, ClassNotFoundException {
+        List<CharSequence> testPeers = new ArrayList<>();
+        testPeers.add("testPeer1");
+        testPeers.add("testPeer2");
+        testPeers.add("testPeer3");
+
+        HashMap<CharSequence, byte[]> testKeys = new HashMap<>();
+        testKeys.put("00", "testPeer1".getBytes());
+        testKeys.put("1", "testPeer3".getBytes());
+
+        GroupTreeCredentialMessage groupTreeCredentialMessage = new GroupTreeCredentialMessage(
+                "groupId",
+                "testPeer1",
+                ShiverKeyTree.balanced(testPeers),
+                3,
+                testKeys,
+                "X25519"
+        );
+
+        GroupTreeCredentialMessage deserializedMessage = GroupTreeCredentialMessage.deserialize(groupTreeCredentialMessage.serialize());
+
+        Assertions.assertEquals("groupId", deserializedMessage.getGroupId());
+        Assertions.assertEquals("testPeer1", deserializedMessage.getSenderPeerId());
+        Assertions.assertEquals(groupTreeCredentialMessage.getKeyTree(), deserializedMessage.getKeyTree());
+        Assertions.assertEquals(testPeers, deserializedMessage.getPeerIds());
+        Assertions.assertEquals(3, deserializedMessage.getEpoch());
+        Assertions.assertEquals("X25519", deserializedMessage.getKeyAgreementAlgorithm());
+        Assertions.assertArrayEquals(testKeys.get("00"), deserializedMessage.getKeys().get("00"));
+        Assertions.assertArrayEquals(testKeys.get("1"), deserializedMessage.getKeys().get("1"));
+    }
+
+    @Test
+    public void getKeys_returnsCopy() {
+        GroupTreeCredentialMessage groupTreeCredentialMessage = new GroupTreeCredentialMessage(
+                "groupId",
+                "testPeer1",
+                ShiverKeyTree.balanced(List.of("testPeer1", "testPeer2")),
+                0,
+                new HashMap<>(),
+                "X25519"
+        );
+
+        groupTreeCredentialMessage.getKeys().put("0", new byte[1]);
+        Assertions.assertTrue(groupTreeCredentialMessage.getKeys().isEmpty());
+
+        groupTreeCredentialMessage.putKeyForPeerId("0", new byte[1]);
+        Assertions.assertEquals(1, groupTreeCredentialMessage.getKeys().size());
+    }
+
+    @Test
+    public void deserializeTest_rejectsOtherClasses() throws IOException {
+        GroupTreeCredentialMessage groupTreeCredentialMessage = new GroupTreeCredentialMessage(
+                new TestGroupId("groupId"),
+                "testPeer1",
+                ShiverKeyTree.balanced(List.of("testPeer1", "testPeer2")),
+                0,
+                new HashMap<>(),
+                "X25519"
+        );
+        byte[] serializedMessage = groupTreeCredentialMessage.serialize();
+
+        Assertions.assertThrows(InvalidClassException.class, () -> {
+            GroupTreeCredentialMessage.deserialize(serializedMessage);
+        });
+    }
+
+    private static class TestGroupId implements CharSequence, Serializable {
+        private final String groupId;
+
+        private TestGroupId(String groupId) {
+            this.groupId = groupId;
+        }
+
+        @Override
+        public int length() {
+            return groupId.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return groupId.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return groupId.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return groupId;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.shiver.models;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ShiverBatchResultTest {
+
+    @Test
+    public void results() {
+        Exception testException = new Exception();
+        byte[][] results = new byte[][]{"first".getBytes(), null};
+        Exception[] errors = new Exception[]{null, testException};
+
+        ShiverBatchResult shiverBatchResult = new ShiverBatchResult(results, errors);
+
+        Assertions.assertEquals(2, shiverBatchResult.size());
+        Assertions.assertTrue(shiverBatchResult.hasErrors());
+        Assertions.assertTrue(shiverBatchResult.isSuccess(0));
+        Assertions.assertFalse(shiverBatchResult.isSuccess(1));
+        Assertions.assertArrayEquals("first".getBytes(), shiverBatchResult.getResult(0));
+        Assertions.assertSame(testException, shiverBatchResult.getError(1));
+        Assertions.assertNull(shiverBatchResult.getResults().get(1));
+    }
+
+    @Test
+    public void differentLengths_throws() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ShiverBatchResult(new byte[1][], new Exception[2]));
+    }
+}
@@ -0,0 +1,106 @@
+package com.shiver.models;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ShiverKeyTreeTest {
+
+    private List<CharSequence> peers(int count) {
+        List<CharSequence> peers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            peers.add("peer" + i);
+        }
+        return peers;
+    }
+
+    @Test
+    public void balanced_keepsOrderAndMinimalHeight() {
+        ShiverKeyTree keyTree = ShiverKeyTree.balanced(peers(5));
+
+        Assertions.assertEquals(peers(5), keyTree.getPeerIds());
+        Assertions.assertEquals(3, keyTree.getHeight());
+        Assertions.assertEquals("000", keyTree.getLeaf("peer0"));
+        Assertions.assertEquals("11", keyTree.getLeaf("peer4"));
+    }
+
+    @Test
+    public void balanced_singleMemberIsRoot() {
+        ShiverKeyTree keyTree = ShiverKeyTree.balanced(peers(1));
+
+        Assertions.assertEquals(ShiverKeyTree.ROOT, keyTree.getLeaf("peer0"));
+    }
+
+    @Test
+    public void withPeer_splitsShallowestRightmostLeaf() {
+        ShiverKeyTree keyTree = ShiverKeyTree.balanced(peers(3)).withPeer("newPeer");
+
+        Assertions.assertEquals("10", keyTree.getLeaf("peer2"));
+        Assertions.assertEquals("11", keyTree.getLeaf("newPeer"));
+        Assertions.assertEquals(2, keyTree.getHeight());
+    }
+
+    @Test
+    public void withPeer_heightStaysLogarithmic() {
+        ShiverKeyTree keyTree = ShiverKeyTree.balanced(peers(2));
+        for (int i = 2; i < 64; i++) {
+            keyTree = keyTree.withPeer("peer" + i);
+        }
+
+        Assertions.assertEquals(64, keyTree.size());
+        Assertions.assertEquals(6, keyTree.getHeight());
+    }
+
+    @Test
+    public void withPeer_throwsForMember() {
+        ShiverKeyTree keyTree = ShiverKeyTree.balanced(peers(2));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> keyTree.withPeer("peer1"));
+    }
+
+    @Test
+    public void withoutPeer_movesSiblingUp() {
+        ShiverKeyTree keyTree = ShiverKeyTree.balanced(peers(4)).withoutPeer("peer0");
+
+        Assertions.assertEquals("0", keyTree.getLeaf("peer1"));
+        Assertions.assertEquals("10", keyTree.getLeaf("peer2"));
+        Assertions.assertFalse(keyTree.contains("peer0"));
+    }
+
+    @Test
+    public void afterRemoval() {
+        Assertions.assertNull(ShiverKeyTree.afterRemoval("010", "010"));
+        Assertions.assertNull(ShiverKeyTree.afterRemoval("010", "01"));
+        Assertions.assertEquals("01", ShiverKeyTree.afterRemoval("010", "011"));
+        Assertions.assertEquals("010", ShiverKeyTree.afterRemoval("010", "0110"));
+        Assertions.assertEquals("0", ShiverKeyTree.afterRemoval("010", "0"));
+        Assertions.assertEquals(ShiverKeyTree.ROOT, ShiverKeyTree.afterRemoval("010", ShiverKeyTree.ROOT));
+        Assertions.assertEquals("1", ShiverKeyTree.afterRemoval("010", "1"));
+    }
+
+    @Test
+    public void getSponsor_isRightmostLeaf() {
+        ShiverKeyTree keyTree = ShiverKeyTree.balanced(peers(5));
+
+        Assertions.assertEquals("peer4", keyTree.getSponsor(ShiverKeyTree.ROOT));
+        Assertions.assertEquals("peer2", keyTree.getSponsor("0"));
+        Assertions.assertEquals("peer1", keyTree.getSponsor("00"));
+        Assertions.assertEquals("peer3", keyTree.getSponsor("10"));
+    }
+
+    @Test
+    public void getPathParentAndSibling() {
+        Assertions.assertEquals(List.of("010", "01", "0", ShiverKeyTree.ROOT), ShiverKeyTree.getPath("010"));
+        Assertions.assertEquals("01", ShiverKeyTree.getParent("010"));
+        Assertions.assertEquals("011", ShiverKeyTree.getSibling("010"));
+        Assertions.assertEquals("0", ShiverKeyTree.getSibling("1"));
+    }
+
+    @Test
+    public void equals_comparesMembersAndShape() {
+        Assertions.assertEquals(ShiverKeyTree.balanced(peers(3)), ShiverKeyTree.balanced(peers(3)));
+        Assertions.assertNotEquals(ShiverKeyTree.balanced(peers(3)), ShiverKeyTree.balanced(peers(2)).withPeer("peer2").withoutPeer("peer0").withPeer("peer0"));
+    }
+}
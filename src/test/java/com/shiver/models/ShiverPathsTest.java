@@ -9,14 +9,26 @@ public class ShiverPathsTest {
     public void parse() {
         String correctUpflow = "shark/shiver/group_credential_message/upflow";
         String correctBroadcast = "shark/shiver/group_credential_message/broadcast";
+        String correctTailoredBroadcast = "shark/shiver/group_credential_message/tailored_broadcast";
+        String correctTree = "shark/shiver/group_tree_message";
+        String correctBDRoundOne = "shark/shiver/group_bd_message/round_one";
+        String correctBDRoundTwo = "shark/shiver/group_bd_message/round_two";
         String wrongPath = "SomeWrongPath";
 
         ShiverPaths upflow = ShiverPaths.parsePathByValue(correctUpflow);
         ShiverPaths broadcast = ShiverPaths.parsePathByValue(correctBroadcast);
+        ShiverPaths tailoredBroadcast = ShiverPaths.parsePathByValue(correctTailoredBroadcast);
+        ShiverPaths tree = ShiverPaths.parsePathByValue(correctTree);
+        ShiverPaths bdRoundOne = ShiverPaths.parsePathByValue(correctBDRoundOne);
+        ShiverPaths bdRoundTwo = ShiverPaths.parsePathByValue(correctBDRoundTwo);
         ShiverPaths shouldBeNull = ShiverPaths.parsePathByValue(wrongPath);
 
         Assertions.assertEquals(ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_UPFLOW, upflow);
         Assertions.assertEquals(ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_BROADCAST, broadcast);
+        Assertions.assertEquals(ShiverPaths.SHIVER_GROUP_CREDENTIAL_MESSAGE_TAILORED_BROADCAST, tailoredBroadcast);
+        Assertions.assertEquals(ShiverPaths.SHIVER_GROUP_TREE_MESSAGE, tree);
+        Assertions.assertEquals(ShiverPaths.SHIVER_GROUP_BD_MESSAGE_ROUND_ONE, bdRoundOne);
+        Assertions.assertEquals(ShiverPaths.SHIVER_GROUP_BD_MESSAGE_ROUND_TWO, bdRoundTwo);
         Assertions.assertNull(shouldBeNull);
     }
 }
@@ -0,0 +1,288 @@
+package com.shiver.scenarios;
+
+import com.shiver.components.ShiverComponent;
+import com.shiver.components.ShiverComponentFactory;
+import com.shiver.exceptions.ShiverDecryptionException;
+import com.shiver.exceptions.ShiverNoGroupKeyException;
+import com.shiver.logic.ShiverEventListener;
+import com.shiver.logic.ShiverPkiSecurity;
+import com.shiver.models.GroupCredentialMessage;
+import com.shiver.storage.ShiverDHKeyPairStorageInMemo;
+import com.shiver.storage.ShiverKeyStoreInMemo;
+import net.sharksystem.asap.ASAPMessages;
+import net.sharksystem.asap.ASAPPeer;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.pki.SharkPKIComponent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class GroupMembershipChangeTest {
+    private static final String ALICE = "alicePeerId";
+    private static final String BOB = "bobPeerId";
+    private static final String CAROL = "carolPeerId";
+
+    private final Map<String, TestPeer> testPeers = new LinkedHashMap<>();
+    private final LinkedList<SentMessage> sentMessages = new LinkedList<>();
+    private final Map<ASAPCryptoAlgorithms.EncryptedMessagePackage, byte[]> packagePayloads = new HashMap<>();
+    private MockedStatic<ASAPCryptoAlgorithms> mockASAPCryptoAlgorithms;
+
+    @BeforeEach
+    public void beforeEach() {
+        mockASAPCryptoAlgorithms = mockASAPCryptoAlgorithms();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        mockASAPCryptoAlgorithms.close();
+    }
+
+    @Test
+    public void createGroupOfThree() throws Exception {
+        for (String peerId : List.of(ALICE, BOB, CAROL)) {
+            testPeers.put(peerId, new TestPeer(peerId, false));
+        }
+
+        // THE UPFLOW GOES FROM ALICE OVER BOB TO CAROL, CAROL SENDS THE BROADCAST
+        CharSequence groupId = testPeers.get(ALICE).shiverComponent.startCreatingGroupKeyProcess(List.of(BOB, CAROL));
+        deliverAll();
+
+        byte[] key = testPeers.get(ALICE).getKey(groupId);
+        Assertions.assertArrayEquals(key, testPeers.get(BOB).getKey(groupId));
+        Assertions.assertArrayEquals(key, testPeers.get(CAROL).getKey(groupId));
+    }
+
+    @Test
+    public void addAndRemoveMembers() throws Exception {
+        for (String peerId : List.of(ALICE, BOB, CAROL)) {
+            testPeers.put(peerId, new TestPeer(peerId, false));
+        }
+
+        TestPeer alice = testPeers.get(ALICE);
+        TestPeer bob = testPeers.get(BOB);
+        TestPeer carol = testPeers.get(CAROL);
+
+        // ALICE AND BOB CREATE THE GROUP
+        List<CharSequence> groupPeers = new ArrayList<>();
+        groupPeers.add(BOB);
+        CharSequence groupId = alice.shiverComponent.startCreatingGroupKeyProcess(groupPeers);
+        deliverAll();
+
+        byte[] firstKey = alice.getKey(groupId);
+        Assertions.assertNotNull(firstKey);
+        Assertions.assertArrayEquals(firstKey, bob.getKey(groupId));
+
+        byte[] bobMessageOfFirstKey = bob.shiverComponent.encryptMessageForGroup(groupId, "first".getBytes());
+
+        // ALICE ADDS CAROL
+        alice.shiverComponent.addMembersToGroup(groupId, List.of(CAROL, BOB));
+        deliverAll();
+
+        byte[] secondKey = alice.getKey(groupId);
+        Assertions.assertFalse(Arrays.equals(firstKey, secondKey));
+        Assertions.assertArrayEquals(secondKey, bob.getKey(groupId));
+        Assertions.assertArrayEquals(secondKey, carol.getKey(groupId));
+        Assertions.assertEquals(1, carol.receivedGroupCredentialMessages);
+
+        // MESSAGES ON THEIR WAY DURING THE CHANGE STILL GET DECRYPTED
+        Assertions.assertEquals("first", new String(alice.shiverComponent.decryptMessageForGroup(groupId, bobMessageOfFirstKey)));
+
+        byte[] carolMessage = carol.shiverComponent.encryptMessageForGroup(groupId, "second".getBytes());
+        Assertions.assertEquals("second", new String(bob.shiverComponent.decryptMessageForGroup(groupId, carolMessage)));
+
+        // BOB REMOVES CAROL
+        bob.shiverComponent.removeMembersFromGroup(groupId, List.of(CAROL));
+        deliverAll();
+
+        byte[] thirdKey = bob.getKey(groupId);
+        Assertions.assertFalse(Arrays.equals(secondKey, thirdKey));
+        Assertions.assertArrayEquals(thirdKey, alice.getKey(groupId));
+        Assertions.assertArrayEquals(secondKey, carol.getKey(groupId));
+
+        byte[] aliceMessage = alice.shiverComponent.encryptMessageForGroup(groupId, "third".getBytes());
+        Assertions.assertEquals("third", new String(bob.shiverComponent.decryptMessageForGroup(groupId, aliceMessage)));
+
+        // CAROL STILL HAS THE OLD KEY, THE REMAINING MEMBERS DO NOT ACCEPT IT ANYMORE
+        byte[] removedCarolMessage = carol.shiverComponent.encryptMessageForGroup(groupId, "removed".getBytes());
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            alice.shiverComponent.decryptMessageForGroup(groupId, removedCarolMessage);
+        });
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            bob.shiverComponent.decryptMessageForGroup(groupId, removedCarolMessage);
+        });
+    }
+
+    @Test
+    public void addAndRemoveMembers_tailoredBroadcast() throws Exception {
+        for (String peerId : List.of(ALICE, BOB, CAROL)) {
+            testPeers.put(peerId, new TestPeer(peerId, true));
+        }
+
+        TestPeer alice = testPeers.get(ALICE);
+        TestPeer bob = testPeers.get(BOB);
+        TestPeer carol = testPeers.get(CAROL);
+
+        // ALICE AND BOB CREATE THE GROUP, BOB SENDS THE BROADCAST
+        List<CharSequence> groupPeers = new ArrayList<>();
+        groupPeers.add(BOB);
+        CharSequence groupId = alice.shiverComponent.startCreatingGroupKeyProcess(groupPeers);
+        deliverAll();
+
+        byte[] firstKey = alice.getKey(groupId);
+        Assertions.assertArrayEquals(firstKey, bob.getKey(groupId));
+
+        // ONLY BOB KNOWS THE KEYS OF ALL MEMBERS
+        Assertions.assertThrows(ShiverNoGroupKeyException.class, () -> {
+            alice.shiverComponent.addMembersToGroup(groupId, List.of(CAROL));
+        });
+
+        // BOB ADDS CAROL, CAROL SENDS THE BROADCAST
+        bob.shiverComponent.addMembersToGroup(groupId, List.of(CAROL));
+        deliverAll();
+
+        byte[] secondKey = carol.getKey(groupId);
+        Assertions.assertFalse(Arrays.equals(firstKey, secondKey));
+        Assertions.assertArrayEquals(secondKey, alice.getKey(groupId));
+        Assertions.assertArrayEquals(secondKey, bob.getKey(groupId));
+
+        // CAROL REMOVES BOB
+        carol.shiverComponent.removeMembersFromGroup(groupId, List.of(BOB));
+        deliverAll();
+
+        byte[] thirdKey = carol.getKey(groupId);
+        Assertions.assertFalse(Arrays.equals(secondKey, thirdKey));
+        Assertions.assertArrayEquals(thirdKey, alice.getKey(groupId));
+        Assertions.assertArrayEquals(secondKey, bob.getKey(groupId));
+
+        // BOB STILL HAS THE OLD KEY, THE REMAINING MEMBERS DO NOT ACCEPT IT ANYMORE
+        byte[] removedBobMessage = bob.shiverComponent.encryptMessageForGroup(groupId, "removed".getBytes());
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            alice.shiverComponent.decryptMessageForGroup(groupId, removedBobMessage);
+        });
+        Assertions.assertThrows(ShiverDecryptionException.class, () -> {
+            carol.shiverComponent.decryptMessageForGroup(groupId, removedBobMessage);
+        });
+    }
+
+    /**
+     * Mocks the ASAP crypto, a package is the receiver followed by the plain message
+     */
+    private MockedStatic<ASAPCryptoAlgorithms> mockASAPCryptoAlgorithms() {
+        MockedStatic<ASAPCryptoAlgorithms> mockASAPCryptoAlgorithms = Mockito.mockStatic(ASAPCryptoAlgorithms.class);
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.produceEncryptedMessagePackage(Mockito.any(), Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            dos.writeUTF(invocation.getArgument(1).toString());
+            dos.write((byte[]) invocation.getArgument(0));
+            return baos.toByteArray();
+        });
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.parseEncryptedMessagePackage(Mockito.any(byte[].class))).thenAnswer(invocation -> {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(invocation.getArgument(0)));
+            dis.readUTF();
+            ASAPCryptoAlgorithms.EncryptedMessagePackage encryptedMessagePackage = Mockito.mock(ASAPCryptoAlgorithms.EncryptedMessagePackage.class);
+            packagePayloads.put(encryptedMessagePackage, dis.readAllBytes());
+            return encryptedMessagePackage;
+        });
+        mockASAPCryptoAlgorithms.when(() -> ASAPCryptoAlgorithms.decryptPackage(Mockito.any(ASAPCryptoAlgorithms.EncryptedMessagePackage.class), Mockito.any())).thenAnswer(invocation -> packagePayloads.get(invocation.getArgument(0)));
+        return mockASAPCryptoAlgorithms;
+    }
+
+    private void deliverAll() throws Exception {
+        while (!sentMessages.isEmpty()) {
+            SentMessage sentMessage = sentMessages.removeFirst();
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(sentMessage.message));
+            TestPeer receiver = testPeers.get(dis.readUTF());
+
+            ASAPMessages mockASAPMessages = Mockito.mock(ASAPMessages.class);
+            Mockito.when(mockASAPMessages.getMessages()).thenReturn(List.of(sentMessage.message).iterator());
+            Mockito.when(mockASAPMessages.getURI()).thenReturn(sentMessage.uri);
+
+            receiver.shiverSecurity.asapMessagesReceived(mockASAPMessages, sentMessage.sender, null);
+
+            for (GroupCredentialMessage groupCredentialMessage : receiver.takePendingGroupCredentialMessages()) {
+                receiver.shiverComponent.acceptGroupCredentialMessage(groupCredentialMessage);
+            }
+        }
+    }
+
+    private static class SentMessage {
+        private final String sender;
+        private final String uri;
+        private final byte[] message;
+
+        private SentMessage(String sender, String uri, byte[] message) {
+            this.sender = sender;
+            this.uri = uri;
+            this.message = message;
+        }
+    }
+
+    private class TestPeer {
+        private final ShiverKeyStoreInMemo shiverKeyStore = new ShiverKeyStoreInMemo();
+        private final ShiverPkiSecurity shiverSecurity;
+        private final ShiverComponent shiverComponent;
+        private final List<GroupCredentialMessage> pendingGroupCredentialMessages = new ArrayList<>();
+        private int receivedGroupCredentialMessages = 0;
+
+        private TestPeer(String peerId, boolean tailoredBroadcast) throws Exception {
+            ASAPPeer mockPeer = Mockito.mock(ASAPPeer.class);
+            Mockito.when(mockPeer.getPeerID()).thenReturn(peerId);
+            Mockito.doAnswer(invocation -> {
+                sentMessages.add(new SentMessage(peerId, invocation.getArgument(1).toString(), invocation.getArgument(2)));
+                return null;
+            }).when(mockPeer).sendASAPMessage(Mockito.any(), Mockito.any(), Mockito.any());
+
+            SharkPKIComponent mockPkiComponent = Mockito.mock(SharkPKIComponent.class);
+            Mockito.when(mockPkiComponent.getCertificateByIssuerAndSubject(Mockito.any(), Mockito.any())).thenReturn(Mockito.mock(ASAPCertificate.class));
+
+            ShiverDHKeyPairStorageInMemo shiverDHKeyPairStorage = new ShiverDHKeyPairStorageInMemo();
+            shiverSecurity = new ShiverPkiSecurity(mockPkiComponent, shiverDHKeyPairStorage, shiverKeyStore);
+            shiverSecurity.setTailoredBroadcast(tailoredBroadcast);
+            shiverComponent = (ShiverComponent) new ShiverComponentFactory(shiverSecurity, shiverDHKeyPairStorage, shiverKeyStore).getComponent();
+
+            shiverComponent.addShiverEventListener(new ShiverEventListener() {
+                @Override
+                public void onReceiveGroupCredentials(GroupCredentialMessage groupCredentialMessage) {
+                    pendingGroupCredentialMessages.add(groupCredentialMessage);
+                    receivedGroupCredentialMessages++;
+                }
+
+                @Override
+                public void onErrorReceivingGroupCredentialMessage(String path, Exception exception) {
+                    Assertions.fail(exception);
+                }
+
+                @Override
+                public void onReceivedGroupKey(CharSequence groupId) {
+                }
+            });
+            shiverComponent.onStart(mockPeer);
+        }
+
+        private List<GroupCredentialMessage> takePendingGroupCredentialMessages() {
+            List<GroupCredentialMessage> groupCredentialMessages = new ArrayList<>(pendingGroupCredentialMessages);
+            pendingGroupCredentialMessages.clear();
+            return groupCredentialMessages;
+        }
+
+        private byte[] getKey(CharSequence groupId) {
+            return shiverKeyStore.getKeyForGroup(groupId).getEncoded();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.shiver.storage;
+
+import com.shiver.exceptions.ShiverDHKeyGenerationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.function.BooleanSupplier;
+
+public class ShiverDHKeyPairPoolTest {
+    private ShiverDHKeyPairPool shiverDHKeyPairPool;
+
+    @AfterEach
+    public void afterEach() {
+        if (shiverDHKeyPairPool != null) {
+            shiverDHKeyPairPool.close();
+        }
+    }
+
+    @Test
+    public void start_fillsUpToHighWatermark() throws InterruptedException {
+        shiverDHKeyPairPool = new ShiverDHKeyPairPool(1, 3);
+
+        shiverDHKeyPairPool.start();
+
+        awaitCondition(() -> shiverDHKeyPairPool.size() == 3);
+        Thread.sleep(100);
+        Assertions.assertEquals(3, shiverDHKeyPairPool.size());
+    }
+
+    @Test
+    public void take_refillsBelowLowWatermark() throws InterruptedException, ShiverDHKeyGenerationException {
+        shiverDHKeyPairPool = new ShiverDHKeyPairPool(2, 3);
+        shiverDHKeyPairPool.start();
+        awaitCondition(() -> shiverDHKeyPairPool.size() == 3);
+
+        KeyPair keyPair1 = shiverDHKeyPairPool.take();
+        Thread.sleep(100);
+        Assertions.assertEquals(2, shiverDHKeyPairPool.size());
+
+        KeyPair keyPair2 = shiverDHKeyPairPool.take();
+        awaitCondition(() -> shiverDHKeyPairPool.size() == 3);
+
+        Assertions.assertNotEquals(keyPair1, keyPair2);
+    }
+
+    @Test
+    public void take_generatesOnCallingThreadWithoutWatermarks() throws ShiverDHKeyGenerationException {
+        shiverDHKeyPairPool = new ShiverDHKeyPairPool(0, 0);
+
+        KeyPair keyPair1 = shiverDHKeyPairPool.take();
+        KeyPair keyPair2 = shiverDHKeyPairPool.take();
+
+        Assertions.assertNotNull(keyPair1);
+        Assertions.assertNotEquals(keyPair1, keyPair2);
+        Assertions.assertEquals(0, shiverDHKeyPairPool.size());
+    }
+
+    @Test
+    public void start_afterCloseThrows() {
+        shiverDHKeyPairPool = new ShiverDHKeyPairPool();
+        shiverDHKeyPairPool.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> shiverDHKeyPairPool.start());
+    }
+
+    @Test
+    public void constructor_invalidWatermarks() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ShiverDHKeyPairPool(3, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ShiverDHKeyPairPool(-1, 2));
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                Assertions.fail("Condition was not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.shiver.storage;
 
+import com.shiver.crypto.ShiverKeyAgreements;
 import com.shiver.exceptions.ShiverDHKeyGenerationException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -10,6 +11,12 @@ import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.XECPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ShiverDHKeyPairStorageInMemoTest {
 
@@ -46,4 +53,61 @@ public class ShiverDHKeyPairStorageInMemoTest {
         Assertions.assertNotEquals(resultKeyPair1, resultKeyPair1_deleted);
         Assertions.assertNotEquals(resultKeyPair2, resultKeyPair1_deleted);
     }
+
+    @Test
+    public void getOrGenerateKeyPairForGroup_storageThatOnlyKnowsDH() throws ShiverDHKeyGenerationException {
+        ShiverDHKeyPairStorageInMemo shiverDHKeyPairStorageInMemo = new ShiverDHKeyPairStorageInMemo();
+        // a storage written before the key agreements, it only implements the methods it knew about
+        ShiverDHKeyPairStorage dhOnlyStorage = new ShiverDHKeyPairStorage() {
+            @Override
+            public KeyPair getOrGenerateKeyPairForGroup(CharSequence groupId) throws ShiverDHKeyGenerationException {
+                return shiverDHKeyPairStorageInMemo.getOrGenerateKeyPairForGroup(groupId);
+            }
+
+            @Override
+            public void deleteKeyPairForGroupId(CharSequence groupId) {
+                shiverDHKeyPairStorageInMemo.deleteKeyPairForGroupId(groupId);
+            }
+        };
+
+        KeyPair keyPair = dhOnlyStorage.getOrGenerateKeyPairForGroup("group_id", ShiverKeyAgreements.DH);
+
+        Assertions.assertSame(keyPair, dhOnlyStorage.getOrGenerateKeyPairForGroup("group_id"));
+        Assertions.assertThrows(ShiverDHKeyGenerationException.class, () -> {
+            dhOnlyStorage.getOrGenerateKeyPairForGroup("group_id", ShiverKeyAgreements.X25519);
+        });
+    }
+
+    @Test
+    public void getOrGenerateKeyPairForGroup_otherKeyAgreement() throws ShiverDHKeyGenerationException {
+        CharSequence testGroupId = "group_id";
+
+        ShiverDHKeyPairStorageInMemo shiverDHKeyPairStorageInMemo = new ShiverDHKeyPairStorageInMemo();
+        KeyPair resultKeyPair = shiverDHKeyPairStorageInMemo.getOrGenerateKeyPairForGroup(testGroupId, ShiverKeyAgreements.X25519);
+        KeyPair resultKeyPair_again = shiverDHKeyPairStorageInMemo.getOrGenerateKeyPairForGroup(testGroupId, ShiverKeyAgreements.X25519);
+
+        Assertions.assertInstanceOf(XECPublicKey.class, resultKeyPair.getPublic());
+        Assertions.assertEquals(resultKeyPair, resultKeyPair_again);
+    }
+
+    @Test
+    public void getOrGenerateKeyPairForGroup_bindsOneKeyPairAcrossThreads() throws Exception {
+        CharSequence testGroupId = "group_id_1";
+        ShiverDHKeyPairStorageInMemo shiverDHKeyPairStorageInMemo = new ShiverDHKeyPairStorageInMemo(new ShiverDHKeyPairPool(0, 4));
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<KeyPair>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> shiverDHKeyPairStorageInMemo.getOrGenerateKeyPairForGroup(testGroupId)));
+            }
+
+            KeyPair expected = shiverDHKeyPairStorageInMemo.getOrGenerateKeyPairForGroup(testGroupId);
+            for (Future<KeyPair> future : futures) {
+                Assertions.assertSame(expected, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
 }
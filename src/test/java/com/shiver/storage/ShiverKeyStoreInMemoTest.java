@@ -1,10 +1,13 @@
 package com.shiver.storage;
 
+import com.shiver.crypto.ShiverCipherSuites;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.security.Key;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ShiverKeyStoreInMemoTest {
 
@@ -45,4 +48,144 @@ public class ShiverKeyStoreInMemoTest {
         Assertions.assertNull(deletedKey1);
         Assertions.assertNull(deletedKey2);
     }
+
+    @Test
+    public void cipherSuite() {
+        Key testKey = Mockito.mock(Key.class);
+        CharSequence testGroupId1 = "GroupId1";
+        CharSequence testGroupId2 = "GroupId2";
+
+        ShiverKeyStoreInMemo shiverKeyStoreInMemo = new ShiverKeyStoreInMemo();
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId1, testKey);
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId2, testKey, ShiverCipherSuites.AES_CTR_HMAC_ID);
+
+        Assertions.assertEquals(ShiverCipherSuites.AES_GCM_ID, shiverKeyStoreInMemo.getCipherSuiteIdForGroup(testGroupId1));
+        Assertions.assertEquals(ShiverCipherSuites.AES_CTR_HMAC_ID, shiverKeyStoreInMemo.getCipherSuiteIdForGroup(testGroupId2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> shiverKeyStoreInMemo.storeKeyForGroup(testGroupId1, testKey, (byte) 42));
+    }
+
+    @Test
+    public void cipherSuite_customDefault() {
+        Key testKey = Mockito.mock(Key.class);
+        CharSequence testGroupId = "GroupId1";
+
+        ShiverKeyStoreInMemo shiverKeyStoreInMemo = new ShiverKeyStoreInMemo(ShiverCipherSuites.LEGACY_AES_ECB_ID);
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey, ShiverCipherSuites.AES_GCM_ID);
+        shiverKeyStoreInMemo.deleteKeyForGroup(testGroupId);
+
+        Assertions.assertEquals(ShiverCipherSuites.LEGACY_AES_ECB_ID, shiverKeyStoreInMemo.getCipherSuiteIdForGroup(testGroupId));
+    }
+
+    @Test
+    public void previousKey() {
+        Key testKey1 = Mockito.mock(Key.class);
+        Key testKey2 = Mockito.mock(Key.class);
+        CharSequence testGroupId = "GroupId1";
+
+        ShiverKeyStoreInMemo shiverKeyStoreInMemo = new ShiverKeyStoreInMemo();
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey1);
+        Key noPreviousKey = shiverKeyStoreInMemo.getPreviousKeyForGroup(testGroupId);
+
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey2);
+        Key previousKey = shiverKeyStoreInMemo.getPreviousKeyForGroup(testGroupId);
+
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey2);
+        Key previousKey_sameKeyAgain = shiverKeyStoreInMemo.getPreviousKeyForGroup(testGroupId);
+
+        shiverKeyStoreInMemo.deleteKeyForGroup(testGroupId);
+
+        Assertions.assertNull(noPreviousKey);
+        Assertions.assertEquals(testKey1, previousKey);
+        Assertions.assertEquals(testKey1, previousKey_sameKeyAgain);
+        Assertions.assertNull(shiverKeyStoreInMemo.getPreviousKeyForGroup(testGroupId));
+    }
+
+    @Test
+    public void previousKey_expires() {
+        Key testKey1 = Mockito.mock(Key.class);
+        Key testKey2 = Mockito.mock(Key.class);
+        CharSequence testGroupId = "GroupId1";
+        AtomicLong now = new AtomicLong();
+
+        ShiverKeyStoreInMemo shiverKeyStoreInMemo = new ShiverKeyStoreInMemo(ShiverCipherSuites.AES_GCM_ID, 1000, now::get);
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey1);
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey2);
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(999));
+        Key previousKey = shiverKeyStoreInMemo.getPreviousKeyForGroup(testGroupId);
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(1000));
+        Key expiredPreviousKey = shiverKeyStoreInMemo.getPreviousKeyForGroup(testGroupId);
+
+        Assertions.assertEquals(testKey1, previousKey);
+        Assertions.assertNull(expiredPreviousKey);
+        Assertions.assertEquals(testKey2, shiverKeyStoreInMemo.getKeyForGroup(testGroupId));
+    }
+
+    @Test
+    public void previousKey_noLifetime() {
+        Key testKey1 = Mockito.mock(Key.class);
+        Key testKey2 = Mockito.mock(Key.class);
+        CharSequence testGroupId = "GroupId1";
+
+        ShiverKeyStoreInMemo shiverKeyStoreInMemo = new ShiverKeyStoreInMemo(ShiverCipherSuites.AES_GCM_ID, 0);
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey1);
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey2);
+
+        Assertions.assertNull(shiverKeyStoreInMemo.getPreviousKeyForGroup(testGroupId));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ShiverKeyStoreInMemo(ShiverCipherSuites.AES_GCM_ID, -1));
+    }
+
+    @Test
+    public void replaceKey() {
+        Key testKey1 = Mockito.mock(Key.class);
+        Key testKey2 = Mockito.mock(Key.class);
+        Key testKey3 = Mockito.mock(Key.class);
+        CharSequence testGroupId = "GroupId1";
+
+        ShiverKeyStoreInMemo shiverKeyStoreInMemo = new ShiverKeyStoreInMemo();
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey1, ShiverCipherSuites.AES_CTR_HMAC_ID);
+        shiverKeyStoreInMemo.storeKeyForGroup(testGroupId, testKey2, ShiverCipherSuites.AES_CTR_HMAC_ID);
+        shiverKeyStoreInMemo.replaceKeyForGroup(testGroupId, testKey3);
+
+        Assertions.assertEquals(testKey3, shiverKeyStoreInMemo.getKeyForGroup(testGroupId));
+        Assertions.assertNull(shiverKeyStoreInMemo.getPreviousKeyForGroup(testGroupId));
+        Assertions.assertEquals(ShiverCipherSuites.AES_CTR_HMAC_ID, shiverKeyStoreInMemo.getCipherSuiteIdForGroup(testGroupId));
+    }
+
+    @Test
+    public void storageThatOnlyKnowsKeys() {
+        Key testKey1 = Mockito.mock(Key.class);
+        Key testKey2 = Mockito.mock(Key.class);
+        CharSequence testGroupId = "GroupId";
+
+        ShiverKeyStoreInMemo shiverKeyStoreInMemo = new ShiverKeyStoreInMemo();
+        // a storage written before the cipher suites, it only implements the methods it knew about
+        ShiverKeyStorage keyOnlyStorage = new ShiverKeyStorage() {
+            @Override
+            public void storeKeyForGroup(CharSequence groupId, Key privateKey) {
+                shiverKeyStoreInMemo.storeKeyForGroup(groupId, privateKey);
+            }
+
+            @Override
+            public Key getKeyForGroup(CharSequence groupId) {
+                return shiverKeyStoreInMemo.getKeyForGroup(groupId);
+            }
+
+            @Override
+            public void deleteKeyForGroup(CharSequence groupId) {
+                shiverKeyStoreInMemo.deleteKeyForGroup(groupId);
+            }
+        };
+
+        keyOnlyStorage.storeKeyForGroup(testGroupId, testKey1);
+        keyOnlyStorage.storeKeyForGroup(testGroupId, testKey2, ShiverCipherSuites.AES_GCM_ID);
+
+        Assertions.assertEquals(testKey2, keyOnlyStorage.getKeyForGroup(testGroupId));
+        Assertions.assertNull(keyOnlyStorage.getPreviousKeyForGroup(testGroupId));
+        Assertions.assertEquals(ShiverCipherSuites.LEGACY_AES_ECB_ID, keyOnlyStorage.getCipherSuiteIdForGroup(testGroupId));
+
+        keyOnlyStorage.replaceKeyForGroup(testGroupId, testKey1);
+        Assertions.assertEquals(testKey1, keyOnlyStorage.getKeyForGroup(testGroupId));
+    }
 }
@@ -0,0 +1,55 @@
+package com.shiver.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ShiverSeenMessageStorageInMemoTest {
+
+    @Test
+    public void test() {
+        byte[] testDigest1 = "testDigest1".getBytes();
+        byte[] testDigest2 = "testDigest2".getBytes();
+
+        ShiverSeenMessageStorageInMemo shiverSeenMessageStorageInMemo = new ShiverSeenMessageStorageInMemo();
+        boolean seenBefore = shiverSeenMessageStorageInMemo.isMessageSeen(testDigest1);
+
+        shiverSeenMessageStorageInMemo.storeSeenMessage(testDigest1);
+
+        Assertions.assertFalse(seenBefore);
+        Assertions.assertTrue(shiverSeenMessageStorageInMemo.isMessageSeen("testDigest1".getBytes()));
+        Assertions.assertFalse(shiverSeenMessageStorageInMemo.isMessageSeen(testDigest2));
+    }
+
+    @Test
+    public void storeSeenMessage_copiesDigest() {
+        byte[] testDigest = "testDigest".getBytes();
+        ShiverSeenMessageStorageInMemo shiverSeenMessageStorageInMemo = new ShiverSeenMessageStorageInMemo();
+
+        shiverSeenMessageStorageInMemo.storeSeenMessage(testDigest);
+        testDigest[0] = 'x';
+
+        Assertions.assertTrue(shiverSeenMessageStorageInMemo.isMessageSeen("testDigest".getBytes()));
+    }
+
+    @Test
+    public void storeSeenMessage_dropsLeastRecentlySeen() {
+        ShiverSeenMessageStorageInMemo shiverSeenMessageStorageInMemo = new ShiverSeenMessageStorageInMemo(2);
+
+        shiverSeenMessageStorageInMemo.storeSeenMessage("testDigest1".getBytes());
+        shiverSeenMessageStorageInMemo.storeSeenMessage("testDigest2".getBytes());
+        shiverSeenMessageStorageInMemo.isMessageSeen("testDigest1".getBytes());
+        shiverSeenMessageStorageInMemo.storeSeenMessage("testDigest3".getBytes());
+
+        Assertions.assertEquals(2, shiverSeenMessageStorageInMemo.size());
+        Assertions.assertTrue(shiverSeenMessageStorageInMemo.isMessageSeen("testDigest1".getBytes()));
+        Assertions.assertFalse(shiverSeenMessageStorageInMemo.isMessageSeen("testDigest2".getBytes()));
+        Assertions.assertTrue(shiverSeenMessageStorageInMemo.isMessageSeen("testDigest3".getBytes()));
+    }
+
+    @Test
+    public void constructor_throwsForLessThanOneEntry() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            new ShiverSeenMessageStorageInMemo(0);
+        });
+    }
+}